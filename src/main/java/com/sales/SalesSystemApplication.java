@@ -1,7 +1,20 @@
 package com.sales;
 
+import com.sales.config.CheckoutProperties;
+import com.sales.config.DelayedJobProperties;
+import com.sales.config.IdGeneratorProperties;
+import com.sales.config.OrderEventProperties;
+import com.sales.config.OrderGroupCommitProperties;
+import com.sales.config.OrderStateProperties;
+import com.sales.config.OrderTimelineProperties;
+import com.sales.config.ProductSearchProperties;
+import com.sales.config.SessionProperties;
+import com.sales.config.StockWriteBehindProperties;
+import com.sales.config.StreamQueueProperties;
+import com.sales.config.UserSegmentProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
@@ -10,6 +23,11 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 @EnableCaching
 @EnableAsync
 @EnableScheduling
+@EnableConfigurationProperties({IdGeneratorProperties.class, OrderGroupCommitProperties.class,
+        OrderEventProperties.class, StreamQueueProperties.class, StockWriteBehindProperties.class,
+        DelayedJobProperties.class, OrderTimelineProperties.class, OrderStateProperties.class,
+        ProductSearchProperties.class, UserSegmentProperties.class, SessionProperties.class,
+        CheckoutProperties.class})
 public class SalesSystemApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,49 @@
+package com.sales.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 购物车结算流水线配置（sales.checkout.*）
+ *
+ * 各阶段延迟预算（毫秒）：超出只记录告警和 sales.checkout.budget_exceeded 计数，不中断结算
+ */
+@Data
+@ConfigurationProperties(prefix = "sales.checkout")
+public class CheckoutProperties {
+
+    /**
+     * 读取购物车（一次 HGETALL）
+     */
+    private long cartReadBudgetMs = 10;
+
+    /**
+     * 批量加载商品（一次 HBase multi-get）
+     */
+    private long productLoadBudgetMs = 50;
+
+    /**
+     * 校验并锁定购物车持有的库存（一次 Lua 脚本）
+     */
+    private long reserveBudgetMs = 10;
+
+    /**
+     * 写入订单（组提交，含攒批等待）
+     */
+    private long orderWriteBudgetMs = 100;
+
+    /**
+     * 状态计数、时间线、自动取消任务（一次 pipeline）
+     */
+    private long redisUpdateBudgetMs = 10;
+
+    /**
+     * 整体预算
+     */
+    private long totalBudgetMs = 200;
+
+    /**
+     * 结算标记在自动取消时限之外多保留的时间（秒）。标记在订单支付或取消时清除，过期仅作为自动取消任务丢失时的兜底
+     */
+    private long markerGraceSeconds = 3600;
+}
@@ -0,0 +1,37 @@
+package com.sales.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 延时任务配置（sales.jobs.*）
+ */
+@Data
+@ConfigurationProperties(prefix = "sales.jobs")
+public class DelayedJobProperties {
+
+    /**
+     * 每次原子弹出的最多到期任务数
+     */
+    private int batchSize = 500;
+
+    /**
+     * 任务被认领后的租约时长（毫秒），超时未完成视为节点崩溃，重新入队
+     */
+    private long leaseMs = 60000;
+
+    /**
+     * 任务处理失败后的重试延迟（毫秒）
+     */
+    private long retryDelayMs = 30000;
+
+    /**
+     * 待付款订单自动取消时间（分钟）
+     */
+    private long autoCancelMinutes = 30;
+
+    /**
+     * 已发货订单自动确认收货时间（天）
+     */
+    private long autoConfirmDays = 7;
+}
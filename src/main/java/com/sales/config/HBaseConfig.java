@@ -113,6 +113,8 @@ public class HBaseConfig {
         public static final TableName ORDER_HISTORY = TableName.valueOf("order_history");
         public static final TableName USER_PROFILE = TableName.valueOf("user_profile");
         public static final TableName SALES_DATA = TableName.valueOf("sales_data");
+        public static final TableName SALES_BY_PRODUCT = TableName.valueOf("sales_by_product");
+        public static final TableName ORDER_STATS = TableName.valueOf("order_stats");
     }
 
     // 列族常量
@@ -171,6 +173,10 @@ public class HBaseConfig {
         public static final String ORDER_PAY_TIME = "pay_time";
         public static final String ORDER_DELIVER_TIME = "deliver_time";
         public static final String ORDER_COMPLETE_TIME = "complete_time";
+        public static final String ORDER_EVENT_PREFIX = "evt_";   // outbox 事件列 evt_{类型}
+        
+        // 订单状态计数检查点（order_stats）
+        public static final String ORDER_STATS_UPDATE_TIME = "update_time";
         
         // 收货信息
         public static final String ORDER_RECEIVER = "receiver";
@@ -192,6 +198,7 @@ public class HBaseConfig {
         public static final String USER_BIRTHDAY = "birthday";
         public static final String USER_REGISTER_TIME = "register_time";
         public static final String USER_STATUS = "status";
+        public static final String USER_ORDINAL = "ordinal";
         
         // 用户账户信息
         public static final String USER_LEVEL = "level";
@@ -213,5 +220,7 @@ public class HBaseConfig {
         public static final String SALES_SALE_AMOUNT = "sale_amount";
         public static final String SALES_REFUND_COUNT = "refund_count";
         public static final String SALES_REFUND_AMOUNT = "refund_amount";
+        public static final String SALES_HOURLY_VECTOR = "hourly";   // cf_hourly 打包列：24个long
+        public static final String SALES_HOUR_PREFIX = "hour_";      // cf_hourly 原子累加列：hour_00 ~ hour_23
     }
 }
@@ -0,0 +1,42 @@
+package com.sales.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 分布式ID生成器配置（sales.id.*）
+ */
+@Data
+@ConfigurationProperties(prefix = "sales.id")
+public class IdGeneratorProperties {
+
+    /**
+     * 固定节点号（0-1023）；小于0时启动时从 Redis 租约中分配
+     */
+    private int nodeId = -1;
+
+    /**
+     * 自定义纪元（毫秒），默认 2024-01-01T00:00:00Z
+     */
+    private long epoch = 1704067200000L;
+
+    /**
+     * 节点租约有效期（秒），续约间隔固定为 10 秒
+     */
+    private long leaseTtlSeconds = 60;
+
+    /**
+     * 可容忍的时钟回拨/借用未来时间上限（毫秒），超过则拒绝发号
+     */
+    private long maxClockBackwardMs = 5000;
+
+    /**
+     * 行键散列桶数（1-16），1 表示不加散列前缀
+     */
+    private int saltBuckets = 16;
+
+    /**
+     * nextIds 单次最多发号数量
+     */
+    private int maxBatchSize = 100000;
+}
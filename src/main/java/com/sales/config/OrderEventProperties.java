@@ -0,0 +1,32 @@
+package com.sales.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 订单事件 outbox 分发配置（sales.order.events.*）
+ */
+@Data
+@ConfigurationProperties(prefix = "sales.order.events")
+public class OrderEventProperties {
+
+    /**
+     * 补偿扫描单批处理的最多事件数（订单按批 multi-get）
+     */
+    private int batchSize = 100;
+
+    /**
+     * 单个事件最多尝试次数，超过后转入死信列表
+     */
+    private int maxAttempts = 5;
+
+    /**
+     * 事件写入超过该时长仍未处理则由补偿扫描重新投递（毫秒），同时作为重试间隔
+     */
+    private long sweepDelayMs = 60000;
+
+    /**
+     * 处理器执行中标记的租约时长（毫秒），持有者宕机后到期由其他节点重试
+     */
+    private long handlerLeaseMs = 300000;
+}
@@ -0,0 +1,37 @@
+package com.sales.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 订单创建组提交配置（sales.order.group-commit.*）
+ */
+@Data
+@ConfigurationProperties(prefix = "sales.order.group-commit")
+public class OrderGroupCommitProperties {
+
+    /**
+     * 关闭时退化为逐笔同步写入
+     */
+    private boolean enabled = true;
+
+    /**
+     * 收到首笔订单后最多等待的攒批时间（毫秒）
+     */
+    private long windowMs = 5;
+
+    /**
+     * 单批最多订单数，攒满立即提交
+     */
+    private int maxBatchSize = 64;
+
+    /**
+     * 待提交队列容量，队列满时调用方直接同步写入
+     */
+    private int queueCapacity = 10000;
+
+    /**
+     * 调用方等待订单进入批次的超时时间（毫秒），超时仍在队列中的订单撤回并失败；已进入批次的订单等待批次结果
+     */
+    private long commitTimeoutMs = 10000;
+}
@@ -0,0 +1,22 @@
+package com.sales.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 订单状态/统计标记紧凑存储配置（sales.order.state.*）
+ */
+@Data
+@ConfigurationProperties(prefix = "sales.order.state")
+public class OrderStateProperties {
+
+    /**
+     * 每天的散列桶数；每桶每单两个字段，需保证单桶字段数低于 hash-max-listpack-entries（默认 128）
+     */
+    private int bucketsPerDay = 4096;
+
+    /**
+     * 按订单创建日保留的天数，整桶到期删除
+     */
+    private int retentionDays = 7;
+}
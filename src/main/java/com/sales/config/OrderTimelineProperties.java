@@ -0,0 +1,22 @@
+package com.sales.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 用户订单时间线配置（sales.order.timeline.*）
+ */
+@Data
+@ConfigurationProperties(prefix = "sales.order.timeline")
+public class OrderTimelineProperties {
+
+    /**
+     * 每个用户保留的最近订单数，超出的分页请求回源 HBase
+     */
+    private int capacity = 100;
+
+    /**
+     * 时间线无写入后的过期时间（天），过期后首次读取从 HBase 重建
+     */
+    private long expireDays = 30;
+}
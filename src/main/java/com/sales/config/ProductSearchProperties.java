@@ -0,0 +1,42 @@
+package com.sales.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 商品搜索索引配置（sales.product.search.*）
+ */
+@Data
+@ConfigurationProperties(prefix = "sales.product.search")
+public class ProductSearchProperties {
+
+    /**
+     * 是否启用本地倒排索引，关闭时搜索回退为 HBase 扫描
+     */
+    private boolean enabled = true;
+
+    /**
+     * 建索引时 HBase 扫描每次 RPC 返回的行数
+     */
+    private int scanCaching = 1000;
+
+    /**
+     * 前缀查询时单个字段最多展开的词项数
+     */
+    private int maxPrefixExpansions = 64;
+
+    /**
+     * 单次搜索最多返回的商品数
+     */
+    private int maxResults = 200;
+
+    /**
+     * 已删除序号占比超过该值时后台重建索引，回收空洞
+     */
+    private double rebuildDeletedRatio = 0.3;
+
+    /**
+     * 本实例订阅商品变更的消费组名，每个实例需不同且跨重启保持不变；为空时使用 product-search-{主机名}
+     */
+    private String consumerGroup;
+}
@@ -97,43 +97,77 @@ public class RedisConfig {
     public static class RedisKeys {
         // 商品库存
         public static final String STOCK_PREFIX = "stock:";
+        public static final String STOCK_DIRTY = "stock:dirty";   // ZSet: 待刷盘商品ID -> 最近变更时间
+        public static final String STOCK_SAFE = "stock:safe";     // Hash: 商品ID -> 安全库存
+        public static final String STOCK_MARGIN = "stock:margin"; // ZSet: 商品ID -> 库存 - 安全库存（<= 0 即低库存）
         public static final String SECKILL_STOCK_PREFIX = "seckill_stock:";
         
         // 购物车
         public static final String CART_PREFIX = "cart:";
+        public static final String CART_CHECKOUT_PREFIX = "cart:checkout:";   // cart:checkout:{userId} -> 已结算、尚未支付或取消的订单号
         
         // 销售排行榜
         public static final String RANK_DAILY_SALE = "rank:daily:sale";
         public static final String RANK_WEEKLY_SALE = "rank:weekly:sale";
         public static final String RANK_MONTHLY_SALE = "rank:monthly:sale";
+        public static final String RANK_DAY_PREFIX = "rank:day:";   // rank:day:{yyyyMMdd}:{count|amount}
         
         // 用户会话
-        public static final String SESSION_PREFIX = "session:";
+        public static final String SESSION_PREFIX = "session:";   // Hash: user_id / username / login_time / login_ip
         public static final String TOKEN_PREFIX = "token:";
-        public static final String ONLINE_USERS = "online:users";
+        public static final String ONLINE_USERS = "online:users:seen";   // ZSet: 用户ID -> 最近活跃时间
+
+        // 用户分群位图
+        public static final String USER_ORDINAL_SEQ = "user:ordinal:seq";           // 已分配的最大用户序号
+        public static final String USER_ORDINAL_REV_PREFIX = "user:ordinal:rev:";   // Hash: {序号/128} 序号%128 -> 用户ID
+        public static final String USER_BITMAP_PREFIX = "user:bitmap:";             // level:{等级} / status:{状态} / active:{yyyyMMdd}，位下标为用户序号
+        public static final String USER_SEGMENT_TMP_PREFIX = "user:segment:tmp:";   // 分群运算中间结果
         
         // 实时销售看板
         public static final String DASHBOARD_PREFIX = "dashboard:";
         public static final String STAT_ORDERS_TODAY = "stat:orders:today";
         public static final String STAT_SALES_TODAY = "stat:sales:today";
         public static final String HOT_PRODUCTS = "hot:products";
+        public static final String UV_ACTIVE_PREFIX = "stat:uv:active:";   // HyperLogLog: {yyyyMMdd} 日活 / m:{yyyyMM} 月活
+        public static final String UV_BUYER_PREFIX = "stat:uv:buyer:";     // HyperLogLog: {yyyyMMdd} 日下单用户 / m:{yyyyMM} 月下单用户
+
+        // 商品/用户聚合计数
+        public static final String STATS_PRODUCT_COUNTS = "stats:product:counts";   // Hash: 商品状态码 -> 商品数，_initialized 已初始化标记
+        public static final String STATS_USER_COUNTS = "stats:user:counts";         // Hash: 状态码:等级码 -> 用户数，_initialized 已初始化标记
 
         // 订单状态实时缓存
-        public static final String ORDER_STATUS_PREFIX = "order:status:";
-        public static final String ORDER_STATS_PREFIX = "order:stats:";
+        public static final String ORDER_STATE_PREFIX = "order:state:";   // Hash: {创建日yyyyMMdd}:{桶} base36订单号 -> 状态, base36订单号! -> 已统计
+        public static final String ORDER_STATUS_COUNTS = "order:status:counts";   // Hash: 状态码 -> 订单数，_initialized 已初始化标记
+        public static final String ORDER_EVENT_DONE_PREFIX = "order:event:done:";         // {eventId}:{handler} 幂等标记
+        public static final String ORDER_EVENT_APPLIED_PREFIX = "order:event:applied:";   // Hash: {eventId} 处理器[:商品ID] -> 增量已累加
+        public static final String ORDER_EVENT_ATTEMPTS_PREFIX = "order:event:attempts:"; // {eventId} 失败次数
+        public static final String ORDER_EVENT_DEAD = "order:event:dead";                 // List: 超过重试次数的事件
+        public static final String ORDER_EVENT_PENDING = "order:event:pending";           // ZSet: 事件ID -> 补偿扫描到期时间
+        public static final String ORDER_STOCK_RELEASED_PREFIX = "order:stock:released:"; // {orderId} 取消订单已归还库存
+        public static final String ORDER_TIMELINE_PREFIX = "order:timeline:";             // ZSet: {userId} 订单ID -> 创建时间
+        public static final String ORDER_TIMELINE_SUMMARY_PREFIX = "order:timeline:summary:"; // Hash: {userId} 订单ID -> 紧凑摘要
+        public static final String ORDER_BULK_PROGRESS_PREFIX = "order:bulk:progress:";   // Hash: {operationId} 批量操作进度
         
         // 限流与计数器
         public static final String LIMIT_PREFIX = "limit:";
         public static final String VIEW_COUNT_PREFIX = "view_count:product:";
         public static final String LOCK_PREFIX = "lock:";
+        public static final String ID_NODE_LEASE_PREFIX = "id:node:";   // id:node:{nodeId} -> 实例标识
         
         // 商品信息缓存
         public static final String PRODUCT_CACHE_PREFIX = "product:cache:";
         public static final String CATEGORY_TREE = "category:tree";
         
-        // 消息队列
+        // 消息队列（Redis Streams）
         public static final String QUEUE_ORDER_PROCESS = "queue:order:process";
         public static final String QUEUE_STOCK_DEDUCT = "queue:stock:deduct";
         public static final String QUEUE_STOCK_SYNC = "queue:stock:sync";
+        public static final String QUEUE_STOCK_ALERT = "queue:stock:alert";         // 库存跌破/恢复安全库存
+        public static final String QUEUE_PRODUCT_CHANGE = "queue:product:change";   // 商品变更，各节点刷新本地搜索索引
+        public static final String QUEUE_DEAD_LETTER_SUFFIX = ":dead";   // {stream}:dead 死信流
+
+        // 延时任务
+        public static final String JOB_DELAYED = "job:delayed";         // ZSet: {类型}:{参数} -> 到期时间
+        public static final String JOB_PROCESSING = "job:processing";   // ZSet: 已认领任务 -> 租约到期时间
     }
 }
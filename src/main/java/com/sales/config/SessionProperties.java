@@ -0,0 +1,32 @@
+package com.sales.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 用户会话配置（sales.session.*）
+ */
+@Data
+@ConfigurationProperties(prefix = "sales.session")
+public class SessionProperties {
+
+    /**
+     * 会话空闲过期时间（秒）
+     */
+    private long expireSeconds = 1800;
+
+    /**
+     * 剩余 TTL 低于该值时才续期（秒），默认即最多每 10 分钟续期一次
+     */
+    private long refreshThresholdSeconds = 1200;
+
+    /**
+     * 本地校验缓存有效期（毫秒），命中时不访问 Redis；也是会话销毁后其它节点可能继续放行的最长时间
+     */
+    private long localCacheMillis = 5000;
+
+    /**
+     * 本地校验缓存最多条目数，满了不再缓存新会话
+     */
+    private int localCacheMaxSize = 100000;
+}
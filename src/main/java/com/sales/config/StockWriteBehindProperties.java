@@ -0,0 +1,27 @@
+package com.sales.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 库存 write-behind 配置（sales.stock.write-behind.*）
+ */
+@Data
+@ConfigurationProperties(prefix = "sales.stock.write-behind")
+public class StockWriteBehindProperties {
+
+    /**
+     * 刷盘间隔（毫秒），即 HBase 库存相对 Redis 的最大滞后时间
+     */
+    private long flushIntervalMs = 5000;
+
+    /**
+     * 每个分块的商品数：一次 MGET + 一次 HBase batch put
+     */
+    private int chunkSize = 500;
+
+    /**
+     * 每轮最多处理的分块数，超出部分留到下一轮，保证单轮刷盘有上界
+     */
+    private int maxChunksPerCycle = 200;
+}
@@ -0,0 +1,37 @@
+package com.sales.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Redis Streams 队列配置（sales.queue.*）
+ */
+@Data
+@ConfigurationProperties(prefix = "sales.queue")
+public class StreamQueueProperties {
+
+    /**
+     * 每次 XREADGROUP 最多读取的消息数
+     */
+    private int readCount = 100;
+
+    /**
+     * XREADGROUP 阻塞等待时间（毫秒）
+     */
+    private long blockMs = 2000;
+
+    /**
+     * 未 ACK 消息空闲超过该时长视为消费者崩溃，由其他消费者认领（毫秒）
+     */
+    private long reclaimIdleMs = 60000;
+
+    /**
+     * 单条消息最多投递次数，超过后转入死信流
+     */
+    private int maxDeliveries = 5;
+
+    /**
+     * 流的近似最大长度，定期 XTRIM
+     */
+    private long maxLength = 100000;
+}
@@ -0,0 +1,37 @@
+package com.sales.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 用户分群位图索引配置（sales.user.segment.*）
+ */
+@Data
+@ConfigurationProperties(prefix = "sales.user.segment")
+public class UserSegmentProperties {
+
+    /**
+     * 是否维护分群位图
+     */
+    private boolean enabled = true;
+
+    /**
+     * 每日活跃位图保留天数，也是“最近 N 天活跃”可查询的最大 N
+     */
+    private int activeRetentionDays = 35;
+
+    /**
+     * 回填时 HBase 扫描每次 RPC 返回的行数
+     */
+    private int scanCaching = 1000;
+
+    /**
+     * 分群 ID 列表单页上限
+     */
+    private int maxPageSize = 1000;
+
+    /**
+     * 读取结果位图时每次 GETRANGE 的字节数（每字节 8 个用户）
+     */
+    private int readChunkBytes = 8192;
+}
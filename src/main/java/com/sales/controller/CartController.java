@@ -1,14 +1,17 @@
 package com.sales.controller;
 
 import com.sales.entity.CartItem;
+import com.sales.entity.Order;
 import com.sales.service.CartService;
-import com.sales.service.OrderService;
+import com.sales.service.CheckoutService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 购物车模块 - 用户购物车（Redis）
@@ -22,7 +25,7 @@ public class CartController {
     private CartService cartService;
     
     @Autowired
-    private OrderService orderService;
+    private CheckoutService checkoutService;
 
     /**
      * 添加商品到购物车（Redis）
@@ -38,6 +41,44 @@ public class CartController {
         }
     }
 
+    /**
+     * 批量加入购物车（数量累加，全部成功或全部不变），返回购物车商品总件数
+     */
+    @PostMapping("/{userId}/items")
+    public ResponseEntity<Integer> addItems(@PathVariable String userId, @RequestBody List<CartItem> items) {
+        try {
+            return ResponseEntity.ok(cartService.addItems(userId, items));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid cart items: userId={}, reason={}", userId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            log.warn("Cart items rejected: userId={}, reason={}", userId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (Exception e) {
+            log.error("Failed to add cart items: userId={}", userId, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * 批量设置购物车商品数量（商品ID -> 数量，数量为 0 删除），返回购物车商品总件数
+     */
+    @PutMapping("/{userId}/items")
+    public ResponseEntity<Integer> updateItems(@PathVariable String userId, @RequestBody Map<String, Integer> quantities) {
+        try {
+            return ResponseEntity.ok(cartService.updateItems(userId, quantities));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid cart items: userId={}, reason={}", userId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            log.warn("Cart items rejected: userId={}, reason={}", userId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (Exception e) {
+            log.error("Failed to update cart items: userId={}", userId, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
     /**
      * 获取用户购物车（Redis）
      */
@@ -101,29 +142,19 @@ public class CartController {
     }
     
     /**
-     * 购物车结算
+     * 购物车结算（单次往返流水线，见 CheckoutService）
      */
     @PostMapping("/{userId}/checkout")
-    public ResponseEntity<com.sales.entity.Order> checkout(@PathVariable String userId) {
+    public ResponseEntity<Order> checkout(@PathVariable String userId) {
         try {
-            // 从购物车创建订单项
-            List<com.sales.entity.Order.OrderItem> orderItems = cartService.createOrderItems(userId);
-            if (orderItems.isEmpty()) {
-                return ResponseEntity.badRequest().build();
-            }
-            
-            // 创建订单
-            com.sales.entity.Order order = new com.sales.entity.Order();
-            order.setUserId(userId);
-            order.setItems(orderItems);
-            order.setRemark("购物车结算");
-            
-            com.sales.entity.Order createdOrder = orderService.createOrder(order);
-            
-            // 注意：不再立即清空购物车，购物车在支付成功后清空
-            // cartService.clearCart(userId);
-            
-            return ResponseEntity.ok(createdOrder);
+            // 注意：不清空购物车，购物车在支付成功后清空
+            return ResponseEntity.ok(checkoutService.checkout(userId));
+        } catch (IllegalArgumentException e) {
+            log.warn("Cart checkout rejected: userId={}, reason={}", userId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            log.warn("Cart checkout conflict: userId={}, reason={}", userId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (Exception e) {
             log.error("Failed to checkout cart: userId={}", userId, e);
             return ResponseEntity.internalServerError().build();
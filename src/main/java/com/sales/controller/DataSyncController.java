@@ -1,6 +1,7 @@
 package com.sales.controller;
 
 import com.sales.service.DataSyncService;
+import com.sales.service.StockWriteBehindService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -19,6 +20,17 @@ public class DataSyncController {
     @Autowired
     private DataSyncService dataSyncService;
 
+    @Autowired
+    private StockWriteBehindService stockWriteBehindService;
+
+    /**
+     * 库存 write-behind 状态（待刷盘商品数、最大滞后）
+     */
+    @GetMapping("/stock/write-behind/stats")
+    public ResponseEntity<StockWriteBehindService.WriteBehindStats> getStockWriteBehindStats() {
+        return ResponseEntity.ok(stockWriteBehindService.getStats());
+    }
+
     /**
      * 手动触发库存同步（Redis -> HBase）
      */
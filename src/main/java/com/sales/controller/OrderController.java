@@ -1,9 +1,15 @@
 package com.sales.controller;
 
+import com.sales.entity.CursorPage;
 import com.sales.entity.Order;
+import com.sales.entity.OrderSummary;
+import com.sales.service.DelayedJobService;
+import com.sales.service.OrderBulkService;
+import com.sales.service.OrderGroupCommitService;
 import com.sales.service.OrderService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -21,6 +27,15 @@ public class OrderController {
     @Autowired
     private OrderService orderService;
 
+    @Autowired
+    private OrderGroupCommitService orderGroupCommitService;
+
+    @Autowired
+    private DelayedJobService delayedJobService;
+
+    @Autowired
+    private OrderBulkService orderBulkService;
+
     /**
      * 创建订单（HBase + Redis状态）
      */
@@ -57,6 +72,105 @@ public class OrderController {
         }
     }
 
+    /**
+     * 获取订单状态统计（Redis增量计数）
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<OrderService.OrderStats> getOrderStats() {
+        try {
+            return ResponseEntity.ok(orderService.getOrderStats());
+        } catch (IOException e) {
+            log.error("Failed to get order stats", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * 获取订单创建组提交统计（批次数、平均批大小、队列长度）
+     */
+    @GetMapping("/group-commit/stats")
+    public ResponseEntity<OrderGroupCommitService.GroupCommitStats> getGroupCommitStats() {
+        return ResponseEntity.ok(orderGroupCommitService.getStats());
+    }
+
+    /**
+     * 获取延时任务状态（自动取消/自动确认收货的积压与滞后）
+     */
+    @GetMapping("/jobs/stats")
+    public ResponseEntity<DelayedJobService.JobStats> getJobStats() {
+        return ResponseEntity.ok(delayedJobService.getStats());
+    }
+
+    /**
+     * 批量发货（最多 10000 单），逐单返回结果
+     */
+    @PostMapping("/bulk/ship")
+    public ResponseEntity<OrderBulkService.BulkResult> bulkShip(@RequestBody OrderBulkService.BulkRequest request) {
+        try {
+            return ResponseEntity.ok(orderBulkService.shipOrders(request.getOperationId(), request.getShipments()));
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid bulk ship request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * 批量取消待付款订单（最多 10000 单）
+     */
+    @PostMapping("/bulk/cancel")
+    public ResponseEntity<OrderBulkService.BulkResult> bulkCancel(@RequestBody OrderBulkService.BulkRequest request) {
+        try {
+            return ResponseEntity.ok(orderBulkService.cancelOrders(request.getOperationId(), request.getOrderIds()));
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid bulk cancel request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * 批量确认收货（最多 10000 单）
+     */
+    @PostMapping("/bulk/complete")
+    public ResponseEntity<OrderBulkService.BulkResult> bulkComplete(@RequestBody OrderBulkService.BulkRequest request) {
+        try {
+            return ResponseEntity.ok(orderBulkService.completeOrders(request.getOperationId(), request.getOrderIds()));
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid bulk complete request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * 查询批量操作进度（执行中按块更新）
+     */
+    @GetMapping("/bulk/{operationId}/progress")
+    public ResponseEntity<OrderBulkService.BulkProgress> getBulkProgress(@PathVariable String operationId) {
+        OrderBulkService.BulkProgress progress = orderBulkService.getProgress(operationId);
+        if (progress != null) {
+            return ResponseEntity.ok(progress);
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * 获取最近订单（HBase，时间倒序，游标分页）
+     */
+    @GetMapping("/recent")
+    public ResponseEntity<CursorPage<Order>> getRecentOrders(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            return ResponseEntity.ok(orderService.getRecentOrders(cursor, limit));
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid recent orders request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (IOException e) {
+            log.error("Failed to get recent orders", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
     /**
      * 获取订单详情（HBase）
      */
@@ -76,14 +190,15 @@ public class OrderController {
     }
 
     /**
-     * 获取用户订单列表（HBase）
+     * 获取用户订单列表（摘要，最近订单读 Redis 时间线，深分页回源 HBase）
      */
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<Order>> getUserOrders(
+    public ResponseEntity<List<OrderSummary>> getUserOrders(
             @PathVariable String userId,
+            @RequestParam(defaultValue = "0") int offset,
             @RequestParam(defaultValue = "20") int limit) {
         try {
-            List<Order> orders = orderService.getUserOrders(userId, limit);
+            List<OrderSummary> orders = orderService.getUserOrders(userId, offset, limit);
             return ResponseEntity.ok(orders);
         } catch (IOException e) {
             log.error("Failed to get user orders: {}", userId, e);
@@ -92,15 +207,20 @@ public class OrderController {
     }
 
     /**
-     * 更新订单状态（HBase + Redis）
+     * 更新订单状态（按目标状态条件流转，当前状态不允许时返回 409）
      */
     @PutMapping("/{orderId}/status")
     public ResponseEntity<Void> updateOrderStatus(
             @PathVariable String orderId,
             @RequestParam Integer status) {
         try {
-            orderService.updateOrderStatus(orderId, status);
+            if (!orderService.updateOrderStatus(orderId, status)) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            }
             return ResponseEntity.ok().build();
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid order status update: {} -> {}: {}", orderId, status, e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (IOException e) {
             log.error("Failed to update order status: {}", orderId, e);
             return ResponseEntity.internalServerError().build();
@@ -1,6 +1,8 @@
 package com.sales.controller;
 
+import com.sales.entity.CursorPage;
 import com.sales.entity.Product;
+import com.sales.service.ProductSearchService;
 import com.sales.service.ProductService;
 import com.sales.service.StockService;
 import com.sales.service.CartService;
@@ -32,6 +34,9 @@ public class ProductController {
     @Autowired
     private CartService cartService;
 
+    @Autowired
+    private ProductSearchService productSearchService;
+
     /**
      * 创建商品（HBase）
      */
@@ -46,6 +51,43 @@ public class ProductController {
         }
     }
 
+    /**
+     * 搜索商品（名称/品牌/标签/分类，本地倒排索引，prefix=true 时末词前缀匹配）
+     */
+    @GetMapping("/search")
+    public ResponseEntity<List<Product>> searchProducts(
+            @RequestParam String keyword,
+            @RequestParam(defaultValue = "false") boolean prefix,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            return ResponseEntity.ok(productService.searchProducts(keyword, prefix, limit));
+        } catch (IOException e) {
+            log.error("Failed to search products: {}", keyword, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * 低库存商品（库存 <= 安全库存，余量最低的在前）
+     */
+    @GetMapping("/low-stock")
+    public ResponseEntity<List<Product>> getLowStockProducts(@RequestParam(defaultValue = "20") int limit) {
+        try {
+            return ResponseEntity.ok(productService.getLowStockProducts(limit));
+        } catch (IOException e) {
+            log.error("Failed to get low stock products", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * 搜索索引状态
+     */
+    @GetMapping("/search/stats")
+    public ResponseEntity<ProductSearchService.SearchStats> getSearchStats() {
+        return ResponseEntity.ok(productSearchService.getStats());
+    }
+
     /**
      * 获取商品详情（HBase）
      */
@@ -66,14 +108,18 @@ public class ProductController {
     }
 
     /**
-     * 获取所有商品（HBase）
+     * 获取所有商品（HBase，游标分页，翻页时传回上一页的 nextCursor）
      */
     @GetMapping
-    public ResponseEntity<List<Product>> getAllProducts(
+    public ResponseEntity<CursorPage<Product>> getAllProducts(
+            @RequestParam(required = false) String cursor,
             @RequestParam(defaultValue = "20") int limit) {
         try {
-            List<Product> products = productService.getAllProducts(limit);
+            CursorPage<Product> products = productService.getAllProducts(cursor, limit);
             return ResponseEntity.ok(products);
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid product page request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (IOException e) {
             log.error("Failed to get all products", e);
             return ResponseEntity.internalServerError().build();
@@ -81,15 +127,19 @@ public class ProductController {
     }
 
     /**
-     * 根据分类获取商品（HBase）
+     * 根据分类获取商品（HBase，游标分页）
      */
     @GetMapping("/category/{category}")
-    public ResponseEntity<List<Product>> getProductsByCategory(
+    public ResponseEntity<CursorPage<Product>> getProductsByCategory(
             @PathVariable String category,
+            @RequestParam(required = false) String cursor,
             @RequestParam(defaultValue = "20") int limit) {
         try {
-            List<Product> products = productService.getProductsByCategory(category, limit);
+            CursorPage<Product> products = productService.getProductsByCategory(category, cursor, limit);
             return ResponseEntity.ok(products);
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid product page request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (IOException e) {
             log.error("Failed to get products by category: {}", category, e);
             return ResponseEntity.internalServerError().build();
@@ -1,5 +1,6 @@
 package com.sales.controller;
 
+import com.sales.repository.SalesDataRepository;
 import com.sales.service.SalesAnalysisService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,6 +12,7 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 销售分析模块 - 实时销售看板（Redis）、历史销售数据分析（HBase）
@@ -78,6 +80,146 @@ public class SalesAnalysisController {
         }
     }
 
+    /**
+     * 获取商品销售历史（HBase sales_by_product，metrics 为逗号分隔的指标列）
+     */
+    @GetMapping("/product/{productId}")
+    public ResponseEntity<List<com.sales.entity.SalesData>> getProductSalesData(
+            @PathVariable String productId,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate startDate,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate endDate,
+            @RequestParam(required = false) List<String> metrics) {
+        try {
+            return ResponseEntity.ok(salesAnalysisService.getProductSalesData(productId, startDate, endDate, metrics));
+        } catch (IOException e) {
+            log.error("Failed to get product sales data: productId={}, {} to {}", productId, startDate, endDate, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * 获取品类销售历史（HBase sales_by_product）
+     */
+    @GetMapping("/category/{categoryId}")
+    public ResponseEntity<List<com.sales.entity.SalesData>> getCategorySalesData(
+            @PathVariable String categoryId,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate startDate,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate endDate,
+            @RequestParam(required = false) List<String> metrics) {
+        try {
+            return ResponseEntity.ok(salesAnalysisService.getCategorySalesData(categoryId, startDate, endDate, metrics));
+        } catch (IOException e) {
+            log.error("Failed to get category sales data: categoryId={}, {} to {}", categoryId, startDate, endDate, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * 获取热销商品排行（Redis当日排行 / HBase日终快照，rankBy=count/amount）
+     */
+    @GetMapping("/top-products")
+    public ResponseEntity<List<com.sales.entity.SalesData>> getTopSellingProducts(
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate date,
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(defaultValue = "count") String rankBy) {
+        LocalDate targetDate = date != null ? date : LocalDate.now();
+        try {
+            List<com.sales.entity.SalesData> ranked = salesAnalysisService.getTopSellingProducts(
+                    targetDate, limit, com.sales.entity.SalesData.RankBy.fromCode(rankBy));
+            return ResponseEntity.ok(ranked);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IOException e) {
+            log.error("Failed to get top selling products: date={}, rankBy={}", targetDate, rankBy, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * 获取销售趋势（HBase，granularity=day/week/month，周/月读取预聚合汇总行）
+     */
+    @GetMapping("/trend")
+    public ResponseEntity<List<SalesAnalysisService.TrendData>> getSalesTrend(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate startDate,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate endDate,
+            @RequestParam(defaultValue = "day") String granularity) {
+        try {
+            List<SalesAnalysisService.TrendData> trend = salesAnalysisService.getSalesTrend(
+                    startDate, endDate, com.sales.entity.SalesData.Granularity.fromCode(granularity));
+            return ResponseEntity.ok(trend);
+        } catch (IOException e) {
+            log.error("Failed to get sales trend: {} to {}, granularity={}", startDate, endDate, granularity, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * 生成销售报表（HBase，granularity=day/week/month）
+     */
+    @GetMapping("/report")
+    public ResponseEntity<SalesAnalysisService.SalesReport> generateSalesReport(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate startDate,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate endDate,
+            @RequestParam(defaultValue = "day") String granularity) {
+        try {
+            SalesAnalysisService.SalesReport report = salesAnalysisService.generateSalesReport(
+                    startDate, endDate, com.sales.entity.SalesData.Granularity.fromCode(granularity));
+            return ResponseEntity.ok(report);
+        } catch (IOException e) {
+            log.error("Failed to generate sales report: {} to {}, granularity={}", startDate, endDate, granularity, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * 区间汇总（HBase协处理器服务端聚合，可按品类/商品前缀过滤）
+     */
+    @GetMapping("/aggregate")
+    public ResponseEntity<Map<String, SalesDataRepository.RangeAggregate>> getRangeSummary(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate startDate,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate endDate,
+            @RequestParam(required = false) String categoryId,
+            @RequestParam(required = false) String productId) {
+        try {
+            return ResponseEntity.ok(salesAnalysisService.getRangeSummary(startDate, endDate, categoryId, productId));
+        } catch (IOException e) {
+            log.error("Failed to aggregate sales range: {} to {}", startDate, endDate, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * 回填周/月汇总行（内部接口，HBase）
+     */
+    @PostMapping("/rollup/backfill")
+    public ResponseEntity<Integer> backfillRollups(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate startDate,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate endDate) {
+        try {
+            int written = salesAnalysisService.backfillRollups(startDate, endDate);
+            return ResponseEntity.ok(written);
+        } catch (IOException e) {
+            log.error("Failed to backfill sales rollups: {} to {}", startDate, endDate, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * 一次性回填商品/品类历史伴随表（内部接口，HBase）
+     */
+    @PostMapping("/product-history/backfill")
+    public ResponseEntity<Integer> backfillProductFirst(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate startDate,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate endDate) {
+        try {
+            int written = salesAnalysisService.backfillProductFirst(startDate, endDate);
+            return ResponseEntity.ok(written);
+        } catch (IOException e) {
+            log.error("Failed to backfill product-first sales: {} to {}", startDate, endDate, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
     /**
      * 记录销售数据（内部接口，HBase）
      */
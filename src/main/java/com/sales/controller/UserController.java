@@ -1,7 +1,9 @@
 package com.sales.controller;
 
+import com.sales.entity.CursorPage;
 import com.sales.entity.User;
 import com.sales.service.SessionService;
+import com.sales.service.UserSegmentService;
 import com.sales.service.UserService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -27,6 +29,9 @@ public class UserController {
     @Autowired
     private SessionService sessionService;
 
+    @Autowired
+    private UserSegmentService userSegmentService;
+
     /**
      * 用户注册（HBase）
      */
@@ -94,12 +99,7 @@ public class UserController {
     @GetMapping("/me")
     public ResponseEntity<User> me(@RequestParam String sessionId) {
         try {
-            String sessionData = sessionService.getSession(sessionId);
-            if (sessionData == null) {
-                return ResponseEntity.status(401).build();
-            }
-
-            String userId = extractUserId(sessionData);
+            String userId = sessionService.resolveUserId(sessionId);
             if (userId == null || userId.isEmpty()) {
                 return ResponseEntity.status(401).build();
             }
@@ -115,19 +115,82 @@ public class UserController {
         }
     }
 
-    private String extractUserId(String sessionData) {
+    /**
+     * 按状态获取用户列表（HBase，游标分页，翻页时传回上一页的 nextCursor）
+     */
+    @GetMapping("/status/{status}")
+    public ResponseEntity<CursorPage<User>> getUsersByStatus(
+            @PathVariable Integer status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
         try {
-            if (sessionData.contains("\"user_id\":")) {
-                int start = sessionData.indexOf("\"user_id\":\"") + 11;
-                int end = sessionData.indexOf("\"", start);
-                if (end > start) {
-                    return sessionData.substring(start, end);
-                }
-            }
-        } catch (Exception e) {
-            log.error("Failed to extract user_id from session data: {}", sessionData, e);
+            return ResponseEntity.ok(userService.getUsersByStatus(status, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid user page request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (IOException e) {
+            log.error("Failed to get users by status: {}", status, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * 按等级获取用户列表（HBase，游标分页）
+     */
+    @GetMapping("/level/{level}")
+    public ResponseEntity<CursorPage<User>> getUsersByLevel(
+            @PathVariable Integer level,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            return ResponseEntity.ok(userService.getUsersByLevel(level, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid user page request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (IOException e) {
+            log.error("Failed to get users by level: {}", level, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * 分群人数（Redis 位图，条件支持 LEVEL/STATUS/ACTIVE 及 AND/OR/ANDNOT 组合）
+     */
+    @PostMapping("/segments/count")
+    public ResponseEntity<Map<String, Long>> countSegment(@RequestBody UserSegmentService.Segment segment) {
+        try {
+            Long count = userSegmentService.count(segment);
+            return count != null ? ResponseEntity.ok(Map.of("count", count)) : ResponseEntity.internalServerError().build();
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid segment: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
         }
-        return null;
+    }
+
+    /**
+     * 分群人数与用户ID（按用户序号游标分页）
+     */
+    @PostMapping("/segments/query")
+    public ResponseEntity<UserSegmentService.SegmentPage> querySegment(
+            @RequestBody UserSegmentService.Segment segment,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int limit) {
+        try {
+            UserSegmentService.SegmentPage page = userSegmentService.query(segment, cursor, limit);
+            return page != null ? ResponseEntity.ok(page) : ResponseEntity.internalServerError().build();
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid segment query: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * 从 HBase 全量回填分群位图（后台执行）
+     */
+    @PostMapping("/segments/rebuild")
+    public ResponseEntity<Void> rebuildSegments() {
+        userSegmentService.rebuildAsync();
+        return ResponseEntity.accepted().build();
     }
 
     /**
@@ -0,0 +1,167 @@
+package com.sales.coprocessor;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.RpcCallback;
+import com.google.protobuf.RpcController;
+import com.google.protobuf.Service;
+import com.sales.utils.SalesValueUtils;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.CoprocessorEnvironment;
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.coprocessor.CoprocessorException;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessor;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
+import org.apache.hadoop.hbase.ipc.CoprocessorRpcUtils;
+import org.apache.hadoop.hbase.protobuf.ProtobufUtil;
+import org.apache.hadoop.hbase.protobuf.generated.AggregateProtos.AggregateRequest;
+import org.apache.hadoop.hbase.protobuf.generated.AggregateProtos.AggregateResponse;
+import org.apache.hadoop.hbase.protobuf.generated.AggregateProtos.AggregateService;
+import org.apache.hadoop.hbase.regionserver.InternalScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+
+/**
+ * sales_data 区间聚合协处理器
+ *
+ * 复用 HBase 自带 AggregateService 的协议（构建中没有 protobuf 代码生成），只实现 getSum：
+ * 一次扫描同时计算请求中每一列的 sum/count/min/max，数值按 {@link SalesValueUtils} 兼容长整型与双精度两种编码。
+ * 响应 first_part 按列名字典序，每列依次为 sum、count、min、max 四个 8 字节长整型。
+ * 与 AggregateImplementation 服务名相同，二者只能在表上加载其一。
+ */
+public class SalesAggregateEndpoint extends AggregateService implements RegionCoprocessor {
+
+    public static final int FIELDS_PER_COLUMN = 4;
+
+    private RegionCoprocessorEnvironment env;
+
+    @Override
+    public void start(CoprocessorEnvironment environment) throws IOException {
+        if (!(environment instanceof RegionCoprocessorEnvironment)) {
+            throw new CoprocessorException("Must be loaded on a table region!");
+        }
+        this.env = (RegionCoprocessorEnvironment) environment;
+    }
+
+    @Override
+    public Iterable<Service> getServices() {
+        return Collections.singleton(this);
+    }
+
+    @Override
+    public void getSum(RpcController controller, AggregateRequest request, RpcCallback<AggregateResponse> done) {
+        AggregateResponse response = null;
+        InternalScanner scanner = null;
+        try {
+            Scan scan = ProtobufUtil.toScan(request.getScan());
+            byte[][] families = scan.getFamilies();
+            NavigableSet<byte[]> columnSet = families.length == 1 ? scan.getFamilyMap().get(families[0]) : null;
+            if (columnSet == null || columnSet.isEmpty()) {
+                throw new DoNotRetryIOException("Aggregate scan must name columns of exactly one family");
+            }
+            List<byte[]> columns = new ArrayList<>(columnSet);
+
+            int size = columns.size();
+            long[] sums = new long[size];
+            long[] counts = new long[size];
+            long[] mins = new long[size];
+            long[] maxs = new long[size];
+            Arrays.fill(mins, Long.MAX_VALUE);
+            Arrays.fill(maxs, Long.MIN_VALUE);
+
+            scanner = env.getRegion().getScanner(scan);
+            List<Cell> cells = new ArrayList<>();
+            boolean hasMore;
+            do {
+                hasMore = scanner.next(cells);
+                for (Cell cell : cells) {
+                    int index = indexOf(columns, cell);
+                    if (index < 0) {
+                        continue;
+                    }
+                    Long value = SalesValueUtils.decodeLong(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+                    if (value == null) {
+                        continue;
+                    }
+                    sums[index] += value;
+                    counts[index]++;
+                    mins[index] = Math.min(mins[index], value);
+                    maxs[index] = Math.max(maxs[index], value);
+                }
+                cells.clear();
+            } while (hasMore);
+
+            AggregateResponse.Builder builder = AggregateResponse.newBuilder();
+            for (int i = 0; i < size; i++) {
+                builder.addFirstPart(ByteString.copyFrom(Bytes.toBytes(sums[i])));
+                builder.addFirstPart(ByteString.copyFrom(Bytes.toBytes(counts[i])));
+                builder.addFirstPart(ByteString.copyFrom(Bytes.toBytes(mins[i])));
+                builder.addFirstPart(ByteString.copyFrom(Bytes.toBytes(maxs[i])));
+            }
+            response = builder.build();
+        } catch (IOException e) {
+            CoprocessorRpcUtils.setControllerException(controller, e);
+        } finally {
+            if (scanner != null) {
+                try {
+                    scanner.close();
+                } catch (IOException ignored) {
+                    // 扫描已完成，关闭失败不影响结果
+                }
+            }
+        }
+        done.run(response);
+    }
+
+    @Override
+    public void getMax(RpcController controller, AggregateRequest request, RpcCallback<AggregateResponse> done) {
+        unsupported(controller, done);
+    }
+
+    @Override
+    public void getMin(RpcController controller, AggregateRequest request, RpcCallback<AggregateResponse> done) {
+        unsupported(controller, done);
+    }
+
+    @Override
+    public void getRowNum(RpcController controller, AggregateRequest request, RpcCallback<AggregateResponse> done) {
+        unsupported(controller, done);
+    }
+
+    @Override
+    public void getAvg(RpcController controller, AggregateRequest request, RpcCallback<AggregateResponse> done) {
+        unsupported(controller, done);
+    }
+
+    @Override
+    public void getStd(RpcController controller, AggregateRequest request, RpcCallback<AggregateResponse> done) {
+        unsupported(controller, done);
+    }
+
+    @Override
+    public void getMedian(RpcController controller, AggregateRequest request, RpcCallback<AggregateResponse> done) {
+        unsupported(controller, done);
+    }
+
+    private void unsupported(RpcController controller, RpcCallback<AggregateResponse> done) {
+        CoprocessorRpcUtils.setControllerException(controller,
+                new DoNotRetryIOException(getClass().getSimpleName() + " only supports getSum"));
+        done.run(null);
+    }
+
+    private static int indexOf(List<byte[]> columns, Cell cell) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (CellUtil.matchingQualifier(cell, columns.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
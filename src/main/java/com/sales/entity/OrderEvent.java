@@ -0,0 +1,67 @@
+package com.sales.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 订单生命周期事件（outbox），与状态流转在同一行同一次 checkAndMutate 中写入
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderEvent implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String eventId;           // 幂等键：订单ID_事件类型（同一订单同一流转只会成功一次）
+    private String orderId;           // 订单ID
+    private Type type;                // 事件类型
+    private Long createTime;          // 事件产生时间（毫秒）
+
+    public enum Type {
+        PAID,
+        SHIPPED,
+        COMPLETED,
+        CANCELLED
+    }
+
+    public static OrderEvent of(String orderId, Type type) {
+        return OrderEvent.builder()
+                .eventId(orderId + "_" + type.name())
+                .orderId(orderId)
+                .type(type)
+                .createTime(System.currentTimeMillis())
+                .build();
+    }
+
+    /**
+     * 由事件ID（订单ID_事件类型）还原事件，用于按待处理索引补偿；格式不合法返回 null
+     */
+    public static OrderEvent fromEventId(String eventId) {
+        int separator = eventId != null ? eventId.lastIndexOf('_') : -1;
+        if (separator <= 0) {
+            return null;
+        }
+        try {
+            return OrderEvent.builder()
+                    .eventId(eventId)
+                    .orderId(eventId.substring(0, separator))
+                    .type(Type.valueOf(eventId.substring(separator + 1)))
+                    .build();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 事件在订单行 cf_base 中的列名
+     */
+    public String qualifier() {
+        return "evt_" + type.name();
+    }
+}
@@ -0,0 +1,43 @@
+package com.sales.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 订单摘要（用户订单列表），来自 Redis 订单时间线或 HBase 订单行
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String orderId;           // 订单ID
+    private String userId;            // 用户ID
+    private BigDecimal actualAmount;  // 实付金额
+    private Integer status;           // 订单状态
+    private Integer itemCount;        // 商品种数
+    private String firstItemName;     // 首个商品名称
+    private LocalDateTime createTime; // 创建时间
+
+    public static OrderSummary of(Order order) {
+        boolean hasItems = order.getItems() != null && !order.getItems().isEmpty();
+        return OrderSummary.builder()
+                .orderId(order.getOrderId())
+                .userId(order.getUserId())
+                .actualAmount(order.getActualAmount())
+                .status(order.getStatus())
+                .itemCount(hasItems ? order.getItems().size() : 0)
+                .firstItemName(hasItems ? order.getItems().get(0).getProductName() : null)
+                .createTime(order.getCreateTime())
+                .build();
+    }
+}
@@ -7,7 +7,10 @@ import lombok.NoArgsConstructor;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.IsoFields;
 import java.util.Map;
 
 @Data
@@ -18,7 +21,7 @@ public class SalesData implements Serializable {
     
     private static final long serialVersionUID = 1L;
     
-    private String rowKey;            // 行键 (日期_商品ID 或 日期_品类ID)
+    private String rowKey;            // 行键 (日期_商品ID 或 日期_品类ID，汇总行为 W周_* / M月_*)
     private LocalDate date;            // 日期
     
     // 每日销售数据
@@ -149,6 +152,94 @@ public class SalesData implements Serializable {
         }
     }
     
+    // 统计粒度枚举（周/月为预聚合汇总行）
+    public enum Granularity {
+        DAY("day", "日"),
+        WEEK("week", "周"),
+        MONTH("month", "月");
+        
+        private final String code;
+        private final String desc;
+        
+        Granularity(String code, String desc) {
+            this.code = code;
+            this.desc = desc;
+        }
+        
+        public String getCode() {
+            return code;
+        }
+        
+        public String getDesc() {
+            return desc;
+        }
+        
+        public static Granularity fromCode(String code) {
+            for (Granularity granularity : values()) {
+                if (granularity.code.equalsIgnoreCase(code)) {
+                    return granularity;
+                }
+            }
+            return DAY;
+        }
+        
+        // 日期所在周期的第一天（周从周一开始）
+        public LocalDate periodStart(LocalDate date) {
+            switch (this) {
+                case WEEK:
+                    return date.with(DayOfWeek.MONDAY);
+                case MONTH:
+                    return date.withDayOfMonth(1);
+                default:
+                    return date;
+            }
+        }
+        
+        // 下一个周期的第一天
+        public LocalDate nextPeriodStart(LocalDate date) {
+            LocalDate start = periodStart(date);
+            switch (this) {
+                case WEEK:
+                    return start.plusWeeks(1);
+                case MONTH:
+                    return start.plusMonths(1);
+                default:
+                    return start.plusDays(1);
+            }
+        }
+    }
+    
+    // 热销排行依据
+    public enum RankBy {
+        COUNT("count", "销量"),
+        AMOUNT("amount", "销售额");
+        
+        private final String code;
+        private final String desc;
+        
+        RankBy(String code, String desc) {
+            this.code = code;
+            this.desc = desc;
+        }
+        
+        public String getCode() {
+            return code;
+        }
+        
+        public String getDesc() {
+            return desc;
+        }
+        
+        public static RankBy fromCode(String code) {
+            for (RankBy rankBy : values()) {
+                if (rankBy.code.equalsIgnoreCase(code)) {
+                    return rankBy;
+                }
+            }
+            return COUNT;
+        }
+    }
+    
     // 获取数据类型
     public DataType getDataType() {
         if (productId != null && !productId.isEmpty()) {
@@ -175,13 +266,86 @@ public class SalesData implements Serializable {
         return sb.toString();
     }
     
+    // 生成汇总行键：W2026-42_TOTAL、M2026-10_C{品类ID}
+    public static String generateRollupRowKey(Granularity granularity, LocalDate date, String categoryId) {
+        StringBuilder sb = new StringBuilder();
+        
+        switch (granularity) {
+            case WEEK:
+                int week = date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+                sb.append('W').append(date.get(IsoFields.WEEK_BASED_YEAR)).append('-');
+                if (week < 10) {
+                    sb.append('0');
+                }
+                sb.append(week);
+                break;
+            case MONTH:
+                sb.append('M').append(YearMonth.from(date));
+                break;
+            default:
+                return generateRowKey(date, null, categoryId);
+        }
+        
+        if (categoryId != null && !categoryId.isEmpty()) {
+            sb.append("_C").append(categoryId);
+        } else {
+            sb.append("_TOTAL");
+        }
+        
+        return sb.toString();
+    }
+    
+    // 生成商品优先行键（sales_by_product 表）：商品ID_日期 或 C品类ID_日期，总计行不镜像
+    public static String generateProductFirstRowKey(LocalDate date, String productId, String categoryId) {
+        if (productId != null && !productId.isEmpty()) {
+            return productId + "_" + date;
+        }
+        if (categoryId != null && !categoryId.isEmpty()) {
+            return "C" + categoryId + "_" + date;
+        }
+        return null;
+    }
+    
+    // 构造排行结果（只填充排行依据对应的指标）
+    public static SalesData toRankedProduct(LocalDate date, String productId, RankBy rankBy, double score) {
+        SalesDataBuilder builder = SalesData.builder()
+                .rowKey(generateRowKey(date, productId, null))
+                .date(date)
+                .productId(productId);
+        if (rankBy == RankBy.AMOUNT) {
+            builder.saleAmount(BigDecimal.valueOf(score));
+        } else {
+            builder.saleCount((long) score);
+        }
+        return builder.build();
+    }
+    
+    // 日排行快照行键：T2026-10-19（T 排在日期之后，不会混入按日期的范围扫描）
+    public static String generateTopNRowKey(LocalDate date) {
+        return "T" + date;
+    }
+    
+    // 解析行键日期部分，汇总行取周期第一天
+    private static LocalDate parsePeriodDate(String period) {
+        if (period.startsWith("W")) {
+            String[] yearWeek = period.substring(1).split("-");
+            return LocalDate.of(Integer.parseInt(yearWeek[0]), 1, 4)
+                    .with(IsoFields.WEEK_OF_WEEK_BASED_YEAR, Integer.parseInt(yearWeek[1]))
+                    .with(DayOfWeek.MONDAY);
+        }
+        if (period.startsWith("M")) {
+            return YearMonth.parse(period.substring(1)).atDay(1);
+        }
+        return LocalDate.parse(period);
+    }
+    
     // 解析行键
     public void parseRowKey(String rowKey) {
         this.rowKey = rowKey;
         
         String[] parts = rowKey.split("_");
         if (parts.length >= 1) {
-            this.date = LocalDate.parse(parts[0]);
+            this.date = parsePeriodDate(parts[0]);
         }
         
         if (parts.length >= 2) {
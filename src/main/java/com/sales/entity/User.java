@@ -35,6 +35,8 @@ public class User implements Serializable {
     private LocalDate birthday;       // 生日
     private LocalDateTime registerTime; // 注册时间
     private Integer status;           // 状态(1-正常, 0-禁用)
+    @JsonIgnore
+    private Long ordinal;             // 稠密序号（分群位图下标），首次建索引时分配
     
     // 账户信息
     private Integer level;            // 会员等级
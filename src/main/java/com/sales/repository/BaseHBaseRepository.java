@@ -1,16 +1,26 @@
 package com.sales.repository;
 
+import com.sales.entity.CursorPage;
+import com.sales.utils.CursorUtils;
 import com.sales.utils.JsonUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.*;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Repository;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 @Slf4j
 @Repository
@@ -19,6 +29,10 @@ public abstract class BaseHBaseRepository {
     @Autowired
     protected Connection connection;
 
+    @Autowired(required = false)
+    @Qualifier("hBaseExecutorService")
+    protected ExecutorService hBaseExecutorService;
+
     protected Table getTable(TableName tableName) throws IOException {
         if (connection == null) {
             throw new IOException("HBase connection is not available (Connection bean is null). Please check HBase configuration and connectivity.");
@@ -189,6 +203,89 @@ public abstract class BaseHBaseRepository {
         }
     }
 
+    /**
+     * 游标分页扫描：从游标记录的行键之后（不含）继续扫描，多取一行判断是否还有下一页，
+     * 深翻页与首页的代价相同。scan 的方向、过滤器、起止行由调用方设置。
+     */
+    protected CursorPage<Result> scanPage(TableName tableName, Scan scan, String cursor, int limit) throws IOException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive: " + limit);
+        }
+        String lastRowKey = CursorUtils.decode(cursor, scan.isReversed());
+        if (lastRowKey != null) {
+            scan.withStartRow(Bytes.toBytes(lastRowKey), false);
+        }
+        scan.setLimit(limit + 1);
+
+        List<Result> results = scanData(tableName, scan);
+        if (results.size() <= limit) {
+            return CursorPage.of(results, null);
+        }
+        List<Result> page = new ArrayList<>(results.subList(0, limit));
+        String nextCursor = CursorUtils.encode(Bytes.toString(page.get(limit - 1).getRow()), scan.isReversed());
+        return CursorPage.of(page, nextCursor);
+    }
+
+    /**
+     * 按 Region 并行全表计数：每个 Region 一个扫描任务，classifier 把每行归到一个分组（返回 null 不计），
+     * 流式计数不落地结果。template 只需设置投影列与过滤器，起止行由每个 Region 覆盖。
+     */
+    protected <K> Map<K, Long> countByRegion(TableName tableName, Scan template,
+                                             Function<Result, K> classifier) throws IOException {
+        Pair<byte[][], byte[][]> startEndKeys;
+        try (RegionLocator regionLocator = connection.getRegionLocator(tableName)) {
+            startEndKeys = regionLocator.getStartEndKeys();
+        }
+
+        List<Future<Map<K, Long>>> futures = new ArrayList<>();
+        Map<K, Long> counts = new HashMap<>();
+        for (int i = 0; i < startEndKeys.getFirst().length; i++) {
+            byte[] startRow = startEndKeys.getFirst()[i];
+            byte[] stopRow = startEndKeys.getSecond()[i];
+            if (hBaseExecutorService != null) {
+                futures.add(hBaseExecutorService.submit(() -> countInRange(tableName, template, classifier, startRow, stopRow)));
+            } else {
+                countInRange(tableName, template, classifier, startRow, stopRow)
+                        .forEach((key, count) -> counts.merge(key, count, Long::sum));
+            }
+        }
+
+        for (Future<Map<K, Long>> future : futures) {
+            try {
+                future.get().forEach((key, count) -> counts.merge(key, count, Long::sum));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Region recount interrupted: " + tableName, e);
+            } catch (ExecutionException e) {
+                throw new IOException("Region recount failed: " + tableName, e.getCause());
+            }
+        }
+
+        log.info("Recounted {} across {} regions: {}", tableName, startEndKeys.getFirst().length, counts);
+        return counts;
+    }
+
+    private <K> Map<K, Long> countInRange(TableName tableName, Scan template, Function<Result, K> classifier,
+                                          byte[] startRow, byte[] stopRow) throws IOException {
+        Scan scan = new Scan(template);
+        scan.withStartRow(startRow);
+        scan.withStopRow(stopRow);
+        scan.setCaching(1000);
+        scan.setCacheBlocks(false);
+
+        Map<K, Long> counts = new HashMap<>();
+        try (Table table = getTable(tableName);
+             ResultScanner scanner = table.getScanner(scan)) {
+            for (Result result : scanner) {
+                K key = classifier.apply(result);
+                if (key != null) {
+                    counts.merge(key, 1L, Long::sum);
+                }
+            }
+        }
+        return counts;
+    }
+
     protected void deleteData(TableName tableName, Delete delete) throws IOException {
         try (Table table = getTable(tableName)) {
             table.delete(delete);
@@ -215,6 +312,55 @@ public abstract class BaseHBaseRepository {
         }
     }
 
+    /**
+     * 批量提交变更，返回与 actions 一一对应的结果：成功为 Result，失败为异常。
+     * 部分失败不抛出，由调用方逐条处理；整体不可用（如连接失败）时抛出 IOException。
+     */
+    protected Object[] batchMutate(TableName tableName, List<? extends Row> actions) throws IOException {
+        Object[] results = new Object[actions.size()];
+        if (actions.isEmpty()) {
+            return results;
+        }
+
+        try (Table table = getTable(tableName)) {
+            table.batch(actions, results);
+        } catch (RetriesExhaustedWithDetailsException e) {
+            log.warn("Batch mutate partially failed: table={}, failed={}", tableName, e.getNumExceptions());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Batch mutate interrupted", e);
+        }
+        return results;
+    }
+
+    protected List<Result> batchGet(TableName tableName, List<Get> gets) throws IOException {
+        List<Result> results = new ArrayList<>();
+        if (gets == null || gets.isEmpty()) {
+            return results;
+        }
+
+        try (Table table = getTable(tableName)) {
+            for (Result result : table.get(gets)) {
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    protected void batchIncrement(TableName tableName, List<Increment> increments) throws IOException {
+        if (increments == null || increments.isEmpty()) {
+            return;
+        }
+
+        try (Table table = getTable(tableName)) {
+            Object[] results = new Object[increments.size()];
+            table.batch(increments, results);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Batch increment interrupted", e);
+        }
+    }
+
     protected void incrementColumnValue(TableName tableName, String rowKey, 
                                       String family, String qualifier, long amount) throws IOException {
         try (Table table = getTable(tableName)) {
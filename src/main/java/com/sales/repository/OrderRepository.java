@@ -1,12 +1,24 @@
 package com.sales.repository;
 
 import com.sales.config.HBaseConfig;
+import com.sales.entity.CursorPage;
 import com.sales.entity.Order;
+import com.sales.entity.OrderEvent;
+import com.sales.utils.CursorUtils;
+import com.sales.utils.JsonUtils;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.CompareOperator;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.ColumnPrefixFilter;
 import org.apache.hadoop.hbase.filter.CompareFilter;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
 import org.apache.hadoop.hbase.filter.PageFilter;
+import org.apache.hadoop.hbase.filter.RegexStringComparator;
+import org.apache.hadoop.hbase.filter.RowFilter;
 import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.springframework.stereotype.Repository;
@@ -17,7 +29,12 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
 
 @Slf4j
 @Repository
@@ -25,7 +42,46 @@ public class OrderRepository extends BaseHBaseRepository {
 
     private static final TableName TABLE_NAME = HBaseConfig.TableNames.ORDER_HISTORY;
 
+    private static final TableName STATS_TABLE_NAME = HBaseConfig.TableNames.ORDER_STATS;
+
+    private static final String STATUS_COUNTS_ROW = "status_counts";
+
+    // IdGeneratorService 生成的行键中定长十进制ID的位数
+    private static final int GENERATED_ID_DIGITS = 19;
+
     public void save(Order order) throws IOException {
+        putData(TABLE_NAME, buildPut(order));
+        log.info("Order saved: {}", order.getOrderId());
+    }
+
+    /**
+     * 一次 batch 写入多笔订单，返回与 orders 对应的失败原因（成功为 null）
+     */
+    public List<IOException> saveAll(List<Order> orders) throws IOException {
+        List<Put> puts = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            puts.add(buildPut(order));
+        }
+
+        Object[] results = batchMutate(TABLE_NAME, puts);
+        List<IOException> failures = new ArrayList<>(orders.size());
+        for (int i = 0; i < results.length; i++) {
+            Object result = results[i];
+            if (result instanceof Result) {
+                failures.add(null);
+            } else if (result instanceof IOException) {
+                failures.add((IOException) result);
+            } else if (result instanceof Throwable) {
+                failures.add(new IOException("Failed to save order: " + orders.get(i).getOrderId(), (Throwable) result));
+            } else {
+                failures.add(new IOException("No result for order: " + orders.get(i).getOrderId()));
+            }
+        }
+        log.info("Orders saved in batch: size={}", orders.size());
+        return failures;
+    }
+
+    private Put buildPut(Order order) {
         Put put = createPut(order.getOrderId());
         
         // 基本信息
@@ -67,8 +123,7 @@ public class OrderRepository extends BaseHBaseRepository {
         addColumn(put, HBaseConfig.ColumnFamilies.CF_LOGISTICS, HBaseConfig.Columns.ORDER_EXPRESS_NO, order.getExpressNo());
         addJsonColumn(put, HBaseConfig.ColumnFamilies.CF_LOGISTICS, HBaseConfig.Columns.ORDER_LOGISTICS_INFO, order.getLogisticsInfo());
         
-        putData(TABLE_NAME, put);
-        log.info("Order saved: {}", order.getOrderId());
+        return put;
     }
 
     public Order findById(String orderId) throws IOException {
@@ -82,77 +137,237 @@ public class OrderRepository extends BaseHBaseRepository {
         return mapToOrder(result);
     }
 
-    public List<Order> findByUserId(String userId, int limit) throws IOException {
-        Scan scan = createScan();
-        
-        // 添加用户ID过滤器
+    /**
+     * 用户最近订单（时间倒序），按散列桶逐桶合并，见 {@link #findRecentOrders(String, int, List)}
+     */
+    public List<Order> findByUserId(String userId, int limit, List<String> rowKeyPrefixes) throws IOException {
         SingleColumnValueFilter userFilter = new SingleColumnValueFilter(
                 Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_BASE),
                 Bytes.toBytes(HBaseConfig.Columns.ORDER_USER_ID),
-                CompareFilter.CompareOp.EQUAL,
+                CompareOperator.EQUAL,
                 Bytes.toBytes(userId)
         );
-        
-        scan.setFilter(userFilter);
-        scan.setReversed(true); // 按时间倒序
-        scan.setLimit(limit);
-        
-        List<Result> results = scanData(TABLE_NAME, scan);
-        List<Order> orders = new ArrayList<>();
-        
-        for (Result result : results) {
-            orders.add(mapToOrder(result));
-        }
-        
-        return orders;
+        userFilter.setFilterIfMissing(true);
+        return scanNewestFirst(null, limit, rowKeyPrefixes, userFilter).getItems();
     }
 
-    public List<Order> findByStatus(Integer status, int limit) throws IOException {
-        Scan scan = createScan();
-        
-        // 添加状态过滤器
+    /**
+     * 指定状态的最近订单（时间倒序），按散列桶逐桶合并
+     */
+    public List<Order> findByStatus(Integer status, int limit, List<String> rowKeyPrefixes) throws IOException {
         SingleColumnValueFilter statusFilter = new SingleColumnValueFilter(
                 Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_BASE),
                 Bytes.toBytes(HBaseConfig.Columns.ORDER_STATUS),
-                CompareFilter.CompareOp.EQUAL,
+                CompareOperator.EQUAL,
                 Bytes.toBytes(status)
         );
-        
-        scan.setFilter(statusFilter);
-        scan.setReversed(true);
-        scan.setLimit(limit);
-        
-        List<Result> results = scanData(TABLE_NAME, scan);
-        List<Order> orders = new ArrayList<>();
-        
-        for (Result result : results) {
-            orders.add(mapToOrder(result));
-        }
-        
-        return orders;
+        statusFilter.setFilterIfMissing(true);
+        return scanNewestFirst(null, limit, rowKeyPrefixes, statusFilter).getItems();
     }
 
     public List<Order> findRecentOrders(int limit) throws IOException {
+        return findRecentOrders(null, limit).getItems();
+    }
+
+    /**
+     * 按行键逆序（时间倒序）分页读取订单
+     */
+    public CursorPage<Order> findRecentOrders(String cursor, int limit) throws IOException {
         Scan scan = createScan();
         scan.setReversed(true); // 按时间倒序
-        scan.setLimit(limit);
-        
-        List<Result> results = scanData(TABLE_NAME, scan);
-        List<Order> orders = new ArrayList<>();
+        return scanPage(TABLE_NAME, scan, cursor, limit).map(this::mapToOrder);
+    }
+
+    public List<Order> findRecentOrders(int limit, List<String> rowKeyPrefixes) throws IOException {
+        return findRecentOrders(null, limit, rowKeyPrefixes).getItems();
+    }
+
+    /**
+     * 按时间倒序分页读取订单，行键带散列桶时逐桶合并，见 {@link #scanNewestFirst}
+     */
+    public CursorPage<Order> findRecentOrders(String cursor, int limit, List<String> rowKeyPrefixes) throws IOException {
+        return scanNewestFirst(cursor, limit, rowKeyPrefixes, null);
+    }
+
+    /**
+     * 时间倒序的多源合并扫描
+     *
+     * 生成器产生的行键为 前缀 + 散列桶 + 19 位定长ID：每个桶各逆序取 limit + 1 条，按去掉桶前缀后的ID（即时间序）合并；
+     * 桶前缀等长，游标只需上一页最后一行的行键，各桶都从同一ID之后继续。
+     * 生成器上线前的旧行键（如 ORD + yyyyMMddHHmmss + 4 位）与某个桶前缀重叠，作为单独的数据源逆序扫描，
+     * 全部排在新行键之后（旧订单都早于新订单）；游标落在旧行键上时说明新行键已读完，只继续旧数据源。
+     */
+    private CursorPage<Order> scanNewestFirst(String cursor, int limit, List<String> rowKeyPrefixes, Filter filter)
+            throws IOException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive: " + limit);
+        }
+        boolean salted = rowKeyPrefixes.size() > 1;
+        String basePrefix = salted
+                ? rowKeyPrefixes.get(0).substring(0, rowKeyPrefixes.get(0).length() - 1)
+                : rowKeyPrefixes.get(0);
+        String generatedPattern = "^" + Pattern.quote(basePrefix) + (salted ? "[0-9A-F]" : "")
+                + "[0-9]{" + GENERATED_ID_DIGITS + "}$";
+        int prefixLength = basePrefix.length() + (salted ? 1 : 0);
+
+        String lastRowKey = CursorUtils.decode(cursor, true);
+        if (lastRowKey != null && !lastRowKey.startsWith(basePrefix)) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        boolean cursorInLegacy = lastRowKey != null && !lastRowKey.matches(generatedPattern);
+
+        List<Result> generated = new ArrayList<>();
+        if (!cursorInLegacy) {
+            String lastSortKey = lastRowKey != null ? lastRowKey.substring(prefixLength) : null;
+            for (String prefix : rowKeyPrefixes) {
+                byte[] prefixBytes = Bytes.toBytes(prefix);
+                Scan scan = createScan();
+                scan.setReversed(true);
+                if (lastSortKey != null) {
+                    scan.withStartRow(Bytes.toBytes(prefix + lastSortKey), false);
+                } else {
+                    scan.withStartRow(nextPrefix(prefixBytes), false);
+                }
+                scan.withStopRow(prefixBytes, true);
+                scan.setFilter(withFilter(new RowFilter(CompareOperator.EQUAL,
+                        new RegexStringComparator(generatedPattern)), filter));
+                scan.setLimit(limit + 1);
+                generated.addAll(scanData(TABLE_NAME, scan));
+            }
+            generated.sort(Comparator.comparing((Result result) -> Bytes.toString(result.getRow()).substring(prefixLength))
+                    .reversed());
+        }
+
+        List<Result> results = new ArrayList<>(generated.subList(0, Math.min(generated.size(), limit + 1)));
+        if (results.size() <= limit) {
+            byte[] baseBytes = Bytes.toBytes(basePrefix);
+            Scan legacy = createScan();
+            legacy.setReversed(true);
+            if (cursorInLegacy) {
+                legacy.withStartRow(Bytes.toBytes(lastRowKey), false);
+            } else {
+                legacy.withStartRow(nextPrefix(baseBytes), false);
+            }
+            legacy.withStopRow(baseBytes, true);
+            legacy.setFilter(withFilter(new RowFilter(CompareOperator.NOT_EQUAL,
+                    new RegexStringComparator(generatedPattern)), filter));
+            legacy.setLimit(limit + 1 - results.size());
+            results.addAll(scanData(TABLE_NAME, legacy));
+        }
+
+        List<Order> orders = new ArrayList<>(Math.min(limit, results.size()));
+        for (int i = 0; i < results.size() && i < limit; i++) {
+            orders.add(mapToOrder(results.get(i)));
+        }
+        String nextCursor = results.size() > limit
+                ? CursorUtils.encode(Bytes.toString(results.get(limit - 1).getRow()), true) : null;
+        return CursorPage.of(orders, nextCursor);
+    }
+
+    private static Filter withFilter(Filter rowFilter, Filter filter) {
+        return filter != null ? new FilterList(FilterList.Operator.MUST_PASS_ALL, rowFilter, filter) : rowFilter;
+    }
+
+    private static byte[] nextPrefix(byte[] prefix) {
+        byte[] next = Arrays.copyOf(prefix, prefix.length);
+        next[next.length - 1]++;
+        return next;
+    }
+
+    /**
+     * 只读取指定列族（如状态流转后的副作用只需要 cf_base + cf_items）
+     */
+    public Order findById(String orderId, String... families) throws IOException {
+        Get get = createGet(orderId);
+        for (String family : families) {
+            get.addFamily(Bytes.toBytes(family));
+        }
+        Result result = getData(TABLE_NAME, get);
         
-        for (Result result : results) {
-            orders.add(mapToOrder(result));
+        if (result.isEmpty()) {
+            return null;
         }
         
-        return orders;
+        return mapToOrder(result);
     }
 
-    public void updateStatus(String orderId, Integer status) throws IOException {
+    /**
+     * 只读取订单状态列，订单不存在返回 null
+     */
+    public Integer findStatus(String orderId) throws IOException {
+        Get get = createGet(orderId);
+        get.addColumn(Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_BASE), Bytes.toBytes(HBaseConfig.Columns.ORDER_STATUS));
+        Result result = getData(TABLE_NAME, get);
+        return result.isEmpty() ? null : getInteger(result, HBaseConfig.ColumnFamilies.CF_BASE, HBaseConfig.Columns.ORDER_STATUS);
+    }
+
+    /**
+     * 条件状态流转：仅当 cf_base:status 仍等于 expectedStatus 时写入，一次 checkAndMutate RPC。
+     * changes 中只写入非空的状态、支付方式、物流字段，时间字段按目标状态自动填充。
+     *
+     * @return 订单不存在或状态已被并发修改时返回 false
+     */
+    public boolean transitionStatus(String orderId, Integer expectedStatus, Order changes) throws IOException {
+        return transitionStatus(orderId, expectedStatus, changes, null);
+    }
+
+    /**
+     * 条件状态流转并在同一行原子写入 outbox 事件，流转成功即事件已持久化
+     */
+    public boolean transitionStatus(String orderId, Integer expectedStatus, Order changes, OrderEvent event) throws IOException {
+        CheckAndMutate checkAndMutate = buildTransition(orderId, expectedStatus, changes, event);
+        try (Table table = getTable(TABLE_NAME)) {
+            boolean success = table.checkAndMutate(checkAndMutate).isSuccess();
+            log.info("Order status transition: {} {} -> {}, success={}", orderId, expectedStatus, changes.getStatus(), success);
+            return success;
+        }
+    }
+
+    /**
+     * 批量条件状态流转：一次 checkAndMutate 批量请求，返回与 orderIds 对应的成败；
+     * changes 为各订单的变更，events 为 null 或与 orderIds 对应的 outbox 事件
+     */
+    public List<Boolean> transitionStatusAll(List<String> orderIds, Integer expectedStatus,
+                                             List<Order> changes, List<OrderEvent> events) throws IOException {
+        List<CheckAndMutate> actions = new ArrayList<>(orderIds.size());
+        for (int i = 0; i < orderIds.size(); i++) {
+            actions.add(buildTransition(orderIds.get(i), expectedStatus, changes.get(i),
+                    events != null ? events.get(i) : null));
+        }
+
+        List<Boolean> successes = new ArrayList<>(orderIds.size());
+        if (actions.isEmpty()) {
+            return successes;
+        }
+        try (Table table = getTable(TABLE_NAME)) {
+            for (CheckAndMutateResult result : table.checkAndMutate(actions)) {
+                successes.add(result.isSuccess());
+            }
+        }
+        log.info("Order status batch transition: size={}, expected={}, succeeded={}",
+                orderIds.size(), expectedStatus, successes.stream().filter(Boolean::booleanValue).count());
+        return successes;
+    }
+
+    private CheckAndMutate buildTransition(String orderId, Integer expectedStatus, Order changes, OrderEvent event) {
         Put put = createPut(orderId);
-        addColumn(put, HBaseConfig.ColumnFamilies.CF_BASE, HBaseConfig.Columns.ORDER_STATUS, status);
-        
-        // 根据状态更新相应的时间字段
-        LocalDateTime now = LocalDateTime.now();
+        if (event != null) {
+            addJsonColumn(put, HBaseConfig.ColumnFamilies.CF_BASE, event.qualifier(), event);
+        }
+        addColumn(put, HBaseConfig.ColumnFamilies.CF_BASE, HBaseConfig.Columns.ORDER_STATUS, changes.getStatus());
+        addColumn(put, HBaseConfig.ColumnFamilies.CF_BASE, HBaseConfig.Columns.ORDER_PAY_METHOD, changes.getPayMethod());
+        addStatusTimeColumn(put, changes.getStatus(), LocalDateTime.now());
+        addColumn(put, HBaseConfig.ColumnFamilies.CF_LOGISTICS, HBaseConfig.Columns.ORDER_EXPRESS_COMPANY, changes.getExpressCompany());
+        addColumn(put, HBaseConfig.ColumnFamilies.CF_LOGISTICS, HBaseConfig.Columns.ORDER_EXPRESS_NO, changes.getExpressNo());
+        
+        return CheckAndMutate.newBuilder(Bytes.toBytes(orderId))
+                .ifEquals(Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_BASE),
+                        Bytes.toBytes(HBaseConfig.Columns.ORDER_STATUS),
+                        Bytes.toBytes(expectedStatus))
+                .build(put);
+    }
+
+    private void addStatusTimeColumn(Put put, Integer status, LocalDateTime now) {
         if (Order.Status.PENDING_DELIVERY.getCode().equals(status)) {
             addColumn(put, HBaseConfig.ColumnFamilies.CF_BASE, HBaseConfig.Columns.ORDER_PAY_TIME, formatDateTime(now));
         } else if (Order.Status.SHIPPED.getCode().equals(status)) {
@@ -160,6 +375,94 @@ public class OrderRepository extends BaseHBaseRepository {
         } else if (Order.Status.COMPLETED.getCode().equals(status)) {
             addColumn(put, HBaseConfig.ColumnFamilies.CF_BASE, HBaseConfig.Columns.ORDER_COMPLETE_TIME, formatDateTime(now));
         }
+    }
+
+    /**
+     * 扫描写入时间早于 cutoff 仍未处理的 outbox 事件（处理成功的事件列会被删除）。
+     * 全表扫描，只用于每日重建待处理索引，补偿扫描走 Redis 索引
+     */
+    public List<OrderEvent> findPendingEvents(long cutoffMillis, int limit) throws IOException {
+        Scan scan = createScan();
+        scan.addFamily(Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_BASE));
+        scan.setFilter(new ColumnPrefixFilter(Bytes.toBytes(HBaseConfig.Columns.ORDER_EVENT_PREFIX)));
+        scan.setTimeRange(0, cutoffMillis);
+        scan.setLimit(limit);
+
+        List<OrderEvent> events = new ArrayList<>();
+        for (Result result : scanData(TABLE_NAME, scan)) {
+            for (Cell cell : result.rawCells()) {
+                OrderEvent event = JsonUtils.fromJson(Bytes.toString(CellUtil.cloneValue(cell)), OrderEvent.class);
+                if (event != null) {
+                    events.add(event);
+                }
+            }
+        }
+        return events;
+    }
+
+    /**
+     * 删除已处理完成的 outbox 事件列
+     */
+    public void deleteEvents(List<OrderEvent> events) throws IOException {
+        List<Delete> deletes = new ArrayList<>(events.size());
+        for (OrderEvent event : events) {
+            Delete delete = createDelete(event.getOrderId());
+            delete.addColumns(Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_BASE), Bytes.toBytes(event.qualifier()));
+            deletes.add(delete);
+        }
+        batchMutate(TABLE_NAME, deletes);
+    }
+
+    /**
+     * 批量读取订单（一次 multi-get），可只读取指定列族；不存在的订单不出现在结果中
+     */
+    public Map<String, Order> findByIds(List<String> orderIds, String... families) throws IOException {
+        List<Get> gets = new ArrayList<>(orderIds.size());
+        for (String orderId : orderIds) {
+            Get get = createGet(orderId);
+            for (String family : families) {
+                get.addFamily(Bytes.toBytes(family));
+            }
+            gets.add(get);
+        }
+
+        Map<String, Order> orders = new HashMap<>();
+        for (Result result : batchGet(TABLE_NAME, gets)) {
+            if (!result.isEmpty()) {
+                Order order = mapToOrder(result);
+                orders.put(order.getOrderId(), order);
+            }
+        }
+        return orders;
+    }
+
+    /**
+     * 批量读取订单状态（一次 multi-get，只取 cf_base:status 列）；不存在的订单不出现在结果中
+     */
+    public Map<String, Integer> findStatuses(List<String> orderIds) throws IOException {
+        List<Get> gets = new ArrayList<>(orderIds.size());
+        for (String orderId : orderIds) {
+            Get get = createGet(orderId);
+            get.addColumn(Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_BASE), Bytes.toBytes(HBaseConfig.Columns.ORDER_STATUS));
+            gets.add(get);
+        }
+
+        Map<String, Integer> statuses = new HashMap<>();
+        for (Result result : batchGet(TABLE_NAME, gets)) {
+            if (!result.isEmpty()) {
+                statuses.put(Bytes.toString(result.getRow()),
+                        getInteger(result, HBaseConfig.ColumnFamilies.CF_BASE, HBaseConfig.Columns.ORDER_STATUS));
+            }
+        }
+        return statuses;
+    }
+
+    public void updateStatus(String orderId, Integer status) throws IOException {
+        Put put = createPut(orderId);
+        addColumn(put, HBaseConfig.ColumnFamilies.CF_BASE, HBaseConfig.Columns.ORDER_STATUS, status);
+        
+        // 根据状态更新相应的时间字段
+        addStatusTimeColumn(put, status, LocalDateTime.now());
         
         putData(TABLE_NAME, put);
         log.info("Order status updated: {} -> {}", orderId, status);
@@ -181,6 +484,8 @@ public class OrderRepository extends BaseHBaseRepository {
 
     public long countByStatus(Integer status) throws IOException {
         Scan scan = createScan();
+        // 只读取状态列，避免把商品明细等整行数据传回客户端
+        scan.addColumn(Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_BASE), Bytes.toBytes(HBaseConfig.Columns.ORDER_STATUS));
         
         // 添加状态过滤器
         SingleColumnValueFilter statusFilter = new SingleColumnValueFilter(
@@ -196,6 +501,47 @@ public class OrderRepository extends BaseHBaseRepository {
         return results.size();
     }
     
+    /**
+     * 按 Region 并行重新统计各状态订单数：每个 Region 一个只投影 cf_base:status 的扫描，流式计数不落地结果
+     */
+    public Map<Integer, Long> countAllByStatus() throws IOException {
+        Scan scan = createScan();
+        scan.addColumn(Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_BASE), Bytes.toBytes(HBaseConfig.Columns.ORDER_STATUS));
+        return countByRegion(TABLE_NAME, scan,
+                result -> getInteger(result, HBaseConfig.ColumnFamilies.CF_BASE, HBaseConfig.Columns.ORDER_STATUS));
+    }
+
+    /**
+     * 写入订单状态计数检查点（order_stats 表单行，每个状态一列）
+     */
+    public void saveStatusCountsCheckpoint(Map<Integer, Long> counts) throws IOException {
+        Put put = createPut(STATUS_COUNTS_ROW);
+        for (Map.Entry<Integer, Long> entry : counts.entrySet()) {
+            addColumn(put, HBaseConfig.ColumnFamilies.CF_STAT, String.valueOf(entry.getKey()), entry.getValue());
+        }
+        addColumn(put, HBaseConfig.ColumnFamilies.CF_STAT, HBaseConfig.Columns.ORDER_STATS_UPDATE_TIME, formatDateTime(LocalDateTime.now()));
+        putData(STATS_TABLE_NAME, put);
+        log.info("Order status counts checkpoint saved: {}", counts);
+    }
+
+    /**
+     * 读取订单状态计数检查点，不存在返回空 Map
+     */
+    public Map<Integer, Long> findStatusCountsCheckpoint() throws IOException {
+        Result result = getData(STATS_TABLE_NAME, createGet(STATUS_COUNTS_ROW));
+        Map<Integer, Long> counts = new HashMap<>();
+        if (result.isEmpty()) {
+            return counts;
+        }
+        for (Order.Status status : Order.Status.values()) {
+            Long count = getLong(result, HBaseConfig.ColumnFamilies.CF_STAT, String.valueOf(status.getCode()));
+            if (count != null) {
+                counts.put(status.getCode(), count);
+            }
+        }
+        return counts;
+    }
+
     /**
      * 删除订单
      */
@@ -1,6 +1,7 @@
 package com.sales.repository;
 
 import com.sales.config.HBaseConfig;
+import com.sales.entity.CursorPage;
 import com.sales.entity.Product;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.hadoop.hbase.TableName;
@@ -9,6 +10,7 @@ import org.apache.hadoop.hbase.filter.CompareFilter;
 import org.apache.hadoop.hbase.filter.FilterList;
 import org.apache.hadoop.hbase.filter.PageFilter;
 import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
+import org.apache.hadoop.hbase.filter.SubstringComparator;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.springframework.stereotype.Repository;
 
@@ -17,8 +19,10 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 @Slf4j
 @Repository
@@ -76,20 +80,21 @@ public class ProductRepository extends BaseHBaseRepository {
     }
 
     public List<Product> findAll(int limit) throws IOException {
-        Scan scan = createScan();
-        scan.setLimit(limit);
-        
-        List<Result> results = scanData(TABLE_NAME, scan);
-        List<Product> products = new ArrayList<>();
-        
-        for (Result result : results) {
-            products.add(mapToProduct(result));
-        }
-        
-        return products;
+        return findAll(null, limit).getItems();
+    }
+
+    /**
+     * 按行键顺序分页读取商品，cursor 为上一页返回的 nextCursor（首页传 null）
+     */
+    public CursorPage<Product> findAll(String cursor, int limit) throws IOException {
+        return scanPage(TABLE_NAME, createScan(), cursor, limit).map(this::mapToProduct);
     }
 
     public List<Product> findByCategory(String category, int limit) throws IOException {
+        return findByCategory(category, null, limit).getItems();
+    }
+
+    public CursorPage<Product> findByCategory(String category, String cursor, int limit) throws IOException {
         Scan scan = createScan();
         
         // 添加分类过滤器
@@ -103,19 +108,15 @@ public class ProductRepository extends BaseHBaseRepository {
         FilterList filterList = new FilterList(FilterList.Operator.MUST_PASS_ONE);
         filterList.addFilter(categoryFilter);
         scan.setFilter(filterList);
-        scan.setLimit(limit);
-        
-        List<Result> results = scanData(TABLE_NAME, scan);
-        List<Product> products = new ArrayList<>();
-        
-        for (Result result : results) {
-            products.add(mapToProduct(result));
-        }
-        
-        return products;
+
+        return scanPage(TABLE_NAME, scan, cursor, limit).map(this::mapToProduct);
     }
 
     public List<Product> findByStatus(Integer status, int limit) throws IOException {
+        return findByStatus(status, null, limit).getItems();
+    }
+
+    public CursorPage<Product> findByStatus(Integer status, String cursor, int limit) throws IOException {
         Scan scan = createScan();
         
         // 添加状态过滤器
@@ -127,38 +128,78 @@ public class ProductRepository extends BaseHBaseRepository {
         );
         
         scan.setFilter(statusFilter);
+
+        return scanPage(TABLE_NAME, scan, cursor, limit).map(this::mapToProduct);
+    }
+
+    /**
+     * 名称子串匹配（服务端 SubstringComparator 过滤，扫描直到凑满 limit 条），仅作搜索索引未就绪时的回退
+     */
+    public List<Product> findByNameContaining(String name, int limit) throws IOException {
+        Scan scan = createScan();
+
+        SingleColumnValueFilter nameFilter = new SingleColumnValueFilter(
+                Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_BASE),
+                Bytes.toBytes(HBaseConfig.Columns.PRODUCT_NAME),
+                CompareFilter.CompareOp.EQUAL,
+                new SubstringComparator(name)
+        );
+        nameFilter.setFilterIfMissing(true);
+        scan.setFilter(nameFilter);
         scan.setLimit(limit);
-        
+
         List<Result> results = scanData(TABLE_NAME, scan);
         List<Product> products = new ArrayList<>();
-        
+
         for (Result result : results) {
             products.add(mapToProduct(result));
         }
-        
+
         return products;
     }
 
-    public List<Product> findByNameContaining(String name, int limit) throws IOException {
-        Scan scan = createScan();
-        
-        // 注意：HBase不支持模糊查询，这里需要使用其他策略
-        // 实际项目中可以考虑使用Solr或ElasticSearch进行全文搜索
-        scan.setLimit(limit);
-        
-        List<Result> results = scanData(TABLE_NAME, scan);
-        List<Product> products = new ArrayList<>();
-        
-        for (Result result : results) {
-            Product product = mapToProduct(result);
-            if (product.getName() != null && product.getName().contains(name)) {
-                products.add(product);
+    /**
+     * 批量读取商品（一次 multi-get），不存在的商品不在结果中
+     */
+    public Map<String, Product> findByIds(List<String> productIds) throws IOException {
+        List<Get> gets = new ArrayList<>(productIds.size());
+        for (String productId : productIds) {
+            gets.add(createGet(productId));
+        }
+
+        Map<String, Product> products = new HashMap<>();
+        for (Result result : batchGet(TABLE_NAME, gets)) {
+            if (!result.isEmpty()) {
+                Product product = mapToProduct(result);
+                products.put(product.getProductId(), product);
             }
         }
-        
         return products;
     }
 
+    /**
+     * 流式扫描全表，只读取搜索索引需要的列，逐行回调而不在内存中累积结果
+     */
+    public void scanForSearchIndex(int caching, Consumer<Product> consumer) throws IOException {
+        Scan scan = createScan();
+        byte[] base = Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_BASE);
+        scan.addColumn(base, Bytes.toBytes(HBaseConfig.Columns.PRODUCT_NAME));
+        scan.addColumn(base, Bytes.toBytes(HBaseConfig.Columns.PRODUCT_BRAND));
+        scan.addColumn(base, Bytes.toBytes(HBaseConfig.Columns.PRODUCT_CATEGORY));
+        scan.addColumn(base, Bytes.toBytes(HBaseConfig.Columns.PRODUCT_STATUS));
+        scan.addColumn(Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_DETAIL), Bytes.toBytes(HBaseConfig.Columns.PRODUCT_TAGS));
+        scan.addColumn(Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_STAT), Bytes.toBytes(HBaseConfig.Columns.PRODUCT_SALE_COUNT));
+        scan.setCaching(caching);
+        scan.setCacheBlocks(false);
+
+        try (Table table = getTable(TABLE_NAME);
+             ResultScanner scanner = table.getScanner(scan)) {
+            for (Result result : scanner) {
+                consumer.accept(mapToProduct(result));
+            }
+        }
+    }
+
     public void updateStock(String productId, Integer stock) throws IOException {
         Put put = createPut(productId);
         addColumn(put, HBaseConfig.ColumnFamilies.CF_STOCK, HBaseConfig.Columns.PRODUCT_TOTAL_STOCK, stock);
@@ -168,6 +209,21 @@ public class ProductRepository extends BaseHBaseRepository {
         putData(TABLE_NAME, put);
     }
 
+    /**
+     * 批量写入库存，一次 HBase batch
+     */
+    public void batchUpdateStock(Map<String, Integer> stocks) throws IOException {
+        String updateTime = formatDateTime(LocalDateTime.now());
+        List<Put> puts = new ArrayList<>(stocks.size());
+        for (Map.Entry<String, Integer> entry : stocks.entrySet()) {
+            Put put = createPut(entry.getKey());
+            addColumn(put, HBaseConfig.ColumnFamilies.CF_STOCK, HBaseConfig.Columns.PRODUCT_TOTAL_STOCK, entry.getValue());
+            addColumn(put, HBaseConfig.ColumnFamilies.CF_STAT, HBaseConfig.Columns.PRODUCT_UPDATE_TIME, updateTime);
+            puts.add(put);
+        }
+        batchPut(TABLE_NAME, puts);
+    }
+
     public void incrementViewCount(String productId) throws IOException {
         incrementColumnValue(TABLE_NAME, productId, 
                             HBaseConfig.ColumnFamilies.CF_STAT, 
@@ -186,6 +242,16 @@ public class ProductRepository extends BaseHBaseRepository {
         log.info("Product deleted: {}", productId);
     }
 
+    /**
+     * 按 Region 并行统计各状态商品数（只投影 cf_base:status），用于商品计数对账
+     */
+    public Map<Integer, Long> countAllByStatus() throws IOException {
+        Scan scan = createScan();
+        scan.addColumn(Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_BASE), Bytes.toBytes(HBaseConfig.Columns.PRODUCT_STATUS));
+        return countByRegion(TABLE_NAME, scan,
+                result -> getInteger(result, HBaseConfig.ColumnFamilies.CF_BASE, HBaseConfig.Columns.PRODUCT_STATUS));
+    }
+
     public boolean existsById(String productId) throws IOException {
         Get get = createGet(productId);
         return exists(TABLE_NAME, get);
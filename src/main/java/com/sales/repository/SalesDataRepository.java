@@ -1,13 +1,28 @@
 package com.sales.repository;
 
 import com.sales.config.HBaseConfig;
+import com.sales.coprocessor.SalesAggregateEndpoint;
 import com.sales.entity.SalesData;
+import com.sales.utils.HourlyVectorUtils;
+import com.sales.utils.SalesValueUtils;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.CompareOperator;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.exceptions.UnknownProtocolException;
+import org.apache.hadoop.hbase.ipc.CoprocessorRpcUtils;
+import org.apache.hadoop.hbase.ipc.ServerRpcController;
+import org.apache.hadoop.hbase.protobuf.ProtobufUtil;
+import org.apache.hadoop.hbase.protobuf.generated.AggregateProtos;
 import org.apache.hadoop.hbase.filter.CompareFilter;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.NullComparator;
 import org.apache.hadoop.hbase.filter.PrefixFilter;
+import org.apache.hadoop.hbase.filter.RegexStringComparator;
+import org.apache.hadoop.hbase.filter.RowFilter;
 import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.springframework.stereotype.Repository;
@@ -17,8 +32,10 @@ import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 @Slf4j
 @Repository
@@ -26,6 +43,38 @@ public class SalesDataRepository extends BaseHBaseRepository {
 
     private static final TableName TABLE_NAME = HBaseConfig.TableNames.SALES_DATA;
 
+    // 需要预聚合的汇总粒度
+    private static final SalesData.Granularity[] ROLLUP_GRANULARITIES = {
+            SalesData.Granularity.WEEK, SalesData.Granularity.MONTH
+    };
+
+    // 商品优先的伴随表：商品ID_日期 / C品类ID_日期
+    private static final TableName BY_PRODUCT_TABLE_NAME = HBaseConfig.TableNames.SALES_BY_PRODUCT;
+
+    private static final byte[] CF_DAILY_BYTES = Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_DAILY);
+    private static final byte[] CF_HOURLY_BYTES = Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_HOURLY);
+    private static final byte[] CF_REGION_BYTES = Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_REGION);
+    private static final byte[] HOURLY_VECTOR_BYTES = Bytes.toBytes(HBaseConfig.Columns.SALES_HOURLY_VECTOR);
+    private static final byte[] HOUR_PREFIX_BYTES = Bytes.toBytes(HBaseConfig.Columns.SALES_HOUR_PREFIX);
+
+    // hour_00 ~ hour_23 计数列名，写入热路径上不再逐次格式化
+    private static final byte[][] HOUR_QUALIFIERS = new byte[HourlyVectorUtils.HOURS][];
+
+    static {
+        for (int hour = 0; hour < HourlyVectorUtils.HOURS; hour++) {
+            HOUR_QUALIFIERS[hour] = Bytes.toBytes(String.format("%s%02d", HBaseConfig.Columns.SALES_HOUR_PREFIX, hour));
+        }
+    }
+
+    // 日终排行快照列前缀：top_count / top_amount
+    private static final String TOP_N_QUALIFIER_PREFIX = "top_";
+
+    // 日总计行与品类行：yyyy-MM-dd_TOTAL / yyyy-MM-dd_C{品类ID}
+    private static final String AGGREGATE_ROW_REGEX = "^\\d{4}-\\d{2}-\\d{2}_(TOTAL|C.*)$";
+
+    // 日商品行与品类行（回填伴随表）：yyyy-MM-dd_{商品ID} / yyyy-MM-dd_C{品类ID}
+    private static final String PRODUCT_OR_CATEGORY_ROW_REGEX = "^\\d{4}-\\d{2}-\\d{2}_(?!TOTAL$).+$";
+
     public void save(SalesData salesData) throws IOException {
         String rowKey = SalesData.generateRowKey(salesData.getDate(), salesData.getProductId(), salesData.getCategoryId());
         Put put = createPut(rowKey);
@@ -41,12 +90,16 @@ public class SalesDataRepository extends BaseHBaseRepository {
         addColumn(put, HBaseConfig.ColumnFamilies.CF_DAILY, HBaseConfig.Columns.SALES_REFUND_AMOUNT, 
                  salesData.getRefundAmount() != null ? salesData.getRefundAmount().doubleValue() : null);
         
-        // 小时级数据
-        if (salesData.getHourlySales() != null) {
+        // 小时级数据（打包为单个24×long列）
+        if (salesData.getHourlySales() != null && !salesData.getHourlySales().isEmpty()) {
+            long[] vector = new long[HourlyVectorUtils.HOURS];
             for (Map.Entry<Integer, Long> entry : salesData.getHourlySales().entrySet()) {
-                String qualifier = "hour_" + String.format("%02d", entry.getKey());
-                addColumn(put, HBaseConfig.ColumnFamilies.CF_HOURLY, qualifier, entry.getValue());
+                if (entry.getKey() != null && entry.getKey() >= 0 && entry.getKey() < HourlyVectorUtils.HOURS
+                        && entry.getValue() != null) {
+                    vector[entry.getKey()] = entry.getValue();
+                }
             }
+            put.addColumn(CF_HOURLY_BYTES, HOURLY_VECTOR_BYTES, HourlyVectorUtils.encode(vector));
         }
         
         // 区域销售数据
@@ -66,6 +119,17 @@ public class SalesDataRepository extends BaseHBaseRepository {
         }
         
         putData(TABLE_NAME, put);
+        
+        // 商品/品类行同步写入商品优先的伴随表（只含每日指标）
+        String productFirstRowKey = SalesData.generateProductFirstRowKey(
+                salesData.getDate(), salesData.getProductId(), salesData.getCategoryId());
+        if (productFirstRowKey != null) {
+            Put companionPut = createPut(productFirstRowKey);
+            for (Cell cell : put.getFamilyCellMap().getOrDefault(CF_DAILY_BYTES, java.util.Collections.emptyList())) {
+                companionPut.addColumn(CF_DAILY_BYTES, CellUtil.cloneQualifier(cell), CellUtil.cloneValue(cell));
+            }
+            putData(BY_PRODUCT_TABLE_NAME, companionPut);
+        }
         log.info("Sales data saved: {}", rowKey);
     }
 
@@ -116,50 +180,94 @@ public class SalesDataRepository extends BaseHBaseRepository {
     }
 
     public List<SalesData> findByProductAndDateRange(String productId, LocalDate startDate, LocalDate endDate) throws IOException {
+        return findByProductAndDateRange(productId, startDate, endDate, null);
+    }
+
+    /**
+     * 商品历史：sales_by_product 上的连续前缀扫描，metrics 为空时返回全部每日指标
+     */
+    public List<SalesData> findByProductAndDateRange(String productId, LocalDate startDate, LocalDate endDate,
+                                                     List<String> metrics) throws IOException {
+        return scanProductFirst(productId, null, startDate, endDate, metrics);
+    }
+
+    public List<SalesData> findByCategoryAndDateRange(String categoryId, LocalDate startDate, LocalDate endDate) throws IOException {
+        return findByCategoryAndDateRange(categoryId, startDate, endDate, null);
+    }
+
+    /**
+     * 品类历史：sales_by_product 上 C品类ID_ 前缀的连续扫描
+     */
+    public List<SalesData> findByCategoryAndDateRange(String categoryId, LocalDate startDate, LocalDate endDate,
+                                                      List<String> metrics) throws IOException {
+        return scanProductFirst(null, categoryId, startDate, endDate, metrics);
+    }
+
+    private List<SalesData> scanProductFirst(String productId, String categoryId, LocalDate startDate,
+                                             LocalDate endDate, List<String> metrics) throws IOException {
         Scan scan = createScan();
+        scan.setStartRow(Bytes.toBytes(SalesData.generateProductFirstRowKey(startDate, productId, categoryId)));
+        scan.setStopRow(Bytes.toBytes(SalesData.generateProductFirstRowKey(endDate, productId, categoryId)));
+        
+        // 只投影请求的指标列
+        if (metrics == null || metrics.isEmpty()) {
+            scan.addFamily(CF_DAILY_BYTES);
+        } else {
+            for (String metric : metrics) {
+                scan.addColumn(CF_DAILY_BYTES, Bytes.toBytes(metric));
+            }
+        }
         
-        // 构建行键前缀：日期_商品ID
-        String startPrefix = startDate.format(DateTimeFormatter.ISO_LOCAL_DATE) + "_" + productId;
-        String endPrefix = endDate.format(DateTimeFormatter.ISO_LOCAL_DATE) + "_" + productId;
-        
-        scan.setStartRow(Bytes.toBytes(startPrefix));
-        scan.setStopRow(Bytes.toBytes(endPrefix));
-        
-        List<Result> results = scanData(TABLE_NAME, scan);
-        List<SalesData> salesDataList = new ArrayList<>();
+        List<Result> results = scanData(BY_PRODUCT_TABLE_NAME, scan);
+        List<SalesData> salesDataList = new ArrayList<>(results.size());
         
         for (Result result : results) {
-            salesDataList.add(mapToSalesData(result));
+            salesDataList.add(mapProductFirstRow(result, productId, categoryId));
         }
         
         return salesDataList;
     }
 
-    public List<SalesData> findByCategoryAndDateRange(String categoryId, LocalDate startDate, LocalDate endDate) throws IOException {
+    /**
+     * 一次性回填伴随表：把 sales_data 日期区间内的商品行和品类行的每日指标复制到 sales_by_product。
+     * 用于伴随表上线前的历史数据，查询不再回退到 sales_data；上线后的日期由写入路径同步维护，无需回填。
+     */
+    public int backfillProductFirst(LocalDate startDate, LocalDate endDate) throws IOException {
         Scan scan = createScan();
-        
-        // 构建行键前缀：日期_C品类ID
-        String startPrefix = startDate.format(DateTimeFormatter.ISO_LOCAL_DATE) + "_C" + categoryId;
-        String endPrefix = endDate.format(DateTimeFormatter.ISO_LOCAL_DATE) + "_C" + categoryId;
-        
-        scan.setStartRow(Bytes.toBytes(startPrefix));
-        scan.setStopRow(Bytes.toBytes(endPrefix));
-        
-        List<Result> results = scanData(TABLE_NAME, scan);
-        List<SalesData> salesDataList = new ArrayList<>();
-        
-        for (Result result : results) {
-            salesDataList.add(mapToSalesData(result));
+        scan.setStartRow(Bytes.toBytes(startDate.format(DateTimeFormatter.ISO_LOCAL_DATE)));
+        scan.setStopRow(Bytes.toBytes(endDate.format(DateTimeFormatter.ISO_LOCAL_DATE)));
+        scan.addFamily(CF_DAILY_BYTES);
+        scan.setFilter(new RowFilter(CompareOperator.EQUAL, new RegexStringComparator(PRODUCT_OR_CATEGORY_ROW_REGEX)));
+        
+        List<Put> puts = new ArrayList<>();
+        for (Result result : scanData(TABLE_NAME, scan)) {
+            // 日期_标识 -> 标识_日期
+            String rowKey = Bytes.toString(result.getRow());
+            String date = rowKey.substring(0, 10);
+            Put put = createPut(rowKey.substring(11) + "_" + date);
+            for (Cell cell : result.rawCells()) {
+                put.addColumn(CF_DAILY_BYTES, CellUtil.cloneQualifier(cell), CellUtil.cloneValue(cell));
+            }
+            puts.add(put);
         }
         
-        return salesDataList;
+        batchPut(BY_PRODUCT_TABLE_NAME, puts);
+        log.info("Product-first sales backfilled: {} to {}, rows={}", startDate, endDate, puts.size());
+        return puts.size();
     }
 
     public List<SalesData> findTopSellingProducts(LocalDate date, int limit) throws IOException {
+        return findTopSellingProducts(date, limit, SalesData.RankBy.COUNT);
+    }
+
+    /**
+     * 扫描全天商品行排序（排行快照与Redis都不存在时的兜底路径）
+     */
+    public List<SalesData> findTopSellingProducts(LocalDate date, int limit, SalesData.RankBy rankBy) throws IOException {
         String prefix = date.format(DateTimeFormatter.ISO_LOCAL_DATE);
         Scan scan = createScan();
         scan.setFilter(new PrefixFilter(Bytes.toBytes(prefix)));
-        scan.setLimit(limit);
+        scan.addFamily(Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_DAILY));
         
         List<Result> results = scanData(TABLE_NAME, scan);
         List<SalesData> salesDataList = new ArrayList<>();
@@ -172,12 +280,187 @@ public class SalesDataRepository extends BaseHBaseRepository {
             }
         }
         
-        // 按销售数量排序（这里需要在内存中排序，实际项目中可以考虑使用协处理器）
-        salesDataList.sort((a, b) -> Long.compare(b.getSaleCount(), a.getSaleCount()));
+        // 必须在全天数据上排序后再截取，不能在扫描时限制行数
+        if (rankBy == SalesData.RankBy.AMOUNT) {
+            salesDataList.sort((a, b) -> b.getNetAmount().compareTo(a.getNetAmount()));
+        } else {
+            salesDataList.sort((a, b) -> Long.compare(b.getNetCount(), a.getNetCount()));
+        }
         
         return salesDataList.subList(0, Math.min(limit, salesDataList.size()));
     }
 
+    /**
+     * 写入日终排行快照：T{date} 行，每种排行依据一列，值为 "商品ID:分数,..."
+     */
+    public void saveDailyTopN(LocalDate date, SalesData.RankBy rankBy, List<SalesData> ranked) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (SalesData data : ranked) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(data.getProductId()).append(':');
+            if (rankBy == SalesData.RankBy.AMOUNT) {
+                sb.append(data.getSaleAmount() != null ? data.getSaleAmount().toPlainString() : "0");
+            } else {
+                sb.append(data.getSaleCount() != null ? data.getSaleCount() : 0L);
+            }
+        }
+        
+        Put put = createPut(SalesData.generateTopNRowKey(date));
+        addColumn(put, HBaseConfig.ColumnFamilies.CF_DAILY, TOP_N_QUALIFIER_PREFIX + rankBy.getCode(), sb.toString());
+        putData(TABLE_NAME, put);
+        log.info("Daily top-N snapshot saved: date={}, rankBy={}, size={}", date, rankBy.getCode(), ranked.size());
+    }
+
+    /**
+     * 读取日终排行快照的前 limit 名，快照不存在返回 null
+     */
+    public List<SalesData> findDailyTopN(LocalDate date, SalesData.RankBy rankBy, int limit) throws IOException {
+        String qualifier = TOP_N_QUALIFIER_PREFIX + rankBy.getCode();
+        Get get = createGet(SalesData.generateTopNRowKey(date));
+        get.addColumn(Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_DAILY), Bytes.toBytes(qualifier));
+        Result result = getData(TABLE_NAME, get);
+        
+        String encoded = getString(result, HBaseConfig.ColumnFamilies.CF_DAILY, qualifier);
+        if (encoded == null) {
+            return null;
+        }
+        
+        List<SalesData> ranked = new ArrayList<>(limit);
+        int from = 0;
+        while (from < encoded.length() && ranked.size() < limit) {
+            int to = encoded.indexOf(',', from);
+            if (to < 0) {
+                to = encoded.length();
+            }
+            int separator = encoded.lastIndexOf(':', to - 1);
+            if (separator > from) {
+                String productId = encoded.substring(from, separator);
+                double score = Double.parseDouble(encoded.substring(separator + 1, to));
+                ranked.add(SalesData.toRankedProduct(date, productId, rankBy, score));
+            }
+            from = to + 1;
+        }
+        return ranked;
+    }
+
+    /**
+     * 服务端聚合：由 sales_data 上加载的 SalesAggregateEndpoint 协处理器在各 Region 内一次扫描
+     * 计算所有列的 sum/count/min/max（金额列兼容双精度编码），客户端只合并各 Region 的部分结果。
+     * productPrefix/categoryPrefix 都为空时只聚合日总计行。
+     *
+     * @throws CoprocessorUnavailableException 表上未加载聚合协处理器
+     */
+    public Map<String, RangeAggregate> aggregateByDateRange(LocalDate startDate, LocalDate endDate,
+                                                           String categoryPrefix, String productPrefix,
+                                                           List<String> columns) throws IOException {
+        Scan scan = createAggregateScan(startDate, endDate, categoryPrefix, productPrefix, columns);
+        // 协处理器按列名字典序返回，与 Scan 中的列集合顺序一致
+        List<byte[]> qualifiers = new ArrayList<>(scan.getFamilyMap().get(CF_DAILY_BYTES));
+        AggregateProtos.AggregateRequest request = AggregateProtos.AggregateRequest.newBuilder()
+                .setInterpreterClassName(SalesAggregateEndpoint.class.getName())
+                .setScan(ProtobufUtil.toScan(scan))
+                .build();
+        
+        Map<byte[], AggregateProtos.AggregateResponse> partials;
+        try (Table table = getTable(TABLE_NAME)) {
+            partials = table.coprocessorService(AggregateProtos.AggregateService.class,
+                    scan.getStartRow(), scan.getStopRow(), service -> {
+                        ServerRpcController controller = new ServerRpcController();
+                        CoprocessorRpcUtils.BlockingRpcCallback<AggregateProtos.AggregateResponse> callback =
+                                new CoprocessorRpcUtils.BlockingRpcCallback<>();
+                        service.getSum(controller, request, callback);
+                        AggregateProtos.AggregateResponse response = callback.get();
+                        if (controller.failedOnException()) {
+                            throw controller.getFailedOn();
+                        }
+                        return response;
+                    });
+        } catch (Throwable t) {
+            // coprocessorService 声明抛出 Throwable
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            if (isCoprocessorMissing(t)) {
+                throw new CoprocessorUnavailableException("Sales aggregate coprocessor is not loaded on " + TABLE_NAME, t);
+            }
+            throw t instanceof IOException ? (IOException) t
+                    : new IOException("Sales range aggregation failed: " + startDate + " to " + endDate, t);
+        }
+        
+        Map<String, RangeAggregate> aggregates = new LinkedHashMap<>();
+        for (String column : columns) {
+            aggregates.put(column, RangeAggregate.builder().column(column).build());
+        }
+        for (AggregateProtos.AggregateResponse partial : partials.values()) {
+            if (partial == null || partial.getFirstPartCount() != qualifiers.size() * SalesAggregateEndpoint.FIELDS_PER_COLUMN) {
+                continue;
+            }
+            for (int i = 0; i < qualifiers.size(); i++) {
+                int base = i * SalesAggregateEndpoint.FIELDS_PER_COLUMN;
+                long count = Bytes.toLong(partial.getFirstPart(base + 1).toByteArray());
+                if (count == 0) {
+                    continue;
+                }
+                long sum = Bytes.toLong(partial.getFirstPart(base).toByteArray());
+                long min = Bytes.toLong(partial.getFirstPart(base + 2).toByteArray());
+                long max = Bytes.toLong(partial.getFirstPart(base + 3).toByteArray());
+                
+                RangeAggregate aggregate = aggregates.get(Bytes.toString(qualifiers.get(i)));
+                aggregate.setSum(aggregate.getSum() + sum);
+                aggregate.setCount(aggregate.getCount() + count);
+                aggregate.setMin(aggregate.getMin() == null ? min : Math.min(aggregate.getMin(), min));
+                aggregate.setMax(aggregate.getMax() == null ? max : Math.max(aggregate.getMax(), max));
+            }
+        }
+        
+        log.info("Sales range aggregated: {} to {}, category={}, product={}, columns={}, regions={}", 
+                startDate, endDate, categoryPrefix, productPrefix, columns, partials.size());
+        return aggregates;
+    }
+
+    /**
+     * RegionServer 上未注册服务时返回 UnknownProtocolException，经 RPC 传回后可能只保留在消息中
+     */
+    private boolean isCoprocessorMissing(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof UnknownProtocolException) {
+                return true;
+            }
+            String message = cause.getMessage();
+            if (message != null && (message.contains(UnknownProtocolException.class.getName())
+                    || message.contains("No registered coprocessor service found"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Scan createAggregateScan(LocalDate startDate, LocalDate endDate,
+                                     String categoryPrefix, String productPrefix, List<String> columns) {
+        Scan scan = createScan();
+        scan.setStartRow(Bytes.toBytes(startDate.format(DateTimeFormatter.ISO_LOCAL_DATE)));
+        scan.setStopRow(Bytes.toBytes(endDate.format(DateTimeFormatter.ISO_LOCAL_DATE)));
+        // 协处理器要求扫描恰好一个列族
+        for (String column : columns) {
+            scan.addColumn(CF_DAILY_BYTES, Bytes.toBytes(column));
+        }
+        
+        // 行键为 日期_标识，品类/商品前缀匹配的是日期之后的部分
+        String identifier;
+        if (productPrefix != null && !productPrefix.isEmpty()) {
+            identifier = Pattern.quote(productPrefix) + ".*";
+        } else if (categoryPrefix != null && !categoryPrefix.isEmpty()) {
+            identifier = "C" + Pattern.quote(categoryPrefix) + ".*";
+        } else {
+            identifier = "TOTAL";
+        }
+        scan.setFilter(new RowFilter(CompareOperator.EQUAL,
+                new RegexStringComparator("^\\d{4}-\\d{2}-\\d{2}_" + identifier + "$")));
+        return scan;
+    }
+
     public SalesData findDailyTotal(LocalDate date) throws IOException {
         String rowKey = date.format(DateTimeFormatter.ISO_LOCAL_DATE) + "_TOTAL";
         return findById(rowKey);
@@ -185,52 +468,295 @@ public class SalesDataRepository extends BaseHBaseRepository {
 
     public void incrementSales(String productId, String categoryId, LocalDate date, 
                               Long quantity, BigDecimal amount) throws IOException {
+        incrementSales(productId, categoryId, date, null, quantity, amount);
+    }
+
+    /**
+     * 累加销售数据；hour 不为空时小时计数与日数据在同一个 Increment 中原子写入（商品行与日总计行）
+     */
+    public void incrementSales(String productId, String categoryId, LocalDate date, Integer hour,
+                              Long quantity, BigDecimal amount) throws IOException {
         String rowKey = SalesData.generateRowKey(date, productId, categoryId);
+        long count = quantity != null ? quantity : 0L;
+        
+        // 商品日数据与日/周/月汇总行在同一批次中累加
+        List<Increment> increments = buildIncrements(productId, categoryId, date,
+                HBaseConfig.Columns.SALES_SALE_COUNT, count,
+                HBaseConfig.Columns.SALES_SALE_AMOUNT, amount != null ? amount.longValue() : 0L);
+        if (hour != null && hour >= 0 && hour < HourlyVectorUtils.HOURS) {
+            addHourlyIncrement(increments, hour, count,
+                    rowKey, SalesData.generateRowKey(date, null, null));
+        } else if (hour != null) {
+            log.warn("Invalid hour for hourly sales: {} -> {}", rowKey, hour);
+        }
+        batchIncrement(TABLE_NAME, increments);
+        batchIncrement(BY_PRODUCT_TABLE_NAME, buildProductFirstIncrements(productId, categoryId, date,
+                HBaseConfig.Columns.SALES_SALE_COUNT, count,
+                HBaseConfig.Columns.SALES_SALE_AMOUNT, amount != null ? amount.longValue() : 0L));
         
-        // 增加销售数量和金额
-        incrementColumnValue(TABLE_NAME, rowKey, 
-                            HBaseConfig.ColumnFamilies.CF_DAILY, 
-                            HBaseConfig.Columns.SALES_SALE_COUNT, 
-                            quantity != null ? quantity : 0L);
-        
-        incrementColumnValue(TABLE_NAME, rowKey, 
-                            HBaseConfig.ColumnFamilies.CF_DAILY, 
-                            HBaseConfig.Columns.SALES_SALE_AMOUNT, 
-                            amount != null ? amount.longValue() : 0L);
-        
-        log.info("Sales incremented: {} -> {} units, {} amount", rowKey, quantity, amount);
+        log.info("Sales incremented: {} -> {} units, {} amount, hour {}", rowKey, quantity, amount, hour);
+    }
+
+    /**
+     * 给指定行的 Increment 追加 hour_NN 计数列
+     */
+    private void addHourlyIncrement(List<Increment> increments, int hour, long count, String... rowKeys) {
+        byte[] qualifier = hourQualifier(hour);
+        for (Increment increment : increments) {
+            String row = Bytes.toString(increment.getRow());
+            for (String rowKey : rowKeys) {
+                if (rowKey.equals(row)) {
+                    increment.addColumn(CF_HOURLY_BYTES, qualifier, count);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static byte[] hourQualifier(int hour) {
+        return HOUR_QUALIFIERS[hour];
     }
 
     public void incrementRefund(String productId, String categoryId, LocalDate date, 
                                Long quantity, BigDecimal amount) throws IOException {
         String rowKey = SalesData.generateRowKey(date, productId, categoryId);
         
-        // 增加退货数量和金额
-        incrementColumnValue(TABLE_NAME, rowKey, 
-                            HBaseConfig.ColumnFamilies.CF_DAILY, 
-                            HBaseConfig.Columns.SALES_REFUND_COUNT, 
-                            quantity != null ? quantity : 0L);
-        
-        incrementColumnValue(TABLE_NAME, rowKey, 
-                            HBaseConfig.ColumnFamilies.CF_DAILY, 
-                            HBaseConfig.Columns.SALES_REFUND_AMOUNT, 
-                            amount != null ? amount.longValue() : 0L);
+        // 增加退货数量和金额（含汇总行）
+        List<Increment> increments = buildIncrements(productId, categoryId, date,
+                HBaseConfig.Columns.SALES_REFUND_COUNT, quantity != null ? quantity : 0L,
+                HBaseConfig.Columns.SALES_REFUND_AMOUNT, amount != null ? amount.longValue() : 0L);
+        batchIncrement(TABLE_NAME, increments);
+        batchIncrement(BY_PRODUCT_TABLE_NAME, buildProductFirstIncrements(productId, categoryId, date,
+                HBaseConfig.Columns.SALES_REFUND_COUNT, quantity != null ? quantity : 0L,
+                HBaseConfig.Columns.SALES_REFUND_AMOUNT, amount != null ? amount.longValue() : 0L));
         
         log.info("Refund incremented: {} -> {} units, {} amount", rowKey, quantity, amount);
     }
 
+    /**
+     * 批量读取指定行键（汇总行/日总计行），不存在的行被忽略
+     */
+    public List<SalesData> findByRowKeys(List<String> rowKeys) throws IOException {
+        List<Get> gets = new ArrayList<>(rowKeys.size());
+        for (String rowKey : rowKeys) {
+            Get get = createGet(rowKey);
+            get.addFamily(Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_DAILY));
+            gets.add(get);
+        }
+        
+        List<SalesData> salesDataList = new ArrayList<>();
+        for (Result result : batchGet(TABLE_NAME, gets)) {
+            if (result != null && !result.isEmpty()) {
+                salesDataList.add(mapToSalesData(result));
+            }
+        }
+        return salesDataList;
+    }
+
+    /**
+     * 扫描日期范围内的日总计行和品类行（跳过商品行），用于回填汇总
+     */
+    public List<SalesData> findAggregatesByDateRange(LocalDate startDate, LocalDate endDate) throws IOException {
+        Scan scan = createScan();
+        scan.setStartRow(Bytes.toBytes(startDate.format(DateTimeFormatter.ISO_LOCAL_DATE)));
+        scan.setStopRow(Bytes.toBytes(endDate.format(DateTimeFormatter.ISO_LOCAL_DATE)));
+        scan.addFamily(Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_DAILY));
+        scan.setFilter(new RowFilter(CompareOperator.EQUAL, new RegexStringComparator(AGGREGATE_ROW_REGEX)));
+        
+        List<Result> results = scanData(TABLE_NAME, scan);
+        List<SalesData> salesDataList = new ArrayList<>();
+        
+        for (Result result : results) {
+            salesDataList.add(mapToSalesData(result));
+        }
+        
+        return salesDataList;
+    }
+
+    /**
+     * 读取某周期的全部汇总行（总计行与各品类行），行键 -> 汇总
+     */
+    public Map<String, SalesData> findRollupsByPeriod(SalesData.Granularity granularity, LocalDate periodStart) throws IOException {
+        String totalRowKey = SalesData.generateRollupRowKey(granularity, periodStart, null);
+        String prefix = totalRowKey.substring(0, totalRowKey.indexOf('_') + 1);
+        
+        Scan scan = createScan();
+        scan.setRowPrefixFilter(Bytes.toBytes(prefix));
+        scan.addFamily(CF_DAILY_BYTES);
+        
+        Map<String, SalesData> rollups = new LinkedHashMap<>();
+        for (Result result : scanData(TABLE_NAME, scan)) {
+            rollups.put(Bytes.toString(result.getRow()), mapToSalesData(result));
+        }
+        return rollups;
+    }
+
+    /**
+     * 修正一个汇总行：仅当汇总行的销售/退款件数仍等于读取时的 current 时，原子地累加 target - current。
+     * 读取之后有增量写入则放弃并返回 false，不覆盖、也不丢失并发累加。current 为 null 表示读取时该行不存在。
+     */
+    public boolean correctRollup(String rowKey, SalesData current, SalesData target) throws IOException {
+        long saleCountDelta = longOf(target.getSaleCount()) - (current != null ? longOf(current.getSaleCount()) : 0L);
+        long saleAmountDelta = amountOf(target.getSaleAmount()) - (current != null ? amountOf(current.getSaleAmount()) : 0L);
+        long refundCountDelta = longOf(target.getRefundCount()) - (current != null ? longOf(current.getRefundCount()) : 0L);
+        long refundAmountDelta = amountOf(target.getRefundAmount()) - (current != null ? amountOf(current.getRefundAmount()) : 0L);
+        if (current != null && saleCountDelta == 0 && saleAmountDelta == 0 && refundCountDelta == 0 && refundAmountDelta == 0) {
+            return true;
+        }
+        
+        byte[] row = Bytes.toBytes(rowKey);
+        Increment increment = new Increment(row);
+        increment.addColumn(CF_DAILY_BYTES, Bytes.toBytes(HBaseConfig.Columns.SALES_SALE_COUNT), saleCountDelta);
+        increment.addColumn(CF_DAILY_BYTES, Bytes.toBytes(HBaseConfig.Columns.SALES_SALE_AMOUNT), saleAmountDelta);
+        increment.addColumn(CF_DAILY_BYTES, Bytes.toBytes(HBaseConfig.Columns.SALES_REFUND_COUNT), refundCountDelta);
+        increment.addColumn(CF_DAILY_BYTES, Bytes.toBytes(HBaseConfig.Columns.SALES_REFUND_AMOUNT), refundAmountDelta);
+        
+        CheckAndMutate.Builder condition = CheckAndMutate.newBuilder(row);
+        CheckAndMutate checkAndMutate = current == null
+                ? condition.ifNotExists(CF_DAILY_BYTES, Bytes.toBytes(HBaseConfig.Columns.SALES_SALE_COUNT)).build(increment)
+                : condition.ifMatches(new FilterList(FilterList.Operator.MUST_PASS_ALL,
+                        countUnchanged(HBaseConfig.Columns.SALES_SALE_COUNT, current.getSaleCount()),
+                        countUnchanged(HBaseConfig.Columns.SALES_REFUND_COUNT, current.getRefundCount())))
+                        .build(increment);
+        
+        try (Table table = getTable(TABLE_NAME)) {
+            return table.checkAndMutate(checkAndMutate).isSuccess();
+        }
+    }
+
+    /**
+     * 件数列仍为读取时的值；读取时不存在则要求仍不存在（NullComparator 与任何已有值都不相等）
+     */
+    private SingleColumnValueFilter countUnchanged(String qualifier, Long expected) {
+        SingleColumnValueFilter filter = expected != null
+                ? new SingleColumnValueFilter(CF_DAILY_BYTES, Bytes.toBytes(qualifier), CompareOperator.EQUAL, Bytes.toBytes(expected))
+                : new SingleColumnValueFilter(CF_DAILY_BYTES, Bytes.toBytes(qualifier), CompareOperator.EQUAL, new NullComparator());
+        filter.setFilterIfMissing(expected != null);
+        return filter;
+    }
+
+    private static long longOf(Long value) {
+        return value != null ? value : 0L;
+    }
+
+    private static long amountOf(BigDecimal value) {
+        return value != null ? value.longValue() : 0L;
+    }
+
+    /**
+     * 单独累加小时销量：hour_NN 计数列原子 Increment，读取时与打包列合并。
+     * 记录销售时应使用带 hour 的 incrementSales，使小时数据与日数据在同一次写入中完成。
+     */
     public void incrementHourlySales(String productId, LocalDate date, Integer hour, Long quantity) throws IOException {
         String rowKey = SalesData.generateRowKey(date, productId, null);
-        String qualifier = "hour_" + String.format("%02d", hour);
-        
-        incrementColumnValue(TABLE_NAME, rowKey, 
-                            HBaseConfig.ColumnFamilies.CF_HOURLY, 
-                            qualifier, 
-                            quantity != null ? quantity : 0L);
+        if (hour == null || hour < 0 || hour >= HourlyVectorUtils.HOURS) {
+            log.warn("Invalid hour for hourly sales: {} -> {}", rowKey, hour);
+            return;
+        }
         
+        Increment increment = new Increment(Bytes.toBytes(rowKey));
+        increment.addColumn(CF_HOURLY_BYTES, hourQualifier(hour), quantity != null ? quantity : 0L);
+        try (Table table = getTable(TABLE_NAME)) {
+            table.increment(increment);
+        }
         log.info("Hourly sales incremented: {} -> hour {}: {} units", rowKey, hour, quantity);
     }
 
+    /**
+     * 只读取 cf_hourly 列族，返回 long[24]（打包列与 hour_NN 计数列之和）
+     */
+    public long[] findHourlyVector(String rowKey) throws IOException {
+        Get get = createGet(rowKey);
+        get.addFamily(CF_HOURLY_BYTES);
+        Result result = getData(TABLE_NAME, get);
+        
+        long[] vector = new long[HourlyVectorUtils.HOURS];
+        if (!result.isEmpty()) {
+            for (Cell cell : result.rawCells()) {
+                accumulateHourly(cell, vector);
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * 压缩某日的小时数据：把 hour_NN 计数列并入打包列并删除计数列，之后读取只需解码一个 cell。
+     * 每行一次 checkAndMutate：仅当打包列与各计数列仍为读取时的值才写入，读取后有迟到的增量则跳过该行
+     * （读取时仍会合并计数列，结果不受影响，下次压缩再处理）。应只对已结束的日期执行。
+     *
+     * @return 成功压缩的行数
+     */
+    public int compactHourly(LocalDate date) throws IOException {
+        Scan scan = createScan();
+        scan.setRowPrefixFilter(Bytes.toBytes(formatDate(date) + "_"));
+        scan.addFamily(CF_HOURLY_BYTES);
+        
+        int compacted = 0;
+        int skipped = 0;
+        try (Table table = getTable(TABLE_NAME)) {
+            for (Result result : scanData(TABLE_NAME, scan)) {
+                CheckAndMutate checkAndMutate = buildHourlyCompaction(result);
+                if (checkAndMutate == null) {
+                    continue;
+                }
+                if (table.checkAndMutate(checkAndMutate).isSuccess()) {
+                    compacted++;
+                } else {
+                    skipped++;
+                }
+            }
+        }
+        log.info("Hourly sales compacted: date={}, rows={}, skipped={}", date, compacted, skipped);
+        return compacted;
+    }
+
+    /**
+     * 一行的压缩写入：Put 合并后的打包列 + Delete 各计数列；该行没有计数列返回 null
+     */
+    private CheckAndMutate buildHourlyCompaction(Result result) throws IOException {
+        byte[] row = result.getRow();
+        long[] vector = new long[HourlyVectorUtils.HOURS];
+        byte[] packed = null;
+        List<Filter> unchanged = new ArrayList<>();
+        Delete delete = new Delete(row);
+        
+        for (Cell cell : result.rawCells()) {
+            accumulateHourly(cell, vector);
+            if (CellUtil.matchingQualifier(cell, HOURLY_VECTOR_BYTES)) {
+                packed = CellUtil.cloneValue(cell);
+            } else if (HourlyVectorUtils.parseLegacyHour(cell.getQualifierArray(), cell.getQualifierOffset(),
+                    cell.getQualifierLength(), HOUR_PREFIX_BYTES) >= 0) {
+                byte[] qualifier = CellUtil.cloneQualifier(cell);
+                unchanged.add(hourlyUnchanged(qualifier, CellUtil.cloneValue(cell)));
+                delete.addColumns(CF_HOURLY_BYTES, qualifier);
+            }
+        }
+        if (delete.isEmpty()) {
+            return null;
+        }
+        unchanged.add(hourlyUnchanged(HOURLY_VECTOR_BYTES, packed));
+        
+        Put put = new Put(row);
+        put.addColumn(CF_HOURLY_BYTES, HOURLY_VECTOR_BYTES, HourlyVectorUtils.encode(vector));
+        RowMutations mutations = new RowMutations(row, 2);
+        mutations.add(put);
+        mutations.add(delete);
+        return CheckAndMutate.newBuilder(row)
+                .ifMatches(new FilterList(FilterList.Operator.MUST_PASS_ALL, unchanged))
+                .build(mutations);
+    }
+
+    /**
+     * cf_hourly 列仍为读取时的值；读取时不存在则要求仍不存在
+     */
+    private SingleColumnValueFilter hourlyUnchanged(byte[] qualifier, byte[] expected) {
+        SingleColumnValueFilter filter = expected != null
+                ? new SingleColumnValueFilter(CF_HOURLY_BYTES, qualifier, CompareOperator.EQUAL, expected)
+                : new SingleColumnValueFilter(CF_HOURLY_BYTES, qualifier, CompareOperator.EQUAL, new NullComparator());
+        filter.setFilterIfMissing(expected != null);
+        return filter;
+    }
+
     public void incrementRegionSales(String productId, LocalDate date, String region, Long quantity) throws IOException {
         String rowKey = SalesData.generateRowKey(date, productId, null);
         String qualifier = "region_" + region;
@@ -243,6 +769,125 @@ public class SalesDataRepository extends BaseHBaseRepository {
         log.info("Region sales incremented: {} -> region {}: {} units", rowKey, region, quantity);
     }
 
+    private List<Increment> buildIncrements(String productId, String categoryId, LocalDate date,
+                                            String countColumn, long count,
+                                            String amountColumn, long amount) {
+        boolean hasProduct = productId != null && !productId.isEmpty();
+        boolean hasCategory = categoryId != null && !categoryId.isEmpty();
+        // 只记品类（无商品）的增量不计入总计行，各粒度一致，周/月汇总始终等于日行之和
+        boolean countsInTotal = hasProduct || !hasCategory;
+        
+        List<String> rowKeys = new ArrayList<>();
+        rowKeys.add(SalesData.generateRowKey(date, productId, categoryId));
+        
+        // 商品行之外，同时维护日/周/月的总计行和品类行
+        if (hasProduct) {
+            rowKeys.add(SalesData.generateRowKey(date, null, null));
+            if (hasCategory) {
+                rowKeys.add(SalesData.generateRowKey(date, null, categoryId));
+            }
+        }
+        for (SalesData.Granularity granularity : ROLLUP_GRANULARITIES) {
+            if (countsInTotal) {
+                rowKeys.add(SalesData.generateRollupRowKey(granularity, date, null));
+            }
+            if (hasCategory) {
+                rowKeys.add(SalesData.generateRollupRowKey(granularity, date, categoryId));
+            }
+        }
+        
+        byte[] family = Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_DAILY);
+        byte[] countQualifier = Bytes.toBytes(countColumn);
+        byte[] amountQualifier = Bytes.toBytes(amountColumn);
+        
+        List<Increment> increments = new ArrayList<>(rowKeys.size());
+        for (String rowKey : rowKeys) {
+            Increment increment = new Increment(Bytes.toBytes(rowKey));
+            increment.addColumn(family, countQualifier, count);
+            increment.addColumn(family, amountQualifier, amount);
+            increments.add(increment);
+        }
+        return increments;
+    }
+
+    private List<Increment> buildProductFirstIncrements(String productId, String categoryId, LocalDate date,
+                                                        String countColumn, long count,
+                                                        String amountColumn, long amount) {
+        List<String> rowKeys = new ArrayList<>(2);
+        if (productId != null && !productId.isEmpty()) {
+            rowKeys.add(SalesData.generateProductFirstRowKey(date, productId, null));
+        }
+        if (categoryId != null && !categoryId.isEmpty()) {
+            rowKeys.add(SalesData.generateProductFirstRowKey(date, null, categoryId));
+        }
+        
+        List<Increment> increments = new ArrayList<>(rowKeys.size());
+        for (String rowKey : rowKeys) {
+            Increment increment = new Increment(Bytes.toBytes(rowKey));
+            increment.addColumn(CF_DAILY_BYTES, Bytes.toBytes(countColumn), count);
+            increment.addColumn(CF_DAILY_BYTES, Bytes.toBytes(amountColumn), amount);
+            increments.add(increment);
+        }
+        return increments;
+    }
+
+    /**
+     * 映射 sales_by_product 行，行键统一还原为 sales_data 的 日期_标识 格式
+     */
+    private SalesData mapProductFirstRow(Result result, String productId, String categoryId) {
+        String rowKey = Bytes.toString(result.getRow());
+        LocalDate date = LocalDate.parse(rowKey.substring(rowKey.lastIndexOf('_') + 1));
+        
+        return SalesData.builder()
+                .rowKey(SalesData.generateRowKey(date, productId, categoryId))
+                .date(date)
+                .productId(productId)
+                .categoryId(categoryId)
+                .saleCount(getLong(result, HBaseConfig.ColumnFamilies.CF_DAILY, HBaseConfig.Columns.SALES_SALE_COUNT))
+                .saleAmount(getAmount(result, HBaseConfig.Columns.SALES_SALE_AMOUNT))
+                .refundCount(getLong(result, HBaseConfig.ColumnFamilies.CF_DAILY, HBaseConfig.Columns.SALES_REFUND_COUNT))
+                .refundAmount(getAmount(result, HBaseConfig.Columns.SALES_REFUND_AMOUNT))
+                .build();
+    }
+
+    /**
+     * 读取金额列：累加写入的是长整型，save 写入的是双精度，两种编码都需兼容
+     */
+    private BigDecimal getAmount(Result result, String qualifier) {
+        byte[] bytes = result.getValue(Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_DAILY), Bytes.toBytes(qualifier));
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length != Bytes.SIZEOF_LONG) {
+            Double value = getDouble(result, HBaseConfig.ColumnFamilies.CF_DAILY, qualifier);
+            return value != null ? BigDecimal.valueOf(value) : null;
+        }
+        
+        long raw = Bytes.toLong(bytes);
+        if (SalesValueUtils.isLongEncoded(raw)) {
+            return BigDecimal.valueOf(raw);
+        }
+        return BigDecimal.valueOf(Double.longBitsToDouble(raw));
+    }
+
+    /**
+     * 累加一个 cf_hourly cell：整行写入的打包列，或原子累加的 hour_NN 计数列
+     */
+    private void accumulateHourly(Cell cell, long[] vector) {
+        if (CellUtil.matchingQualifier(cell, HOURLY_VECTOR_BYTES)) {
+            if (!HourlyVectorUtils.decodeInto(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength(), vector)) {
+                log.warn("Invalid hourly vector length: {}", cell.getValueLength());
+            }
+            return;
+        }
+        
+        int hour = HourlyVectorUtils.parseLegacyHour(cell.getQualifierArray(), cell.getQualifierOffset(),
+                cell.getQualifierLength(), HOUR_PREFIX_BYTES);
+        if (hour >= 0 && cell.getValueLength() == Bytes.SIZEOF_LONG) {
+            vector[hour] += Bytes.toLong(cell.getValueArray(), cell.getValueOffset());
+        }
+    }
+
     private SalesData mapToSalesData(Result result) {
         SalesData.SalesDataBuilder builder = SalesData.builder();
         
@@ -255,44 +900,38 @@ public class SalesDataRepository extends BaseHBaseRepository {
         builder.saleCount(getLong(result, HBaseConfig.ColumnFamilies.CF_DAILY, HBaseConfig.Columns.SALES_SALE_COUNT));
         builder.refundCount(getLong(result, HBaseConfig.ColumnFamilies.CF_DAILY, HBaseConfig.Columns.SALES_REFUND_COUNT));
         
-        Double saleAmount = getDouble(result, HBaseConfig.ColumnFamilies.CF_DAILY, HBaseConfig.Columns.SALES_SALE_AMOUNT);
-        if (saleAmount != null) {
-            builder.saleAmount(BigDecimal.valueOf(saleAmount));
-        }
+        builder.saleAmount(getAmount(result, HBaseConfig.Columns.SALES_SALE_AMOUNT));
+        builder.refundAmount(getAmount(result, HBaseConfig.Columns.SALES_REFUND_AMOUNT));
         
-        Double refundAmount = getDouble(result, HBaseConfig.ColumnFamilies.CF_DAILY, HBaseConfig.Columns.SALES_REFUND_AMOUNT);
-        if (refundAmount != null) {
-            builder.refundAmount(BigDecimal.valueOf(refundAmount));
-        }
+        // 小时级数据与区域数据：单次遍历所有 cell
+        long[] hourlyVector = new long[HourlyVectorUtils.HOURS];
+        Map<String, Long> regionSales = new java.util.HashMap<>();
+        Map<String, BigDecimal> regionAmounts = new java.util.HashMap<>();
         
-        // 小时级数据
-        Map<Integer, Long> hourlySales = new java.util.HashMap<>();
-        for (int i = 0; i < 24; i++) {
-            String qualifier = "hour_" + String.format("%02d", i);
-            Long value = getLong(result, HBaseConfig.ColumnFamilies.CF_HOURLY, qualifier);
-            if (value != null && value > 0) {
-                hourlySales.put(i, value);
+        for (Cell cell : result.rawCells()) {
+            if (CellUtil.matchingFamily(cell, CF_HOURLY_BYTES)) {
+                accumulateHourly(cell, hourlyVector);
+            } else if (CellUtil.matchingFamily(cell, CF_REGION_BYTES)) {
+                String qualifier = Bytes.toString(cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength());
+                if (qualifier.startsWith("region_amount_")) {
+                    String region = qualifier.substring(14); // 去掉"region_amount_"前缀
+                    double value = Bytes.toDouble(cell.getValueArray(), cell.getValueOffset());
+                    regionAmounts.put(region, BigDecimal.valueOf(value));
+                } else if (qualifier.startsWith("region_")) {
+                    String region = qualifier.substring(7); // 去掉"region_"前缀
+                    long value = Bytes.toLong(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+                    regionSales.put(region, value);
+                }
             }
         }
-        builder.hourlySales(hourlySales);
         
-        // 区域销售数据
-        Map<String, Long> regionSales = new java.util.HashMap<>();
-        Map<String, BigDecimal> regionAmounts = new java.util.HashMap<>();
-        
-        // 扫描所有区域相关的列
-        for (org.apache.hadoop.hbase.Cell cell : result.rawCells()) {
-            String qualifier = Bytes.toString(CellUtil.cloneQualifier(cell));
-            if (qualifier.startsWith("region_") && !qualifier.startsWith("region_amount_")) {
-                String region = qualifier.substring(7); // 去掉"region_"前缀
-                Long value = Bytes.toLong(CellUtil.cloneValue(cell));
-                regionSales.put(region, value);
-            } else if (qualifier.startsWith("region_amount_")) {
-                String region = qualifier.substring(14); // 去掉"region_amount_"前缀
-                Double value = Bytes.toDouble(CellUtil.cloneValue(cell));
-                regionAmounts.put(region, BigDecimal.valueOf(value));
+        Map<Integer, Long> hourlySales = new java.util.HashMap<>();
+        for (int hour = 0; hour < HourlyVectorUtils.HOURS; hour++) {
+            if (hourlyVector[hour] > 0) {
+                hourlySales.put(hour, hourlyVector[hour]);
             }
         }
+        builder.hourlySales(hourlySales);
         
         builder.regionSales(regionSales);
         builder.regionAmounts(regionAmounts);
@@ -304,6 +943,28 @@ public class SalesDataRepository extends BaseHBaseRepository {
         return salesData;
     }
 
+    /**
+     * 区间聚合结果（单列）
+     */
+    @lombok.Data
+    @lombok.Builder
+    public static class RangeAggregate {
+        private String column;
+        private long sum;
+        private long count;
+        private Long min;
+        private Long max;
+    }
+
+    /**
+     * 表上未加载聚合协处理器，调用方可退化为客户端扫描
+     */
+    public static class CoprocessorUnavailableException extends IOException {
+        public CoprocessorUnavailableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
     private String formatDate(LocalDate date) {
         if (date == null) {
             return null;
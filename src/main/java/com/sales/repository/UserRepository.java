@@ -1,6 +1,7 @@
 package com.sales.repository;
 
 import com.sales.config.HBaseConfig;
+import com.sales.entity.CursorPage;
 import com.sales.entity.User;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.hadoop.hbase.TableName;
@@ -17,6 +18,8 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 @Slf4j
 @Repository
@@ -142,6 +145,13 @@ public class UserRepository extends BaseHBaseRepository {
     }
 
     public List<User> findByStatus(Integer status, int limit) throws IOException {
+        return findByStatus(status, null, limit).getItems();
+    }
+
+    /**
+     * 按行键顺序分页读取，cursor 为上一页返回的 nextCursor（首页传 null）
+     */
+    public CursorPage<User> findByStatus(Integer status, String cursor, int limit) throws IOException {
         Scan scan = createScan();
         
         // 添加状态过滤器
@@ -153,19 +163,18 @@ public class UserRepository extends BaseHBaseRepository {
         );
         
         scan.setFilter(statusFilter);
-        scan.setLimit(limit);
-        
-        List<Result> results = scanData(TABLE_NAME, scan);
-        List<User> users = new ArrayList<>();
-        
-        for (Result result : results) {
-            users.add(mapToUser(result));
-        }
-        
-        return users;
+
+        return scanPage(TABLE_NAME, scan, cursor, limit).map(this::mapToUser);
     }
 
     public List<User> findByLevel(Integer level, int limit) throws IOException {
+        return findByLevel(level, null, limit).getItems();
+    }
+
+    /**
+     * 按行键顺序分页读取，cursor 为上一页返回的 nextCursor（首页传 null）
+     */
+    public CursorPage<User> findByLevel(Integer level, String cursor, int limit) throws IOException {
         Scan scan = createScan();
         
         // 添加等级过滤器
@@ -177,16 +186,8 @@ public class UserRepository extends BaseHBaseRepository {
         );
         
         scan.setFilter(levelFilter);
-        scan.setLimit(limit);
-        
-        List<Result> results = scanData(TABLE_NAME, scan);
-        List<User> users = new ArrayList<>();
-        
-        for (Result result : results) {
-            users.add(mapToUser(result));
-        }
-        
-        return users;
+
+        return scanPage(TABLE_NAME, scan, cursor, limit).map(this::mapToUser);
     }
 
     public void updateLoginInfo(String userId, String loginIp) throws IOException {
@@ -235,6 +236,55 @@ public class UserRepository extends BaseHBaseRepository {
                             amount != null ? amount.longValue() : 0L);
     }
 
+    /**
+     * 按 Region 并行统计各（状态, 等级）组合的用户数，键为 "状态:等级"；只投影状态与等级两列
+     */
+    public Map<String, Long> countAllByStatusAndLevel() throws IOException {
+        Scan scan = createScan();
+        scan.addColumn(Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_BASE), Bytes.toBytes(HBaseConfig.Columns.USER_STATUS));
+        scan.addColumn(Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_ACCOUNT), Bytes.toBytes(HBaseConfig.Columns.USER_LEVEL));
+        return countByRegion(TABLE_NAME, scan, result -> {
+            Integer status = getInteger(result, HBaseConfig.ColumnFamilies.CF_BASE, HBaseConfig.Columns.USER_STATUS);
+            Integer level = getInteger(result, HBaseConfig.ColumnFamilies.CF_ACCOUNT, HBaseConfig.Columns.USER_LEVEL);
+            return status != null && level != null ? status + ":" + level : null;
+        });
+    }
+
+    /**
+     * 写入用户稠密序号：仅当该用户尚无序号时写入（一次 checkAndMutate），返回是否写入成功
+     */
+    public boolean assignOrdinal(String userId, long ordinal) throws IOException {
+        Put put = createPut(userId);
+        addColumn(put, HBaseConfig.ColumnFamilies.CF_BASE, HBaseConfig.Columns.USER_ORDINAL, ordinal);
+        CheckAndMutate checkAndMutate = CheckAndMutate.newBuilder(Bytes.toBytes(userId))
+                .ifNotExists(Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_BASE), Bytes.toBytes(HBaseConfig.Columns.USER_ORDINAL))
+                .build(put);
+        try (Table table = getTable(TABLE_NAME)) {
+            return table.checkAndMutate(checkAndMutate).isSuccess();
+        }
+    }
+
+    /**
+     * 流式扫描全部用户，只投影分群索引需要的列（状态、等级、序号、最后登录时间）
+     */
+    public void scanForSegmentIndex(int caching, Consumer<User> consumer) throws IOException {
+        Scan scan = createScan();
+        byte[] base = Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_BASE);
+        scan.addColumn(base, Bytes.toBytes(HBaseConfig.Columns.USER_STATUS));
+        scan.addColumn(base, Bytes.toBytes(HBaseConfig.Columns.USER_ORDINAL));
+        scan.addColumn(Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_ACCOUNT), Bytes.toBytes(HBaseConfig.Columns.USER_LEVEL));
+        scan.addColumn(Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_BEHAVIOR), Bytes.toBytes(HBaseConfig.Columns.USER_LAST_LOGIN));
+        scan.setCaching(caching);
+        scan.setCacheBlocks(false);
+
+        try (Table table = getTable(TABLE_NAME);
+             ResultScanner scanner = table.getScanner(scan)) {
+            for (Result result : scanner) {
+                consumer.accept(mapToUser(result));
+            }
+        }
+    }
+
     public boolean existsById(String userId) throws IOException {
         Get get = createGet(userId);
         return exists(TABLE_NAME, get);
@@ -267,6 +317,7 @@ public class UserRepository extends BaseHBaseRepository {
         builder.birthday(parseDate(getString(result, HBaseConfig.ColumnFamilies.CF_BASE, HBaseConfig.Columns.USER_BIRTHDAY)));
         builder.registerTime(parseDateTime(getString(result, HBaseConfig.ColumnFamilies.CF_BASE, HBaseConfig.Columns.USER_REGISTER_TIME)));
         builder.status(getInteger(result, HBaseConfig.ColumnFamilies.CF_BASE, HBaseConfig.Columns.USER_STATUS));
+        builder.ordinal(getLong(result, HBaseConfig.ColumnFamilies.CF_BASE, HBaseConfig.Columns.USER_ORDINAL));
         
         // 账户信息
         builder.level(getInteger(result, HBaseConfig.ColumnFamilies.CF_ACCOUNT, HBaseConfig.Columns.USER_LEVEL));
@@ -0,0 +1,224 @@
+package com.sales.service;
+
+import com.sales.config.RedisConfig;
+import com.sales.entity.Product;
+import com.sales.entity.User;
+import com.sales.repository.ProductRepository;
+import com.sales.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 商品/用户聚合计数
+ *
+ * stats:product:counts 按商品状态计数，stats:user:counts 按“状态:等级”组合计数，统计接口只读这两个小 Hash，
+ * 与商品数、用户数无关。实体写入 HBase 成功后记录一次流转（旧分组减一、新分组加一），两步在同一个脚本里原子执行；
+ * 写入与计数之间失败、或绕过服务直接写表造成的偏差，由每日按 Region 并行的全量重算纠正。
+ * 重算写入 _initialized 标记；Hash 丢失后先到的流转只留下增量，读取时缺少标记即立即重算。
+ */
+@Slf4j
+@Service
+public class AggregateStatsService {
+
+    // KEYS: 计数 Hash；ARGV: 旧分组, 新分组（JSON 序列化，空串表示不存在）
+    private static final RedisScript<Long> TRANSITION_SCRIPT = new DefaultRedisScript<>(
+            "local old = cjson.decode(ARGV[1]) " +
+            "local new = cjson.decode(ARGV[2]) " +
+            "if old == new then return 0 end " +
+            "if old ~= '' then redis.call('hincrby', KEYS[1], old, -1) end " +
+            "if new ~= '' then redis.call('hincrby', KEYS[1], new, 1) end " +
+            "return 1", Long.class);
+
+    // 计数 Hash 的已初始化标记字段：Hash 丢失后先到的流转只写入增量，缺少该字段说明计数需要恢复
+    static final String INITIALIZED_FIELD = "_initialized";
+
+    // KEYS: 计数 Hash；ARGV: (字段, 重算开始前读到的值, 重算结果) 三元组，字段为 JSON 序列化
+    // 字段当前值仍等于重算开始前读到的值才写入重算结果，重算期间有流转的字段保留增量、留待下次重算；
+    // 写入已初始化标记，返回跳过的字段数
+    static final RedisScript<Long> COMPARE_AND_SET_SCRIPT = new DefaultRedisScript<>(
+            "local skipped = 0 " +
+            "for i = 1, #ARGV, 3 do " +
+            "  local field = cjson.decode(ARGV[i]) " +
+            "  if tonumber(redis.call('hget', KEYS[1], field) or '0') == tonumber(ARGV[i + 1]) then " +
+            "    redis.call('hset', KEYS[1], field, ARGV[i + 2]) " +
+            "  else " +
+            "    skipped = skipped + 1 " +
+            "  end " +
+            "end " +
+            "redis.call('hset', KEYS[1], '" + INITIALIZED_FIELD + "', 1) " +
+            "return skipped", Long.class);
+
+    @Autowired
+    private RedisService redisService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    /**
+     * 记录商品状态流转（新建商品 oldStatus 为 null，删除商品 newStatus 为 null）
+     */
+    public void recordProductTransition(Integer oldStatus, Integer newStatus) {
+        recordTransition(RedisConfig.RedisKeys.STATS_PRODUCT_COUNTS,
+                oldStatus != null ? String.valueOf(oldStatus) : "",
+                newStatus != null ? String.valueOf(newStatus) : "");
+    }
+
+    /**
+     * 记录用户状态/等级流转（新建用户旧值为 null，删除用户新值为 null）
+     */
+    public void recordUserTransition(Integer oldStatus, Integer oldLevel, Integer newStatus, Integer newLevel) {
+        recordTransition(RedisConfig.RedisKeys.STATS_USER_COUNTS,
+                userField(oldStatus, oldLevel), userField(newStatus, newLevel));
+    }
+
+    /**
+     * 各状态商品数；缺少已初始化标记（Hash 丢失后只有增量）时立即重算
+     */
+    public Map<Integer, Long> getProductCounts() throws IOException {
+        Map<Object, Object> entries = redisService.hgetAll(RedisConfig.RedisKeys.STATS_PRODUCT_COUNTS);
+        if (entries == null || !entries.containsKey(INITIALIZED_FIELD)) {
+            return reconcileProducts();
+        }
+        Map<Integer, Long> counts = new HashMap<>();
+        parseCounts(RedisConfig.RedisKeys.STATS_PRODUCT_COUNTS, entries)
+                .forEach((field, count) -> counts.put(Integer.parseInt(field), count));
+        return counts;
+    }
+
+    /**
+     * 各“状态:等级”组合的用户数；缺少已初始化标记时立即重算
+     */
+    public Map<String, Long> getUserCounts() throws IOException {
+        Map<Object, Object> entries = redisService.hgetAll(RedisConfig.RedisKeys.STATS_USER_COUNTS);
+        if (entries == null || !entries.containsKey(INITIALIZED_FIELD)) {
+            return reconcileUsers();
+        }
+        return parseCounts(RedisConfig.RedisKeys.STATS_USER_COUNTS, entries);
+    }
+
+    /**
+     * 全量重算商品计数并覆盖 Redis；所有状态都写入（含 0），空表也不会反复重算
+     */
+    public Map<Integer, Long> reconcileProducts() throws IOException {
+        Map<String, Long> baseline = readRedisCounts(RedisConfig.RedisKeys.STATS_PRODUCT_COUNTS);
+        Map<Integer, Long> actual = productRepository.countAllByStatus();
+        Map<Integer, Long> counts = new HashMap<>();
+        Map<String, Long> fields = new HashMap<>();
+        for (Product.Status status : Product.Status.values()) {
+            long count = actual.getOrDefault(status.getCode(), 0L);
+            counts.put(status.getCode(), count);
+            fields.put(String.valueOf(status.getCode()), count);
+        }
+        overwrite(RedisConfig.RedisKeys.STATS_PRODUCT_COUNTS, baseline, fields);
+        return counts;
+    }
+
+    /**
+     * 全量重算用户计数并覆盖 Redis；所有状态与等级的组合都写入（含 0）
+     */
+    public Map<String, Long> reconcileUsers() throws IOException {
+        Map<String, Long> baseline = readRedisCounts(RedisConfig.RedisKeys.STATS_USER_COUNTS);
+        Map<String, Long> actual = userRepository.countAllByStatusAndLevel();
+        Map<String, Long> fields = new HashMap<>();
+        for (User.Status status : User.Status.values()) {
+            for (User.Level level : User.Level.values()) {
+                String field = userField(status.getCode(), level.getCode());
+                fields.put(field, actual.getOrDefault(field, 0L));
+            }
+        }
+        overwrite(RedisConfig.RedisKeys.STATS_USER_COUNTS, baseline, fields);
+        return fields;
+    }
+
+    /**
+     * 定时重算（每日凌晨3点15分，错开订单状态对账）
+     */
+    @Scheduled(cron = "0 15 3 * * ?")
+    public void scheduledReconcile() {
+        try {
+            reconcileProducts();
+            reconcileUsers();
+        } catch (Exception e) {
+            log.error("Scheduled product/user stats reconciliation failed", e);
+        }
+    }
+
+    private void recordTransition(String key, String oldField, String newField) {
+        if (oldField.equals(newField)) {
+            return;
+        }
+        if (redisService.execute(TRANSITION_SCRIPT, Collections.singletonList(key), oldField, newField) == null) {
+            log.warn("Failed to record stats transition, corrected at next reconcile: key={}, {} -> {}",
+                    key, oldField, newField);
+        }
+    }
+
+    /**
+     * 按重算开始前读到的 baseline 逐字段比较后覆盖；Redis 中已不属于任何分组的字段归零
+     */
+    private void overwrite(String key, Map<String, Long> baseline, Map<String, Long> actual) {
+        Map<String, Long> target = new HashMap<>(actual);
+        for (String field : baseline.keySet()) {
+            target.putIfAbsent(field, 0L);
+        }
+
+        List<Object> args = new ArrayList<>(target.size() * 3);
+        for (Map.Entry<String, Long> entry : target.entrySet()) {
+            long current = baseline.getOrDefault(entry.getKey(), 0L);
+            if (!baseline.isEmpty() && current != entry.getValue()) {
+                log.warn("Stats count drift corrected: key={}, field={}, redis={}, actual={}",
+                        key, entry.getKey(), current, entry.getValue());
+            }
+            args.add(entry.getKey());
+            args.add(current);
+            args.add(entry.getValue());
+        }
+
+        Long skipped = redisService.execute(COMPARE_AND_SET_SCRIPT, Collections.singletonList(key), args.toArray());
+        if (skipped == null) {
+            log.warn("Failed to overwrite stats counts, retried at next reconcile: key={}", key);
+        } else if (skipped > 0) {
+            log.info("Stats counts changed during reconcile, left for next run: key={}, fields={}", key, skipped);
+        }
+    }
+
+    private Map<String, Long> readRedisCounts(String key) {
+        return parseCounts(key, redisService.hgetAll(key));
+    }
+
+    private Map<String, Long> parseCounts(String key, Map<Object, Object> entries) {
+        Map<String, Long> counts = new HashMap<>();
+        if (entries == null) {
+            return counts;
+        }
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            if (INITIALIZED_FIELD.equals(entry.getKey())) {
+                continue;
+            }
+            try {
+                counts.put(String.valueOf(entry.getKey()), Long.parseLong(String.valueOf(entry.getValue())));
+            } catch (NumberFormatException e) {
+                log.warn("Invalid stats count entry: {} {}={}", key, entry.getKey(), entry.getValue());
+            }
+        }
+        return counts;
+    }
+
+    private static String userField(Integer status, Integer level) {
+        return status != null && level != null ? status + ":" + level : "";
+    }
+}
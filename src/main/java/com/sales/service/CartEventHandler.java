@@ -0,0 +1,38 @@
+package com.sales.service;
+
+import com.sales.entity.Order;
+import com.sales.entity.OrderEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+
+/**
+ * 支付事件 -> 清空用户购物车，并清除该订单的结算标记（购物车清空后才允许再次结算）
+ */
+@Slf4j
+@Service
+public class CartEventHandler implements OrderEventHandler {
+
+    @Autowired
+    private CartService cartService;
+
+    @Override
+    public String getName() {
+        return "cart";
+    }
+
+    @Override
+    public boolean supports(OrderEvent.Type type) {
+        return type == OrderEvent.Type.PAID;
+    }
+
+    @Override
+    public void handle(OrderEvent event, Order order) throws IOException {
+        if (order != null && order.getUserId() != null) {
+            cartService.clearCart(order.getUserId());
+            cartService.clearCheckoutMarker(order.getUserId(), order.getOrderId());
+        }
+    }
+}
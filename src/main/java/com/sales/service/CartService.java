@@ -6,137 +6,258 @@ import com.sales.entity.CartItem;
 import com.sales.entity.Product;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * 用户购物车（Redis Hash cart:{userId}）
+ *
+ * 购物车项为紧凑编码 "数量|选中(1/0)|加入时间秒"，旧版 JSON 值仍可读取，下次修改时改写为紧凑编码。
+ * _count 字段为商品总件数，与购物车项在同一脚本中原子维护，角标数量即一次 HGET。
+ * 批量加入/修改为一次库存脚本 + 一次购物车脚本；读取购物车为 HGETALL + 一次商品 multi-get。
+ */
 @Slf4j
 @Service
 public class CartService {
 
+    /**
+     * 商品总件数字段，遍历购物车项时需跳过
+     */
+    public static final String COUNT_FIELD = "_count";
+
+    private static final long CART_EXPIRE_TIME = 7; // 7天
+
+    private static final int MODE_SET = 0;
+    private static final int MODE_ADD = 1;
+
+    private static final int SELECTED_KEEP = -1;
+
+    // 旧版购物车项为 JSON
+    private static final ObjectMapper LEGACY_MAPPER = new ObjectMapper();
+
+    // 解析购物车项（紧凑编码或旧版 JSON），返回 数量, 选中, 加入时间
+    private static final String PARSE_FUNCTION =
+            "local function parse(raw) " +
+            "  if not raw then return 0, 1, nil end " +
+            "  local ok, v = pcall(cjson.decode, raw) " +
+            "  if not ok or type(v) ~= 'string' then return 0, 1, nil end " +
+            "  if string.sub(v, 1, 1) == '{' then " +
+            "    local okd, d = pcall(cjson.decode, v) " +
+            "    if not okd or type(d) ~= 'table' then return 0, 1, nil end " +
+            "    local t = type(d.addTime) == 'number' and string.format('%d', d.addTime) or nil " +
+            "    return tonumber(d.quantity) or 0, d.selected == false and 0 or 1, t " +
+            "  end " +
+            "  local q, s, t = string.match(v, '^(%d+)|(%d)|(%d*)$') " +
+            "  if t == '' then t = nil end " +
+            "  return tonumber(q) or 0, tonumber(s) or 1, t " +
+            "end ";
+
+    // _count 缺失（旧版购物车）时按现有各项汇总
+    private static final String ENSURE_COUNT =
+            "if redis.call('hexists', KEYS[1], '" + COUNT_FIELD + "') == 0 then " +
+            "  local total = 0 " +
+            "  local all = redis.call('hgetall', KEYS[1]) " +
+            "  for i = 1, #all, 2 do total = total + parse(all[i + 1]) end " +
+            "  redis.call('hset', KEYS[1], '" + COUNT_FIELD + "', total) " +
+            "end ";
+
+    // KEYS: 购物车
+    // ARGV: 过期秒数, 模式（0 设置数量 / 1 增加数量）, 当前秒, 之后为 (商品ID, 数量, 选中 1/0/-1 保持) 三元组；商品ID 为 JSON 序列化
+    // 数量结果 <= 0 时删除该项。_count 缺失（旧版购物车）时先按现有各项汇总。
+    // 返回 {商品总件数, 旧数量1, 新数量1, 旧数量2, 新数量2, ...}
+    private static final RedisScript<List> CART_APPLY_SCRIPT = new DefaultRedisScript<>(
+            PARSE_FUNCTION +
+            ENSURE_COUNT +
+            "local mode = tonumber(ARGV[2]) " +
+            "local delta = 0 " +
+            "local result = {0} " +
+            "for i = 4, #ARGV, 3 do " +
+            "  local pid = cjson.decode(ARGV[i]) " +
+            "  local raw = redis.call('hget', KEYS[1], pid) " +
+            "  local oldQty, oldSel, addTime = parse(raw) " +
+            "  local qty = tonumber(ARGV[i + 1]) " +
+            "  if mode == 1 then qty = oldQty + qty end " +
+            "  if qty <= 0 then " +
+            "    qty = 0 " +
+            "    if raw then redis.call('hdel', KEYS[1], pid) end " +
+            "  else " +
+            "    local sel = tonumber(ARGV[i + 2]) " +
+            "    if sel < 0 then sel = oldSel end " +
+            "    redis.call('hset', KEYS[1], pid, cjson.encode(qty .. '|' .. sel .. '|' .. (addTime or ARGV[3]))) " +
+            "  end " +
+            "  delta = delta + qty - oldQty " +
+            "  result[#result + 1] = oldQty " +
+            "  result[#result + 1] = qty " +
+            "end " +
+            "result[1] = redis.call('hincrby', KEYS[1], '" + COUNT_FIELD + "', delta) " +
+            "if result[1] <= 0 and redis.call('hlen', KEYS[1]) <= 1 then " +
+            "  redis.call('del', KEYS[1]) " +
+            "else " +
+            "  redis.call('expire', KEYS[1], ARGV[1]) " +
+            "end " +
+            "return result", List.class);
+
+    // 取消订单时释放购物车持有的库存：各购物车项扣减 min(订单数量, 购物车数量) 并归还同等库存（扣到 0 删除该项），
+    // 与释放标记、清除结算标记在同一脚本中完成；下单后再加入购物车的数量保留在购物车中
+    // KEYS: 购物车, 释放标记, stock:safe, stock:margin, stock:dirty, queue:stock:alert, 结算标记, 之后为各商品库存键
+    // ARGV: 标记过期秒数, 当前毫秒, 购物车过期秒数, 订单号, 之后为 (商品ID, 订单数量) 对；商品ID 为 JSON 序列化，顺序与库存键一致
+    // 返回归还的总件数；已释放过返回 -1
+    private static final RedisScript<Long> CART_RELEASE_SCRIPT = new DefaultRedisScript<>(
+            PARSE_FUNCTION +
+            StockService.TRACK_MARGIN_FUNCTION +
+            "if not redis.call('set', KEYS[2], '1', 'NX', 'EX', ARGV[1]) then return -1 end " +
+            "if redis.call('get', KEYS[7]) == ARGV[4] then redis.call('del', KEYS[7]) end " +
+            "if redis.call('exists', KEYS[1]) == 0 then return 0 end " +
+            ENSURE_COUNT +
+            "local released = 0 " +
+            "for i = 5, #ARGV, 2 do " +
+            "  local member = ARGV[i] " +
+            "  local pid = cjson.decode(member) " +
+            "  local raw = redis.call('hget', KEYS[1], pid) " +
+            "  if raw then " +
+            "    local qty, sel, addTime = parse(raw) " +
+            "    local take = math.min(qty, tonumber(ARGV[i + 1])) " +
+            "    if qty - take <= 0 then " +
+            "      redis.call('hdel', KEYS[1], pid) " +
+            "    else " +
+            "      redis.call('hset', KEYS[1], pid, cjson.encode((qty - take) .. '|' .. sel .. '|' .. (addTime or ''))) " +
+            "    end " +
+            "    if take > 0 then " +
+            "      local stockKey = KEYS[8 + (i - 5) / 2] " +
+            "      local stock = tonumber(redis.call('get', stockKey) or '0') + take " +
+            "      redis.call('set', stockKey, stock) " +
+            "      redis.call('zadd', KEYS[5], ARGV[2], member) " +
+            "      trackMargin(KEYS[4], KEYS[6], pid, member, stock, redis.call('hget', KEYS[3], pid), ARGV[2]) " +
+            "      released = released + take " +
+            "    end " +
+            "  end " +
+            "end " +
+            "local count = redis.call('hincrby', KEYS[1], '" + COUNT_FIELD + "', -released) " +
+            "if count <= 0 and redis.call('hlen', KEYS[1]) <= 1 then " +
+            "  redis.call('del', KEYS[1]) " +
+            "else " +
+            "  redis.call('expire', KEYS[1], ARGV[3]) " +
+            "end " +
+            "return released", Long.class);
+
+    // 仅当结算标记仍指向该订单时清除，不影响之后的新结算
+    // KEYS: 结算标记  ARGV: 订单号
+    private static final RedisScript<Long> CHECKOUT_MARKER_CLEAR_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) end " +
+            "return 0", Long.class);
+
+    private static final long RELEASE_MARKER_EXPIRE_DAYS = 7;
+
     @Autowired
     private RedisService redisService;
-    
+
     @Autowired
     private ProductService productService;
-    
+
     @Autowired
     private StockService stockService;
-    
-    private final ObjectMapper objectMapper = new ObjectMapper();
-
-    private static final long CART_EXPIRE_TIME = 7; // 7天
 
     /**
      * 添加商品到购物车
      */
     public void addToCart(String userId, CartItem cartItem) throws IOException {
-        String cartKey = RedisConfig.RedisKeys.CART_PREFIX + userId;
-        
-        // 检查商品是否存在
-        Product product = productService.getProductById(cartItem.getProductId());
-        if (product == null || product.getStatus() != 1) {
-            throw new RuntimeException("商品不存在或已下架");
-        }
-        
-        // 检查购物车中是否已存在该商品
-        int currentQuantity = getProductQuantity(userId, cartItem.getProductId());
-        int totalQuantity = currentQuantity + cartItem.getQuantity();
-        
+        addItems(userId, Collections.singletonList(cartItem));
+    }
+
+    /**
+     * 批量加入购物车（数量累加），一次商品 multi-get + 一次库存脚本 + 一次购物车脚本，全部成功或全部不变
+     *
+     * @return 购物车商品总件数
+     */
+    public int addItems(String userId, List<CartItem> items) throws IOException {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        Map<String, Boolean> selected = new HashMap<>();
+        for (CartItem item : items) {
+            if (item.getProductId() == null || item.getQuantity() == null || item.getQuantity() <= 0) {
+                throw new IllegalArgumentException("商品ID和数量必须有效");
+            }
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+            if (item.getSelected() != null) {
+                selected.put(item.getProductId(), item.getSelected());
+            }
+        }
+        if (quantities.isEmpty()) {
+            throw new IllegalArgumentException("没有要加入购物车的商品");
+        }
+        checkAvailable(quantities.keySet());
+
         // 立即扣减库存（新增部分）
-        if (!stockService.deductStock(cartItem.getProductId(), cartItem.getQuantity())) {
-            throw new RuntimeException("库存不足，无法添加到购物车");
+        Map<String, Integer> stockDeltas = new LinkedHashMap<>();
+        quantities.forEach((productId, quantity) -> stockDeltas.put(productId, -quantity));
+        if (!stockService.batchChangeStock(stockDeltas)) {
+            throw new IllegalStateException("库存不足，无法添加到购物车");
         }
-        
-        try {
-            // 构建购物车项JSON
-            CartItemData cartItemData = CartItemData.builder()
-                    .productId(cartItem.getProductId())
-                    .quantity(totalQuantity)
-                    .addTime(System.currentTimeMillis() / 1000)
-                    .selected(cartItem.getSelected() != null ? cartItem.getSelected() : true)
-                    .build();
-            
-            String cartItemJson = objectMapper.writeValueAsString(cartItemData);
-            
-            // 添加到Redis Hash
-            redisService.hset(cartKey, cartItem.getProductId(), cartItemJson);
-            
-            // 设置过期时间
-            redisService.expire(cartKey, CART_EXPIRE_TIME, TimeUnit.DAYS);
-            
-            log.info("Added to cart: userId={}, productId={}, quantity={}, totalQuantity={}", 
-                    userId, cartItem.getProductId(), cartItem.getQuantity(), totalQuantity);
-        } catch (Exception e) {
+
+        List<Object> result = apply(userId, MODE_ADD, quantities, selected);
+        if (result == null) {
             // 回滚库存
-            stockService.increaseStock(cartItem.getProductId(), cartItem.getQuantity());
-            log.error("Failed to add to cart, rolled back stock", e);
-            throw new RuntimeException("添加购物车失败", e);
+            stockService.batchChangeStock(quantities);
+            throw new RuntimeException("添加购物车失败");
         }
+
+        log.info("Added to cart: userId={}, products={}, totalCount={}", userId, quantities.size(), result.get(0));
+        return asInt(result.get(0));
     }
 
     /**
-     * 获取用户购物车
+     * 获取用户购物车：HGETALL + 一次商品 multi-get，不存在或已下架的商品批量移除并归还库存
      */
     public List<CartItem> getCart(String userId) {
         String cartKey = RedisConfig.RedisKeys.CART_PREFIX + userId;
-        Map<Object, Object> cartMap = redisService.hgetAll(cartKey);
-        
-        List<CartItem> cartItems = new ArrayList<>();
-        if (cartMap != null) {
-            for (Map.Entry<Object, Object> entry : cartMap.entrySet()) {
-                String productId = (String) entry.getKey();
-                String cartItemJson = (String) entry.getValue();
-                
-                try {
-                    // 解析JSON
-                    CartItemData cartItemData = objectMapper.readValue(cartItemJson, CartItemData.class);
-                    
-                    // 获取商品信息
-                    Product product = productService.getProductById(productId);
-                    if (product == null || product.getStatus() != 1) {
-                        // 商品不存在或已下架，从购物车中移除
-                        removeFromCart(userId, productId);
-                        continue;
-                    }
-                    
-                    // 检查库存
-                    int currentStock = stockService.getStock(productId);
-                    if (currentStock < cartItemData.getQuantity()) {
-                        // 库存不足，调整数量
-                        if (currentStock > 0) {
-                            cartItemData.setQuantity(currentStock);
-                            updateQuantity(userId, productId, currentStock);
-                        } else {
-                            // 库存为0，移除商品
-                            removeFromCart(userId, productId);
-                            continue;
-                        }
-                    }
-                    
-                    CartItem cartItem = CartItem.builder()
-                            .userId(userId)
-                            .productId(productId)
-                            .quantity(cartItemData.getQuantity())
-                            .selected(cartItemData.getSelected())
-                            .productName(product.getName())
-                            .price(product.getPrice())
-                            .image(product.getImages() != null && !product.getImages().isEmpty() ? product.getImages().get(0) : null)
-                            .build();
-                    cartItems.add(cartItem);
-                } catch (Exception e) {
-                    log.error("Failed to parse cart item: {}", cartItemJson, e);
-                    // 移除无效数据
-                    removeFromCart(userId, productId);
-                }
+        Map<String, CartItemData> entries = decodeAll(userId, redisService.hgetAll(cartKey));
+        if (entries.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<String, Product> products;
+        try {
+            products = productService.getProductsByIds(new ArrayList<>(entries.keySet()));
+        } catch (IOException e) {
+            log.error("Failed to load cart products: userId={}", userId, e);
+            throw new RuntimeException("获取购物车商品失败", e);
+        }
+
+        List<CartItem> cartItems = new ArrayList<>(entries.size());
+        List<String> unavailable = new ArrayList<>();
+        for (Map.Entry<String, CartItemData> entry : entries.entrySet()) {
+            String productId = entry.getKey();
+            CartItemData data = entry.getValue();
+            Product product = products.get(productId);
+            if (product == null || product.getStatus() != 1) {
+                // 商品不存在或已下架，从购物车中移除
+                unavailable.add(productId);
+                continue;
             }
+            cartItems.add(CartItem.builder()
+                    .userId(userId)
+                    .productId(productId)
+                    .quantity(data.getQuantity())
+                    .selected(data.getSelected())
+                    .productName(product.getName())
+                    .price(product.getPrice())
+                    .image(product.getImages() != null && !product.getImages().isEmpty() ? product.getImages().get(0) : null)
+                    .build());
+        }
+        if (!unavailable.isEmpty()) {
+            removeItems(userId, unavailable);
         }
-        
+
         return cartItems;
     }
 
@@ -144,82 +265,159 @@ public class CartService {
      * 更新购物车商品数量
      */
     public void updateQuantity(String userId, String productId, Integer quantity) throws IOException {
+        Map<String, Integer> quantities = new HashMap<>();
+        quantities.put(productId, quantity != null ? quantity : 0);
+        updateItems(userId, quantities);
+    }
+
+    /**
+     * 批量设置购物车商品数量（数量 <= 0 删除），按差额扣减或归还库存，全部成功或全部不变
+     *
+     * @return 购物车商品总件数
+     */
+    public int updateItems(String userId, Map<String, Integer> quantities) throws IOException {
+        if (quantities == null || quantities.isEmpty()) {
+            throw new IllegalArgumentException("没有要修改的商品");
+        }
         String cartKey = RedisConfig.RedisKeys.CART_PREFIX + userId;
-        
-        // 检查商品是否存在
-        Product product = productService.getProductById(productId);
-        if (product == null || product.getStatus() != 1) {
-            throw new RuntimeException("商品不存在或已下架");
-        }
-        
-        // 获取当前数量
-        int currentQuantity = getProductQuantity(userId, productId);
-        
-        if (quantity <= 0) {
-            // 数量小于等于0，删除商品并归还全部库存
-            removeFromCart(userId, productId);
-            return;
-        } else {
-            // 计算数量变化
-            int quantityDiff = quantity - currentQuantity;
-            
-            if (quantityDiff > 0) {
-                // 增加数量，需要扣减库存
-                if (!stockService.deductStock(productId, quantityDiff)) {
-                    throw new RuntimeException("库存不足，无法增加数量");
-                }
-            } else if (quantityDiff < 0) {
-                // 减少数量，需要归还库存
-                stockService.increaseStock(productId, -quantityDiff);
-                log.info("Returned stock to inventory: productId={}, returnedQuantity={}", productId, -quantityDiff);
+        List<String> productIds = new ArrayList<>(quantities.keySet());
+        List<Object> current = redisService.hmget(cartKey, productIds);
+        if (current == null) {
+            throw new RuntimeException("读取购物车失败");
+        }
+
+        Map<String, Integer> targets = new LinkedHashMap<>();
+        Map<String, Integer> stockDeltas = new LinkedHashMap<>();
+        List<String> increased = new ArrayList<>();
+        for (int i = 0; i < productIds.size(); i++) {
+            String productId = productIds.get(i);
+            int target = Math.max(0, quantities.get(productId) != null ? quantities.get(productId) : 0);
+            CartItemData data = decode(current.get(i));
+            int diff = target - (data != null ? data.getQuantity() : 0);
+            targets.put(productId, target);
+            if (diff != 0) {
+                // 增加数量扣减库存，减少数量归还库存
+                stockDeltas.put(productId, -diff);
             }
-            
-            try {
-                // 更新数量
-                CartItemData cartItemData = CartItemData.builder()
-                        .productId(productId)
-                        .quantity(quantity)
-                        .addTime(System.currentTimeMillis() / 1000)
-                        .selected(true)
-                        .build();
-                
-                String cartItemJson = objectMapper.writeValueAsString(cartItemData);
-                redisService.hset(cartKey, productId, cartItemJson);
-            } catch (Exception e) {
-                // 回滚库存变化
-                if (quantityDiff > 0) {
-                    stockService.increaseStock(productId, quantityDiff);
-                } else if (quantityDiff < 0) {
-                    stockService.deductStock(productId, -quantityDiff);
-                }
-                log.error("Failed to update cart quantity, rolled back stock", e);
-                throw new RuntimeException("更新购物车数量失败", e);
+            if (diff > 0) {
+                increased.add(productId);
             }
         }
-        
-        log.info("Updated cart quantity: userId={}, productId={}, oldQuantity={}, newQuantity={}", 
-                userId, productId, currentQuantity, quantity);
+        if (!increased.isEmpty()) {
+            checkAvailable(increased);
+        }
+        if (!stockService.batchChangeStock(stockDeltas)) {
+            throw new IllegalStateException("库存不足，无法增加数量");
+        }
+
+        List<Object> result = apply(userId, MODE_SET, targets, Collections.emptyMap());
+        if (result == null) {
+            // 回滚库存变化
+            Map<String, Integer> rollback = new LinkedHashMap<>();
+            stockDeltas.forEach((productId, delta) -> rollback.put(productId, -delta));
+            stockService.batchChangeStock(rollback);
+            throw new RuntimeException("更新购物车数量失败");
+        }
+
+        log.info("Updated cart quantities: userId={}, products={}, totalCount={}", userId, targets.size(), result.get(0));
+        return asInt(result.get(0));
     }
 
     /**
      * 删除购物车商品
      */
     public void removeFromCart(String userId, String productId) {
-        String cartKey = RedisConfig.RedisKeys.CART_PREFIX + userId;
-        
-        // 获取当前商品数量以便归还库存
-        int currentQuantity = getProductQuantity(userId, productId);
-        
-        // 从购物车中移除商品
-        redisService.hdel(cartKey, productId);
-        
-        // 归还库存
-        if (currentQuantity > 0) {
-            stockService.increaseStock(productId, currentQuantity);
-            log.info("Returned stock to inventory: productId={}, quantity={}", productId, currentQuantity);
-        }
-        
-        log.info("Removed from cart: userId={}, productId={}, returnedQuantity={}", userId, productId, currentQuantity);
+        removeItems(userId, Collections.singletonList(productId));
+    }
+
+    /**
+     * 批量删除购物车商品：一次脚本删除并取回各项实际数量，再一次脚本归还库存
+     */
+    public void removeItems(String userId, Collection<String> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> zeros = new LinkedHashMap<>();
+        for (String productId : productIds) {
+            zeros.put(productId, 0);
+        }
+        List<Object> result = apply(userId, MODE_SET, zeros, Collections.emptyMap());
+        if (result == null) {
+            log.error("Failed to remove from cart: userId={}, productIds={}", userId, productIds);
+            return;
+        }
+
+        // 归还库存（按脚本取回的实际数量）
+        Map<String, Integer> returned = new LinkedHashMap<>();
+        int i = 1;
+        for (String productId : zeros.keySet()) {
+            int removed = asInt(result.get(i));
+            if (removed > 0) {
+                returned.put(productId, removed);
+            }
+            i += 2;
+        }
+        if (!returned.isEmpty() && !stockService.batchChangeStock(returned)) {
+            log.error("Failed to return stock for removed cart items: userId={}, items={}", userId, returned);
+        }
+
+        log.info("Removed from cart: userId={}, returned={}", userId, returned);
+    }
+
+    /**
+     * 订单取消后释放其占用的库存：订单商品对应的购物车项扣减订单数量（不超过购物车现有数量）并归还同等库存，
+     * 同时清除该订单的结算标记，按订单号只执行一次（同一脚本原子完成）
+     *
+     * @param quantities 商品ID -> 订单数量
+     * @return 归还的总件数，已释放过返回 0
+     * @throws IOException Redis 不可用，调用方应重试
+     */
+    public int releaseForCancelledOrder(String orderId, String userId, Map<String, Integer> quantities) throws IOException {
+        if (userId == null || quantities == null || quantities.isEmpty()) {
+            return 0;
+        }
+        List<String> keys = new ArrayList<>(quantities.size() + 7);
+        keys.add(RedisConfig.RedisKeys.CART_PREFIX + userId);
+        keys.add(RedisConfig.RedisKeys.ORDER_STOCK_RELEASED_PREFIX + orderId);
+        keys.add(RedisConfig.RedisKeys.STOCK_SAFE);
+        keys.add(RedisConfig.RedisKeys.STOCK_MARGIN);
+        keys.add(RedisConfig.RedisKeys.STOCK_DIRTY);
+        keys.add(RedisConfig.RedisKeys.QUEUE_STOCK_ALERT);
+        keys.add(RedisConfig.RedisKeys.CART_CHECKOUT_PREFIX + userId);
+        List<Object> args = new ArrayList<>(quantities.size() * 2 + 4);
+        args.add(TimeUnit.DAYS.toSeconds(RELEASE_MARKER_EXPIRE_DAYS));
+        args.add(System.currentTimeMillis());
+        args.add(TimeUnit.DAYS.toSeconds(CART_EXPIRE_TIME));
+        args.add(orderId);
+        for (Map.Entry<String, Integer> entry : quantities.entrySet()) {
+            keys.add(RedisConfig.RedisKeys.STOCK_PREFIX + entry.getKey());
+            args.add(entry.getKey());
+            args.add(Math.max(0, entry.getValue() != null ? entry.getValue() : 0));
+        }
+
+        Long released = redisService.execute(CART_RELEASE_SCRIPT, keys, args.toArray());
+        if (released == null) {
+            throw new IOException("Failed to release stock for cancelled order: " + orderId);
+        }
+        if (released < 0) {
+            log.info("Stock already released for cancelled order: {}", orderId);
+            return 0;
+        }
+        log.info("Released stock for cancelled order: orderId={}, userId={}, quantity={}", orderId, userId, released);
+        return released.intValue();
+    }
+
+    /**
+     * 清除订单的结算标记（标记已指向其他订单时不变），之后购物车可再次结算
+     *
+     * @throws IOException Redis 不可用，调用方应重试
+     */
+    public void clearCheckoutMarker(String userId, String orderId) throws IOException {
+        Long cleared = redisService.execute(CHECKOUT_MARKER_CLEAR_SCRIPT,
+                Collections.singletonList(RedisConfig.RedisKeys.CART_CHECKOUT_PREFIX + userId), orderId);
+        if (cleared == null) {
+            throw new IOException("Failed to clear checkout marker: userId=" + userId + ", orderId=" + orderId);
+        }
     }
 
     /**
@@ -227,47 +425,37 @@ public class CartService {
      */
     public void clearCart(String userId) {
         String cartKey = RedisConfig.RedisKeys.CART_PREFIX + userId;
-        
-        // 获取购物车中所有商品以便归还库存
-        List<CartItem> cartItems = getCart(userId);
-        
-        // 归还所有商品的库存
-        for (CartItem item : cartItems) {
-            if (item.getQuantity() > 0) {
-                stockService.increaseStock(item.getProductId(), item.getQuantity());
-                log.info("Returned stock to inventory: productId={}, quantity={}", 
-                        item.getProductId(), item.getQuantity());
+        Map<Object, Object> cartMap = redisService.hgetAll(cartKey);
+        List<String> productIds = new ArrayList<>();
+        if (cartMap != null) {
+            for (Object field : cartMap.keySet()) {
+                if (!COUNT_FIELD.equals(field)) {
+                    productIds.add(String.valueOf(field));
+                }
             }
         }
-        
-        // 清空购物车
-        redisService.del(cartKey);
-        
-        log.info("Cleared cart: userId={}, returnedItemsCount={}", userId, cartItems.size());
+
+        // 删除各项并归还库存；最后一项删除后脚本同时删除购物车键
+        removeItems(userId, productIds);
+
+        log.info("Cleared cart: userId={}, itemsCount={}", userId, productIds.size());
     }
 
     /**
-     * 获取购物车商品数量
+     * 获取购物车商品数量（_count 字段，一次 HGET）
      */
     public int getCartItemCount(String userId) {
         String cartKey = RedisConfig.RedisKeys.CART_PREFIX + userId;
-        Map<Object, Object> cartMap = redisService.hgetAll(cartKey);
-        
-        if (cartMap == null) {
-            return 0;
+        Object count = redisService.hget(cartKey, COUNT_FIELD);
+        if (count instanceof Number number) {
+            return Math.max(0, number.intValue());
         }
-        
+
+        // 尚未维护 _count 的旧版购物车，下次修改时由脚本补齐
         int totalCount = 0;
-        for (Object value : cartMap.values()) {
-            try {
-                String cartItemJson = (String) value;
-                CartItemData cartItemData = objectMapper.readValue(cartItemJson, CartItemData.class);
-                totalCount += cartItemData.getQuantity();
-            } catch (Exception e) {
-                log.error("Failed to parse cart item quantity: {}", value, e);
-            }
+        for (CartItemData data : decodeAll(userId, redisService.hgetAll(cartKey)).values()) {
+            totalCount += data.getQuantity();
         }
-        
         return totalCount;
     }
 
@@ -284,72 +472,136 @@ public class CartService {
      */
     public int getProductQuantity(String userId, String productId) {
         String cartKey = RedisConfig.RedisKeys.CART_PREFIX + userId;
-        String cartItemJson = (String) redisService.hget(cartKey, productId);
-        
-        if (cartItemJson == null) {
-            return 0;
-        }
-        
-        try {
-            CartItemData cartItemData = objectMapper.readValue(cartItemJson, CartItemData.class);
-            return cartItemData.getQuantity();
-        } catch (Exception e) {
-            log.error("Failed to parse cart item quantity: {}", cartItemJson, e);
-            return 0;
-        }
+        CartItemData data = decode(redisService.hget(cartKey, productId));
+        return data != null ? data.getQuantity() : 0;
     }
-    
+
     /**
-     * 从购物车创建订单项
+     * 从购物车创建订单项（商品名称与价格取自批量加载的购物车）
      */
-    public List<com.sales.entity.Order.OrderItem> createOrderItems(String userId) throws IOException {
-        List<CartItem> cartItems = getCart(userId);
+    public List<com.sales.entity.Order.OrderItem> createOrderItems(String userId) {
         List<com.sales.entity.Order.OrderItem> orderItems = new ArrayList<>();
-        
-        for (CartItem cartItem : cartItems) {
+        for (CartItem cartItem : getCart(userId)) {
             if (cartItem.getSelected() != null && cartItem.getSelected()) {
-                Product product = productService.getProductById(cartItem.getProductId());
-                if (product != null) {
-                    com.sales.entity.Order.OrderItem orderItem = new com.sales.entity.Order.OrderItem();
-                    orderItem.setProductId(cartItem.getProductId());
-                    orderItem.setProductName(product.getName());
-                    orderItem.setQuantity(cartItem.getQuantity());
-                    orderItem.setPrice(product.getPrice());
-                    orderItem.setAmount(product.getPrice().multiply(new java.math.BigDecimal(cartItem.getQuantity())));
-                    orderItems.add(orderItem);
-                }
+                com.sales.entity.Order.OrderItem orderItem = new com.sales.entity.Order.OrderItem();
+                orderItem.setProductId(cartItem.getProductId());
+                orderItem.setProductName(cartItem.getProductName());
+                orderItem.setQuantity(cartItem.getQuantity());
+                orderItem.setPrice(cartItem.getPrice());
+                orderItem.setAmount(cartItem.getSubtotal());
+                orderItems.add(orderItem);
             }
         }
-        
+
         return orderItems;
     }
-    
+
     /**
-     * 更新购物车商品选中状态
+     * 更新购物车商品选中状态（数量不变）
      */
     public void updateSelected(String userId, String productId, Boolean selected) {
-        String cartKey = RedisConfig.RedisKeys.CART_PREFIX + userId;
-        String cartItemJson = (String) redisService.hget(cartKey, productId);
-        
-        if (cartItemJson == null) {
+        Map<String, Integer> noChange = new HashMap<>();
+        noChange.put(productId, 0);
+        Map<String, Boolean> flags = new HashMap<>();
+        flags.put(productId, Boolean.TRUE.equals(selected));
+
+        List<Object> result = apply(userId, MODE_ADD, noChange, flags);
+        if (result == null) {
+            throw new RuntimeException("更新选中状态失败");
+        }
+        if (asInt(result.get(2)) == 0) {
             throw new RuntimeException("购物车中不存在该商品");
         }
-        
+
+        log.info("Updated cart selected status: userId={}, productId={}, selected={}",
+                userId, productId, selected);
+    }
+
+    /**
+     * 解码购物车项（紧凑编码或旧版 JSON），无法解析返回 null
+     */
+    public static CartItemData decode(Object value) {
+        if (value == null) {
+            return null;
+        }
+        String encoded = String.valueOf(value);
         try {
-            CartItemData cartItemData = objectMapper.readValue(cartItemJson, CartItemData.class);
-            cartItemData.setSelected(selected);
-            
-            String updatedJson = objectMapper.writeValueAsString(cartItemData);
-            redisService.hset(cartKey, productId, updatedJson);
-            
-            log.info("Updated cart selected status: userId={}, productId={}, selected={}", 
-                    userId, productId, selected);
+            if (encoded.startsWith("{")) {
+                CartItemData data = LEGACY_MAPPER.readValue(encoded, CartItemData.class);
+                return data.getQuantity() != null ? data : null;
+            }
+            String[] parts = encoded.split("\\|", -1);
+            return CartItemData.builder()
+                    .quantity(Integer.parseInt(parts[0]))
+                    .selected(parts.length < 2 || !"0".equals(parts[1]))
+                    .addTime(parts.length > 2 && !parts[2].isEmpty() ? Long.parseLong(parts[2]) : null)
+                    .build();
         } catch (Exception e) {
-            log.error("Failed to update cart selected status", e);
-            throw new RuntimeException("更新选中状态失败", e);
+            return null;
+        }
+    }
+
+    /**
+     * 执行购物车脚本，Redis 不可用时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object> apply(String userId, int mode, Map<String, Integer> quantities, Map<String, Boolean> selected) {
+        String cartKey = RedisConfig.RedisKeys.CART_PREFIX + userId;
+        List<Object> args = new ArrayList<>(quantities.size() * 3 + 3);
+        args.add(TimeUnit.DAYS.toSeconds(CART_EXPIRE_TIME));
+        args.add(mode);
+        args.add(System.currentTimeMillis() / 1000);
+        for (Map.Entry<String, Integer> entry : quantities.entrySet()) {
+            Boolean flag = selected.get(entry.getKey());
+            args.add(entry.getKey());
+            args.add(entry.getValue());
+            args.add(flag == null ? SELECTED_KEEP : (flag ? 1 : 0));
+        }
+        return redisService.execute(CART_APPLY_SCRIPT, Collections.singletonList(cartKey), args.toArray());
+    }
+
+    /**
+     * 校验商品存在且已上架（一次 multi-get）
+     */
+    private void checkAvailable(Collection<String> productIds) throws IOException {
+        Map<String, Product> products = productService.getProductsByIds(new ArrayList<>(productIds));
+        List<String> unavailable = new ArrayList<>();
+        for (String productId : productIds) {
+            Product product = products.get(productId);
+            if (product == null || product.getStatus() != 1) {
+                unavailable.add(productId);
+            }
+        }
+        if (!unavailable.isEmpty()) {
+            throw new IllegalArgumentException("商品不存在或已下架: " + unavailable);
+        }
+    }
+
+    private Map<String, CartItemData> decodeAll(String userId, Map<Object, Object> cartMap) {
+        Map<String, CartItemData> entries = new LinkedHashMap<>();
+        if (cartMap == null) {
+            return entries;
+        }
+        for (Map.Entry<Object, Object> entry : cartMap.entrySet()) {
+            String productId = String.valueOf(entry.getKey());
+            if (COUNT_FIELD.equals(productId)) {
+                continue;
+            }
+            CartItemData data = decode(entry.getValue());
+            if (data == null) {
+                log.error("Failed to parse cart item: userId={}, productId={}, value={}", userId, productId, entry.getValue());
+                continue;
+            }
+            data.setProductId(productId);
+            entries.put(productId, data);
         }
+        return entries;
     }
-    
+
+    private static int asInt(Object value) {
+        return value instanceof Number number ? number.intValue() : 0;
+    }
+
     /**
      * 购物车数据内部类
      */
@@ -358,11 +610,11 @@ public class CartService {
         private Integer quantity;
         private Long addTime;
         private Boolean selected;
-        
+
         public static CartItemDataBuilder builder() {
             return new CartItemDataBuilder();
         }
-        
+
         // Getters and Setters
         public String getProductId() { return productId; }
         public void setProductId(String productId) { this.productId = productId; }
@@ -372,13 +624,13 @@ public class CartService {
         public void setAddTime(Long addTime) { this.addTime = addTime; }
         public Boolean getSelected() { return selected; }
         public void setSelected(Boolean selected) { this.selected = selected; }
-        
+
         public static class CartItemDataBuilder {
             private String productId;
             private Integer quantity;
             private Long addTime;
             private Boolean selected = true;
-            
+
             public CartItemDataBuilder productId(String productId) { this.productId = productId; return this; }
             public CartItemDataBuilder quantity(Integer quantity) { this.quantity = quantity; return this; }
             public CartItemDataBuilder addTime(Long addTime) { this.addTime = addTime; return this; }
@@ -0,0 +1,290 @@
+package com.sales.service;
+
+import com.sales.config.CheckoutProperties;
+import com.sales.config.DelayedJobProperties;
+import com.sales.config.RedisConfig;
+import com.sales.entity.Order;
+import com.sales.entity.Product;
+import com.sales.repository.ProductRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 购物车结算流水线
+ *
+ * 固定五个阶段、每阶段一次远程调用：HGETALL 读购物车 -> HBase multi-get 批量加载商品 ->
+ * Lua 脚本校验并锁定购物车持有的库存 -> 组提交写入订单 -> 一次 pipeline 写状态计数、自动取消任务和时间线。
+ * 库存在加入购物车时已扣减，结算不再逐件查询库存；脚本确认购物车中各商品数量与本次下单一致，
+ * 并写入结算标记 cart:checkout:{userId}（订单号），标记保留到订单支付或取消，期间拒绝再次结算同一购物车。
+ * 每阶段记录耗时（sales.checkout.stage），超出预算告警。
+ */
+@Slf4j
+@Service
+public class CheckoutService {
+
+    private static final String CHECKOUT_REMARK = "购物车结算";
+
+    // KEYS: 购物车, 结算标记
+    // ARGV: 订单号, 标记过期秒数, 之后为 (商品ID, 读取时的购物车项) 对；商品ID 为 JSON 序列化，需解码后作为 Hash 字段
+    // 返回 1 锁定成功；0 购物车已变更；-1 已有结算中或未支付的订单
+    private static final RedisScript<Long> RESERVE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[2]) == 1 then return -1 end " +
+            "for i = 3, #ARGV, 2 do " +
+            "  if redis.call('hget', KEYS[1], cjson.decode(ARGV[i])) ~= ARGV[i + 1] then return 0 end " +
+            "end " +
+            "redis.call('set', KEYS[2], ARGV[1], 'EX', tonumber(ARGV[2])) " +
+            "return 1", Long.class);
+
+    @Autowired
+    private RedisService redisService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderGroupCommitService orderGroupCommitService;
+
+    @Autowired
+    private OrderTimelineService orderTimelineService;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private DelayedJobProperties delayedJobProperties;
+
+    @Autowired
+    private CheckoutProperties properties;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+
+    @PostConstruct
+    public void registerMetrics() {
+        if (meterRegistry == null) {
+            return;
+        }
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("sales.checkout.stage").tag("stage", stage.tag)
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * 结算用户购物车中选中的商品，返回新建的待付款订单。购物车在支付成功后清空，结算时保持不变。
+     *
+     * @throws IllegalArgumentException 没有选中的商品，或商品不存在/已下架
+     * @throws IllegalStateException    购物车在结算过程中被修改，或同一购物车已有结算中、未支付的订单
+     */
+    public Order checkout(String userId) throws IOException {
+        long startNanos = System.nanoTime();
+        String result = "failure";
+        try {
+            Order order = runStages(userId);
+            result = "success";
+            return order;
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            result = "rejected";
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - startNanos;
+            if (meterRegistry != null) {
+                meterRegistry.timer("sales.checkout", "result", result).record(elapsed, TimeUnit.NANOSECONDS);
+            }
+            checkBudget("total", properties.getTotalBudgetMs(), elapsed, userId);
+        }
+    }
+
+    private Order runStages(String userId) throws IOException {
+        String cartKey = RedisConfig.RedisKeys.CART_PREFIX + userId;
+        String markerKey = RedisConfig.RedisKeys.CART_CHECKOUT_PREFIX + userId;
+
+        // 1. 读取购物车（HGETALL）
+        long stageStart = System.nanoTime();
+        Map<Object, Object> cart = redisService.hgetAll(cartKey);
+        stageStart = finish(Stage.CART_READ, userId, stageStart);
+
+        // 选中的购物车项：商品ID -> 读取到的原始值（锁定时逐项比对）
+        Map<String, String> snapshot = new LinkedHashMap<>();
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        if (cart != null) {
+            for (Map.Entry<Object, Object> entry : cart.entrySet()) {
+                String productId = String.valueOf(entry.getKey());
+                if (CartService.COUNT_FIELD.equals(productId)) {
+                    continue;
+                }
+                CartService.CartItemData data = CartService.decode(entry.getValue());
+                if (data == null) {
+                    log.warn("Skipping malformed cart item at checkout: userId={}, productId={}", userId, productId);
+                    continue;
+                }
+                if (Boolean.TRUE.equals(data.getSelected()) && data.getQuantity() > 0) {
+                    snapshot.put(productId, String.valueOf(entry.getValue()));
+                    quantities.put(productId, data.getQuantity());
+                }
+            }
+        }
+        if (quantities.isEmpty()) {
+            throw new IllegalArgumentException("购物车中没有选中的商品");
+        }
+
+        // 2. 批量加载商品（一次 multi-get）
+        Map<String, Product> products = productRepository.findByIds(new ArrayList<>(quantities.keySet()));
+        stageStart = finish(Stage.PRODUCT_LOAD, userId, stageStart);
+
+        List<Order.OrderItem> items = new ArrayList<>(quantities.size());
+        List<String> unavailable = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : quantities.entrySet()) {
+            Product product = products.get(entry.getKey());
+            if (product == null || !Product.Status.ON_SHELF.getCode().equals(product.getStatus())) {
+                unavailable.add(entry.getKey());
+                continue;
+            }
+            items.add(Order.OrderItem.builder()
+                    .productId(product.getProductId())
+                    .productName(product.getName())
+                    .price(product.getPrice())
+                    .quantity(entry.getValue())
+                    .amount(product.getPrice().multiply(new BigDecimal(entry.getValue())))
+                    .image(product.getImages() != null && !product.getImages().isEmpty() ? product.getImages().get(0) : null)
+                    .build());
+        }
+        if (!unavailable.isEmpty()) {
+            throw new IllegalArgumentException("商品不存在或已下架: " + unavailable);
+        }
+
+        Order order = new Order();
+        order.setUserId(userId);
+        order.setItems(items);
+        order.setRemark(CHECKOUT_REMARK);
+        orderService.prepareOrder(order);
+
+        // 3. 校验购物车未变更并写入结算标记（一次脚本）
+        long autoCancelMinutes = delayedJobProperties.getAutoCancelMinutes();
+        List<Object> args = new ArrayList<>(2 + snapshot.size() * 2);
+        args.add(order.getOrderId());
+        args.add(TimeUnit.MINUTES.toSeconds(autoCancelMinutes) + properties.getMarkerGraceSeconds());
+        for (Map.Entry<String, String> entry : snapshot.entrySet()) {
+            args.add(entry.getKey());
+            args.add(entry.getValue());
+        }
+        Long reserved = redisService.execute(RESERVE_SCRIPT, List.of(cartKey, markerKey), args.toArray());
+        stageStart = finish(Stage.RESERVE, userId, stageStart);
+        if (reserved == null) {
+            throw new IOException("Failed to reserve cart stock: userId=" + userId);
+        }
+        if (reserved == -1) {
+            throw new IllegalStateException("购物车已有结算中或未支付的订单，请先支付或取消");
+        }
+        if (reserved == 0) {
+            throw new IllegalStateException("购物车已变更，请刷新后重新结算");
+        }
+
+        // 4. 写入订单（组提交：HBase 订单行 + Redis 订单状态）
+        try {
+            orderGroupCommitService.submit(order);
+        } catch (IOException | RuntimeException e) {
+            cartService.clearCheckoutMarker(userId, order.getOrderId());
+            throw e;
+        }
+        stageStart = finish(Stage.ORDER_WRITE, userId, stageStart);
+
+        // 5. 状态计数、自动取消任务、时间线（一次 pipeline）；结算标记保留到订单支付或取消
+        long autoCancelDue = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(autoCancelMinutes);
+        List<Object> results = redisService.pipeline(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                operations.opsForHash().increment(RedisConfig.RedisKeys.ORDER_STATUS_COUNTS,
+                        String.valueOf(order.getStatus()), 1);
+                operations.opsForZSet().add(RedisConfig.RedisKeys.JOB_DELAYED,
+                        DelayedJobService.toMember(DelayedJobService.TYPE_ORDER_AUTO_CANCEL, order.getOrderId()),
+                        autoCancelDue);
+                orderTimelineService.add(operations, order);
+                return null;
+            }
+        });
+        finish(Stage.REDIS_UPDATE, userId, stageStart);
+        if (results == null) {
+            // 订单已落库：计数由定时对账纠正，结算标记到期自动清除
+            log.error("Checkout post-commit Redis update failed: orderId={}", order.getOrderId());
+        } else if (!results.isEmpty()) {
+            orderTimelineService.trim(userId, results.get(results.size() - 1));
+        }
+
+        log.info("Order checked out: orderId={}, userId={}, items={}", order.getOrderId(), userId, items.size());
+        return order;
+    }
+
+    /**
+     * 记录阶段耗时并检查预算，返回当前时间作为下一阶段起点
+     */
+    private long finish(Stage stage, String userId, long startNanos) {
+        long now = System.nanoTime();
+        long elapsed = now - startNanos;
+        Timer timer = stageTimers.get(stage);
+        if (timer != null) {
+            timer.record(elapsed, TimeUnit.NANOSECONDS);
+        }
+        checkBudget(stage.tag, budgetMs(stage), elapsed, userId);
+        return now;
+    }
+
+    private void checkBudget(String stage, long budgetMs, long elapsedNanos, String userId) {
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        if (elapsedMs <= budgetMs) {
+            return;
+        }
+        log.warn("Checkout stage over budget: stage={}, costMs={}, budgetMs={}, userId={}",
+                stage, elapsedMs, budgetMs, userId);
+        if (meterRegistry != null) {
+            meterRegistry.counter("sales.checkout.budget_exceeded", "stage", stage).increment();
+        }
+    }
+
+    private long budgetMs(Stage stage) {
+        return switch (stage) {
+            case CART_READ -> properties.getCartReadBudgetMs();
+            case PRODUCT_LOAD -> properties.getProductLoadBudgetMs();
+            case RESERVE -> properties.getReserveBudgetMs();
+            case ORDER_WRITE -> properties.getOrderWriteBudgetMs();
+            case REDIS_UPDATE -> properties.getRedisUpdateBudgetMs();
+        };
+    }
+
+    private enum Stage {
+        CART_READ("cart_read"),
+        PRODUCT_LOAD("product_load"),
+        RESERVE("reserve"),
+        ORDER_WRITE("order_write"),
+        REDIS_UPDATE("redis_update");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.sales.service;
+
+import com.sales.config.RedisConfig;
+import com.sales.entity.Order;
+import com.sales.entity.OrderEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 支付事件 -> 实时销售看板（今日订单数/销售额、热门商品）
+ */
+@Slf4j
+@Service
+public class DashboardEventHandler implements OrderEventHandler {
+
+    @Autowired
+    private RedisService redisService;
+
+    @Autowired
+    private RankingService rankingService;
+
+    @Autowired
+    private OrderStateService orderStateService;
+
+    @Autowired
+    private UserActivityService userActivityService;
+
+    @Override
+    public String getName() {
+        return "dashboard";
+    }
+
+    @Override
+    public boolean supports(OrderEvent.Type type) {
+        return type == OrderEvent.Type.PAID;
+    }
+
+    @Override
+    public void handle(OrderEvent event, Order order) {
+        updateRealtimeMetrics(order);
+    }
+
+    /**
+     * 更新实时看板统计，按订单打标记避免重复统计
+     *
+     * @return 本次计入统计返回 true，已统计过返回 false
+     */
+    public boolean updateRealtimeMetrics(Order order) {
+        if (order == null) {
+            return false;
+        }
+
+        BigDecimal actualAmount = order.getActualAmount() != null ? order.getActualAmount() : BigDecimal.ZERO;
+
+        // HSETNX 原子标记，已统计过的订单直接跳过（避免重复统计）
+        if (!orderStateService.markCounted(order.getOrderId())) {
+            log.info("Order already counted in stats: {}", order.getOrderId());
+            return false;
+        }
+
+        // 今日计数器
+        redisService.incr(RedisConfig.RedisKeys.STAT_ORDERS_TODAY, 1);
+        redisService.expire(RedisConfig.RedisKeys.STAT_ORDERS_TODAY, 3600, TimeUnit.SECONDS);
+
+        redisService.incrByFloat(RedisConfig.RedisKeys.STAT_SALES_TODAY, actualAmount.doubleValue());
+        redisService.expire(RedisConfig.RedisKeys.STAT_SALES_TODAY, 3600, TimeUnit.SECONDS);
+
+        // 今日看板 Hash：dashboard:{yyyyMMdd}
+        String dateKey = LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE);
+        String dashboardKey = RedisConfig.RedisKeys.DASHBOARD_PREFIX + dateKey;
+        redisService.hincrByFloat(dashboardKey, "total_amount", actualAmount.doubleValue());
+        redisService.hincrBy(dashboardKey, "order_count", 1);
+        redisService.expire(dashboardKey, 3600, TimeUnit.SECONDS);
+
+        // 今日/本月下单用户（HyperLogLog 去重）
+        userActivityService.recordBuyer(order.getUserId());
+
+        // 热门商品：按订单金额/数量加权
+        if (order.getItems() != null) {
+            for (Order.OrderItem item : order.getItems()) {
+                if (item == null || item.getProductId() == null) {
+                    continue;
+                }
+                int qty = item.getQuantity() != null ? item.getQuantity() : 0;
+                if (qty > 0) {
+                    rankingService.addSalesScore(item.getProductId(), qty);
+                }
+                BigDecimal itemAmount = item.getAmount() != null ? item.getAmount() : BigDecimal.ZERO;
+                rankingService.addPurchaseScore(item.getProductId(), itemAmount.doubleValue());
+            }
+        }
+
+        log.info("Order stats updated: orderId={}, amount={}", order.getOrderId(), actualAmount);
+        return true;
+    }
+}
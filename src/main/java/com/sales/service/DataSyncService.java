@@ -32,6 +32,12 @@ public class DataSyncService {
     @Autowired
     private RedisService redisService;
 
+    @Autowired
+    private ProductSearchService productSearchService;
+
+    @Autowired
+    private AggregateStatsService aggregateStatsService;
+
     /**
      * 同步库存数据到HBase
      */
@@ -92,41 +98,6 @@ public class DataSyncService {
         }
     }
 
-    /**
-     * 定时同步库存数据（每分钟执行）
-     */
-    @Scheduled(fixedDelay = 60000)
-    public void scheduledStockSync() {
-        try {
-            log.debug("Starting scheduled stock synchronization");
-            
-            // 获取所有商品
-            List<Product> products = productService.getAllProducts(1000);
-            
-            for (Product product : products) {
-                try {
-                    int redisStock = stockService.getStock(product.getProductId());
-                    int hbaseStock = product.getTotalStock() != null ? product.getTotalStock() : 0;
-                    
-                    // 如果库存不一致，以Redis为准进行同步
-                    if (redisStock != hbaseStock) {
-                        productRepository.updateStock(product.getProductId(), redisStock);
-                        log.debug("Stock inconsistency fixed: productId={}, redis={}, hbase={}", 
-                                product.getProductId(), redisStock, hbaseStock);
-                    }
-                    
-                } catch (Exception e) {
-                    log.error("Failed to sync stock for product: {}", product.getProductId(), e);
-                }
-            }
-            
-            log.debug("Scheduled stock synchronization completed");
-            
-        } catch (Exception e) {
-            log.error("Scheduled stock synchronization failed", e);
-        }
-    }
-
     /**
      * 定时清理过期缓存（每小时执行）
      */
@@ -165,7 +136,12 @@ public class DataSyncService {
             redisService.del(cacheKey);
             
             // 2. 更新HBase
+            Product existing = productRepository.findById(product.getProductId());
+            Integer oldStatus = existing != null ? existing.getStatus() : null;
             productRepository.save(product);
+            aggregateStatsService.recordProductTransition(oldStatus,
+                    product.getStatus() != null ? product.getStatus() : oldStatus);
+            productSearchService.notifyChanged(product.getProductId());
             
             // 3. 如果更新成功，异步重建缓存
             if (product.getTotalStock() != null) {
@@ -201,8 +177,7 @@ public class DataSyncService {
                 return false;
             }
             
-            // 2. 异步更新HBase
-            syncStockToHBase(productId, delta);
+            // 2. HBase 由 write-behind 按脏集合批量刷盘（StockService 已记录变更）
             
             // 3. 记录库存变更日志
             recordStockChange(productId, delta);
@@ -0,0 +1,12 @@
+package com.sales.service;
+
+/**
+ * 延时任务处理器，按 getType() 与任务类型匹配。
+ * 任务可能因节点崩溃被重复执行，处理器需保证幂等；抛出异常时任务延迟后重试。
+ */
+public interface DelayedJobHandler {
+
+    String getType();
+
+    void handle(String payload) throws Exception;
+}
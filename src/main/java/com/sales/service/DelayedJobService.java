@@ -0,0 +1,240 @@
+package com.sales.service;
+
+import com.sales.config.DelayedJobProperties;
+import com.sales.config.RedisConfig;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于 Redis ZSet 的延时任务调度
+ *
+ * 任务成员为 {类型}:{参数}，score 为到期时间。各节点的 sweeper 用 Lua 脚本原子弹出到期任务并
+ * 转入 job:processing（score 为租约到期时间），同一任务只会被一个节点认领；
+ * 处理成功后移出 processing，失败则延迟重新入队，节点崩溃遗留的任务在租约到期后重新入队。
+ */
+@Slf4j
+@Service
+public class DelayedJobService {
+
+    public static final String TYPE_ORDER_AUTO_CANCEL = "order-auto-cancel";
+    public static final String TYPE_ORDER_AUTO_CONFIRM = "order-auto-confirm";
+
+    private static final long SWEEP_INTERVAL = 1000;
+
+    private static final String TYPE_SEPARATOR = ":";
+
+    // 从 KEYS[1] 弹出 score <= ARGV[1] 的至多 ARGV[2] 个成员，以 ARGV[3] 为 score 转入 KEYS[2]
+    private static final RedisScript<List> MOVE_DUE_SCRIPT = new DefaultRedisScript<>(
+            "local jobs = redis.call('zrangebyscore', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) " +
+            "for _, job in ipairs(jobs) do " +
+            "  redis.call('zrem', KEYS[1], job) " +
+            "  redis.call('zadd', KEYS[2], ARGV[3], job) " +
+            "end " +
+            "return jobs", List.class);
+
+    @Autowired
+    private RedisService redisService;
+
+    @Autowired
+    private DelayedJobProperties properties;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    // 处理器依赖 OrderService，而 OrderService 依赖本服务，延迟解析以打破循环依赖
+    @Autowired
+    private ObjectProvider<DelayedJobHandler> handlerProvider;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private volatile Map<String, DelayedJobHandler> handlers;
+
+    private final AtomicLong lagMillis = new AtomicLong();
+    private final LongAdder completedJobs = new LongAdder();
+    private final LongAdder failedJobs = new LongAdder();
+
+    @PostConstruct
+    public void registerMetrics() {
+        if (meterRegistry == null) {
+            return;
+        }
+        Gauge.builder("sales.jobs.lag_ms", lagMillis, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("sales.jobs.pending", this, s -> s.count(RedisConfig.RedisKeys.JOB_DELAYED))
+                .register(meterRegistry);
+        FunctionCounter.builder("sales.jobs.executed", completedJobs, LongAdder::sum)
+                .tag("result", "success").register(meterRegistry);
+        FunctionCounter.builder("sales.jobs.executed", failedJobs, LongAdder::sum)
+                .tag("result", "failure").register(meterRegistry);
+    }
+
+    /**
+     * 登记延时任务，同一类型同一参数重复登记时以最后一次的到期时间为准
+     */
+    public void schedule(String type, String payload, long dueTimeMillis) {
+        redisService.zadd(RedisConfig.RedisKeys.JOB_DELAYED, dueTimeMillis, toMember(type, payload));
+        log.debug("Delayed job scheduled: type={}, payload={}, due={}", type, payload, dueTimeMillis);
+    }
+
+    /**
+     * 撤销尚未到期的任务（如订单已支付后撤销自动取消）
+     */
+    public void cancel(String type, String payload) {
+        redisService.zrem(RedisConfig.RedisKeys.JOB_DELAYED, toMember(type, payload));
+    }
+
+    /**
+     * 定时认领到期任务，按批并行执行，直到没有到期任务
+     */
+    @Scheduled(fixedDelay = SWEEP_INTERVAL)
+    public void sweepDueJobs() {
+        long now = System.currentTimeMillis();
+        updateLag(now);
+
+        // 租约过期的任务（认领节点崩溃）重新入队，立即到期
+        moveDue(RedisConfig.RedisKeys.JOB_PROCESSING, RedisConfig.RedisKeys.JOB_DELAYED, now, now);
+
+        while (true) {
+            List<String> jobs = moveDue(RedisConfig.RedisKeys.JOB_DELAYED, RedisConfig.RedisKeys.JOB_PROCESSING,
+                    now, now + properties.getLeaseMs());
+            if (jobs.isEmpty()) {
+                break;
+            }
+
+            List<CompletableFuture<Void>> futures = new ArrayList<>(jobs.size());
+            for (String job : jobs) {
+                futures.add(CompletableFuture.runAsync(() -> execute(job), taskExecutor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+            if (jobs.size() < properties.getBatchSize()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 获取任务调度状态
+     */
+    public JobStats getStats() {
+        updateLag(System.currentTimeMillis());
+        return JobStats.builder()
+                .pendingJobs(count(RedisConfig.RedisKeys.JOB_DELAYED))
+                .processingJobs(count(RedisConfig.RedisKeys.JOB_PROCESSING))
+                .lagMillis(lagMillis.get())
+                .completedJobs(completedJobs.sum())
+                .failedJobs(failedJobs.sum())
+                .build();
+    }
+
+    private void execute(String job) {
+        int separator = job.indexOf(TYPE_SEPARATOR);
+        String type = separator > 0 ? job.substring(0, separator) : job;
+        String payload = separator > 0 ? job.substring(separator + 1) : "";
+
+        DelayedJobHandler handler = getHandlers().get(type);
+        if (handler == null) {
+            log.error("No handler for delayed job, dropped: {}", job);
+            redisService.zrem(RedisConfig.RedisKeys.JOB_PROCESSING, job);
+            return;
+        }
+
+        try {
+            handler.handle(payload);
+            redisService.zrem(RedisConfig.RedisKeys.JOB_PROCESSING, job);
+            completedJobs.increment();
+        } catch (Exception e) {
+            // 先重新入队再移出 processing，中途崩溃时由租约兜底
+            redisService.zadd(RedisConfig.RedisKeys.JOB_DELAYED,
+                    System.currentTimeMillis() + properties.getRetryDelayMs(), job);
+            redisService.zrem(RedisConfig.RedisKeys.JOB_PROCESSING, job);
+            failedJobs.increment();
+            log.error("Delayed job failed, will retry: {}", job, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> moveDue(String from, String to, long now, long newScore) {
+        List<Object> moved = redisService.execute(MOVE_DUE_SCRIPT, Arrays.asList(from, to),
+                now, properties.getBatchSize(), newScore);
+        if (moved == null || moved.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<String> jobs = new ArrayList<>(moved.size());
+        for (Object member : moved) {
+            jobs.add(String.valueOf(member));
+        }
+        return jobs;
+    }
+
+    private void updateLag(long now) {
+        Set<ZSetOperations.TypedTuple<Object>> oldest = redisService.zrangeByScoreWithScores(
+                RedisConfig.RedisKeys.JOB_DELAYED, 0, now, 0, 1);
+        if (oldest == null || oldest.isEmpty()) {
+            lagMillis.set(0);
+            return;
+        }
+        Double score = oldest.iterator().next().getScore();
+        lagMillis.set(score != null ? Math.max(0, now - score.longValue()) : 0);
+    }
+
+    private long count(String key) {
+        Long count = redisService.zcard(key);
+        return count != null ? count : 0;
+    }
+
+    private Map<String, DelayedJobHandler> getHandlers() {
+        Map<String, DelayedJobHandler> resolved = handlers;
+        if (resolved == null) {
+            resolved = new HashMap<>();
+            for (DelayedJobHandler handler : handlerProvider) {
+                resolved.put(handler.getType(), handler);
+            }
+            handlers = resolved;
+        }
+        return resolved;
+    }
+
+    /**
+     * 任务在 ZSet 中的成员，供批量操作在同一 pipeline 中登记/撤销任务
+     */
+    public static String toMember(String type, String payload) {
+        return type + TYPE_SEPARATOR + payload;
+    }
+
+    /**
+     * 延时任务统计
+     */
+    @lombok.Data
+    @lombok.Builder
+    public static class JobStats {
+        private long pendingJobs;
+        private long processingJobs;
+        private long lagMillis;
+        private long completedJobs;
+        private long failedJobs;
+    }
+}
@@ -54,6 +54,15 @@ public class DemoDataService {
     @Autowired
     private RedisService redisService;
 
+    @Autowired
+    private ProductSearchService productSearchService;
+
+    @Autowired
+    private AggregateStatsService aggregateStatsService;
+
+    @Autowired
+    private UserSegmentService userSegmentService;
+
     public InitResult initDemoData() throws IOException {
         InitResult result = new InitResult();
 
@@ -84,6 +93,8 @@ public class DemoDataService {
         for (Product p : demoProducts) {
             if (!productRepository.existsById(p.getProductId())) {
                 productRepository.save(p);
+                productSearchService.notifyChanged(p.getProductId());
+                aggregateStatsService.recordProductTransition(null, p.getStatus());
                 inserted++;
             }
 
@@ -91,6 +102,9 @@ public class DemoDataService {
             if (!stockService.stockExists(p.getProductId())) {
                 stockService.setStock(p.getProductId(), stock);
             }
+            if (p.getSafeStock() != null) {
+                stockService.setSafeStock(p.getProductId(), p.getSafeStock());
+            }
         }
 
         return inserted;
@@ -129,6 +143,8 @@ public class DemoDataService {
         for (User u : users) {
             if (!userRepository.existsById(u.getUserId())) {
                 userRepository.save(u);
+                aggregateStatsService.recordUserTransition(null, null, u.getStatus(), u.getLevel());
+                userSegmentService.index(u);
                 inserted++;
             }
         }
@@ -0,0 +1,331 @@
+package com.sales.service;
+
+import com.sales.config.IdGeneratorProperties;
+import com.sales.config.RedisConfig;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snowflake 风格的 64 位ID生成器
+ *
+ * 位布局：1 位符号 | 41 位毫秒时间戳（相对自定义纪元） | 10 位节点号 | 12 位序列号。
+ * 时间戳与序列号打包在同一个 AtomicLong 中，通过 CAS 推进，无锁且单节点内严格递增；
+ * 同一毫秒序列号用尽或时钟小幅回拨时借用后续毫秒，超过 maxClockBackwardMs 则拒绝发号。
+ * 节点号来自配置或 Redis 租约；未持有租约、租约丢失或续约失败超过有效期时拒绝发号，直到重新取得租约。
+ *
+ * 字符串形式为 前缀 + 1 位十六进制散列桶 + 19 位定长十进制ID，
+ * 散列桶把连续写入打散到多个 HBase region，桶内仍按时间有序。
+ */
+@Slf4j
+@Service
+public class IdGeneratorService {
+
+    public static final String ORDER_PREFIX = "ORD";
+    public static final String PRODUCT_PREFIX = "P";
+    public static final String USER_PREFIX = "U";
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final int NODE_BITS = 10;
+    private static final int NODE_SHIFT = SEQUENCE_BITS;
+    private static final int TIMESTAMP_SHIFT = SEQUENCE_BITS + NODE_BITS;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+    private static final int MAX_SALT_BUCKETS = 16;
+    private static final int ID_DIGITS = 19;
+
+    private static final long LEASE_RENEW_INTERVAL = 10000;
+
+    // 本地判定租约有效期时预留的余量，抵消续约请求耗时与节点间时钟误差
+    private static final long LEASE_SAFETY_MARGIN_MS = 5000;
+
+    // 仅当租约仍归本实例所有时才续期/释放
+    private static final RedisScript<Long> RENEW_LEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+            "return redis.call('expire', KEYS[1], ARGV[2]) else return 0 end", Long.class);
+
+    private static final RedisScript<Long> RELEASE_LEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+            "return redis.call('del', KEYS[1]) else return 0 end", Long.class);
+
+    @Autowired
+    private IdGeneratorProperties properties;
+
+    @Autowired
+    private RedisService redisService;
+
+    // (相对纪元的毫秒 << SEQUENCE_BITS) | 序列号
+    private final AtomicLong state = new AtomicLong();
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private volatile int nodeId = -1;
+
+    private volatile boolean leased;
+
+    // 租约在本地视为有效的截止时间（毫秒），以最近一次成功申请/续约的请求发出时间计算
+    private volatile long leaseValidUntil;
+
+    @PostConstruct
+    public void init() {
+        int buckets = properties.getSaltBuckets();
+        if (buckets < 1 || buckets > MAX_SALT_BUCKETS) {
+            throw new IllegalStateException("sales.id.salt-buckets must be between 1 and " + MAX_SALT_BUCKETS);
+        }
+
+        int configured = properties.getNodeId();
+        if (configured > MAX_NODE_ID) {
+            throw new IllegalStateException("sales.id.node-id must be between 0 and " + MAX_NODE_ID);
+        }
+
+        if (configured >= 0) {
+            nodeId = configured;
+            log.info("ID generator started with configured nodeId={}", nodeId);
+        } else if (!acquireLease()) {
+            // 不使用随机节点号（可能与其他节点重复发号）：允许启动，但在续约任务取得租约前拒绝发号
+            log.error("Failed to lease ID node from Redis, ID generation disabled until a lease is acquired");
+        }
+    }
+
+    @PreDestroy
+    public void releaseLease() {
+        if (leased) {
+            redisService.execute(RELEASE_LEASE_SCRIPT, Collections.singletonList(leaseKey(nodeId)), instanceId);
+            leased = false;
+            log.info("Released ID node lease: nodeId={}", nodeId);
+        }
+    }
+
+    /**
+     * 定时续约节点租约；租约丢失时重新申请节点号
+     */
+    @Scheduled(fixedRate = LEASE_RENEW_INTERVAL)
+    public void renewLease() {
+        if (properties.getNodeId() >= 0) {
+            return;
+        }
+
+        if (leased) {
+            long requestTime = System.currentTimeMillis();
+            Long renewed = redisService.execute(RENEW_LEASE_SCRIPT, Collections.singletonList(leaseKey(nodeId)),
+                    instanceId, properties.getLeaseTtlSeconds());
+            if (renewed != null && renewed > 0) {
+                leaseValidUntil = validUntil(requestTime);
+                return;
+            }
+            if (renewed == null) {
+                // Redis 暂时不可用：键在 Redis 中最早也要到原有效期才会过期，发号持续到本地截止时间后停止
+                log.warn("Failed to renew ID node lease, Redis unavailable: nodeId={}, validForMs={}",
+                        nodeId, Math.max(0, leaseValidUntil - System.currentTimeMillis()));
+                return;
+            }
+            log.error("ID node lease lost, ID generation stopped until re-acquired: nodeId={}", nodeId);
+            leased = false;
+            leaseValidUntil = 0;
+        }
+
+        acquireLease();
+    }
+
+    /**
+     * 生成一个ID
+     */
+    public long nextId() {
+        int node = requireNodeId();
+        while (true) {
+            long current = state.get();
+            long now = currentTick();
+            long next = Math.max(now << SEQUENCE_BITS, current + 1);
+            checkDrift(next, now);
+            if (state.compareAndSet(current, next)) {
+                return compose(next, node);
+            }
+        }
+    }
+
+    /**
+     * 一次 CAS 预留连续的 n 个ID，供批量导入使用
+     */
+    public long[] nextIds(int n) {
+        if (n <= 0 || n > properties.getMaxBatchSize()) {
+            throw new IllegalArgumentException("Batch size must be between 1 and " + properties.getMaxBatchSize());
+        }
+
+        int node = requireNodeId();
+        while (true) {
+            long current = state.get();
+            long now = currentTick();
+            long first = Math.max(now << SEQUENCE_BITS, current + 1);
+            long last = first + n - 1;
+            checkDrift(last, now);
+            if (state.compareAndSet(current, last)) {
+                long[] ids = new long[n];
+                for (int i = 0; i < n; i++) {
+                    ids[i] = compose(first + i, node);
+                }
+                return ids;
+            }
+        }
+    }
+
+    /**
+     * 生成带前缀的行键形式ID
+     */
+    public String nextId(String prefix) {
+        return toRowKey(prefix, nextId());
+    }
+
+    /**
+     * 批量生成带前缀的行键形式ID
+     */
+    public List<String> nextIds(String prefix, int n) {
+        long[] ids = nextIds(n);
+        List<String> rowKeys = new ArrayList<>(n);
+        for (long id : ids) {
+            rowKeys.add(toRowKey(prefix, id));
+        }
+        return rowKeys;
+    }
+
+    /**
+     * 数值ID转为行键：前缀 + 散列桶 + 19 位定长十进制（定长保证桶内字典序即时间序）
+     */
+    public String toRowKey(String prefix, long id) {
+        StringBuilder sb = new StringBuilder(prefix.length() + 1 + ID_DIGITS).append(prefix);
+        int buckets = properties.getSaltBuckets();
+        if (buckets > 1) {
+            sb.append(Character.toUpperCase(Character.forDigit(saltBucket(id, buckets), 16)));
+        }
+        String digits = Long.toString(id);
+        for (int i = digits.length(); i < ID_DIGITS; i++) {
+            sb.append('0');
+        }
+        return sb.append(digits).toString();
+    }
+
+    /**
+     * 某一前缀下所有散列桶的行键前缀，用于按时间扫描时逐桶合并
+     */
+    public List<String> rowKeyPrefixes(String prefix) {
+        int buckets = properties.getSaltBuckets();
+        if (buckets <= 1) {
+            return Collections.singletonList(prefix);
+        }
+        List<String> prefixes = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            prefixes.add(prefix + Character.toUpperCase(Character.forDigit(i, 16)));
+        }
+        return prefixes;
+    }
+
+    /**
+     * 从行键解析数值ID（末尾 19 位），不是本生成器产生的行键返回 null
+     */
+    public Long parseRowKey(String rowKey) {
+        if (rowKey == null || rowKey.length() < ID_DIGITS) {
+            return null;
+        }
+        String digits = rowKey.substring(rowKey.length() - ID_DIGITS);
+        for (int i = 0; i < digits.length(); i++) {
+            if (!Character.isDigit(digits.charAt(i))) {
+                return null;
+            }
+        }
+        try {
+            return Long.parseLong(digits);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 从ID中解析生成时间（毫秒时间戳）
+     */
+    public long extractTimestamp(long id) {
+        return (id >>> TIMESTAMP_SHIFT) + properties.getEpoch();
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    private static long compose(long packed, int node) {
+        long tick = packed >>> SEQUENCE_BITS;
+        return (tick << TIMESTAMP_SHIFT) | ((long) node << NODE_SHIFT) | (packed & SEQUENCE_MASK);
+    }
+
+    /**
+     * 当前可用的节点号：配置的固定节点号，或本地判定仍有效的租约；否则拒绝发号
+     *
+     * @throws IllegalStateException 未持有有效租约
+     */
+    private int requireNodeId() {
+        if (properties.getNodeId() >= 0) {
+            return nodeId;
+        }
+        int node = nodeId;
+        if (!leased || node < 0 || System.currentTimeMillis() >= leaseValidUntil) {
+            throw new IllegalStateException("ID node lease not held, refusing to generate IDs");
+        }
+        return node;
+    }
+
+    private long validUntil(long requestTime) {
+        return requestTime + TimeUnit.SECONDS.toMillis(properties.getLeaseTtlSeconds()) - LEASE_SAFETY_MARGIN_MS;
+    }
+
+    private void checkDrift(long packed, long now) {
+        long drift = (packed >>> SEQUENCE_BITS) - now;
+        if (drift > properties.getMaxClockBackwardMs()) {
+            throw new IllegalStateException("Clock moved backwards or sequence exhausted, drift=" + drift + "ms");
+        }
+    }
+
+    private long currentTick() {
+        return System.currentTimeMillis() - properties.getEpoch();
+    }
+
+    private static int saltBucket(long id, int buckets) {
+        // 混合序列号与节点位，避免同一毫秒的ID落在同一桶
+        long mixed = id * 0x9E3779B97F4A7C15L;
+        return (int) ((mixed >>> 32) % buckets);
+    }
+
+    private boolean acquireLease() {
+        int start = ThreadLocalRandom.current().nextInt(MAX_NODE_ID + 1);
+        for (int i = 0; i <= MAX_NODE_ID; i++) {
+            int candidate = (start + i) & MAX_NODE_ID;
+            long requestTime = System.currentTimeMillis();
+            if (redisService.setIfAbsent(leaseKey(candidate), instanceId,
+                    properties.getLeaseTtlSeconds(), TimeUnit.SECONDS)) {
+                nodeId = candidate;
+                leaseValidUntil = validUntil(requestTime);
+                leased = true;
+                log.info("Leased ID node from Redis: nodeId={}", nodeId);
+                return true;
+            }
+            if (i == 0 && !redisService.exists(leaseKey(candidate))) {
+                // setIfAbsent 失败但键不存在，说明 Redis 不可用，不再逐个尝试
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static String leaseKey(int node) {
+        return RedisConfig.RedisKeys.ID_NODE_LEASE_PREFIX + node;
+    }
+}
@@ -0,0 +1,29 @@
+package com.sales.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * 待付款超时自动取消：条件流转为已取消，预扣库存由 CANCELLED 事件（StockReleaseEventHandler）归还。
+ * 订单已支付或已取消时条件流转失败，视为已处理。
+ */
+@Slf4j
+@Service
+public class OrderAutoCancelJobHandler implements DelayedJobHandler {
+
+    @Autowired
+    private OrderService orderService;
+
+    @Override
+    public String getType() {
+        return DelayedJobService.TYPE_ORDER_AUTO_CANCEL;
+    }
+
+    @Override
+    public void handle(String orderId) throws Exception {
+        if (orderService.cancelOrder(orderId)) {
+            log.info("Unpaid order auto-cancelled: {}", orderId);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.sales.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * 已发货超时自动确认收货；订单已确认时条件流转失败，视为已处理
+ */
+@Slf4j
+@Service
+public class OrderAutoConfirmJobHandler implements DelayedJobHandler {
+
+    @Autowired
+    private OrderService orderService;
+
+    @Override
+    public String getType() {
+        return DelayedJobService.TYPE_ORDER_AUTO_CONFIRM;
+    }
+
+    @Override
+    public void handle(String orderId) throws Exception {
+        if (orderService.completeOrder(orderId)) {
+            log.info("Shipped order auto-confirmed: {}", orderId);
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package com.sales.service;
+
+import com.sales.config.DelayedJobProperties;
+import com.sales.config.RedisConfig;
+import com.sales.entity.Order;
+import com.sales.entity.OrderEvent;
+import com.sales.repository.OrderRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单批量操作（批量发货、取消、确认收货）
+ *
+ * 按块处理：每块一次 multi-get 校验当前状态，一次批量 checkAndMutate 条件流转（同时写入 outbox 事件），
+ * 再用一次 Redis pipeline 写入订单状态、状态计数和延时任务，事件批量投递；逐单返回结果。
+ * 进度写入 order:bulk:progress:{operationId}，可在执行过程中查询。
+ */
+@Slf4j
+@Service
+public class OrderBulkService {
+
+    public static final int MAX_ORDERS = 10000;
+
+    private static final int CHUNK_SIZE = 1000;
+
+    private static final long PROGRESS_EXPIRE_HOURS = 24;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private RedisService redisService;
+
+    @Autowired
+    private OrderEventService orderEventService;
+
+    @Autowired
+    private OrderStateService orderStateService;
+
+    @Autowired
+    private DelayedJobProperties delayedJobProperties;
+
+    @Autowired
+    private IdGeneratorService idGeneratorService;
+
+    /**
+     * 批量发货（待发货 -> 已发货），每单带物流公司和运单号
+     */
+    public BulkResult shipOrders(String operationId, List<Shipment> shipments) {
+        Map<String, Order> changes = new LinkedHashMap<>();
+        if (shipments != null) {
+            for (Shipment shipment : shipments) {
+                if (shipment.getOrderId() == null || shipment.getOrderId().isEmpty()) {
+                    continue;
+                }
+                changes.put(shipment.getOrderId(), Order.builder()
+                        .status(Order.Status.SHIPPED.getCode())
+                        .expressCompany(shipment.getExpressCompany())
+                        .expressNo(shipment.getExpressNo())
+                        .build());
+            }
+        }
+        return execute(Operation.SHIP, operationId, changes);
+    }
+
+    /**
+     * 批量取消（待付款 -> 已取消）
+     */
+    public BulkResult cancelOrders(String operationId, List<String> orderIds) {
+        return execute(Operation.CANCEL, operationId, uniformChanges(orderIds, Order.Status.CANCELLED.getCode()));
+    }
+
+    /**
+     * 批量确认收货（已发货 -> 已完成）
+     */
+    public BulkResult completeOrders(String operationId, List<String> orderIds) {
+        return execute(Operation.COMPLETE, operationId, uniformChanges(orderIds, Order.Status.COMPLETED.getCode()));
+    }
+
+    /**
+     * 查询批量操作进度，不存在或已过期返回 null
+     */
+    public BulkProgress getProgress(String operationId) {
+        Map<Object, Object> fields = redisService.hgetAll(RedisConfig.RedisKeys.ORDER_BULK_PROGRESS_PREFIX + operationId);
+        if (fields == null || fields.isEmpty()) {
+            return null;
+        }
+        return BulkProgress.builder()
+                .operationId(operationId)
+                .operation(String.valueOf(fields.get("operation")))
+                .total(toLong(fields.get("total")))
+                .processed(toLong(fields.get("processed")))
+                .succeeded(toLong(fields.get("succeeded")))
+                .failed(toLong(fields.get("failed")))
+                .finished(toLong(fields.get("finished")) > 0)
+                .build();
+    }
+
+    private BulkResult execute(Operation operation, String operationId, Map<String, Order> changes) {
+        if (changes.isEmpty()) {
+            throw new IllegalArgumentException("No orders given for bulk " + operation);
+        }
+        if (changes.size() > MAX_ORDERS) {
+            throw new IllegalArgumentException("Too many orders for bulk " + operation + ": " + changes.size()
+                    + " > " + MAX_ORDERS);
+        }
+        if (operationId == null || operationId.isEmpty()) {
+            operationId = String.valueOf(idGeneratorService.nextId());
+        }
+
+        long startTime = System.currentTimeMillis();
+        String progressKey = RedisConfig.RedisKeys.ORDER_BULK_PROGRESS_PREFIX + operationId;
+        Map<String, Object> progress = new HashMap<>();
+        progress.put("operation", operation.name());
+        progress.put("total", changes.size());
+        progress.put("processed", 0);
+        progress.put("succeeded", 0);
+        progress.put("failed", 0);
+        progress.put("finished", 0);
+        redisService.hset(progressKey, progress);
+        redisService.expire(progressKey, PROGRESS_EXPIRE_HOURS, TimeUnit.HOURS);
+
+        List<String> orderIds = new ArrayList<>(changes.keySet());
+        List<ItemResult> results = new ArrayList<>(orderIds.size());
+        int succeeded = 0;
+        for (int from = 0; from < orderIds.size(); from += CHUNK_SIZE) {
+            List<String> chunk = orderIds.subList(from, Math.min(from + CHUNK_SIZE, orderIds.size()));
+            List<ItemResult> chunkResults = processChunk(operation, chunk, changes);
+            for (ItemResult result : chunkResults) {
+                if (result.isSuccess()) {
+                    succeeded++;
+                }
+            }
+            results.addAll(chunkResults);
+
+            progress.put("processed", results.size());
+            progress.put("succeeded", succeeded);
+            progress.put("failed", results.size() - succeeded);
+            progress.put("finished", results.size() == orderIds.size() ? 1 : 0);
+            redisService.hset(progressKey, progress);
+        }
+
+        log.info("Bulk order {} finished: operationId={}, total={}, succeeded={}, costMs={}",
+                operation, operationId, orderIds.size(), succeeded, System.currentTimeMillis() - startTime);
+        return BulkResult.builder()
+                .operationId(operationId)
+                .operation(operation.name())
+                .total(orderIds.size())
+                .succeeded(succeeded)
+                .failed(orderIds.size() - succeeded)
+                .results(results)
+                .build();
+    }
+
+    private List<ItemResult> processChunk(Operation operation, List<String> orderIds, Map<String, Order> changes) {
+        Map<String, ItemResult> results = new LinkedHashMap<>();
+        List<String> candidates = new ArrayList<>();
+        List<Order> candidateChanges = new ArrayList<>();
+
+        // 一次 multi-get 校验状态，不符合的直接返回，不进入写批次
+        Map<String, Integer> statuses;
+        try {
+            statuses = orderRepository.findStatuses(orderIds);
+        } catch (IOException e) {
+            log.error("Failed to load order statuses for bulk {}: size={}", operation, orderIds.size(), e);
+            return failAll(orderIds, ResultCode.ERROR);
+        }
+        for (String orderId : orderIds) {
+            Integer status = statuses.get(orderId);
+            if (status == null) {
+                results.put(orderId, ItemResult.of(orderId, ResultCode.NOT_FOUND, null));
+            } else if (!operation.from.getCode().equals(status)) {
+                results.put(orderId, ItemResult.of(orderId, ResultCode.INVALID_STATUS, status));
+            } else {
+                results.put(orderId, null);
+                candidates.add(orderId);
+                candidateChanges.add(changes.get(orderId));
+            }
+        }
+
+        List<OrderEvent> events = new ArrayList<>(candidates.size());
+        for (String orderId : candidates) {
+            events.add(OrderEvent.of(orderId, operation.event));
+        }
+
+        // 一次批量条件写入；校验与写入之间状态被并发修改的订单返回 CONFLICT
+        List<Boolean> successes;
+        try {
+            successes = orderRepository.transitionStatusAll(candidates, operation.from.getCode(), candidateChanges, events);
+        } catch (IOException e) {
+            log.error("Bulk {} batch write failed: size={}", operation, candidates.size(), e);
+            for (String orderId : candidates) {
+                results.put(orderId, ItemResult.of(orderId, ResultCode.ERROR, operation.from.getCode()));
+            }
+            return new ArrayList<>(results.values());
+        }
+
+        List<String> transitioned = new ArrayList<>();
+        List<OrderEvent> publishedEvents = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            String orderId = candidates.get(i);
+            if (Boolean.TRUE.equals(successes.get(i))) {
+                transitioned.add(orderId);
+                results.put(orderId, ItemResult.of(orderId, ResultCode.OK, operation.to.getCode()));
+                publishedEvents.add(events.get(i));
+            } else {
+                results.put(orderId, ItemResult.of(orderId, ResultCode.CONFLICT, null));
+            }
+        }
+
+        applyRedisUpdates(operation, transitioned);
+        if (!publishedEvents.isEmpty()) {
+            orderEventService.publishAll(publishedEvents);
+        }
+        return new ArrayList<>(results.values());
+    }
+
+    /**
+     * 一次 pipeline：订单状态缓存、状态计数、自动取消/自动确认收货任务
+     */
+    private void applyRedisUpdates(Operation operation, List<String> orderIds) {
+        if (orderIds.isEmpty()) {
+            return;
+        }
+        long confirmDue = System.currentTimeMillis()
+                + TimeUnit.DAYS.toMillis(delayedJobProperties.getAutoConfirmDays());
+        Integer status = operation.to.getCode();
+
+        redisService.pipeline(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                for (String orderId : orderIds) {
+                    orderStateService.writeStatus(operations, orderId, status);
+                    switch (operation) {
+                        case SHIP:
+                            operations.opsForZSet().add(RedisConfig.RedisKeys.JOB_DELAYED,
+                                    DelayedJobService.toMember(DelayedJobService.TYPE_ORDER_AUTO_CONFIRM, orderId), confirmDue);
+                            break;
+                        case CANCEL:
+                            operations.opsForZSet().remove(RedisConfig.RedisKeys.JOB_DELAYED,
+                                    DelayedJobService.toMember(DelayedJobService.TYPE_ORDER_AUTO_CANCEL, orderId));
+                            break;
+                        case COMPLETE:
+                            operations.opsForZSet().remove(RedisConfig.RedisKeys.JOB_DELAYED,
+                                    DelayedJobService.toMember(DelayedJobService.TYPE_ORDER_AUTO_CONFIRM, orderId));
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                operations.opsForHash().increment(RedisConfig.RedisKeys.ORDER_STATUS_COUNTS,
+                        String.valueOf(operation.from.getCode()), -orderIds.size());
+                operations.opsForHash().increment(RedisConfig.RedisKeys.ORDER_STATUS_COUNTS,
+                        String.valueOf(operation.to.getCode()), orderIds.size());
+                return null;
+            }
+        });
+    }
+
+    private static Map<String, Order> uniformChanges(List<String> orderIds, Integer status) {
+        Map<String, Order> changes = new LinkedHashMap<>();
+        if (orderIds != null) {
+            for (String orderId : new LinkedHashSet<>(orderIds)) {
+                if (orderId == null || orderId.isEmpty()) {
+                    continue;
+                }
+                changes.put(orderId, Order.builder().status(status).build());
+            }
+        }
+        return changes;
+    }
+
+    private static List<ItemResult> failAll(List<String> orderIds, ResultCode code) {
+        List<ItemResult> results = new ArrayList<>(orderIds.size());
+        for (String orderId : orderIds) {
+            results.add(ItemResult.of(orderId, code, null));
+        }
+        return results;
+    }
+
+    private static long toLong(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        try {
+            return value != null ? Long.parseLong(String.valueOf(value)) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 批量操作类型及其状态流转
+     */
+    public enum Operation {
+        SHIP(Order.Status.PENDING_DELIVERY, Order.Status.SHIPPED, OrderEvent.Type.SHIPPED),
+        CANCEL(Order.Status.PENDING_PAYMENT, Order.Status.CANCELLED, OrderEvent.Type.CANCELLED),
+        COMPLETE(Order.Status.SHIPPED, Order.Status.COMPLETED, OrderEvent.Type.COMPLETED);
+
+        private final Order.Status from;
+        private final Order.Status to;
+        private final OrderEvent.Type event;
+
+        Operation(Order.Status from, Order.Status to, OrderEvent.Type event) {
+            this.from = from;
+            this.to = to;
+            this.event = event;
+        }
+    }
+
+    /**
+     * 单个订单的处理结果码
+     */
+    public enum ResultCode {
+        OK,              // 流转成功
+        NOT_FOUND,       // 订单不存在
+        INVALID_STATUS,  // 当前状态不允许该操作
+        CONFLICT,        // 校验后状态被并发修改
+        ERROR            // HBase 读写失败，可重试
+    }
+
+    /**
+     * 批量请求：发货使用 shipments，取消/确认收货使用 orderIds
+     */
+    @lombok.Data
+    public static class BulkRequest {
+        private String operationId;
+        private List<String> orderIds;
+        private List<Shipment> shipments;
+    }
+
+    /**
+     * 发货信息
+     */
+    @lombok.Data
+    public static class Shipment {
+        private String orderId;
+        private String expressCompany;
+        private String expressNo;
+    }
+
+    /**
+     * 单个订单结果，currentStatus 为处理后（或校验失败时）的订单状态
+     */
+    @lombok.Data
+    @lombok.Builder
+    public static class ItemResult {
+        private String orderId;
+        private boolean success;
+        private ResultCode code;
+        private Integer currentStatus;
+
+        static ItemResult of(String orderId, ResultCode code, Integer currentStatus) {
+            return ItemResult.builder()
+                    .orderId(orderId)
+                    .success(code == ResultCode.OK)
+                    .code(code)
+                    .currentStatus(currentStatus)
+                    .build();
+        }
+    }
+
+    /**
+     * 批量操作结果
+     */
+    @lombok.Data
+    @lombok.Builder
+    public static class BulkResult {
+        private String operationId;
+        private String operation;
+        private int total;
+        private int succeeded;
+        private int failed;
+        private List<ItemResult> results;
+    }
+
+    /**
+     * 批量操作进度
+     */
+    @lombok.Data
+    @lombok.Builder
+    public static class BulkProgress {
+        private String operationId;
+        private String operation;
+        private long total;
+        private long processed;
+        private long succeeded;
+        private long failed;
+        private boolean finished;
+    }
+}
@@ -0,0 +1,25 @@
+package com.sales.service;
+
+import com.sales.entity.Order;
+import com.sales.entity.OrderEvent;
+
+import java.io.IOException;
+
+/**
+ * 订单事件处理器，由 OrderEventService 异步批量分发。
+ * 同一事件可能被重复投递，处理器按 getName() + eventId 做幂等，失败时抛出异常等待重试。
+ */
+public interface OrderEventHandler {
+
+    /**
+     * 处理器名称，参与幂等键，上线后不要修改
+     */
+    String getName();
+
+    boolean supports(OrderEvent.Type type);
+
+    /**
+     * @param order 事件对应订单（cf_base + cf_items），订单已删除时为 null
+     */
+    void handle(OrderEvent event, Order order) throws IOException;
+}
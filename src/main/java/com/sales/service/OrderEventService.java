@@ -0,0 +1,349 @@
+package com.sales.service;
+
+import com.sales.config.HBaseConfig;
+import com.sales.config.OrderEventProperties;
+import com.sales.config.RedisConfig;
+import com.sales.entity.Order;
+import com.sales.entity.OrderEvent;
+import com.sales.repository.OrderRepository;
+import com.sales.utils.JsonUtils;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单事件 outbox 分发
+ *
+ * 状态流转成功时事件已随订单行原子落库，随后投递到 Redis Stream（queue:order:process），
+ * 各节点以消费组方式按批消费，multi-get 订单并交给各 OrderEventHandler 处理；
+ * 全部处理器成功后删除事件列。
+ * 投递前事件ID按到期时间写入待处理索引（order:event:pending），处理完成后移除；
+ * 补偿扫描在分布式锁下只读取索引中到期的事件，不扫描订单表，超过最大尝试次数后转入死信列表。
+ * 索引写入失败（Redis 不可用）的事件由每日一次的全表重建找回。
+ * 每个处理器按 eventId 做 Redis 标记：执行中为带租约的 running，完成后改为 done。
+ */
+@Slf4j
+@Service
+public class OrderEventService {
+
+    private static final String CONSUMER_GROUP = "order-events";
+
+    private static final long SWEEP_INTERVAL = 30000;
+
+    // 处理器的事件级增量标记（order:event:applied:{eventId}）使用同一有效期
+    static final long EVENT_KEY_EXPIRE_DAYS = 7;
+
+    private static final String SWEEP_LOCK = RedisConfig.RedisKeys.LOCK_PREFIX + "order:event:sweep";
+
+    private static final String REINDEX_LOCK = RedisConfig.RedisKeys.LOCK_PREFIX + "order:event:reindex";
+
+    // 每日重建索引单次最多找回的事件数
+    private static final int REINDEX_LIMIT = 100000;
+
+    private static final String MARKER_RUNNING = "running";
+
+    private static final String MARKER_DONE = "done";
+
+    // 旧版本写入的完成标记
+    private static final String MARKER_LEGACY_DONE = "1";
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private RedisService redisService;
+
+    @Autowired
+    private OrderEventProperties properties;
+
+    @Autowired
+    private StreamQueueService streamQueueService;
+
+    @Autowired(required = false)
+    private List<OrderEventHandler> handlers = Collections.emptyList();
+
+    @PostConstruct
+    public void start() {
+        streamQueueService.subscribe(RedisConfig.RedisKeys.QUEUE_ORDER_PROCESS, CONSUMER_GROUP, this::consume);
+        log.info("Order event consumer started: handlers={}", handlers.size());
+    }
+
+    /**
+     * 投递已随状态流转落库的事件；投递失败不影响调用方，事件由补偿扫描处理
+     */
+    public void publish(OrderEvent event) {
+        index(Collections.singletonList(event));
+        if (streamQueueService.publish(RedisConfig.RedisKeys.QUEUE_ORDER_PROCESS, toFields(event)) == null) {
+            log.warn("Failed to enqueue order event, left for outbox sweep: {}", event.getEventId());
+        }
+    }
+
+    /**
+     * 批量投递（一次 pipeline），用于批量状态流转
+     */
+    public void publishAll(List<OrderEvent> events) {
+        index(events);
+        List<Map<String, String>> messages = new ArrayList<>(events.size());
+        for (OrderEvent event : events) {
+            messages.add(toFields(event));
+        }
+        if (!streamQueueService.publishAll(RedisConfig.RedisKeys.QUEUE_ORDER_PROCESS, messages)) {
+            log.warn("Failed to enqueue order events, left for outbox sweep: size={}", events.size());
+        }
+    }
+
+    /**
+     * 补偿扫描：在分布式锁下重新处理待处理索引中已到期的事件
+     */
+    @Scheduled(fixedDelay = SWEEP_INTERVAL)
+    public void sweepPendingEvents() {
+        String lockToken = redisService.tryLock(SWEEP_LOCK, 5, TimeUnit.MINUTES);
+        if (lockToken == null) {
+            return;
+        }
+        try {
+            Set<ZSetOperations.TypedTuple<Object>> due = redisService.zrangeByScoreWithScores(
+                    RedisConfig.RedisKeys.ORDER_EVENT_PENDING, 0, System.currentTimeMillis(),
+                    0, properties.getBatchSize() * 10L);
+            if (due == null || due.isEmpty()) {
+                return;
+            }
+
+            List<OrderEvent> pending = new ArrayList<>(due.size());
+            for (ZSetOperations.TypedTuple<Object> tuple : due) {
+                OrderEvent event = OrderEvent.fromEventId(String.valueOf(tuple.getValue()));
+                if (event == null) {
+                    log.error("Malformed pending order event removed: {}", tuple.getValue());
+                    redisService.zrem(RedisConfig.RedisKeys.ORDER_EVENT_PENDING, tuple.getValue());
+                    continue;
+                }
+                pending.add(event);
+            }
+
+            log.info("Redelivering pending order events: {}", pending.size());
+            for (int from = 0; from < pending.size(); from += properties.getBatchSize()) {
+                int to = Math.min(from + properties.getBatchSize(), pending.size());
+                process(pending.subList(from, to));
+            }
+        } finally {
+            redisService.unlock(SWEEP_LOCK, lockToken);
+        }
+    }
+
+    /**
+     * 每日重建待处理索引：全表扫描 outbox 事件列，找回索引写入失败的事件
+     */
+    @Scheduled(cron = "0 20 3 * * ?")
+    public void reindexPendingEvents() {
+        String lockToken = redisService.tryLock(REINDEX_LOCK, 30, TimeUnit.MINUTES);
+        if (lockToken == null) {
+            return;
+        }
+        try {
+            long cutoff = System.currentTimeMillis() - properties.getSweepDelayMs();
+            List<OrderEvent> events = orderRepository.findPendingEvents(cutoff, REINDEX_LIMIT);
+            if (!events.isEmpty()) {
+                schedule(events, System.currentTimeMillis());
+                log.info("Pending order events reindexed: {}", events.size());
+            }
+        } catch (IOException e) {
+            log.warn("Failed to reindex pending order events", e);
+        } finally {
+            redisService.unlock(REINDEX_LOCK, lockToken);
+        }
+    }
+
+    private void index(List<OrderEvent> events) {
+        long due = System.currentTimeMillis() + properties.getSweepDelayMs();
+        if (!schedule(events, due)) {
+            log.error("Failed to index order events, left for daily reindex: size={}", events.size());
+        }
+    }
+
+    /**
+     * 将事件写入待处理索引（一次 pipeline），到期时间之后由补偿扫描处理
+     */
+    private boolean schedule(List<OrderEvent> events, long dueMillis) {
+        if (events.isEmpty()) {
+            return true;
+        }
+        List<Object> results = redisService.pipeline(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                for (OrderEvent event : events) {
+                    operations.opsForZSet().add(RedisConfig.RedisKeys.ORDER_EVENT_PENDING, event.getEventId(), dueMillis);
+                }
+                return null;
+            }
+        });
+        return results != null;
+    }
+
+    /**
+     * 消费组批量消费；处理失败的事件仍在 outbox 中由补偿扫描重试，因此整批 ACK
+     */
+    private Collection<String> consume(List<StreamQueueService.StreamMessage> messages) {
+        List<OrderEvent> events = new ArrayList<>(messages.size());
+        List<String> ids = new ArrayList<>(messages.size());
+        for (StreamQueueService.StreamMessage message : messages) {
+            ids.add(message.getId());
+            Map<String, String> fields = message.getFields();
+            try {
+                events.add(OrderEvent.builder()
+                        .eventId(fields.get("eventId"))
+                        .orderId(fields.get("orderId"))
+                        .type(OrderEvent.Type.valueOf(fields.get("type")))
+                        .createTime(Long.parseLong(fields.get("createTime")))
+                        .build());
+            } catch (Exception e) {
+                log.error("Malformed order event message dropped: id={}, fields={}", message.getId(), fields);
+            }
+        }
+        process(events);
+        return ids;
+    }
+
+    private static Map<String, String> toFields(OrderEvent event) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("eventId", event.getEventId());
+        fields.put("orderId", event.getOrderId());
+        fields.put("type", event.getType().name());
+        fields.put("createTime", String.valueOf(event.getCreateTime()));
+        return fields;
+    }
+
+    private void process(List<OrderEvent> events) {
+        Set<String> orderIds = new LinkedHashSet<>();
+        for (OrderEvent event : events) {
+            orderIds.add(event.getOrderId());
+        }
+
+        Map<String, Order> orders;
+        try {
+            orders = orderRepository.findByIds(new ArrayList<>(orderIds),
+                    HBaseConfig.ColumnFamilies.CF_BASE, HBaseConfig.ColumnFamilies.CF_ITEMS);
+        } catch (IOException e) {
+            log.error("Failed to load orders for events: size={}", events.size(), e);
+            recordFailures(events);
+            return;
+        }
+
+        List<OrderEvent> completed = new ArrayList<>();
+        List<OrderEvent> failed = new ArrayList<>();
+        List<OrderEvent> deferred = new ArrayList<>();
+        for (OrderEvent event : events) {
+            Order order = orders.get(event.getOrderId());
+            boolean success = true;
+            boolean inProgress = false;
+            for (OrderEventHandler handler : handlers) {
+                if (!handler.supports(event.getType())) {
+                    continue;
+                }
+                HandlerResult result = runHandler(handler, event, order);
+                if (result == HandlerResult.FAILED) {
+                    success = false;
+                } else if (result == HandlerResult.IN_PROGRESS) {
+                    inProgress = true;
+                }
+            }
+            if (!success) {
+                failed.add(event);
+            } else if (inProgress) {
+                deferred.add(event);
+            } else {
+                completed.add(event);
+            }
+        }
+
+        deleteEvents(completed);
+        recordFailures(failed);
+        // 其他节点仍在处理：不计失败次数，推迟到下一个补偿周期确认
+        schedule(deferred, System.currentTimeMillis() + properties.getSweepDelayMs());
+        log.debug("Order events processed: completed={}, failed={}, deferred={}",
+                completed.size(), failed.size(), deferred.size());
+    }
+
+    private HandlerResult runHandler(OrderEventHandler handler, OrderEvent event, Order order) {
+        String markerKey = RedisConfig.RedisKeys.ORDER_EVENT_DONE_PREFIX + event.getEventId() + ":" + handler.getName();
+        if (!redisService.setIfAbsent(markerKey, MARKER_RUNNING, properties.getHandlerLeaseMs(), TimeUnit.MILLISECONDS)) {
+            // 只有完成标记才算成功；执行中说明其他节点持有租约；标记不存在说明 Redis 不可用，按失败重试
+            Object marker = redisService.get(markerKey);
+            if (MARKER_DONE.equals(marker) || MARKER_LEGACY_DONE.equals(marker)) {
+                return HandlerResult.DONE;
+            }
+            return MARKER_RUNNING.equals(marker) ? HandlerResult.IN_PROGRESS : HandlerResult.FAILED;
+        }
+
+        try {
+            handler.handle(event, order);
+        } catch (Exception e) {
+            redisService.del(markerKey);
+            log.error("Order event handler failed: handler={}, event={}", handler.getName(), event.getEventId(), e);
+            return HandlerResult.FAILED;
+        }
+        // 完成标记写入失败时租约到期后会重复执行，处理器幂等
+        redisService.set(markerKey, MARKER_DONE, EVENT_KEY_EXPIRE_DAYS, TimeUnit.DAYS);
+        return HandlerResult.DONE;
+    }
+
+    private void recordFailures(List<OrderEvent> events) {
+        List<OrderEvent> dead = new ArrayList<>();
+        for (OrderEvent event : events) {
+            String attemptsKey = RedisConfig.RedisKeys.ORDER_EVENT_ATTEMPTS_PREFIX + event.getEventId();
+            long attempts = redisService.incr(attemptsKey);
+            redisService.expire(attemptsKey, EVENT_KEY_EXPIRE_DAYS, TimeUnit.DAYS);
+            if (attempts >= properties.getMaxAttempts()) {
+                redisService.lpush(RedisConfig.RedisKeys.ORDER_EVENT_DEAD, JsonUtils.toJson(event));
+                dead.add(event);
+                log.error("Order event moved to dead letter after {} attempts: {}", attempts, event.getEventId());
+            }
+        }
+        deleteEvents(dead);
+
+        // 其余失败事件按重试间隔重新入索引
+        List<OrderEvent> retry = new ArrayList<>(events);
+        retry.removeAll(dead);
+        schedule(retry, System.currentTimeMillis() + properties.getSweepDelayMs());
+    }
+
+    private void deleteEvents(List<OrderEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        try {
+            orderRepository.deleteEvents(events);
+        } catch (IOException e) {
+            // 删除失败只会导致重复投递，处理器幂等；事件仍留在索引中
+            log.warn("Failed to delete processed order events: size={}", events.size(), e);
+            return;
+        }
+        Object[] eventIds = new Object[events.size()];
+        for (int i = 0; i < events.size(); i++) {
+            eventIds[i] = events.get(i).getEventId();
+        }
+        redisService.zrem(RedisConfig.RedisKeys.ORDER_EVENT_PENDING, eventIds);
+    }
+
+    private enum HandlerResult {
+        DONE,
+        FAILED,
+        IN_PROGRESS
+    }
+}
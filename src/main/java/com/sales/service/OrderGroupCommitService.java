@@ -0,0 +1,333 @@
+package com.sales.service;
+
+import com.sales.config.OrderGroupCommitProperties;
+import com.sales.entity.Order;
+import com.sales.repository.OrderRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 订单创建组提交
+ *
+ * 并发创建的订单进入队列，由单个提交线程在 windowMs 内或攒满 maxBatchSize 后
+ * 合并为一次 HBase batch + 一次 Redis pipeline 写入；每个调用方仍单独拿到自己订单的成败。
+ */
+@Slf4j
+@Service
+public class OrderGroupCommitService {
+
+    private static final long IDLE_POLL_MS = 100;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderStateService orderStateService;
+
+    @Autowired
+    private OrderGroupCommitProperties properties;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private BlockingQueue<PendingOrder> queue;
+
+    private Thread committer;
+
+    private volatile boolean running;
+
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder committedOrders = new LongAdder();
+    private final LongAdder failedOrders = new LongAdder();
+    private final LongAdder overflowOrders = new LongAdder();
+
+    private DistributionSummary batchSizeSummary;
+    private Timer flushTimer;
+
+    @PostConstruct
+    public void start() {
+        registerMetrics();
+        if (!properties.isEnabled()) {
+            log.info("Order group commit disabled, orders are written one by one");
+            return;
+        }
+
+        queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        running = true;
+        committer = new Thread(this::commitLoop, "Order-GroupCommit");
+        committer.setDaemon(true);
+        committer.start();
+        log.info("Order group commit started: windowMs={}, maxBatchSize={}",
+                properties.getWindowMs(), properties.getMaxBatchSize());
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (committer != null) {
+            try {
+                // 提交线程会在排空队列后退出
+                committer.join(properties.getCommitTimeoutMs());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 提交订单写入（HBase 订单行 + Redis 订单状态），阻塞直到所在批次提交完成。
+     * 超过 commitTimeoutMs 仍未进入批次的订单撤回并抛出 IOException（确定未写入）；
+     * 已进入批次的订单继续等待批次结果，不会在可能已落库时报告失败
+     */
+    public void submit(Order order) throws IOException {
+        if (!running) {
+            writeDirectly(order);
+            return;
+        }
+
+        PendingOrder pending = new PendingOrder(order);
+        if (!queue.offer(pending)) {
+            // 队列已满，退化为同步写入，避免调用方无限等待
+            overflowOrders.increment();
+            writeDirectly(order);
+            return;
+        }
+
+        try {
+            pending.future.get(properties.getCommitTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // 仍在队列中说明从未写入，撤回后可以确定失败；已被提交线程取走则批次可能已落库，等待批次结果
+            if (queue.remove(pending)) {
+                throw new IOException("Order commit timed out before its batch started: " + order.getOrderId(), e);
+            }
+            log.warn("Order commit exceeded timeout, waiting for its in-flight batch: orderId={}", order.getOrderId());
+            awaitBatch(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for order commit: " + order.getOrderId(), e);
+        } catch (ExecutionException e) {
+            throw commitFailure(order, e);
+        }
+    }
+
+    /**
+     * 等待已开始写入的批次完成（HBase 客户端自身的操作超时保证有上界）
+     */
+    private void awaitBatch(PendingOrder pending) throws IOException {
+        try {
+            pending.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for order commit: " + pending.order.getOrderId(), e);
+        } catch (ExecutionException e) {
+            throw commitFailure(pending.order, e);
+        }
+    }
+
+    private static IOException commitFailure(Order order, ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        return new IOException("Order commit failed: " + order.getOrderId(), cause);
+    }
+
+    /**
+     * 获取组提交运行统计
+     */
+    public GroupCommitStats getStats() {
+        long batches = batchCount.sum();
+        long committed = committedOrders.sum();
+        long failed = failedOrders.sum();
+        return GroupCommitStats.builder()
+                .enabled(running)
+                .windowMs(properties.getWindowMs())
+                .maxBatchSize(properties.getMaxBatchSize())
+                .queueSize(queue != null ? queue.size() : 0)
+                .batchCount(batches)
+                .committedOrders(committed)
+                .failedOrders(failed)
+                .overflowOrders(overflowOrders.sum())
+                .averageBatchSize(batches > 0 ? (double) (committed + failed) / batches : 0)
+                .build();
+    }
+
+    private void commitLoop() {
+        int maxBatchSize = properties.getMaxBatchSize();
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(properties.getWindowMs());
+        List<PendingOrder> batch = new ArrayList<>(maxBatchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingOrder first = queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    PendingOrder next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failAll(batch, new IOException("Order group commit interrupted"));
+                break;
+            } catch (Throwable t) {
+                log.error("Unexpected error in order group commit loop", t);
+                failAll(batch, new IOException("Order group commit failed", t));
+            } finally {
+                batch.clear();
+            }
+        }
+
+        // 线程异常退出时，剩余订单直接失败，调用方可重试
+        PendingOrder remaining;
+        while ((remaining = queue.poll()) != null) {
+            remaining.future.completeExceptionally(new IOException("Order group commit stopped"));
+        }
+    }
+
+    private void flush(List<PendingOrder> batch) {
+        long startNanos = System.nanoTime();
+        List<Order> orders = new ArrayList<>(batch.size());
+        for (PendingOrder pending : batch) {
+            orders.add(pending.order);
+        }
+
+        List<IOException> failures;
+        try {
+            failures = orderRepository.saveAll(orders);
+        } catch (IOException e) {
+            log.error("Order batch write failed: size={}", batch.size(), e);
+            failAll(batch, e);
+            recordBatch(batch.size(), startNanos);
+            return;
+        }
+
+        Map<String, Integer> statuses = new HashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (failures.get(i) == null) {
+                Order order = batch.get(i).order;
+                statuses.put(order.getOrderId(), order.getStatus());
+            }
+        }
+        orderStateService.putStatuses(statuses);
+
+        for (int i = 0; i < batch.size(); i++) {
+            IOException failure = failures.get(i);
+            if (failure == null) {
+                committedOrders.increment();
+                batch.get(i).future.complete(null);
+            } else {
+                failedOrders.increment();
+                batch.get(i).future.completeExceptionally(failure);
+            }
+        }
+        recordBatch(batch.size(), startNanos);
+    }
+
+    private void failAll(List<PendingOrder> batch, IOException cause) {
+        for (PendingOrder pending : batch) {
+            if (pending.future.completeExceptionally(cause)) {
+                failedOrders.increment();
+            }
+        }
+    }
+
+    private void recordBatch(int size, long startNanos) {
+        batchCount.increment();
+        if (batchSizeSummary != null) {
+            batchSizeSummary.record(size);
+            flushTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void writeDirectly(Order order) throws IOException {
+        orderRepository.save(order);
+        orderStateService.putStatus(order.getOrderId(), order.getStatus());
+    }
+
+    private void registerMetrics() {
+        if (meterRegistry == null) {
+            return;
+        }
+
+        Gauge.builder("sales.order.group_commit.window_ms", properties, OrderGroupCommitProperties::getWindowMs)
+                .register(meterRegistry);
+        Gauge.builder("sales.order.group_commit.max_batch_size", properties, OrderGroupCommitProperties::getMaxBatchSize)
+                .register(meterRegistry);
+        Gauge.builder("sales.order.group_commit.queue_size", this, s -> s.queue != null ? s.queue.size() : 0)
+                .register(meterRegistry);
+        FunctionCounter.builder("sales.order.group_commit.orders", committedOrders, LongAdder::sum)
+                .tag("result", "success").register(meterRegistry);
+        FunctionCounter.builder("sales.order.group_commit.orders", failedOrders, LongAdder::sum)
+                .tag("result", "failure").register(meterRegistry);
+        FunctionCounter.builder("sales.order.group_commit.overflow", overflowOrders, LongAdder::sum)
+                .register(meterRegistry);
+        batchSizeSummary = DistributionSummary.builder("sales.order.group_commit.batch_size")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("sales.order.group_commit.flush")
+                .register(meterRegistry);
+    }
+
+    private static class PendingOrder {
+        private final Order order;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingOrder(Order order) {
+            this.order = order;
+        }
+    }
+
+    /**
+     * 组提交统计
+     */
+    @lombok.Data
+    @lombok.Builder
+    public static class GroupCommitStats {
+        private boolean enabled;
+        private long windowMs;
+        private int maxBatchSize;
+        private int queueSize;
+        private long batchCount;
+        private long committedOrders;
+        private long failedOrders;
+        private long overflowOrders;
+        private double averageBatchSize;
+    }
+}
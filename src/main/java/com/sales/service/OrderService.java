@@ -1,12 +1,14 @@
 package com.sales.service;
 
-import com.sales.config.RedisConfig;
+import com.sales.config.DelayedJobProperties;
+import com.sales.entity.CursorPage;
 import com.sales.entity.Order;
+import com.sales.entity.OrderEvent;
+import com.sales.entity.OrderSummary;
 import com.sales.entity.Product;
 import com.sales.repository.OrderRepository;
 import com.sales.repository.ProductRepository;
 import com.sales.service.CartService;
-import com.sales.service.RankingService;
 import com.sales.service.StockService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,12 +17,10 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
@@ -41,40 +41,50 @@ public class OrderService {
 
     @Autowired
     private CartService cartService;
-    
+
+    @Autowired
+    private OrderStatsService orderStatsService;
+
+    @Autowired
+    private IdGeneratorService idGeneratorService;
+
+    @Autowired
+    private OrderGroupCommitService orderGroupCommitService;
+
+    @Autowired
+    private OrderEventService orderEventService;
+
     @Autowired
-    private RankingService rankingService;
+    private DelayedJobService delayedJobService;
 
     @Autowired
-    private RedisService redisService;
+    private DelayedJobProperties delayedJobProperties;
 
-    private static final long ORDER_STATUS_EXPIRE_DAYS = 7;
+    @Autowired
+    private OrderTimelineService orderTimelineService;
+
+    @Autowired
+    private OrderStateService orderStateService;
 
     /**
      * 创建订单
      */
     @Transactional
     public Order createOrder(Order order) throws IOException {
-        if (order.getOrderId() == null || order.getOrderId().isEmpty()) {
-            order.setOrderId(generateOrderId());
-        }
-
-        if (order.getCreateTime() == null) {
-            order.setCreateTime(LocalDateTime.now());
-        }
-        if (order.getStatus() == null) {
-            order.setStatus(Order.Status.PENDING_PAYMENT.getCode());
-        }
-        if (order.getDiscountAmount() == null) {
-            order.setDiscountAmount(BigDecimal.ZERO);
-        }
-        calculateOrderAmount(order);
+        prepareOrder(order);
 
         // 库存已在加入购物车时扣减，这里不再需要锁定库存
 
-        orderRepository.save(order);
+        // 订单行与 Redis 状态由组提交合并写入，返回时本订单已落库
+        orderGroupCommitService.submit(order);
 
-        cacheOrderStatus(order.getOrderId(), order.getStatus());
+        orderStatsService.recordTransition(null, order.getStatus());
+        orderTimelineService.add(order);
+
+        if (Order.Status.PENDING_PAYMENT.getCode().equals(order.getStatus())) {
+            delayedJobService.schedule(DelayedJobService.TYPE_ORDER_AUTO_CANCEL, order.getOrderId(),
+                    System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(delayedJobProperties.getAutoCancelMinutes()));
+        }
 
         // 注意：这里不再清空购物车，因为库存已扣减，购物车应在支付成功后清空
         // if (order.getUserId() != null) {
@@ -90,6 +100,26 @@ public class OrderService {
         return order;
     }
 
+    /**
+     * 补全新订单的订单号、创建时间、状态和金额（不访问存储），供创建与结算流水线共用
+     */
+    public void prepareOrder(Order order) {
+        if (order.getOrderId() == null || order.getOrderId().isEmpty()) {
+            order.setOrderId(generateOrderId());
+        }
+
+        if (order.getCreateTime() == null) {
+            order.setCreateTime(LocalDateTime.now());
+        }
+        if (order.getStatus() == null) {
+            order.setStatus(Order.Status.PENDING_PAYMENT.getCode());
+        }
+        if (order.getDiscountAmount() == null) {
+            order.setDiscountAmount(BigDecimal.ZERO);
+        }
+        calculateOrderAmount(order);
+    }
+
     /**
      * 根据ID获取订单
      */
@@ -100,19 +130,38 @@ public class OrderService {
     }
 
     /**
-     * 获取用户订单列表
+     * 获取用户订单列表（摘要）：最近 capacity 单内的分页直接读 Redis 时间线，更深的分页回源 HBase
      */
-    public List<Order> getUserOrders(String userId, int limit) throws IOException {
-        List<Order> orders = orderRepository.findByUserId(userId, limit);
+    public List<OrderSummary> getUserOrders(String userId, int offset, int limit) throws IOException {
+        List<OrderSummary> page = orderTimelineService.getPage(userId, offset, limit);
+        if (page != null) {
+            applyRedisStatusToSummaries(page);
+            return page;
+        }
+
+        // 时间线缺失或不完整：回源 HBase，且在时间线范围内时顺带重建
+        boolean rebuild = offset + limit <= orderTimelineService.getCapacity();
+        List<Order> orders = orderRepository.findByUserId(userId,
+                rebuild ? orderTimelineService.getCapacity() : offset + limit,
+                idGeneratorService.rowKeyPrefixes(IdGeneratorService.ORDER_PREFIX));
         applyRedisStatusIfPresent(orders);
-        return orders;
+        if (rebuild) {
+            orderTimelineService.rebuild(userId, orders);
+        }
+
+        List<OrderSummary> summaries = new ArrayList<>();
+        for (int i = offset; i < Math.min(offset + limit, orders.size()); i++) {
+            summaries.add(OrderSummary.of(orders.get(i)));
+        }
+        return summaries;
     }
 
     /**
      * 获取订单列表（按状态）
      */
     public List<Order> getOrdersByStatus(Integer status, int limit) throws IOException {
-        List<Order> orders = orderRepository.findByStatus(status, limit);
+        List<Order> orders = orderRepository.findByStatus(status, limit,
+                idGeneratorService.rowKeyPrefixes(IdGeneratorService.ORDER_PREFIX));
         applyRedisStatusIfPresent(orders);
         return orders;
     }
@@ -121,193 +170,123 @@ public class OrderService {
      * 获取最近订单
      */
     public List<Order> getRecentOrders(int limit) throws IOException {
-        List<Order> orders = orderRepository.findRecentOrders(limit);
-        applyRedisStatusIfPresent(orders);
-        return orders;
+        return getRecentOrders(null, limit).getItems();
     }
 
     /**
-     * 支付订单
+     * 游标分页获取最近订单（时间倒序），cursor 为上一页返回的 nextCursor（首页传 null）
+     */
+    public CursorPage<Order> getRecentOrders(String cursor, int limit) throws IOException {
+        CursorPage<Order> page = orderRepository.findRecentOrders(cursor, limit,
+                idGeneratorService.rowKeyPrefixes(IdGeneratorService.ORDER_PREFIX));
+        applyRedisStatusIfPresent(page.getItems());
+        return page;
+    }
+
+    /**
+     * 支付订单（条件状态流转，待付款 -> 待发货）
+     * 看板统计、清空购物车等副作用由 PAID 事件异步处理，请求线程只写状态
      */
     @Transactional
     public boolean payOrder(String orderId, String payMethod) throws IOException {
-        Order order = orderRepository.findById(orderId);
-        if (order == null) {
-            log.error("Order not found: {}", orderId);
-            return false;
-        }
-
-        if (!order.canPay()) {
-            log.error("Order cannot be paid: {}, status={}", orderId, order.getStatus());
+        Order changes = Order.builder()
+                .status(Order.Status.PENDING_DELIVERY.getCode())
+                .payMethod(payMethod)
+                .build();
+        OrderEvent event = OrderEvent.of(orderId, OrderEvent.Type.PAID);
+        if (!orderRepository.transitionStatus(orderId, Order.Status.PENDING_PAYMENT.getCode(), changes, event)) {
+            log.error("Order cannot be paid (not found or status changed): {}", orderId);
             return false;
         }
 
-        // 更新订单状态
-        order.setStatus(Order.Status.PENDING_DELIVERY.getCode());
-        order.setPayMethod(payMethod);
-        order.setPayTime(LocalDateTime.now());
-        
-        orderRepository.save(order);
-
         // 订单状态写入Redis（实时）
-        cacheOrderStatus(order.getOrderId(), order.getStatus());
+        cacheOrderStatus(orderId, changes.getStatus());
+        orderStatsService.recordTransition(Order.Status.PENDING_PAYMENT.getCode(), changes.getStatus());
+        delayedJobService.cancel(DelayedJobService.TYPE_ORDER_AUTO_CANCEL, orderId);
 
         // 库存已在加入购物车时扣减，这里不再需要扣减库存
         // deductOrderStock(order);
 
-        // 实时销售看板/统计（Redis）
-        updateRealtimeMetricsOnPaid(order);
-
-        // 支付成功后清空购物车
-        if (order.getUserId() != null) {
-            cartService.clearCart(order.getUserId());
-        }
+        orderEventService.publish(event);
 
         log.info("Order paid: {}", orderId);
         return true;
     }
 
-    private void updateRealtimeMetricsOnPaid(Order order) {
-        if (order == null) {
-            return;
-        }
-
-        BigDecimal actualAmount = order.getActualAmount() != null ? order.getActualAmount() : BigDecimal.ZERO;
-
-        // 检查是否已经统计过（避免重复统计）
-        String orderStatsKey = RedisConfig.RedisKeys.ORDER_STATS_PREFIX + order.getOrderId();
-        Boolean alreadyCounted = (Boolean) redisService.get(orderStatsKey);
-        
-        if (alreadyCounted != null && alreadyCounted) {
-            log.info("Order already counted in stats: {}", order.getOrderId());
-            return;
-        }
-
-        // 今日计数器
-        redisService.incr(RedisConfig.RedisKeys.STAT_ORDERS_TODAY, 1);
-        redisService.expire(RedisConfig.RedisKeys.STAT_ORDERS_TODAY, 3600, TimeUnit.SECONDS);
-
-        redisService.incrByFloat(RedisConfig.RedisKeys.STAT_SALES_TODAY, actualAmount.doubleValue());
-        redisService.expire(RedisConfig.RedisKeys.STAT_SALES_TODAY, 3600, TimeUnit.SECONDS);
-
-        // 今日看板 Hash：dashboard:{yyyyMMdd}
-        String dateKey = LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE);
-        String dashboardKey = RedisConfig.RedisKeys.DASHBOARD_PREFIX + dateKey;
-        redisService.hincrByFloat(dashboardKey, "total_amount", actualAmount.doubleValue());
-        redisService.hincrBy(dashboardKey, "order_count", 1);
-        redisService.expire(dashboardKey, 3600, TimeUnit.SECONDS);
-
-        // 热门商品：按订单金额/数量加权
-        if (order.getItems() != null) {
-            for (Order.OrderItem item : order.getItems()) {
-                if (item == null || item.getProductId() == null) {
-                    continue;
-                }
-                int qty = item.getQuantity() != null ? item.getQuantity() : 0;
-                if (qty > 0) {
-                    rankingService.addSalesScore(item.getProductId(), qty);
-                }
-                BigDecimal itemAmount = item.getAmount() != null ? item.getAmount() : BigDecimal.ZERO;
-                rankingService.addPurchaseScore(item.getProductId(), itemAmount.doubleValue());
-            }
-        }
-        
-        // 标记该订单已统计过
-        redisService.set(orderStatsKey, true, 7, TimeUnit.DAYS);
-        
-        log.info("Order stats updated: orderId={}, amount={}", order.getOrderId(), actualAmount);
-    }
-
     /**
-     * 发货
+     * 发货（条件状态流转，待发货 -> 已发货，只写状态、发货时间和物流列）
      */
     public boolean deliverOrder(String orderId, String expressCompany, String expressNo) throws IOException {
-        Order order = orderRepository.findById(orderId);
-        if (order == null) {
-            log.error("Order not found: {}", orderId);
-            return false;
-        }
-
-        if (!order.canDeliver()) {
-            log.error("Order cannot be delivered: {}, status={}", orderId, order.getStatus());
+        Order changes = Order.builder()
+                .status(Order.Status.SHIPPED.getCode())
+                .expressCompany(expressCompany)
+                .expressNo(expressNo)
+                .build();
+        OrderEvent event = OrderEvent.of(orderId, OrderEvent.Type.SHIPPED);
+        if (!orderRepository.transitionStatus(orderId, Order.Status.PENDING_DELIVERY.getCode(), changes, event)) {
+            log.error("Order cannot be delivered (not found or status changed): {}", orderId);
             return false;
         }
 
-        // 更新订单状态和物流信息
-        order.setStatus(Order.Status.SHIPPED.getCode());
-        order.setExpressCompany(expressCompany);
-        order.setExpressNo(expressNo);
-        order.setDeliverTime(LocalDateTime.now());
-        
-        orderRepository.save(order);
-
         // 订单状态写入Redis（实时）
-        cacheOrderStatus(order.getOrderId(), order.getStatus());
+        cacheOrderStatus(orderId, changes.getStatus());
+        orderStatsService.recordTransition(Order.Status.PENDING_DELIVERY.getCode(), changes.getStatus());
+        delayedJobService.schedule(DelayedJobService.TYPE_ORDER_AUTO_CONFIRM, orderId,
+                System.currentTimeMillis() + TimeUnit.DAYS.toMillis(delayedJobProperties.getAutoConfirmDays()));
+
+        orderEventService.publish(event);
 
         log.info("Order delivered: {}, express: {} {}", orderId, expressCompany, expressNo);
         return true;
     }
 
     /**
-     * 确认收货
+     * 确认收货（条件状态流转，已发货 -> 已完成）
+     * 商品销量和热销榜单由 COMPLETED 事件异步处理
      */
     public boolean completeOrder(String orderId) throws IOException {
-        Order order = orderRepository.findById(orderId);
-        if (order == null) {
-            log.error("Order not found: {}", orderId);
-            return false;
-        }
-
-        if (!order.canComplete()) {
-            log.error("Order cannot be completed: {}, status={}", orderId, order.getStatus());
+        Order changes = Order.builder()
+                .status(Order.Status.COMPLETED.getCode())
+                .build();
+        OrderEvent event = OrderEvent.of(orderId, OrderEvent.Type.COMPLETED);
+        if (!orderRepository.transitionStatus(orderId, Order.Status.SHIPPED.getCode(), changes, event)) {
+            log.error("Order cannot be completed (not found or status changed): {}", orderId);
             return false;
         }
 
-        // 更新订单状态
-        order.setStatus(Order.Status.COMPLETED.getCode());
-        order.setCompleteTime(LocalDateTime.now());
-        
-        orderRepository.save(order);
-
         // 订单状态写入Redis（实时）
-        cacheOrderStatus(order.getOrderId(), order.getStatus());
+        cacheOrderStatus(orderId, changes.getStatus());
+        orderStatsService.recordTransition(Order.Status.SHIPPED.getCode(), changes.getStatus());
+        delayedJobService.cancel(DelayedJobService.TYPE_ORDER_AUTO_CONFIRM, orderId);
 
-        // 增加商品销量
-        increaseProductSales(order);
-        
-        // 更新热销榜单
-        updateHotRanking(order);
+        orderEventService.publish(event);
 
         log.info("Order completed: {}", orderId);
         return true;
     }
 
     /**
-     * 取消订单
+     * 取消订单（条件状态流转，待付款 -> 已取消）
+     * 订单商品移出购物车并归还库存由 CANCELLED 事件异步处理
      */
     @Transactional
     public boolean cancelOrder(String orderId) throws IOException {
-        Order order = orderRepository.findById(orderId);
-        if (order == null) {
-            log.error("Order not found: {}", orderId);
-            return false;
-        }
-
-        if (!order.canCancel()) {
-            log.error("Order cannot be cancelled: {}, status={}", orderId, order.getStatus());
+        Order changes = Order.builder()
+                .status(Order.Status.CANCELLED.getCode())
+                .build();
+        OrderEvent event = OrderEvent.of(orderId, OrderEvent.Type.CANCELLED);
+        if (!orderRepository.transitionStatus(orderId, Order.Status.PENDING_PAYMENT.getCode(), changes, event)) {
+            log.error("Order cannot be cancelled (not found or status changed): {}", orderId);
             return false;
         }
 
-        // 更新订单状态
-        order.setStatus(Order.Status.CANCELLED.getCode());
-        orderRepository.save(order);
-
         // 订单状态写入Redis（实时）
-        cacheOrderStatus(order.getOrderId(), order.getStatus());
+        cacheOrderStatus(orderId, changes.getStatus());
+        orderStatsService.recordTransition(Order.Status.PENDING_PAYMENT.getCode(), changes.getStatus());
+        delayedJobService.cancel(DelayedJobService.TYPE_ORDER_AUTO_CANCEL, orderId);
 
-        // 注意：库存已在购物车中预扣，取消订单不需要额外处理库存
-        // 用户可以通过购物车重新操作或清空购物车来归还库存
-        // releaseOrderStock(order);
+        // 购物车中预扣的库存由 CANCELLED 事件归还（StockReleaseEventHandler，按订单号只执行一次）
+        orderEventService.publish(event);
 
         log.info("Order cancelled: {}", orderId);
         return true;
@@ -330,110 +309,86 @@ public class OrderService {
         
         // 删除订单
         orderRepository.delete(orderId);
+        orderStatsService.recordTransition(order.getStatus(), null);
+        orderTimelineService.remove(order.getUserId(), orderId);
         
-        // 清理Redis缓存
-        String statusKey = RedisConfig.RedisKeys.ORDER_STATUS_PREFIX + orderId;
-        redisService.del(statusKey);
-        
-        // 清理统计标记
-        String statsKey = RedisConfig.RedisKeys.ORDER_STATS_PREFIX + orderId;
-        redisService.del(statsKey);
+        // 清理Redis中的订单状态与统计标记
+        orderStateService.evict(orderId);
         
         log.info("Order deleted: {}", orderId);
     }
 
     /**
-     * 更新订单状态
+     * 更新订单状态：按目标状态走对应的条件流转（CAS + outbox 事件 + 延时任务），
+     * 看板、排行等副作用由事件异步处理
+     *
+     * @return 当前状态不允许流转到目标状态（或订单不存在）时返回 false
+     * @throws IllegalArgumentException 目标状态不是可流转的状态
      */
-    public void updateOrderStatus(String orderId, Integer status) throws IOException {
-        // 获取更新前的订单信息
-        Order oldOrder = orderRepository.findById(orderId);
-        Integer oldStatus = oldOrder != null ? oldOrder.getStatus() : null;
-        
-        // 更新订单状态
-        orderRepository.updateStatus(orderId, status);
-
-        // 订单状态写入Redis（实时）
-        cacheOrderStatus(orderId, status);
-        
-        // 如果更新为已完成状态，直接更新仪表盘统计
-        if (status.equals(Order.Status.COMPLETED.getCode())) {
-            
-            // 检查是否已经统计过（避免重复统计）
-            String orderStatsKey = RedisConfig.RedisKeys.ORDER_STATS_PREFIX + orderId;
-            Boolean alreadyCounted = (Boolean) redisService.get(orderStatsKey);
-            
-            if (alreadyCounted == null || !alreadyCounted) {
-                // 获取完整订单信息进行统计
-                Order order = orderRepository.findById(orderId);
-                if (order != null && order.getTotalAmount() != null) {
-                    // 直接使用订单金额进行统计
-                    BigDecimal originalActualAmount = order.getActualAmount();
-                    order.setActualAmount(order.getTotalAmount());
-                    
-                    // 更新仪表板统计
-                    updateRealtimeMetricsOnPaid(order);
-                    
-                    // 恢复原来的实际金额
-                    order.setActualAmount(originalActualAmount);
-                    
-                    // 标记该订单已统计过
-                    redisService.set(orderStatsKey, true, 7, TimeUnit.DAYS);
-                    
-                    // 更新热销榜单
-                    updateHotRanking(order);
-                    
-                    log.info("Order completion stats updated: {}, amount={}", orderId, order.getTotalAmount());
-                }
-            }
-        }
-        
-        log.info("Order status updated: {} -> {}, old status: {}", orderId, status, oldStatus);
+    public boolean updateOrderStatus(String orderId, Integer status) throws IOException {
+        boolean updated;
+        if (Order.Status.PENDING_DELIVERY.getCode().equals(status)) {
+            updated = payOrder(orderId, null);
+        } else if (Order.Status.SHIPPED.getCode().equals(status)) {
+            updated = deliverOrder(orderId, null, null);
+        } else if (Order.Status.COMPLETED.getCode().equals(status)) {
+            updated = completeOrder(orderId);
+        } else if (Order.Status.CANCELLED.getCode().equals(status)) {
+            updated = cancelOrder(orderId);
+        } else {
+            throw new IllegalArgumentException("不支持流转到该状态: " + status);
+        }
+
+        log.info("Order status update: {} -> {}, updated={}", orderId, status, updated);
+        return updated;
     }
 
     private void cacheOrderStatus(String orderId, Integer status) {
-        if (orderId == null || orderId.isEmpty() || status == null) {
-            return;
-        }
-        String key = RedisConfig.RedisKeys.ORDER_STATUS_PREFIX + orderId;
-        redisService.set(key, String.valueOf(status), ORDER_STATUS_EXPIRE_DAYS, TimeUnit.DAYS);
-    }
-
-    private Integer getCachedOrderStatus(String orderId) {
-        if (orderId == null || orderId.isEmpty()) {
-            return null;
-        }
-        String key = RedisConfig.RedisKeys.ORDER_STATUS_PREFIX + orderId;
-        Object obj = redisService.get(key);
-        if (obj == null) {
-            return null;
-        }
-        try {
-            if (obj instanceof Integer) {
-                return (Integer) obj;
-            }
-            return Integer.parseInt(String.valueOf(obj));
-        } catch (Exception ignored) {
-            return null;
-        }
+        orderStateService.putStatus(orderId, status);
     }
 
     private void applyRedisStatusIfPresent(Order order) {
         if (order == null) {
             return;
         }
-        Integer cached = getCachedOrderStatus(order.getOrderId());
+        Integer cached = orderStateService.getStatus(order.getOrderId());
         if (cached != null) {
             order.setStatus(cached);
         }
     }
 
+    /**
+     * 用 Redis 实时状态覆盖时间线摘要中的状态（摘要由异步事件刷新，可能稍有滞后），一次 pipeline
+     */
+    private void applyRedisStatusToSummaries(List<OrderSummary> summaries) {
+        if (summaries.isEmpty()) {
+            return;
+        }
+        List<String> orderIds = new ArrayList<>(summaries.size());
+        for (OrderSummary summary : summaries) {
+            orderIds.add(summary.getOrderId());
+        }
+        List<Integer> statuses = orderStateService.getStatuses(orderIds);
+        for (int i = 0; i < summaries.size(); i++) {
+            if (statuses.get(i) != null) {
+                summaries.get(i).setStatus(statuses.get(i));
+            }
+        }
+    }
+
     private void applyRedisStatusIfPresent(List<Order> orders) {
         if (orders == null || orders.isEmpty()) {
             return;
         }
+        List<String> orderIds = new ArrayList<>(orders.size());
         for (Order order : orders) {
-            applyRedisStatusIfPresent(order);
+            orderIds.add(order.getOrderId());
+        }
+        List<Integer> statuses = orderStateService.getStatuses(orderIds);
+        for (int i = 0; i < orders.size(); i++) {
+            if (statuses.get(i) != null) {
+                orders.get(i).setStatus(statuses.get(i));
+            }
         }
     }
 
@@ -456,16 +411,15 @@ public class OrderService {
      * 获取订单统计信息
      */
     public OrderStats getOrderStats() throws IOException {
-        long pendingPaymentCount = orderRepository.countByStatus(Order.Status.PENDING_PAYMENT.getCode());
-        long pendingDeliveryCount = orderRepository.countByStatus(Order.Status.PENDING_DELIVERY.getCode());
-        long shippedCount = orderRepository.countByStatus(Order.Status.SHIPPED.getCode());
-        long completedCount = orderRepository.countByStatus(Order.Status.COMPLETED.getCode());
+        // 增量维护的状态计数，O(1) 读取
+        Map<Integer, Long> counts = orderStatsService.getStatusCounts();
 
         return OrderStats.builder()
-                .pendingPaymentCount((int) pendingPaymentCount)
-                .pendingDeliveryCount((int) pendingDeliveryCount)
-                .shippedCount((int) shippedCount)
-                .completedCount((int) completedCount)
+                .pendingPaymentCount(counts.getOrDefault(Order.Status.PENDING_PAYMENT.getCode(), 0L).intValue())
+                .pendingDeliveryCount(counts.getOrDefault(Order.Status.PENDING_DELIVERY.getCode(), 0L).intValue())
+                .shippedCount(counts.getOrDefault(Order.Status.SHIPPED.getCode(), 0L).intValue())
+                .completedCount(counts.getOrDefault(Order.Status.COMPLETED.getCode(), 0L).intValue())
+                .cancelledCount(counts.getOrDefault(Order.Status.CANCELLED.getCode(), 0L).intValue())
                 .build();
     }
 
@@ -555,53 +509,11 @@ public class OrderService {
         }
     }
 
-    /**
-     * 更新热销榜单
-     */
-    private void updateHotRanking(Order order) throws IOException {
-        if (order.getItems() == null) {
-            return;
-        }
-
-        for (Order.OrderItem item : order.getItems()) {
-            String productId = item.getProductId();
-            double amount = item.getAmount() != null ? item.getAmount().doubleValue() : 0.0;
-            
-            // 增加日销售排行榜分数
-            rankingService.addSalesScore(productId, amount);
-            
-            // 增加周销售排行榜分数
-            rankingService.addWeeklySalesScore(productId, amount);
-            
-            // 增加月销售排行榜分数
-            rankingService.addMonthlySalesScore(productId, amount);
-            
-            // 增加热门商品分数（基于购买金额）
-            rankingService.addPurchaseScore(productId, amount);
-            
-            log.info("Updated hot ranking for completed order: productId={}, amount={}", productId, amount);
-        }
-    }
-
-    /**
-     * 增加商品销量
-     */
-    private void increaseProductSales(Order order) throws IOException {
-        if (order.getItems() == null) {
-            return;
-        }
-
-        for (Order.OrderItem item : order.getItems()) {
-            productService.incrementSaleCount(item.getProductId(), (long) item.getQuantity());
-        }
-    }
-
     /**
      * 生成订单ID
      */
     private String generateOrderId() {
-        return "ORD" + LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMddHHmmss")) + 
-               UUID.randomUUID().toString().substring(0, 4).toUpperCase();
+        return idGeneratorService.nextId(IdGeneratorService.ORDER_PREFIX);
     }
 
     /**
@@ -614,5 +526,6 @@ public class OrderService {
         private int pendingDeliveryCount;
         private int shippedCount;
         private int completedCount;
+        private int cancelledCount;
     }
 }
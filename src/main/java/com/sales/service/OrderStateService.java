@@ -0,0 +1,205 @@
+package com.sales.service;
+
+import com.sales.config.OrderStateProperties;
+import com.sales.config.RedisConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 订单实时状态与统计标记的紧凑存储
+ *
+ * 不再为每单创建 order:status:{id} / order:stats:{id} 两个字符串键，而是按订单创建日 + 散列桶
+ * 写入小 Hash：order:state:{yyyyMMdd}:{bucket}，字段为 base36 订单号（状态）与 base36 订单号 + "!"（已统计标记）。
+ * 单桶字段数低于 hash-max-listpack-entries 时 Redis 以 listpack 紧凑编码存储；
+ * 整桶在创建日 + retentionDays 后到期，无需逐单 TTL。统计标记用 HSETNX 原子去重。
+ */
+@Slf4j
+@Service
+public class OrderStateService {
+
+    private static final String COUNTED_SUFFIX = "!";
+
+    private static final String LEGACY_DAY = "legacy";
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+    @Autowired
+    private RedisService redisService;
+
+    @Autowired
+    private IdGeneratorService idGeneratorService;
+
+    @Autowired
+    private OrderStateProperties properties;
+
+    /**
+     * 写入单个订单状态（HSET + EXPIREAT 一次往返）
+     */
+    public void putStatus(String orderId, Integer status) {
+        if (orderId == null || orderId.isEmpty() || status == null) {
+            return;
+        }
+        redisService.pipeline(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) {
+                writeStatus(operations, orderId, status);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 批量写入订单状态，一次 pipeline 往返
+     */
+    public void putStatuses(Map<String, Integer> statuses) {
+        if (statuses == null || statuses.isEmpty()) {
+            return;
+        }
+        redisService.pipeline(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) {
+                for (Map.Entry<String, Integer> entry : statuses.entrySet()) {
+                    writeStatus(operations, entry.getKey(), entry.getValue());
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 在调用方已开启的 pipeline 中写入订单状态
+     */
+    @SuppressWarnings("unchecked")
+    public void writeStatus(RedisOperations operations, String orderId, Integer status) {
+        StateSlot slot = slot(orderId);
+        operations.opsForHash().put(slot.key, slot.field, status);
+        operations.expireAt(slot.key, slot.expireAt);
+    }
+
+    /**
+     * 读取订单状态，不存在（已过期或未缓存）返回 null
+     */
+    public Integer getStatus(String orderId) {
+        if (orderId == null || orderId.isEmpty()) {
+            return null;
+        }
+        StateSlot slot = slot(orderId);
+        return toStatus(redisService.hget(slot.key, slot.field));
+    }
+
+    /**
+     * 批量读取订单状态，返回与 orderIds 对应的列表（缺失为 null），一次 pipeline 往返
+     */
+    public List<Integer> getStatuses(List<String> orderIds) {
+        List<Integer> statuses = new ArrayList<>(orderIds.size());
+        List<Object> values = orderIds.isEmpty() ? null : redisService.pipeline(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                for (String orderId : orderIds) {
+                    StateSlot slot = slot(orderId);
+                    operations.opsForHash().get(slot.key, slot.field);
+                }
+                return null;
+            }
+        });
+        for (int i = 0; i < orderIds.size(); i++) {
+            statuses.add(values != null && i < values.size() ? toStatus(values.get(i)) : null);
+        }
+        return statuses;
+    }
+
+    /**
+     * 原子标记订单已计入统计（HSETNX）
+     *
+     * @return 首次标记返回 true；已标记过或 Redis 不可用返回 false
+     */
+    public boolean markCounted(String orderId) {
+        StateSlot slot = slot(orderId);
+        String field = slot.field + COUNTED_SUFFIX;
+        List<Object> results = redisService.pipeline(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                operations.opsForHash().putIfAbsent(slot.key, field, 1);
+                operations.expireAt(slot.key, slot.expireAt);
+                return null;
+            }
+        });
+        return results != null && !results.isEmpty() && Boolean.TRUE.equals(results.get(0));
+    }
+
+    /**
+     * 撤销统计标记（统计更新失败时，允许重试）
+     */
+    public void unmarkCounted(String orderId) {
+        StateSlot slot = slot(orderId);
+        redisService.hdel(slot.key, slot.field + COUNTED_SUFFIX);
+    }
+
+    /**
+     * 删除订单的状态与统计标记
+     */
+    public void evict(String orderId) {
+        StateSlot slot = slot(orderId);
+        redisService.hdel(slot.key, slot.field, slot.field + COUNTED_SUFFIX);
+    }
+
+    private StateSlot slot(String orderId) {
+        Long id = idGeneratorService.parseRowKey(orderId);
+        int buckets = Math.max(1, properties.getBucketsPerDay());
+        if (id == null) {
+            // 非生成器产生的订单号无法解析创建时间，归入固定的 legacy 桶，按最后写入时间过期
+            int bucket = Math.floorMod(orderId.hashCode(), buckets);
+            long expireAt = System.currentTimeMillis() + properties.getRetentionDays() * 86400000L;
+            return new StateSlot(RedisConfig.RedisKeys.ORDER_STATE_PREFIX + LEGACY_DAY + ":" + bucket,
+                    orderId, expireAt);
+        }
+
+        LocalDate day = Instant.ofEpochMilli(idGeneratorService.extractTimestamp(id))
+                .atZone(ZoneId.systemDefault()).toLocalDate();
+        long expireAt = day.plusDays(properties.getRetentionDays() + 1L)
+                .atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        int bucket = (int) (((id * 0x9E3779B97F4A7C15L) >>> 33) % buckets);
+        return new StateSlot(RedisConfig.RedisKeys.ORDER_STATE_PREFIX + day.format(DAY_FORMAT) + ":" + bucket,
+                Long.toString(id, Character.MAX_RADIX), expireAt);
+    }
+
+    private static Integer toStatus(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        try {
+            return Integer.parseInt(String.valueOf(value));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static class StateSlot {
+        private final String key;
+        private final String field;
+        private final Date expireAt;
+
+        private StateSlot(String key, String field, long expireAtMillis) {
+            this.key = key;
+            this.field = field;
+            this.expireAt = new Date(expireAtMillis);
+        }
+    }
+}
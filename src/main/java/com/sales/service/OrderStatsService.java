@@ -0,0 +1,176 @@
+package com.sales.service;
+
+import com.sales.config.RedisConfig;
+import com.sales.entity.Order;
+import com.sales.repository.OrderRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 订单状态计数：状态流转时增量维护 Redis Hash，定期写入 HBase 检查点，并定时全量对账纠偏
+ */
+@Slf4j
+@Service
+public class OrderStatsService {
+
+    // 从检查点恢复：缺少已初始化标记时把检查点计数累加到现有字段（保留 Hash 丢失后已记录的流转）并写入标记
+    // KEYS: 计数 Hash；ARGV: (状态码, 检查点计数) 对，状态码为 JSON 序列化
+    // 返回 1 已恢复；0 其他请求已恢复过
+    private static final RedisScript<Long> RESTORE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('hexists', KEYS[1], '" + AggregateStatsService.INITIALIZED_FIELD + "') == 1 then return 0 end " +
+            "for i = 1, #ARGV, 2 do " +
+            "  redis.call('hincrby', KEYS[1], cjson.decode(ARGV[i]), ARGV[i + 1]) " +
+            "end " +
+            "redis.call('hset', KEYS[1], '" + AggregateStatsService.INITIALIZED_FIELD + "', 1) " +
+            "return 1", Long.class);
+
+    @Autowired
+    private RedisService redisService;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    /**
+     * 记录状态流转：旧状态减一、新状态加一（新建订单 oldStatus 为 null，删除订单 newStatus 为 null）
+     */
+    public void recordTransition(Integer oldStatus, Integer newStatus) {
+        if (oldStatus != null && oldStatus.equals(newStatus)) {
+            return;
+        }
+        String key = RedisConfig.RedisKeys.ORDER_STATUS_COUNTS;
+        if (oldStatus != null) {
+            redisService.hincrBy(key, String.valueOf(oldStatus), -1);
+        }
+        if (newStatus != null) {
+            redisService.hincrBy(key, String.valueOf(newStatus), 1);
+        }
+    }
+
+    /**
+     * 获取各状态订单数：缺少已初始化标记（Hash 丢失后只有增量）时从 HBase 检查点恢复，检查点也不存在时立即对账
+     */
+    public Map<Integer, Long> getStatusCounts() throws IOException {
+        Map<Object, Object> entries = redisService.hgetAll(RedisConfig.RedisKeys.ORDER_STATUS_COUNTS);
+        if (entries != null && entries.containsKey(AggregateStatsService.INITIALIZED_FIELD)) {
+            return parseCounts(entries);
+        }
+
+        Map<Integer, Long> checkpoint = orderRepository.findStatusCountsCheckpoint();
+        if (checkpoint.isEmpty()) {
+            return reconcile();
+        }
+        List<Object> args = new ArrayList<>(Order.Status.values().length * 2);
+        for (Order.Status status : Order.Status.values()) {
+            args.add(String.valueOf(status.getCode()));
+            args.add(checkpoint.getOrDefault(status.getCode(), 0L));
+        }
+        Long restored = redisService.execute(RESTORE_SCRIPT,
+                Collections.singletonList(RedisConfig.RedisKeys.ORDER_STATUS_COUNTS), args.toArray());
+        if (restored == null) {
+            log.warn("Failed to restore order status counts from checkpoint");
+            return checkpoint;
+        }
+        if (restored > 0) {
+            log.info("Order status counts restored from checkpoint: {}", checkpoint);
+        }
+        return readRedisCounts();
+    }
+
+    /**
+     * 全量对账：按 Region 并行重新统计并覆盖 Redis 计数。
+     * 统计前先读出 Redis 计数，覆盖时逐字段比较，统计期间有状态流转的字段不覆盖，保留增量留待下次对账
+     */
+    public Map<Integer, Long> reconcile() throws IOException {
+        Map<Integer, Long> cached = readRedisCounts();
+        Map<Integer, Long> actual = orderRepository.countAllByStatus();
+
+        List<Object> args = new ArrayList<>(Order.Status.values().length * 3);
+        for (Order.Status status : Order.Status.values()) {
+            long expected = actual.getOrDefault(status.getCode(), 0L);
+            long current = cached.getOrDefault(status.getCode(), 0L);
+            if (expected != current) {
+                log.warn("Order status count drift corrected: status={}, redis={}, actual={}",
+                        status.getCode(), current, expected);
+            }
+            args.add(String.valueOf(status.getCode()));
+            args.add(current);
+            args.add(expected);
+        }
+
+        Long skipped = redisService.execute(AggregateStatsService.COMPARE_AND_SET_SCRIPT,
+                Collections.singletonList(RedisConfig.RedisKeys.ORDER_STATUS_COUNTS), args.toArray());
+        if (skipped == null) {
+            log.warn("Failed to write reconciled order status counts, retried at next reconcile");
+            orderRepository.saveStatusCountsCheckpoint(actual);
+            return actual;
+        }
+        if (skipped > 0) {
+            log.info("Order status counts changed during reconcile, left for next run: fields={}", skipped);
+        }
+
+        Map<Integer, Long> counts = readRedisCounts();
+        orderRepository.saveStatusCountsCheckpoint(counts.isEmpty() ? actual : counts);
+        return counts.isEmpty() ? actual : counts;
+    }
+
+    /**
+     * 定期把 Redis 计数写入 HBase 检查点（每5分钟）；未初始化的 Hash 只有增量，不写入
+     */
+    @Scheduled(fixedDelay = 300000)
+    public void scheduledCheckpoint() {
+        try {
+            Map<Object, Object> entries = redisService.hgetAll(RedisConfig.RedisKeys.ORDER_STATUS_COUNTS);
+            if (entries != null && entries.containsKey(AggregateStatsService.INITIALIZED_FIELD)) {
+                orderRepository.saveStatusCountsCheckpoint(parseCounts(entries));
+            }
+        } catch (Exception e) {
+            log.error("Scheduled order status checkpoint failed", e);
+        }
+    }
+
+    /**
+     * 定时对账（每日凌晨3点）
+     */
+    @Scheduled(cron = "0 0 3 * * ?")
+    public void scheduledReconcile() {
+        try {
+            reconcile();
+        } catch (Exception e) {
+            log.error("Scheduled order status reconciliation failed", e);
+        }
+    }
+
+    private Map<Integer, Long> readRedisCounts() {
+        return parseCounts(redisService.hgetAll(RedisConfig.RedisKeys.ORDER_STATUS_COUNTS));
+    }
+
+    private Map<Integer, Long> parseCounts(Map<Object, Object> entries) {
+        Map<Integer, Long> counts = new HashMap<>();
+        if (entries == null) {
+            return counts;
+        }
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            if (AggregateStatsService.INITIALIZED_FIELD.equals(entry.getKey())) {
+                continue;
+            }
+            try {
+                counts.put(Integer.parseInt(String.valueOf(entry.getKey())),
+                        Long.parseLong(String.valueOf(entry.getValue())));
+            } catch (NumberFormatException e) {
+                log.warn("Invalid order status count entry: {}={}", entry.getKey(), entry.getValue());
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,266 @@
+package com.sales.service;
+
+import com.sales.config.OrderTimelineProperties;
+import com.sales.config.RedisConfig;
+import com.sales.entity.Order;
+import com.sales.entity.OrderSummary;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户最近订单时间线
+ *
+ * order:timeline:{userId} 为 ZSet（订单ID -> 创建时间），order:timeline:summary:{userId} 为 Hash
+ * （订单ID -> "实付金额|状态|商品种数|创建时间|首个商品名称"），两者都只保留最近 capacity 单。
+ * 创建订单时写入，状态流转事件刷新摘要；时间线从 HBase 完整重建过的用户带 _loaded 标记，
+ * 不足一页时可判定已到末尾而无需回源。
+ */
+@Slf4j
+@Service
+public class OrderTimelineService {
+
+    private static final String LOADED_FIELD = "_loaded";
+
+    private static final String SEPARATOR = "|";
+
+    // KEYS: 时间线 ZSet, 摘要 Hash
+    // ARGV: 起始下标, 结束下标
+    // 返回 {是否完整 1/0, 订单ID..., 摘要...}，摘要缺失的位置为 nil；ZSet 成员为 JSON 序列化，需解码后作为 Hash 字段
+    private static final RedisScript<List> PAGE_SCRIPT = new DefaultRedisScript<>(
+            "local ids = redis.call('zrevrange', KEYS[1], ARGV[1], ARGV[2]) " +
+            "local result = {redis.call('hexists', KEYS[2], '" + LOADED_FIELD + "')} " +
+            "if #ids == 0 then return result end " +
+            "local fields = {} " +
+            "for i = 1, #ids do " +
+            "  result[i + 1] = ids[i] " +
+            "  fields[i] = cjson.decode(ids[i]) " +
+            "end " +
+            "local values = redis.call('hmget', KEYS[2], unpack(fields)) " +
+            "for i = 1, #ids do result[#ids + 1 + i] = values[i] end " +
+            "return result", List.class);
+
+    @Autowired
+    private RedisService redisService;
+
+    @Autowired
+    private OrderTimelineProperties properties;
+
+    /**
+     * 新订单写入时间线并裁剪到 capacity
+     */
+    public void add(Order order) {
+        if (order.getUserId() == null || order.getOrderId() == null) {
+            return;
+        }
+        List<Object> results = redisService.pipeline(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) {
+                add(operations, order);
+                return null;
+            }
+        });
+        if (results != null && !results.isEmpty()) {
+            trim(order.getUserId(), results.get(results.size() - 1));
+        }
+    }
+
+    /**
+     * 在调用方的 pipeline 中写入时间线，最后一条命令为 ZCARD，其结果交给 trim 裁剪
+     */
+    @SuppressWarnings("unchecked")
+    void add(RedisOperations operations, Order order) {
+        String userId = order.getUserId();
+        operations.opsForZSet().add(timelineKey(userId), order.getOrderId(), toMillis(order.getCreateTime()));
+        operations.opsForHash().put(summaryKey(userId), order.getOrderId(), encode(OrderSummary.of(order)));
+        operations.expire(timelineKey(userId), properties.getExpireDays(), TimeUnit.DAYS);
+        operations.expire(summaryKey(userId), properties.getExpireDays(), TimeUnit.DAYS);
+        operations.opsForZSet().zCard(timelineKey(userId));
+    }
+
+    /**
+     * 按 ZCARD 结果裁剪超出 capacity 的最旧订单（未超出时不访问 Redis）
+     */
+    void trim(String userId, Object size) {
+        if (size instanceof Number number) {
+            trim(userId, number.longValue());
+        }
+    }
+
+    /**
+     * 用最新订单数据刷新摘要（状态流转事件），不在时间线中的订单（已被裁剪）忽略
+     */
+    public void refresh(Order order) {
+        if (order.getUserId() == null || redisService.zscore(timelineKey(order.getUserId()), order.getOrderId()) == null) {
+            return;
+        }
+        redisService.hset(summaryKey(order.getUserId()), order.getOrderId(), encode(OrderSummary.of(order)));
+    }
+
+    /**
+     * 只更新摘要中的状态（已知用户ID、无需读取整单的场景）
+     */
+    public void updateStatus(String userId, String orderId, Integer status) {
+        if (userId == null) {
+            return;
+        }
+        Object encoded = redisService.hget(summaryKey(userId), orderId);
+        OrderSummary summary = encoded != null ? decode(userId, orderId, String.valueOf(encoded)) : null;
+        if (summary != null) {
+            summary.setStatus(status);
+            redisService.hset(summaryKey(userId), orderId, encode(summary));
+        }
+    }
+
+    public void remove(String userId, String orderId) {
+        if (userId == null) {
+            return;
+        }
+        redisService.zrem(timelineKey(userId), orderId);
+        redisService.hdel(summaryKey(userId), orderId);
+    }
+
+    /**
+     * 从时间线读取一页（按创建时间倒序），一次脚本往返：ZREVRANGE 取本页订单ID，只 HMGET 这些摘要；
+     * 超出 capacity 或时间线不完整（未重建且不足一页）时返回 null，由调用方回源 HBase
+     */
+    public List<OrderSummary> getPage(String userId, int offset, int limit) {
+        if (offset + limit > properties.getCapacity()) {
+            return null;
+        }
+        List<Object> result = redisService.execute(PAGE_SCRIPT,
+                List.of(timelineKey(userId), summaryKey(userId)), offset, offset + limit - 1);
+        if (result == null || result.isEmpty()) {
+            return null;
+        }
+
+        boolean loaded = result.get(0) instanceof Number number && number.longValue() == 1;
+        int size = (result.size() - 1) / 2;
+        if (size < limit && !loaded) {
+            return null;
+        }
+
+        List<OrderSummary> page = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            String orderId = String.valueOf(result.get(i));
+            Object encoded = result.get(size + i);
+            OrderSummary summary = encoded != null ? decode(userId, orderId, String.valueOf(encoded)) : null;
+            if (summary == null) {
+                // 摘要缺失（写入中途失败），整页回源
+                return null;
+            }
+            page.add(summary);
+        }
+        return page;
+    }
+
+    /**
+     * 用 HBase 查得的最近订单（至多 capacity 单）合并进时间线，并标记为完整。
+     * 不删除现有数据：快照读取之后新写入的订单和摘要保留（摘要只在缺失时写入），合并后按 capacity 裁剪
+     */
+    public void rebuild(String userId, List<Order> orders) {
+        List<Object> results = redisService.pipeline(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                int count = 0;
+                for (Order order : orders) {
+                    if (count++ >= properties.getCapacity()) {
+                        break;
+                    }
+                    operations.opsForZSet().add(timelineKey(userId), order.getOrderId(), toMillis(order.getCreateTime()));
+                    operations.opsForHash().putIfAbsent(summaryKey(userId), order.getOrderId(), encode(OrderSummary.of(order)));
+                }
+                operations.opsForHash().put(summaryKey(userId), LOADED_FIELD, "1");
+                operations.expire(timelineKey(userId), properties.getExpireDays(), TimeUnit.DAYS);
+                operations.expire(summaryKey(userId), properties.getExpireDays(), TimeUnit.DAYS);
+                operations.opsForZSet().zCard(timelineKey(userId));
+                return null;
+            }
+        });
+        if (results != null && !results.isEmpty()) {
+            trim(userId, results.get(results.size() - 1));
+        }
+        log.debug("Order timeline rebuilt: userId={}, size={}", userId, Math.min(orders.size(), properties.getCapacity()));
+    }
+
+    public int getCapacity() {
+        return properties.getCapacity();
+    }
+
+    private void trim(String userId, long size) {
+        long overflow = size - properties.getCapacity();
+        if (overflow <= 0) {
+            return;
+        }
+        Set<Object> oldest = redisService.zrange(timelineKey(userId), 0, overflow - 1);
+        if (oldest == null || oldest.isEmpty()) {
+            return;
+        }
+        String[] orderIds = new String[oldest.size()];
+        int i = 0;
+        for (Object orderId : oldest) {
+            orderIds[i++] = String.valueOf(orderId);
+        }
+        redisService.zrem(timelineKey(userId), (Object[]) orderIds);
+        redisService.hdel(summaryKey(userId), orderIds);
+    }
+
+    private static String encode(OrderSummary summary) {
+        // 商品名称可能包含分隔符，放在最后
+        return (summary.getActualAmount() != null ? summary.getActualAmount().toPlainString() : "") + SEPARATOR
+                + (summary.getStatus() != null ? summary.getStatus() : "") + SEPARATOR
+                + (summary.getItemCount() != null ? summary.getItemCount() : 0) + SEPARATOR
+                + toMillis(summary.getCreateTime()) + SEPARATOR
+                + (summary.getFirstItemName() != null ? summary.getFirstItemName() : "");
+    }
+
+    private static OrderSummary decode(String userId, String orderId, String encoded) {
+        String[] parts = encoded.split("\\|", 5);
+        if (parts.length < 5) {
+            log.warn("Invalid order timeline summary: userId={}, orderId={}, value={}", userId, orderId, encoded);
+            return null;
+        }
+        try {
+            long createMillis = Long.parseLong(parts[3]);
+            return OrderSummary.builder()
+                    .orderId(orderId)
+                    .userId(userId)
+                    .actualAmount(parts[0].isEmpty() ? null : new BigDecimal(parts[0]))
+                    .status(parts[1].isEmpty() ? null : Integer.valueOf(parts[1]))
+                    .itemCount(Integer.valueOf(parts[2]))
+                    .createTime(createMillis > 0
+                            ? LocalDateTime.ofInstant(Instant.ofEpochMilli(createMillis), ZoneId.systemDefault()) : null)
+                    .firstItemName(parts[4].isEmpty() ? null : parts[4])
+                    .build();
+        } catch (NumberFormatException e) {
+            log.warn("Invalid order timeline summary: userId={}, orderId={}, value={}", userId, orderId, encoded);
+            return null;
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time != null ? time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : 0;
+    }
+
+    private static String timelineKey(String userId) {
+        return RedisConfig.RedisKeys.ORDER_TIMELINE_PREFIX + userId;
+    }
+
+    private static String summaryKey(String userId) {
+        return RedisConfig.RedisKeys.ORDER_TIMELINE_SUMMARY_PREFIX + userId;
+    }
+}
@@ -0,0 +1,84 @@
+package com.sales.service;
+
+import com.sales.config.RedisConfig;
+import com.sales.entity.Order;
+import com.sales.entity.OrderEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 完成事件 -> 增加商品销量
+ *
+ * 销量累加在 HBase，无法与 Redis 标记放进同一脚本，因此按 事件+商品 逐项加标记：
+ * HSETNX 成功才累加，累加失败删除标记后重试，重试时已累加的商品不会重复计入。
+ */
+@Slf4j
+@Service
+public class ProductSalesEventHandler implements OrderEventHandler {
+
+    // KEYS: 事件标记 Hash  ARGV: 字段（JSON 序列化）, 过期秒数
+    // 返回 1 本次取得标记；0 已累加过
+    private static final RedisScript<Long> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('hsetnx', KEYS[1], cjson.decode(ARGV[1]), 1) == 0 then return 0 end " +
+            "redis.call('expire', KEYS[1], ARGV[2]) " +
+            "return 1", Long.class);
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private RedisService redisService;
+
+    @Override
+    public String getName() {
+        return "product-sales";
+    }
+
+    @Override
+    public boolean supports(OrderEvent.Type type) {
+        return type == OrderEvent.Type.COMPLETED;
+    }
+
+    @Override
+    public void handle(OrderEvent event, Order order) throws IOException {
+        if (order == null || order.getItems() == null) {
+            return;
+        }
+
+        Map<String, Long> quantities = new LinkedHashMap<>();
+        for (Order.OrderItem item : order.getItems()) {
+            if (item.getProductId() != null && item.getQuantity() != null) {
+                quantities.merge(item.getProductId(), (long) item.getQuantity(), Long::sum);
+            }
+        }
+
+        String markerKey = RedisConfig.RedisKeys.ORDER_EVENT_APPLIED_PREFIX + event.getEventId();
+        for (Map.Entry<String, Long> entry : quantities.entrySet()) {
+            String field = getName() + ":" + entry.getKey();
+            Long claimed = redisService.execute(CLAIM_SCRIPT, Collections.singletonList(markerKey),
+                    field, TimeUnit.DAYS.toSeconds(OrderEventService.EVENT_KEY_EXPIRE_DAYS));
+            if (claimed == null) {
+                throw new IOException("Failed to claim sale count increment: eventId=" + event.getEventId());
+            }
+            if (claimed == 0) {
+                log.debug("Sale count already incremented: eventId={}, productId={}", event.getEventId(), entry.getKey());
+                continue;
+            }
+            try {
+                productService.incrementSaleCount(entry.getKey(), entry.getValue());
+            } catch (IOException | RuntimeException e) {
+                redisService.hdel(markerKey, field);
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,547 @@
+package com.sales.service;
+
+import com.sales.entity.Product;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 商品搜索倒排索引（单节点内存）
+ *
+ * 商品按加入顺序分配稠密序号（ordinal），每个词项的倒排表是按序号递增的差值 varint 字节数组，带块级跳表；
+ * 新序号总是当前最大值，追加即有序。查询只解码最短查询词的倒排表作为候选，其余查询词用游标按跳表定位。商品更新时旧序号记为删除并分配新序号，删除占比过高时由调用方整体重建。
+ * 中文按字切 1-gram + 2-gram，字母与数字各自成词；词项带字段前缀（名称/品牌/标签/分类），
+ * 查询时同一查询词跨字段取并集、不同查询词取交集，按命中字段权重与销量排序。
+ */
+final class ProductSearchIndex {
+
+    private static final char FIELD_NAME = 'n';
+    private static final char FIELD_BRAND = 'b';
+    private static final char FIELD_TAG = 't';
+    private static final char FIELD_CATEGORY = 'c';
+
+    private static final char[] FIELDS = {FIELD_NAME, FIELD_BRAND, FIELD_TAG, FIELD_CATEGORY};
+    private static final float[] FIELD_WEIGHTS = {3f, 2f, 1.5f, 1f};
+
+    private static final int[] EMPTY = new int[0];
+
+    private static final PostingList[] NO_POSTINGS = new PostingList[0];
+
+    // 倒排表每隔多少个序号记录一个跳表项
+    private static final int SKIP_INTERVAL = 128;
+
+    private final TreeMap<String, PostingList> terms = new TreeMap<>();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private String[] productIds = new String[1024];
+    private float[] boosts = new float[1024];
+    private int size;
+    private int deletedCount;
+
+    /**
+     * 加入或更新商品（旧序号标记删除，分配新序号）
+     */
+    void add(Product product) {
+        lock.writeLock().lock();
+        try {
+            markDeleted(product.getProductId());
+            int ordinal = size++;
+            if (ordinal == productIds.length) {
+                productIds = Arrays.copyOf(productIds, ordinal * 2);
+                boosts = Arrays.copyOf(boosts, ordinal * 2);
+            }
+            productIds[ordinal] = product.getProductId();
+            boosts[ordinal] = boost(product);
+            ordinals.put(product.getProductId(), ordinal);
+
+            for (String term : indexTerms(product)) {
+                terms.computeIfAbsent(term, t -> new PostingList()).add(ordinal);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(String productId) {
+        lock.writeLock().lock();
+        try {
+            markDeleted(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 全量构建完成后收紧各倒排表的容量
+     */
+    void trimToSize() {
+        lock.writeLock().lock();
+        try {
+            for (PostingList postings : terms.values()) {
+                postings.trimToSize();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 搜索并按得分取前 limit 个商品ID
+     *
+     * @param prefix 为 true 时最后一个字母/数字查询词按前缀匹配（边输边搜）
+     */
+    List<String> search(String query, boolean prefix, int limit, int maxExpansions) {
+        List<QueryTerm> queryTerms = queryTerms(query, prefix);
+        if (queryTerms.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        lock.readLock().lock();
+        try {
+            // postings[i][f]：第 i 个查询词在第 f 个字段命中的倒排表（前缀查询时为展开后的多个）
+            PostingList[][][] postings = new PostingList[queryTerms.size()][FIELDS.length][];
+            int driver = -1;
+            long driverCount = Long.MAX_VALUE;
+            for (int i = 0; i < queryTerms.size(); i++) {
+                long count = 0;
+                for (int f = 0; f < FIELDS.length; f++) {
+                    postings[i][f] = lookup(FIELDS[f], queryTerms.get(i), maxExpansions);
+                    for (PostingList list : postings[i][f]) {
+                        count += list.count;
+                    }
+                }
+                if (count == 0) {
+                    return new ArrayList<>();
+                }
+                if (count < driverCount) {
+                    driver = i;
+                    driverCount = count;
+                }
+            }
+
+            // 只解码最短查询词的倒排表作为候选，其余查询词按跳表定位，不整表解码
+            int[] candidates = EMPTY;
+            for (PostingList[] lists : postings[driver]) {
+                for (PostingList list : lists) {
+                    candidates = union(candidates, list.decode());
+                }
+            }
+            PostingCursor[][][] cursors = new PostingCursor[postings.length][FIELDS.length][];
+            for (int i = 0; i < postings.length; i++) {
+                for (int f = 0; f < FIELDS.length; f++) {
+                    cursors[i][f] = new PostingCursor[postings[i][f].length];
+                    for (int k = 0; k < cursors[i][f].length; k++) {
+                        cursors[i][f][k] = new PostingCursor(postings[i][f][k]);
+                    }
+                }
+            }
+
+            PriorityQueue<Hit> top = new PriorityQueue<>(limit + 1, (a, b) -> Float.compare(a.score, b.score));
+            for (int ordinal : candidates) {
+                if (deleted.get(ordinal)) {
+                    continue;
+                }
+                float score = score(cursors, ordinal);
+                if (score < 0) {
+                    continue;
+                }
+                top.offer(new Hit(ordinal, boosts[ordinal] + score));
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+
+            String[] ranked = new String[top.size()];
+            for (int i = ranked.length - 1; i >= 0; i--) {
+                ranked[i] = productIds[top.poll().ordinal];
+            }
+            return new ArrayList<>(Arrays.asList(ranked));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 候选序号递增传入，游标只前进；每个查询词至少命中一个字段时返回字段权重之和，否则返回 -1
+     */
+    private static float score(PostingCursor[][][] cursors, int ordinal) {
+        float score = 0;
+        for (PostingCursor[][] termCursors : cursors) {
+            boolean matched = false;
+            for (int f = 0; f < FIELDS.length; f++) {
+                for (PostingCursor cursor : termCursors[f]) {
+                    if (cursor.advance(ordinal) == ordinal) {
+                        score += FIELD_WEIGHTS[f];
+                        matched = true;
+                        break;
+                    }
+                }
+            }
+            if (!matched) {
+                return -1;
+            }
+        }
+        return score;
+    }
+
+    int liveCount() {
+        lock.readLock().lock();
+        try {
+            return size - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int deletedCount() {
+        lock.readLock().lock();
+        try {
+            return deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int termCount() {
+        lock.readLock().lock();
+        try {
+            return terms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 倒排表占用的字节数（不含词典）
+     */
+    long postingBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (PostingList postings : terms.values()) {
+                bytes += postings.length;
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void markDeleted(String productId) {
+        Integer previous = ordinals.remove(productId);
+        if (previous != null && !deleted.get(previous)) {
+            deleted.set(previous);
+            deletedCount++;
+        }
+    }
+
+    private PostingList[] lookup(char field, QueryTerm queryTerm, int maxExpansions) {
+        String key = field + queryTerm.token;
+        if (!queryTerm.prefix) {
+            PostingList postings = terms.get(key);
+            return postings != null ? new PostingList[]{postings} : NO_POSTINGS;
+        }
+
+        NavigableMap<String, PostingList> range = terms.subMap(key, true, key + Character.MAX_VALUE, false);
+        List<PostingList> expanded = new ArrayList<>(Math.min(range.size(), maxExpansions));
+        for (PostingList postings : range.values()) {
+            if (expanded.size() >= maxExpansions) {
+                break;
+            }
+            expanded.add(postings);
+        }
+        return expanded.toArray(NO_POSTINGS);
+    }
+
+    private static float boost(Product product) {
+        float boost = product.getSaleCount() != null && product.getSaleCount() > 0
+                ? (float) Math.log1p(product.getSaleCount()) * 0.1f : 0f;
+        // 下架商品仍可搜到，但排在上架商品之后
+        return Product.Status.ON_SHELF.getCode().equals(product.getStatus()) ? boost + 1f : boost;
+    }
+
+    private static Set<String> indexTerms(Product product) {
+        Set<String> result = new LinkedHashSet<>();
+        addTerms(result, FIELD_NAME, product.getName());
+        addTerms(result, FIELD_BRAND, product.getBrand());
+        addTerms(result, FIELD_CATEGORY, product.getCategory());
+        if (product.getTags() != null) {
+            for (String tag : product.getTags().split("[,，]")) {
+                addTerms(result, FIELD_TAG, tag);
+            }
+        }
+        return result;
+    }
+
+    private static void addTerms(Set<String> result, char field, String text) {
+        for (Run run : runs(text)) {
+            if (run.ideographic) {
+                // 中文 1-gram + 2-gram：单字查询命中 1-gram，多字查询按相邻 2-gram 求交
+                String s = run.text;
+                for (int i = 0; i < s.length(); ) {
+                    int next = s.offsetByCodePoints(i, 1);
+                    result.add(field + s.substring(i, next));
+                    if (next < s.length()) {
+                        result.add(field + s.substring(i, s.offsetByCodePoints(next, 1)));
+                    }
+                    i = next;
+                }
+            } else {
+                result.add(field + run.text);
+            }
+        }
+    }
+
+    private static List<QueryTerm> queryTerms(String query, boolean prefix) {
+        List<Run> runs = runs(query);
+        List<QueryTerm> result = new ArrayList<>();
+        for (int r = 0; r < runs.size(); r++) {
+            Run run = runs.get(r);
+            if (!run.ideographic) {
+                result.add(new QueryTerm(run.text, prefix && r == runs.size() - 1));
+                continue;
+            }
+            String s = run.text;
+            if (s.codePointCount(0, s.length()) == 1) {
+                result.add(new QueryTerm(s, false));
+                continue;
+            }
+            for (int i = 0; s.offsetByCodePoints(i, 1) < s.length(); i = s.offsetByCodePoints(i, 1)) {
+                int next = s.offsetByCodePoints(i, 1);
+                result.add(new QueryTerm(s.substring(i, s.offsetByCodePoints(next, 1)), false));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 切分为中文串、字母串、数字串，全角转半角并转小写，其余字符视为分隔符
+     */
+    private static List<Run> runs(String text) {
+        List<Run> runs = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return runs;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder current = new StringBuilder();
+        int currentType = 0;
+        for (int i = 0; i < normalized.length(); ) {
+            int cp = normalized.codePointAt(i);
+            i += Character.charCount(cp);
+            int type = Character.isIdeographic(cp) ? 1 : Character.isLetter(cp) ? 2 : Character.isDigit(cp) ? 3 : 0;
+            if (type != currentType && current.length() > 0) {
+                runs.add(new Run(current.toString(), currentType == 1));
+                current.setLength(0);
+            }
+            currentType = type;
+            if (type != 0) {
+                current.appendCodePoint(cp);
+            }
+        }
+        if (current.length() > 0) {
+            runs.add(new Run(current.toString(), currentType == 1));
+        }
+        return runs;
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        if (a.length == 0) {
+            return b;
+        }
+        if (b.length == 0) {
+            return a;
+        }
+        int[] out = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                out[n++] = a[i++];
+            } else if (a[i] > b[j]) {
+                out[n++] = b[j++];
+            } else {
+                out[n++] = a[i++];
+                j++;
+            }
+        }
+        while (i < a.length) {
+            out[n++] = a[i++];
+        }
+        while (j < b.length) {
+            out[n++] = b[j++];
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    /**
+     * 差值 varint 编码的倒排表，序号只追加递增。
+     * 每 SKIP_INTERVAL 个序号记录一个跳表项（块前一个序号、块起始字节位置），游标可越过整块而不解码
+     */
+    private static final class PostingList {
+        private byte[] data = new byte[4];
+        private int length;
+        private int count;
+        private int last = -1;
+
+        // 第 j 项对应从第 (j + 1) * SKIP_INTERVAL 个序号开始的块
+        private int[] skipValues = EMPTY;
+        private int[] skipPositions = EMPTY;
+        private int skipCount;
+
+        void add(int ordinal) {
+            if (count > 0 && count % SKIP_INTERVAL == 0) {
+                if (skipCount == skipValues.length) {
+                    int capacity = Math.max(4, skipCount * 2);
+                    skipValues = Arrays.copyOf(skipValues, capacity);
+                    skipPositions = Arrays.copyOf(skipPositions, capacity);
+                }
+                skipValues[skipCount] = last;
+                skipPositions[skipCount] = length;
+                skipCount++;
+            }
+            int delta = ordinal - last;
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+            }
+            while ((delta & ~0x7F) != 0) {
+                data[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            data[length++] = (byte) delta;
+            last = ordinal;
+            count++;
+        }
+
+        int[] decode() {
+            int[] out = new int[count];
+            int pos = 0;
+            int value = -1;
+            for (int i = 0; i < count; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[pos++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                value += delta;
+                out[i] = value;
+            }
+            return out;
+        }
+
+        void trimToSize() {
+            if (data.length > length) {
+                data = Arrays.copyOf(data, length);
+            }
+            if (skipValues.length > skipCount) {
+                skipValues = Arrays.copyOf(skipValues, skipCount);
+                skipPositions = Arrays.copyOf(skipPositions, skipCount);
+            }
+        }
+    }
+
+    /**
+     * 倒排表上只前进的游标：advance 先按跳表越过整块，再在块内逐个解码
+     */
+    private static final class PostingCursor {
+        private final PostingList list;
+        private int index;
+        private int pos;
+        private int value = -1;
+
+        private PostingCursor(PostingList list) {
+            this.list = list;
+        }
+
+        /**
+         * 前进到第一个不小于 target 的序号并返回，已走完时返回 Integer.MAX_VALUE
+         */
+        int advance(int target) {
+            if (value >= target) {
+                return value;
+            }
+            // 找最后一个起点在当前位置之后、且块前序号小于 target 的块
+            int lo = index / SKIP_INTERVAL;
+            int hi = list.skipCount - 1;
+            int jump = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (list.skipValues[mid] < target) {
+                    jump = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            if (jump >= 0) {
+                index = (jump + 1) * SKIP_INTERVAL;
+                pos = list.skipPositions[jump];
+                value = list.skipValues[jump];
+            }
+
+            byte[] data = list.data;
+            while (index < list.count) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[pos++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                value += delta;
+                index++;
+                if (value >= target) {
+                    return value;
+                }
+            }
+            value = Integer.MAX_VALUE;
+            return value;
+        }
+    }
+
+    private static final class Run {
+        private final String text;
+        private final boolean ideographic;
+
+        private Run(String text, boolean ideographic) {
+            this.text = text;
+            this.ideographic = ideographic;
+        }
+    }
+
+    private static final class QueryTerm {
+        private final String token;
+        private final boolean prefix;
+
+        private QueryTerm(String token, boolean prefix) {
+            this.token = token;
+            this.prefix = prefix;
+        }
+    }
+
+    private static final class Hit {
+        private final int ordinal;
+        private final float score;
+
+        private Hit(int ordinal, float score) {
+            this.ordinal = ordinal;
+            this.score = score;
+        }
+    }
+}
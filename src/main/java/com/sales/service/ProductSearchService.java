@@ -0,0 +1,287 @@
+package com.sales.service;
+
+import com.sales.config.ProductSearchProperties;
+import com.sales.config.RedisConfig;
+import com.sales.entity.Product;
+import com.sales.repository.ProductRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 商品搜索：每个节点持有一份 ProductSearchIndex
+ *
+ * 启动时后台流式扫描 product_info 构建索引，构建完成前搜索回退为 HBase 扫描；
+ * 商品写入后发布变更消息到 queue:product:change，每个节点用自己的消费组（配置或按主机名命名，重启不变，
+ * 启动时移到最新位置）都收到变更并回读 HBase 刷新本地索引。每日凌晨及删除占比过高时整体重建，
+ * 重建期间收到的变更在新索引替换后重放。
+ */
+@Slf4j
+@Service
+public class ProductSearchService {
+
+    private static final String CONSUMER_GROUP_PREFIX = "product-search-";
+
+    private static final String CHANGE_UPSERT = "UPSERT";
+    private static final String CHANGE_DELETE = "DELETE";
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private StreamQueueService streamQueueService;
+
+    @Autowired
+    private IdGeneratorService idGeneratorService;
+
+    @Autowired
+    private ProductSearchProperties properties;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private volatile ProductSearchIndex index = new ProductSearchIndex();
+
+    private volatile boolean ready;
+
+    private volatile long lastRebuildTime;
+
+    private volatile long lastRebuildMillis;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private final Set<String> changedDuringRebuild = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        // 先订阅再构建，构建期间的变更不会丢失；订阅之前的变更已包含在全量构建中，消费组从最新位置开始
+        streamQueueService.subscribe(RedisConfig.RedisKeys.QUEUE_PRODUCT_CHANGE, consumerGroup(), this::consume, true);
+        taskExecutor.execute(this::rebuild);
+
+        if (meterRegistry != null) {
+            Gauge.builder("sales.search.products", this, s -> s.index.liveCount()).register(meterRegistry);
+            Gauge.builder("sales.search.terms", this, s -> s.index.termCount()).register(meterRegistry);
+        }
+    }
+
+    /**
+     * 商品新增或更新后调用，通知所有节点刷新索引
+     */
+    public void notifyChanged(String productId) {
+        publishChange(productId, CHANGE_UPSERT);
+    }
+
+    /**
+     * 商品删除后调用
+     */
+    public void notifyDeleted(String productId) {
+        publishChange(productId, CHANGE_DELETE);
+    }
+
+    /**
+     * 按相关度与销量排序搜索商品ID
+     *
+     * @return 索引尚未就绪时返回 null，由调用方回退
+     */
+    public List<String> search(String keyword, boolean prefix, int limit) {
+        if (!ready) {
+            return null;
+        }
+        if (keyword == null || keyword.isBlank()) {
+            return new ArrayList<>();
+        }
+        return index.search(keyword, prefix, Math.min(limit, properties.getMaxResults()),
+                properties.getMaxPrefixExpansions());
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 每日全量重建，回收已删除序号并刷新销量权重
+     */
+    @Scheduled(cron = "${sales.product.search.rebuild-cron:0 30 3 * * ?}")
+    public void scheduledRebuild() {
+        if (properties.isEnabled()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * 流式扫描全表构建新索引后整体替换；同一时间只有一个重建在运行
+     */
+    public void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            changedDuringRebuild.clear();
+            ProductSearchIndex fresh = new ProductSearchIndex();
+            productRepository.scanForSearchIndex(properties.getScanCaching(), fresh::add);
+            fresh.trimToSize();
+
+            index = fresh;
+            ready = true;
+            rebuilding.set(false);
+
+            // 重放构建期间的变更（扫描可能读到变更前的行）
+            List<String> replay = new ArrayList<>(changedDuringRebuild);
+            changedDuringRebuild.clear();
+            if (!replay.isEmpty()) {
+                Map<String, String> changes = new LinkedHashMap<>();
+                for (String productId : replay) {
+                    changes.put(productId, CHANGE_UPSERT);
+                }
+                apply(changes);
+            }
+
+            lastRebuildTime = System.currentTimeMillis();
+            lastRebuildMillis = lastRebuildTime - start;
+            log.info("Product search index rebuilt: products={}, terms={}, postingBytes={}, costMs={}",
+                    fresh.liveCount(), fresh.termCount(), fresh.postingBytes(), lastRebuildMillis);
+        } catch (Exception e) {
+            log.error("Failed to rebuild product search index", e);
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    /**
+     * 获取索引状态
+     */
+    public SearchStats getStats() {
+        ProductSearchIndex current = index;
+        return SearchStats.builder()
+                .ready(ready)
+                .rebuilding(rebuilding.get())
+                .liveProducts(current.liveCount())
+                .deletedProducts(current.deletedCount())
+                .terms(current.termCount())
+                .postingBytes(current.postingBytes())
+                .lastRebuildTime(lastRebuildTime)
+                .lastRebuildMillis(lastRebuildMillis)
+                .build();
+    }
+
+    /**
+     * 跨重启稳定的实例消费组名：优先取配置，其次主机名；两者都不可用时退回 ID 节点号
+     */
+    private String consumerGroup() {
+        if (properties.getConsumerGroup() != null && !properties.getConsumerGroup().isBlank()) {
+            return properties.getConsumerGroup();
+        }
+        try {
+            return CONSUMER_GROUP_PREFIX + InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            log.warn("Failed to resolve hostname for product search consumer group, using ID node", e);
+            return CONSUMER_GROUP_PREFIX + idGeneratorService.getNodeId();
+        }
+    }
+
+    private void publishChange(String productId, String type) {
+        if (!properties.isEnabled() || productId == null) {
+            return;
+        }
+        Map<String, String> fields = new HashMap<>();
+        fields.put("productId", productId);
+        fields.put("type", type);
+        if (streamQueueService.publish(RedisConfig.RedisKeys.QUEUE_PRODUCT_CHANGE, fields) == null) {
+            log.warn("Failed to publish product change, index catches up at next rebuild: {}", productId);
+        }
+    }
+
+    /**
+     * 消费变更：同一批内同一商品只取最后一次；回读 HBase 失败时抛出，整批留在 PEL 重试
+     */
+    private Collection<String> consume(List<StreamQueueService.StreamMessage> messages) throws IOException {
+        Map<String, String> changes = new LinkedHashMap<>();
+        List<String> ids = new ArrayList<>(messages.size());
+        for (StreamQueueService.StreamMessage message : messages) {
+            ids.add(message.getId());
+            String productId = message.getFields().get("productId");
+            if (productId != null) {
+                changes.remove(productId);
+                changes.put(productId, message.getFields().get("type"));
+            }
+        }
+        if (rebuilding.get()) {
+            changedDuringRebuild.addAll(changes.keySet());
+        }
+        apply(changes);
+        return ids;
+    }
+
+    private void apply(Map<String, String> changes) throws IOException {
+        List<String> upserts = new ArrayList<>();
+        for (Map.Entry<String, String> entry : changes.entrySet()) {
+            if (CHANGE_DELETE.equals(entry.getValue())) {
+                index.remove(entry.getKey());
+            } else {
+                upserts.add(entry.getKey());
+            }
+        }
+
+        if (!upserts.isEmpty()) {
+            Map<String, Product> products = productRepository.findByIds(upserts);
+            ProductSearchIndex current = index;
+            for (String productId : upserts) {
+                Product product = products.get(productId);
+                if (product != null) {
+                    current.add(product);
+                } else {
+                    current.remove(productId);
+                }
+            }
+        }
+
+        ProductSearchIndex current = index;
+        int deleted = current.deletedCount();
+        if (ready && deleted > 0 && deleted > (current.liveCount() + deleted) * properties.getRebuildDeletedRatio()) {
+            taskExecutor.execute(this::rebuild);
+        }
+    }
+
+    /**
+     * 搜索索引状态
+     */
+    @lombok.Data
+    @lombok.Builder
+    public static class SearchStats {
+        private boolean ready;
+        private boolean rebuilding;
+        private int liveProducts;
+        private int deletedProducts;
+        private int terms;
+        private long postingBytes;
+        private long lastRebuildTime;
+        private long lastRebuildMillis;
+    }
+}
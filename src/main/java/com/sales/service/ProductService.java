@@ -1,5 +1,6 @@
 package com.sales.service;
 
+import com.sales.entity.CursorPage;
 import com.sales.entity.Product;
 import com.sales.repository.ProductRepository;
 import com.sales.service.RankingService;
@@ -14,8 +15,10 @@ import org.springframework.stereotype.Service;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
 
 @Slf4j
 @Service
@@ -30,13 +33,29 @@ public class ProductService {
     @Autowired
     private RankingService rankingService;
 
+    @Autowired
+    private IdGeneratorService idGeneratorService;
+
+    @Autowired
+    private ProductSearchService productSearchService;
+
+    @Autowired
+    private StockAlertService stockAlertService;
+
+    @Autowired
+    private AggregateStatsService aggregateStatsService;
+
     /**
      * 创建商品
      */
     public Product createProduct(Product product) throws IOException {
-        // 生成商品ID
+        // 生成商品ID；调用方指定ID且已存在时按覆盖处理，计数从原状态流转
+        Integer oldStatus = null;
         if (product.getProductId() == null || product.getProductId().isEmpty()) {
             product.setProductId(generateProductId());
+        } else {
+            Product existing = productRepository.findById(product.getProductId());
+            oldStatus = existing != null ? existing.getStatus() : null;
         }
 
         // 设置默认值
@@ -64,11 +83,17 @@ public class ProductService {
 
         // 保存到HBase
         productRepository.save(product);
+        aggregateStatsService.recordProductTransition(oldStatus, product.getStatus());
 
         // 初始化Redis库存
         if (product.getTotalStock() != null) {
             stockService.setStock(product.getProductId(), product.getTotalStock());
         }
+        if (product.getSafeStock() != null) {
+            stockService.setSafeStock(product.getProductId(), product.getSafeStock());
+        }
+
+        productSearchService.notifyChanged(product.getProductId());
 
         log.info("Product created: {}", product.getProductId());
         return product;
@@ -89,21 +114,40 @@ public class ProductService {
         return product;
     }
 
+    /**
+     * 批量获取商品（一次 multi-get，不填充实时库存），不存在的商品不在结果中
+     */
+    public Map<String, Product> getProductsByIds(List<String> productIds) throws IOException {
+        if (productIds == null || productIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        return productRepository.findByIds(productIds);
+    }
+
     /**
      * 更新商品信息
      */
     @CachePut(value = "product", key = "#product.productId")
     public Product updateProduct(Product product) throws IOException {
         product.setUpdateTime(LocalDateTime.now());
+        Product existing = productRepository.findById(product.getProductId());
+        Integer oldStatus = existing != null ? existing.getStatus() : null;
         
-        // 更新HBase
+        // 更新HBase（status 为空时不覆盖原状态）
         productRepository.save(product);
+        aggregateStatsService.recordProductTransition(oldStatus,
+                product.getStatus() != null ? product.getStatus() : oldStatus);
         
         // 如果库存发生变化，同步到Redis
         if (product.getTotalStock() != null) {
             stockService.setStock(product.getProductId(), product.getTotalStock());
         }
+        if (product.getSafeStock() != null) {
+            stockService.setSafeStock(product.getProductId(), product.getSafeStock());
+        }
         
+        productSearchService.notifyChanged(product.getProductId());
+
         log.info("Product updated: {}", product.getProductId());
         return product;
     }
@@ -113,8 +157,13 @@ public class ProductService {
      */
     @CacheEvict(value = "product", key = "#productId")
     public void deleteProduct(String productId) throws IOException {
+        Product existing = productRepository.findById(productId);
         productRepository.deleteById(productId);
+        if (existing != null) {
+            aggregateStatsService.recordProductTransition(existing.getStatus(), null);
+        }
         stockService.deleteStock(productId);
+        productSearchService.notifyDeleted(productId);
         
         log.info("Product deleted: {}", productId);
     }
@@ -123,55 +172,86 @@ public class ProductService {
      * 获取所有商品
      */
     public List<Product> getAllProducts(int limit) throws IOException {
-        List<Product> products = productRepository.findAll(limit);
-        
-        // 设置实时库存
-        for (Product product : products) {
-            product.setRealTimeStock(stockService.getStock(product.getProductId()));
-        }
-        
-        return products;
+        return getAllProducts(null, limit).getItems();
+    }
+
+    /**
+     * 游标分页获取商品，cursor 为上一页返回的 nextCursor（首页传 null）
+     */
+    public CursorPage<Product> getAllProducts(String cursor, int limit) throws IOException {
+        CursorPage<Product> page = productRepository.findAll(cursor, limit);
+        fillRealTimeStock(page.getItems());
+        return page;
     }
 
     /**
      * 根据分类获取商品
      */
     public List<Product> getProductsByCategory(String category, int limit) throws IOException {
-        List<Product> products = productRepository.findByCategory(category, limit);
-        
-        // 设置实时库存
-        for (Product product : products) {
-            product.setRealTimeStock(stockService.getStock(product.getProductId()));
-        }
-        
-        return products;
+        return getProductsByCategory(category, null, limit).getItems();
+    }
+
+    public CursorPage<Product> getProductsByCategory(String category, String cursor, int limit) throws IOException {
+        CursorPage<Product> page = productRepository.findByCategory(category, cursor, limit);
+        fillRealTimeStock(page.getItems());
+        return page;
     }
 
     /**
      * 根据状态获取商品
      */
     public List<Product> getProductsByStatus(Integer status, int limit) throws IOException {
-        List<Product> products = productRepository.findByStatus(status, limit);
-        
-        // 设置实时库存
+        return getProductsByStatus(status, null, limit).getItems();
+    }
+
+    public CursorPage<Product> getProductsByStatus(Integer status, String cursor, int limit) throws IOException {
+        CursorPage<Product> page = productRepository.findByStatus(status, cursor, limit);
+        fillRealTimeStock(page.getItems());
+        return page;
+    }
+
+    /**
+     * 设置实时库存
+     */
+    private void fillRealTimeStock(List<Product> products) {
         for (Product product : products) {
             product.setRealTimeStock(stockService.getStock(product.getProductId()));
         }
-        
-        return products;
     }
 
     /**
      * 搜索商品
      */
     public List<Product> searchProducts(String keyword, int limit) throws IOException {
-        List<Product> products = productRepository.findByNameContaining(keyword, limit);
-        
-        // 设置实时库存
-        for (Product product : products) {
-            product.setRealTimeStock(stockService.getStock(product.getProductId()));
+        return searchProducts(keyword, false, limit);
+    }
+
+    /**
+     * 搜索商品：名称、品牌、标签、分类的本地倒排索引，按相关度与销量排序；
+     * 索引未就绪时回退为 HBase 扫描过滤
+     *
+     * @param prefix 最后一个词按前缀匹配（边输边搜）
+     */
+    public List<Product> searchProducts(String keyword, boolean prefix, int limit) throws IOException {
+        List<String> productIds = productSearchService.search(keyword, prefix, limit);
+        if (productIds == null) {
+            List<Product> products = productRepository.findByNameContaining(keyword, limit);
+            fillRealTimeStock(products);
+            return products;
         }
-        
+        if (productIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<String, Product> found = productRepository.findByIds(productIds);
+        List<Product> products = new ArrayList<>(productIds.size());
+        for (String productId : productIds) {
+            Product product = found.get(productId);
+            if (product != null) {
+                products.add(product);
+            }
+        }
+        fillRealTimeStock(products);
         return products;
     }
 
@@ -291,19 +371,24 @@ public class ProductService {
     }
 
     /**
-     * 获取低库存商品
+     * 获取低库存商品（stock:margin 低库存索引，余量最低的在前）
      */
     public List<Product> getLowStockProducts(int limit) throws IOException {
-        List<Product> allProducts = getAllProducts(limit * 2); // 获取更多商品进行筛选
-        
-        return allProducts.stream()
-                .filter(product -> {
-                    Integer stock = product.getRealTimeStock();
-                    Integer safeStock = product.getSafeStock();
-                    return stock != null && safeStock != null && stock <= safeStock;
-                })
-                .limit(limit)
-                .toList();
+        List<String> productIds = stockAlertService.getLowStockProductIds(limit);
+        if (productIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<String, Product> found = productRepository.findByIds(productIds);
+        List<Product> products = new ArrayList<>(productIds.size());
+        for (String productId : productIds) {
+            Product product = found.get(productId);
+            if (product != null) {
+                products.add(product);
+            }
+        }
+        fillRealTimeStock(products);
+        return products;
     }
 
     /**
@@ -314,9 +399,11 @@ public class ProductService {
             try {
                 Product product = productRepository.findById(productId);
                 if (product != null) {
+                    Integer oldStatus = product.getStatus();
                     product.setStatus(status);
                     product.setUpdateTime(LocalDateTime.now());
                     productRepository.save(product);
+                    aggregateStatsService.recordProductTransition(oldStatus, status);
                 }
             } catch (IOException e) {
                 log.error("Failed to update product status: productId={}, status={}", productId, status, e);
@@ -330,32 +417,24 @@ public class ProductService {
      * 生成商品ID
      */
     private String generateProductId() {
-        // 简单的ID生成策略，实际项目中可以使用更复杂的算法
-        return "P" + System.currentTimeMillis() + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        return idGeneratorService.nextId(IdGeneratorService.PRODUCT_PREFIX);
     }
 
     /**
      * 获取商品统计信息
      */
     public ProductStats getProductStats() throws IOException {
-        List<Product> allProducts = getAllProducts(10000); // 假设最多10000个商品
-        
-        int totalCount = allProducts.size();
-        long onShelfCount = allProducts.stream()
-                .filter(p -> Product.Status.ON_SHELF.getCode().equals(p.getStatus()))
-                .count();
-        long lowStockCount = allProducts.stream()
-                .filter(p -> {
-                    Integer stock = p.getRealTimeStock();
-                    Integer safeStock = p.getSafeStock();
-                    return stock != null && safeStock != null && stock <= safeStock;
-                })
-                .count();
-        
+        // 总数与上架数取自增量维护的计数，低库存数取自低库存索引，与商品总量无关
+        Map<Integer, Long> counts = aggregateStatsService.getProductCounts();
+        long totalCount = 0;
+        for (long count : counts.values()) {
+            totalCount += count;
+        }
+
         return ProductStats.builder()
-                .totalCount(totalCount)
-                .onShelfCount((int) onShelfCount)
-                .lowStockCount((int) lowStockCount)
+                .totalCount((int) totalCount)
+                .onShelfCount(counts.getOrDefault(Product.Status.ON_SHELF.getCode(), 0L).intValue())
+                .lowStockCount((int) stockAlertService.countLowStock())
                 .build();
     }
 
@@ -0,0 +1,57 @@
+package com.sales.service;
+
+import com.sales.entity.Order;
+import com.sales.entity.OrderEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 完成事件 -> 更新日/周/月热销榜单（按 eventId 幂等，重复投递不重复累加）
+ */
+@Slf4j
+@Service
+public class RankingEventHandler implements OrderEventHandler {
+
+    @Autowired
+    private RankingService rankingService;
+
+    @Override
+    public String getName() {
+        return "ranking";
+    }
+
+    @Override
+    public boolean supports(OrderEvent.Type type) {
+        return type == OrderEvent.Type.COMPLETED;
+    }
+
+    @Override
+    public void handle(OrderEvent event, Order order) throws IOException {
+        updateHotRanking(event.getEventId(), order);
+    }
+
+    /**
+     * 更新热销榜单：一个事件的全部商品在一次脚本中更新，按 eventId 只执行一次
+     */
+    public void updateHotRanking(String eventId, Order order) throws IOException {
+        if (order == null || order.getItems() == null) {
+            return;
+        }
+
+        Map<String, Double> amounts = new LinkedHashMap<>();
+        for (Order.OrderItem item : order.getItems()) {
+            double amount = item.getAmount() != null ? item.getAmount().doubleValue() : 0.0;
+            amounts.merge(item.getProductId(), amount, Double::sum);
+        }
+        if (rankingService.addOrderSalesScores(eventId, getName(), amounts)) {
+            log.info("Updated hot ranking for completed order: orderId={}, products={}", order.getOrderId(), amounts.size());
+        } else {
+            log.info("Hot ranking already updated for event: {}", eventId);
+        }
+    }
+}
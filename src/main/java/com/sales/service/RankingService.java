@@ -1,12 +1,24 @@
 package com.sales.service;
 
 import com.sales.config.RedisConfig;
+import com.sales.entity.SalesData;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
@@ -17,6 +29,26 @@ public class RankingService {
 
     private static final long RANKING_EXPIRE_TIME = 86400; // 24小时
 
+    private static final long DAILY_PRODUCT_RANK_EXPIRE_DAYS = 3;
+
+    // 一个订单事件的全部榜单更新：HSETNX 事件标记成功才执行，重复投递不会重复累加热门分数
+    // KEYS: 事件标记 Hash, 日榜, 周榜, 月榜, 热门商品
+    // ARGV: 标记字段, 标记过期秒数, 日榜过期秒数, 周榜过期秒数, 月榜过期秒数, 热门过期秒数, 之后为 (商品ID, 销售额) 对
+    // 标记字段为 JSON 序列化，解码后作为 Hash 字段；商品ID 保持序列化形式与其他写入的成员一致
+    // 返回 1 已更新；0 该事件已更新过
+    private static final RedisScript<Long> ORDER_SALES_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('hsetnx', KEYS[1], cjson.decode(ARGV[1]), 1) == 0 then return 0 end " +
+            "redis.call('expire', KEYS[1], ARGV[2]) " +
+            "for i = 7, #ARGV, 2 do " +
+            "  local amount = tonumber(ARGV[i + 1]) " +
+            "  redis.call('zadd', KEYS[2], amount, ARGV[i]) " +
+            "  redis.call('zadd', KEYS[3], amount, ARGV[i]) " +
+            "  redis.call('zadd', KEYS[4], amount, ARGV[i]) " +
+            "  redis.call('zincrby', KEYS[5], amount / 100, ARGV[i]) " +
+            "end " +
+            "for k = 2, 5 do redis.call('expire', KEYS[k], ARGV[k + 1]) end " +
+            "return 1", Long.class);
+
     /**
      * 增加商品销售分数
      */
@@ -56,6 +88,92 @@ public class RankingService {
         log.info("Added monthly sales score: productId={}, score={}", productId, score);
     }
 
+    /**
+     * 一个订单事件的日/周/月销售分数与热门分数（每 100 元 1 分），一次脚本完成，同一事件同一标记字段只执行一次
+     *
+     * @param amounts 商品ID -> 销售额
+     * @return 本次已更新返回 true，该事件已更新过返回 false
+     * @throws IOException Redis 不可用，调用方应重试
+     */
+    public boolean addOrderSalesScores(String eventId, String markerField, Map<String, Double> amounts) throws IOException {
+        if (amounts.isEmpty()) {
+            return false;
+        }
+        List<String> keys = List.of(RedisConfig.RedisKeys.ORDER_EVENT_APPLIED_PREFIX + eventId,
+                RedisConfig.RedisKeys.RANK_DAILY_SALE, RedisConfig.RedisKeys.RANK_WEEKLY_SALE,
+                RedisConfig.RedisKeys.RANK_MONTHLY_SALE, RedisConfig.RedisKeys.HOT_PRODUCTS);
+        List<Object> args = new ArrayList<>(6 + amounts.size() * 2);
+        args.add(markerField);
+        args.add(TimeUnit.DAYS.toSeconds(OrderEventService.EVENT_KEY_EXPIRE_DAYS));
+        args.add(RANKING_EXPIRE_TIME);
+        args.add(7 * RANKING_EXPIRE_TIME);
+        args.add(30 * RANKING_EXPIRE_TIME);
+        args.add(RANKING_EXPIRE_TIME);
+        amounts.forEach((productId, amount) -> {
+            args.add(productId);
+            args.add(amount);
+        });
+
+        Long applied = redisService.execute(ORDER_SALES_SCRIPT, keys, args.toArray());
+        if (applied == null) {
+            throw new IOException("Failed to update order sales ranking: eventId=" + eventId);
+        }
+        return applied > 0;
+    }
+
+    /**
+     * 按天累加商品销量与销售额（rank:day:{yyyyMMdd}:count / :amount）
+     */
+    public void addDailyProductSales(LocalDate date, String productId, long quantity, double amount) {
+        String countKey = getDailyProductRankKey(date, SalesData.RankBy.COUNT);
+        String amountKey = getDailyProductRankKey(date, SalesData.RankBy.AMOUNT);
+        long expireSeconds = DAILY_PRODUCT_RANK_EXPIRE_DAYS * RANKING_EXPIRE_TIME;
+        
+        // 两次累加与过期设置一次 pipeline 往返；保留若干天，日终快照写入HBase后由过期自然清理
+        List<Object> results = redisService.pipeline(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                operations.opsForZSet().incrementScore(countKey, productId, quantity);
+                operations.opsForZSet().incrementScore(amountKey, productId, amount);
+                operations.expire(countKey, expireSeconds, TimeUnit.SECONDS);
+                operations.expire(amountKey, expireSeconds, TimeUnit.SECONDS);
+                return null;
+            }
+        });
+        if (results == null) {
+            log.warn("Failed to add daily product sales: date={}, productId={}", date, productId);
+        }
+    }
+
+    /**
+     * 获取某天前N名商品及分数，ZSET不存在或 limit 不为正数时返回空列表
+     */
+    public List<SalesData> getDailyProductTopN(LocalDate date, SalesData.RankBy rankBy, int limit) {
+        if (limit <= 0) {
+            // ZREVRANGE 0 -1 会返回整个排行
+            return new ArrayList<>();
+        }
+        Set<ZSetOperations.TypedTuple<Object>> tuples = redisService.zrevrangeWithScores(
+                getDailyProductRankKey(date, rankBy), 0, limit - 1);
+        
+        List<SalesData> ranked = new ArrayList<>();
+        if (tuples == null) {
+            return ranked;
+        }
+        for (ZSetOperations.TypedTuple<Object> tuple : tuples) {
+            if (tuple.getValue() == null || tuple.getScore() == null) {
+                continue;
+            }
+            ranked.add(SalesData.toRankedProduct(date, String.valueOf(tuple.getValue()), rankBy, tuple.getScore()));
+        }
+        return ranked;
+    }
+
+    private String getDailyProductRankKey(LocalDate date, SalesData.RankBy rankBy) {
+        return RedisConfig.RedisKeys.RANK_DAY_PREFIX + date.format(DateTimeFormatter.BASIC_ISO_DATE) + ":" + rankBy.getCode();
+    }
+
     /**
      * 获取日销售排行榜
      */
@@ -3,14 +3,24 @@ package com.sales.service;
 import com.sales.config.RedisConfig;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
@@ -51,6 +61,17 @@ public class RedisService {
         }
     }
 
+    public List<Object> mget(Collection<String> keys) {
+        try {
+            List<Object> values = redisTemplate.opsForValue().multiGet(keys);
+            log.debug("Redis mget: size={}", keys.size());
+            return values;
+        } catch (Exception e) {
+            log.error("Redis mget error: size={}", keys.size(), e);
+            return null;
+        }
+    }
+
     public Object get(String key) {
         try {
             Object value = redisTemplate.opsForValue().get(key);
@@ -202,6 +223,20 @@ public class RedisService {
         }
     }
 
+    /**
+     * 一次读取多个字段，结果顺序与 fields 一致，不存在的字段为 null；失败返回 null
+     */
+    public List<Object> hmget(String key, Collection<String> fields) {
+        try {
+            List<Object> values = redisTemplate.opsForHash().multiGet(key, new ArrayList<>(fields));
+            log.debug("Redis hmget: {} {} = {}", key, fields, values);
+            return values;
+        } catch (Exception e) {
+            log.error("Redis hmget error: key={}, fields={}", key, fields, e);
+            return null;
+        }
+    }
+
     public Map<Object, Object> hgetAll(String key) {
         try {
             Map<Object, Object> map = redisTemplate.opsForHash().entries(key);
@@ -224,6 +259,17 @@ public class RedisService {
         }
     }
 
+    public long hlen(String key) {
+        try {
+            Long result = redisTemplate.opsForHash().size(key);
+            log.debug("Redis hlen: {} = {}", key, result);
+            return result != null ? result : 0;
+        } catch (Exception e) {
+            log.error("Redis hlen error: key={}", key, e);
+            return 0;
+        }
+    }
+
     public boolean hexists(String key, String field) {
         try {
             Boolean result = redisTemplate.opsForHash().hasKey(key, field);
@@ -439,6 +485,17 @@ public class RedisService {
         }
     }
 
+    public Long zcount(String key, double min, double max) {
+        try {
+            Long result = redisTemplate.opsForZSet().count(key, min, max);
+            log.debug("Redis zcount: {} {} {} = {}", key, min, max, result);
+            return result;
+        } catch (Exception e) {
+            log.error("Redis zcount error: key={}, min={}, max={}", key, min, max, e);
+            return null;
+        }
+    }
+
     public Set<Object> zrange(String key, long start, long end) {
         try {
             Set<Object> set = redisTemplate.opsForZSet().range(key, start, end);
@@ -461,6 +518,30 @@ public class RedisService {
         }
     }
 
+    public Set<ZSetOperations.TypedTuple<Object>> zrevrangeWithScores(String key, long start, long end) {
+        try {
+            Set<ZSetOperations.TypedTuple<Object>> set = redisTemplate.opsForZSet().reverseRangeWithScores(key, start, end);
+            log.debug("Redis zrevrangeWithScores: {} {} {} = {}", key, start, end, set);
+            return set;
+        } catch (Exception e) {
+            log.error("Redis zrevrangeWithScores error: key={}, start={}, end={}", key, start, end, e);
+            return null;
+        }
+    }
+
+    public Set<ZSetOperations.TypedTuple<Object>> zrangeByScoreWithScores(String key, double min, double max,
+                                                                          long offset, long count) {
+        try {
+            Set<ZSetOperations.TypedTuple<Object>> set =
+                    redisTemplate.opsForZSet().rangeByScoreWithScores(key, min, max, offset, count);
+            log.debug("Redis zrangeByScoreWithScores: {} {} {} = {}", key, min, max, set);
+            return set;
+        } catch (Exception e) {
+            log.error("Redis zrangeByScoreWithScores error: key={}, min={}, max={}", key, min, max, e);
+            return null;
+        }
+    }
+
     public Set<Object> zrevrangeByScore(String key, double max, double min) {
         try {
             Set<Object> set = redisTemplate.opsForZSet().reverseRangeByScore(key, max, min);
@@ -472,6 +553,17 @@ public class RedisService {
         }
     }
 
+    public long zremrangeByScore(String key, double min, double max) {
+        try {
+            Long result = redisTemplate.opsForZSet().removeRangeByScore(key, min, max);
+            log.debug("Redis zremrangeByScore: {} {} {} = {}", key, min, max, result);
+            return result != null ? result : 0;
+        } catch (Exception e) {
+            log.error("Redis zremrangeByScore error: key={}, min={}, max={}", key, min, max, e);
+            return 0;
+        }
+    }
+
     public long zrem(String key, Object... values) {
         try {
             Long result = redisTemplate.opsForZSet().remove(key, values);
@@ -483,6 +575,110 @@ public class RedisService {
         }
     }
 
+    // =============================HyperLogLog=============================
+
+    public Long pfcount(String... keys) {
+        try {
+            Long count = redisTemplate.opsForHyperLogLog().size(keys);
+            log.debug("Redis pfcount: {} = {}", Arrays.toString(keys), count);
+            return count;
+        } catch (Exception e) {
+            log.error("Redis pfcount error: keys={}", Arrays.toString(keys), e);
+            return null;
+        }
+    }
+
+    // =============================Pipeline=============================
+
+    /**
+     * 一次 pipeline 往返写入多个带过期时间的键
+     */
+    public void pipelineSet(Map<String, Object> values, long timeout, TimeUnit unit) {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) {
+                    for (Map.Entry<String, Object> entry : values.entrySet()) {
+                        operations.opsForValue().set(entry.getKey(), entry.getValue(), timeout, unit);
+                    }
+                    return null;
+                }
+            });
+            log.debug("Redis pipeline set: size={}, timeout={} {}", values.size(), timeout, unit);
+        } catch (Exception e) {
+            log.error("Redis pipeline set error: size={}", values.size(), e);
+        }
+    }
+
+    /**
+     * 一次 pipeline 往返执行多条命令，返回各命令结果；失败返回 null
+     */
+    public List<Object> pipeline(SessionCallback<?> callback) {
+        try {
+            List<Object> results = redisTemplate.executePipelined(callback);
+            log.debug("Redis pipeline executed: size={}", results.size());
+            return results;
+        } catch (Exception e) {
+            log.error("Redis pipeline error", e);
+            return null;
+        }
+    }
+
+    /**
+     * 直接在连接上 pipeline 执行（位图等 RedisTemplate 未封装的命令），结果不经值序列化器反序列化，
+     * byte[] 原样返回；失败返回 null
+     */
+    public List<Object> pipelineRaw(RedisCallback<?> callback) {
+        try {
+            List<Object> results = redisTemplate.executePipelined(callback, RedisSerializer.byteArray());
+            log.debug("Redis raw pipeline executed: size={}", results.size());
+            return results;
+        } catch (Exception e) {
+            log.error("Redis raw pipeline error", e);
+            return null;
+        }
+    }
+
+    // =============================Lua脚本=============================
+
+    public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+        try {
+            T result = redisTemplate.execute(script, keys, args);
+            log.debug("Redis script executed: keys={}, result={}", keys, result);
+            return result;
+        } catch (Exception e) {
+            log.error("Redis script error: keys={}", keys, e);
+            return null;
+        }
+    }
+
+    // =============================分布式锁=============================
+
+    // 仅当锁仍由本次持有者（令牌一致）持有时删除
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) end " +
+            "return 0", Long.class);
+
+    /**
+     * 加锁（SET NX EX），成功返回随机令牌用于释放；已被占用或 Redis 不可用返回 null
+     */
+    public String tryLock(String key, long timeout, TimeUnit unit) {
+        String token = UUID.randomUUID().toString();
+        return setIfAbsent(key, token, timeout, unit) ? token : null;
+    }
+
+    /**
+     * 释放锁：令牌一致才删除，锁已过期并被其他节点取得时不受影响
+     */
+    public boolean unlock(String key, String token) {
+        Long deleted = execute(UNLOCK_SCRIPT, Collections.singletonList(key), token);
+        return deleted != null && deleted > 0;
+    }
+
     // =============================通用方法=============================
 
     public Collection<String> keys(String pattern) {
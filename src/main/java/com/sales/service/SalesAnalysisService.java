@@ -1,10 +1,12 @@
 package com.sales.service;
 
+import com.sales.config.HBaseConfig;
 import com.sales.entity.SalesData;
 import com.sales.repository.SalesDataRepository;
 import com.sales.service.RankingService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
@@ -12,6 +14,7 @@ import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,14 +29,21 @@ public class SalesAnalysisService {
     @Autowired
     private RankingService rankingService;
 
+    @Autowired
+    private UserActivityService userActivityService;
+
+    // 日终排行快照保留的名次
+    private static final int TOP_N_SNAPSHOT_SIZE = 200;
+
     /**
      * 记录销售数据
      */
     public void recordSales(String productId, String categoryId, Long quantity, BigDecimal amount) throws IOException {
-        LocalDate today = LocalDate.now();
+        LocalDateTime now = LocalDateTime.now();
+        LocalDate today = now.toLocalDate();
         
-        // 增加销售数据
-        salesDataRepository.incrementSales(productId, categoryId, today, quantity, amount);
+        // 增加销售数据（含小时计数，同一批次写入）
+        salesDataRepository.incrementSales(productId, categoryId, today, now.getHour(), quantity, amount);
         
         // 增加日销售排行榜分数
         rankingService.addSalesScore(productId, amount.doubleValue());
@@ -41,9 +51,8 @@ public class SalesAnalysisService {
         // 增加热门商品分数
         rankingService.addPurchaseScore(productId, amount.doubleValue());
         
-        // 记录小时级销售数据
-        int currentHour = LocalDateTime.now().getHour();
-        salesDataRepository.incrementHourlySales(productId, today, currentHour, quantity);
+        // 维护当日商品销量/销售额排行（Top-N 查询直接读取）
+        rankingService.addDailyProductSales(today, productId, quantity != null ? quantity : 0L, amount.doubleValue());
         
         log.info("Sales recorded: productId={}, quantity={}, amount={}", productId, quantity, amount);
     }
@@ -81,6 +90,14 @@ public class SalesAnalysisService {
         return salesDataRepository.findByProductAndDateRange(productId, startDate, endDate);
     }
 
+    /**
+     * 获取商品销售数据（只读取指定指标列）
+     */
+    public List<SalesData> getProductSalesData(String productId, LocalDate startDate, LocalDate endDate,
+                                               List<String> metrics) throws IOException {
+        return salesDataRepository.findByProductAndDateRange(productId, startDate, endDate, metrics);
+    }
+
     /**
      * 获取品类销售数据
      */
@@ -88,11 +105,112 @@ public class SalesAnalysisService {
         return salesDataRepository.findByCategoryAndDateRange(categoryId, startDate, endDate);
     }
 
+    /**
+     * 获取品类销售数据（只读取指定指标列）
+     */
+    public List<SalesData> getCategorySalesData(String categoryId, LocalDate startDate, LocalDate endDate,
+                                                List<String> metrics) throws IOException {
+        return salesDataRepository.findByCategoryAndDateRange(categoryId, startDate, endDate, metrics);
+    }
+
+    /**
+     * 区间汇总（协处理器服务端一次扫描聚合 sale_count/sale_amount/refund_count/refund_amount）
+     * 协处理器未加载时退化为客户端扫描汇总，金额按整数累加与服务端一致
+     */
+    public Map<String, SalesDataRepository.RangeAggregate> getRangeSummary(LocalDate startDate, LocalDate endDate,
+                                                                           String categoryId, String productId) throws IOException {
+        List<String> columns = List.of(
+                HBaseConfig.Columns.SALES_SALE_COUNT,
+                HBaseConfig.Columns.SALES_SALE_AMOUNT,
+                HBaseConfig.Columns.SALES_REFUND_COUNT,
+                HBaseConfig.Columns.SALES_REFUND_AMOUNT);
+        try {
+            return salesDataRepository.aggregateByDateRange(startDate, endDate, categoryId, productId, columns);
+        } catch (SalesDataRepository.CoprocessorUnavailableException e) {
+            // 只有协处理器未加载才退化，其余错误照常抛出
+            log.warn("Aggregate coprocessor not loaded, falling back to client scan: {} to {}: {}",
+                    startDate, endDate, e.getMessage());
+        }
+        
+        Map<String, SalesDataRepository.RangeAggregate> aggregates = new java.util.LinkedHashMap<>();
+        for (String column : columns) {
+            aggregates.put(column, SalesDataRepository.RangeAggregate.builder().column(column).build());
+        }
+        for (SalesData data : getSalesDataByDateRange(startDate, endDate)) {
+            boolean matches = productId != null && !productId.isEmpty()
+                    ? data.getProductId() != null && data.getProductId().startsWith(productId)
+                    : categoryId != null && !categoryId.isEmpty()
+                    ? data.getProductId() == null && data.getCategoryId() != null && data.getCategoryId().startsWith(categoryId)
+                    : data.getDataType() == SalesData.DataType.TOTAL;
+            if (!matches) {
+                continue;
+            }
+            mergeAggregate(aggregates.get(HBaseConfig.Columns.SALES_SALE_COUNT), data.getSaleCount());
+            mergeAggregate(aggregates.get(HBaseConfig.Columns.SALES_SALE_AMOUNT),
+                    data.getSaleAmount() != null ? data.getSaleAmount().longValue() : null);
+            mergeAggregate(aggregates.get(HBaseConfig.Columns.SALES_REFUND_COUNT), data.getRefundCount());
+            mergeAggregate(aggregates.get(HBaseConfig.Columns.SALES_REFUND_AMOUNT),
+                    data.getRefundAmount() != null ? data.getRefundAmount().longValue() : null);
+        }
+        return aggregates;
+    }
+
+    private void mergeAggregate(SalesDataRepository.RangeAggregate aggregate, Long value) {
+        if (value == null) {
+            return;
+        }
+        aggregate.setSum(aggregate.getSum() + value);
+        aggregate.setCount(aggregate.getCount() + 1);
+        aggregate.setMin(aggregate.getMin() == null ? value : Math.min(aggregate.getMin(), value));
+        aggregate.setMax(aggregate.getMax() == null ? value : Math.max(aggregate.getMax(), value));
+    }
+
     /**
      * 获取热销商品排行
      */
     public List<SalesData> getTopSellingProducts(LocalDate date, int limit) throws IOException {
-        return salesDataRepository.findTopSellingProducts(date, limit);
+        return getTopSellingProducts(date, limit, SalesData.RankBy.COUNT);
+    }
+
+    /**
+     * 获取热销商品排行：优先读取当日Redis排行，其次读取日终快照，最后才扫描全天数据。
+     * 快照只保留前 TOP_N_SNAPSHOT_SIZE 名，请求更多且快照已满时改为扫描全天数据
+     *
+     * @throws IllegalArgumentException limit 不为正数
+     */
+    public List<SalesData> getTopSellingProducts(LocalDate date, int limit, SalesData.RankBy rankBy) throws IOException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive: " + limit);
+        }
+        List<SalesData> ranked = rankingService.getDailyProductTopN(date, rankBy, limit);
+        if (!ranked.isEmpty()) {
+            return ranked;
+        }
+        
+        ranked = salesDataRepository.findDailyTopN(date, rankBy, limit);
+        if (ranked != null && (limit <= TOP_N_SNAPSHOT_SIZE || ranked.size() < TOP_N_SNAPSHOT_SIZE)) {
+            return ranked;
+        }
+        
+        return salesDataRepository.findTopSellingProducts(date, limit, rankBy);
+    }
+
+    /**
+     * 日终排行快照（每日凌晨），把前一日的Redis排行写入HBase
+     */
+    @Scheduled(cron = "0 10 0 * * ?")
+    public void scheduledTopNSnapshot() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        for (SalesData.RankBy rankBy : SalesData.RankBy.values()) {
+            try {
+                List<SalesData> ranked = rankingService.getDailyProductTopN(yesterday, rankBy, TOP_N_SNAPSHOT_SIZE);
+                if (!ranked.isEmpty()) {
+                    salesDataRepository.saveDailyTopN(yesterday, rankBy, ranked);
+                }
+            } catch (Exception e) {
+                log.error("Scheduled top-N snapshot failed: date={}, rankBy={}", yesterday, rankBy.getCode(), e);
+            }
+        }
     }
 
     /**
@@ -129,10 +247,29 @@ public class SalesAnalysisService {
      * 获取销售趋势数据
      */
     public List<TrendData> getSalesTrend(LocalDate startDate, LocalDate endDate) throws IOException {
+        return getSalesTrend(startDate, endDate, SalesData.Granularity.DAY);
+    }
+
+    /**
+     * 按粒度获取销售趋势数据（周/月读取预聚合汇总行，每个周期一个点）
+     */
+    public List<TrendData> getSalesTrend(LocalDate startDate, LocalDate endDate,
+                                         SalesData.Granularity granularity) throws IOException {
+        if (granularity != SalesData.Granularity.DAY) {
+            return loadCoveringTotals(startDate, endDate, granularity).stream()
+                    .map(data -> TrendData.builder()
+                            .date(data.getDate())
+                            .amount(data.getNetAmount())
+                            .count(data.getNetCount())
+                            .build())
+                    .sorted((a, b) -> a.getDate().compareTo(b.getDate()))
+                    .toList();
+        }
+        
         List<SalesData> salesDataList = getSalesDataByDateRange(startDate, endDate);
         
         return salesDataList.stream()
-                .filter(data -> data.getProductId() == null || data.getProductId().isEmpty()) // 只取总计数据
+                .filter(data -> data.getDataType() == SalesData.DataType.TOTAL) // 只取总计数据（品类行的商品ID同样为空）
                 .map(data -> TrendData.builder()
                         .date(data.getDate())
                         .amount(data.getNetAmount())
@@ -186,20 +323,33 @@ public class SalesAnalysisService {
      * 获取小时销售分析
      */
     public Map<Integer, Long> getHourlyAnalysis(LocalDate date) throws IOException {
-        SalesData dailySales = getDailySalesData(date);
+        // 只读取 cf_hourly 列族的打包列
+        long[] hourlyVector = salesDataRepository.findHourlyVector(SalesData.generateRowKey(date, null, null));
         
-        if (dailySales != null && dailySales.getHourlySales() != null) {
-            return dailySales.getHourlySales();
+        Map<Integer, Long> hourlySales = new HashMap<>();
+        for (int hour = 0; hour < hourlyVector.length; hour++) {
+            if (hourlyVector[hour] > 0) {
+                hourlySales.put(hour, hourlyVector[hour]);
+            }
         }
-        
-        return new HashMap<>();
+        return hourlySales;
     }
 
     /**
      * 生成销售报表
      */
     public SalesReport generateSalesReport(LocalDate startDate, LocalDate endDate) throws IOException {
-        List<SalesData> salesDataList = getSalesDataByDateRange(startDate, endDate);
+        return generateSalesReport(startDate, endDate, SalesData.Granularity.DAY);
+    }
+
+    /**
+     * 按粒度生成销售报表，周/月粒度下一年范围只需读取约 12 个汇总行
+     */
+    public SalesReport generateSalesReport(LocalDate startDate, LocalDate endDate,
+                                           SalesData.Granularity granularity) throws IOException {
+        List<SalesData> salesDataList = granularity == SalesData.Granularity.DAY
+                ? getSalesDataByDateRange(startDate, endDate)
+                : loadCoveringTotals(startDate, endDate, granularity);
         
         BigDecimal totalAmount = BigDecimal.ZERO;
         Long totalCount = 0L;
@@ -207,7 +357,7 @@ public class SalesAnalysisService {
         Long totalRefundCount = 0L;
         
         for (SalesData data : salesDataList) {
-            if (data.getProductId() == null || data.getProductId().isEmpty()) { // 只统计总计数据
+            if (data.getDataType() == SalesData.DataType.TOTAL) { // 只统计总计数据，排除品类行
                 totalAmount = totalAmount.add(data.getNetAmount());
                 totalCount = totalCount + data.getNetCount();
                 totalRefundAmount = totalRefundAmount.add(data.getRefundAmount() != null ? data.getRefundAmount() : BigDecimal.ZERO);
@@ -236,16 +386,132 @@ public class SalesAnalysisService {
     }
 
     /**
-     * 获取今日用户数量（简化实现）
+     * 回填周/月汇总行：按日总计行和品类行重新计算覆盖日期范围内已结束的周期。
+     * 仍在进行中的周期（包含今天）跳过，汇总行只按差值以比较交换修正，不覆盖并发累加。
      */
-    private Long getTodayUserCount() {
-        // 这里应该从Redis或数据库获取今日活跃用户数
-        // 简化实现，返回在线用户数
+    public int backfillRollups(LocalDate startDate, LocalDate endDate) throws IOException {
+        LocalDate today = LocalDate.now();
+        int written = 0;
+        int conflicts = 0;
+        
+        for (SalesData.Granularity granularity : new SalesData.Granularity[] {
+                SalesData.Granularity.WEEK, SalesData.Granularity.MONTH}) {
+            LocalDate periodStart = granularity.periodStart(startDate);
+            while (!periodStart.isAfter(endDate)) {
+                LocalDate periodEnd = granularity.nextPeriodStart(periodStart);
+                if (periodEnd.isAfter(today)) {
+                    log.debug("Skipping open rollup period: {} {}", granularity, periodStart);
+                    periodStart = periodEnd;
+                    continue;
+                }
+                
+                // 先读汇总行当前值作为比较基准，再读日行计算目标值
+                Map<String, SalesData> current = salesDataRepository.findRollupsByPeriod(granularity, periodStart);
+                Map<String, SalesData> rollups = new HashMap<>();
+                for (String rowKey : current.keySet()) {
+                    rollups.put(rowKey, emptyRollup(rowKey));
+                }
+                for (SalesData daily : salesDataRepository.findAggregatesByDateRange(periodStart, periodEnd)) {
+                    String rowKey = SalesData.generateRollupRowKey(granularity, periodStart, daily.getCategoryId());
+                    SalesData rollup = rollups.computeIfAbsent(rowKey, this::emptyRollup);
+                    
+                    rollup.setSaleCount(rollup.getSaleCount() + (daily.getSaleCount() != null ? daily.getSaleCount() : 0L));
+                    rollup.setSaleAmount(rollup.getSaleAmount().add(daily.getSaleAmount() != null ? daily.getSaleAmount() : BigDecimal.ZERO));
+                    rollup.setRefundCount(rollup.getRefundCount() + (daily.getRefundCount() != null ? daily.getRefundCount() : 0L));
+                    rollup.setRefundAmount(rollup.getRefundAmount().add(daily.getRefundAmount() != null ? daily.getRefundAmount() : BigDecimal.ZERO));
+                }
+                
+                for (SalesData rollup : rollups.values()) {
+                    if (salesDataRepository.correctRollup(rollup.getRowKey(), current.get(rollup.getRowKey()), rollup)) {
+                        written++;
+                    } else {
+                        conflicts++;
+                        log.warn("Rollup changed during backfill, skipped: {}", rollup.getRowKey());
+                    }
+                }
+                periodStart = periodEnd;
+            }
+        }
+        
+        log.info("Sales rollups backfilled: {} to {}, rows={}, conflicts={}", startDate, endDate, written, conflicts);
+        return written;
+    }
+
+    /**
+     * 一次性回填商品优先伴随表（伴随表上线前的历史日期），查询只读伴随表
+     */
+    public int backfillProductFirst(LocalDate startDate, LocalDate endDate) throws IOException {
+        return salesDataRepository.backfillProductFirst(startDate, endDate);
+    }
+
+    private SalesData emptyRollup(String rowKey) {
+        return SalesData.builder()
+                .rowKey(rowKey)
+                .saleCount(0L)
+                .saleAmount(BigDecimal.ZERO)
+                .refundCount(0L)
+                .refundAmount(BigDecimal.ZERO)
+                .build();
+    }
+
+    /**
+     * 定时回填（每日凌晨），修正昨日结束的周/月汇总的偏差；进行中的周期不回填
+     */
+    @Scheduled(cron = "0 30 0 * * ?")
+    public void scheduledRollupBackfill() {
+        try {
+            LocalDate yesterday = LocalDate.now().minusDays(1);
+            backfillRollups(yesterday, yesterday);
+        } catch (Exception e) {
+            log.error("Scheduled rollup backfill failed", e);
+        }
+    }
+
+    /**
+     * 定时压缩小时数据（每日凌晨），把前一日的 hour_NN 计数列并入打包列
+     */
+    @Scheduled(cron = "0 40 0 * * ?")
+    public void scheduledHourlyCompaction() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
         try {
-            return rankingService.getRankingSize("hot");
+            salesDataRepository.compactHourly(yesterday);
         } catch (Exception e) {
-            return 0L;
+            log.error("Scheduled hourly compaction failed: date={}", yesterday, e);
+        }
+    }
+
+    /**
+     * 用不超过指定粒度的最粗汇总行覆盖 [startDate, endDate)，一次批量读取
+     */
+    private List<SalesData> loadCoveringTotals(LocalDate startDate, LocalDate endDate,
+                                               SalesData.Granularity granularity) throws IOException {
+        List<String> rowKeys = new ArrayList<>();
+        
+        LocalDate cursor = startDate;
+        while (cursor.isBefore(endDate)) {
+            SalesData.Granularity step = SalesData.Granularity.DAY;
+            if (granularity == SalesData.Granularity.MONTH && coversWholePeriod(SalesData.Granularity.MONTH, cursor, endDate)) {
+                step = SalesData.Granularity.MONTH;
+            } else if (granularity != SalesData.Granularity.DAY && coversWholePeriod(SalesData.Granularity.WEEK, cursor, endDate)) {
+                step = SalesData.Granularity.WEEK;
+            }
+            
+            rowKeys.add(SalesData.generateRollupRowKey(step, cursor, null));
+            cursor = step.nextPeriodStart(cursor);
         }
+        
+        return salesDataRepository.findByRowKeys(rowKeys);
+    }
+
+    private boolean coversWholePeriod(SalesData.Granularity granularity, LocalDate date, LocalDate endDate) {
+        return granularity.periodStart(date).equals(date) && !granularity.nextPeriodStart(date).isAfter(endDate);
+    }
+
+    /**
+     * 获取今日活跃用户数（HyperLogLog 去重，一次 PFCOUNT）
+     */
+    private Long getTodayUserCount() {
+        return userActivityService.countActiveToday();
     }
 
     /**
@@ -1,70 +1,150 @@
 package com.sales.service;
 
 import com.sales.config.RedisConfig;
+import com.sales.config.SessionProperties;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * 用户会话
+ *
+ * 会话为 Redis Hash（session:{sessionId}，字段 user_id / username / login_time / login_ip），按字段读写。
+ * 校验先查本地缓存（默认 5 秒），命中不访问 Redis；未命中时一次 pipeline 读取 user_id 与剩余 TTL，
+ * 只有剩余 TTL 低于阈值才续期会话与 Token，而不是每次请求都 EXPIRE。
+ */
 @Slf4j
 @Service
 public class SessionService {
 
+    private static final String FIELD_USER_ID = "user_id";
+    private static final String FIELD_USERNAME = "username";
+    private static final String FIELD_LOGIN_TIME = "login_time";
+    private static final String FIELD_LOGIN_IP = "login_ip";
+
     @Autowired
     private RedisService redisService;
 
-    private static final long SESSION_EXPIRE_TIME = 1800; // 30分钟
+    @Autowired
+    private UserActivityService userActivityService;
+
+    @Autowired
+    private SessionProperties properties;
+
+    // 本地校验缓存：sessionId -> 已校验的会话
+    private final Map<String, ValidatedSession> validated = new ConcurrentHashMap<>();
 
     /**
      * 创建用户会话
      */
     public void createSession(String sessionId, String userId, String username, String loginIp) {
         String sessionKey = RedisConfig.RedisKeys.SESSION_PREFIX + sessionId;
-        
-        // 构建会话信息
-        String sessionData = "{\"user_id\":\"" + userId + 
-                           "\",\"username\":\"" + username + 
-                           "\",\"login_time\":" + System.currentTimeMillis() / 1000 + 
-                           ",\"login_ip\":\"" + loginIp + "\"}";
-        
-        redisService.set(sessionKey, sessionData, SESSION_EXPIRE_TIME, TimeUnit.SECONDS);
-        
-        // 建立用户Token映射
         String tokenKey = RedisConfig.RedisKeys.TOKEN_PREFIX + userId;
-        redisService.set(tokenKey, sessionId, SESSION_EXPIRE_TIME, TimeUnit.SECONDS);
-        
-        // 添加到在线用户集合
-        redisService.sadd(RedisConfig.RedisKeys.ONLINE_USERS, userId);
-        redisService.expire(RedisConfig.RedisKeys.ONLINE_USERS, SESSION_EXPIRE_TIME, TimeUnit.SECONDS);
-        
+        long expireSeconds = properties.getExpireSeconds();
+
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(FIELD_USER_ID, userId);
+        fields.put(FIELD_USERNAME, username);
+        fields.put(FIELD_LOGIN_TIME, System.currentTimeMillis() / 1000);
+        if (loginIp != null) {
+            fields.put(FIELD_LOGIN_IP, loginIp);
+        }
+
+        // 会话 Hash 与用户 Token 映射一次 pipeline 写入
+        redisService.pipeline(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                operations.opsForHash().putAll(sessionKey, fields);
+                operations.expire(sessionKey, expireSeconds, TimeUnit.SECONDS);
+                operations.opsForValue().set(tokenKey, sessionId, expireSeconds, TimeUnit.SECONDS);
+                return null;
+            }
+        });
+
+        // 刷新在线时间，计入今日活跃
+        userActivityService.recordActive(userId);
+
         log.info("Session created: sessionId={}, userId={}, username={}", sessionId, userId, username);
     }
 
     /**
-     * 获取会话信息
+     * 获取会话信息，不存在返回 null
      */
-    public String getSession(String sessionId) {
+    public SessionInfo getSession(String sessionId) {
         String sessionKey = RedisConfig.RedisKeys.SESSION_PREFIX + sessionId;
-        return (String) redisService.get(sessionKey);
+        Map<Object, Object> fields = redisService.hgetAll(sessionKey);
+        if (fields == null || fields.get(FIELD_USER_ID) == null) {
+            return null;
+        }
+        Object loginTime = fields.get(FIELD_LOGIN_TIME);
+        return SessionInfo.builder()
+                .sessionId(sessionId)
+                .userId(String.valueOf(fields.get(FIELD_USER_ID)))
+                .username(fields.get(FIELD_USERNAME) != null ? String.valueOf(fields.get(FIELD_USERNAME)) : null)
+                .loginTime(loginTime instanceof Number number ? number.longValue() : null)
+                .loginIp(fields.get(FIELD_LOGIN_IP) != null ? String.valueOf(fields.get(FIELD_LOGIN_IP)) : null)
+                .build();
     }
 
     /**
      * 验证会话是否有效
      */
     public boolean validateSession(String sessionId) {
-        String sessionData = getSession(sessionId);
-        if (sessionData == null) {
-            return false;
+        return resolveUserId(sessionId) != null;
+    }
+
+    /**
+     * 校验会话并返回用户ID，无效返回 null。本地缓存命中时不访问 Redis
+     */
+    public String resolveUserId(String sessionId) {
+        if (sessionId == null || sessionId.isEmpty()) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        ValidatedSession cached = validated.get(sessionId);
+        if (cached != null && cached.validUntil > now) {
+            return cached.userId;
         }
-        
-        // 延长会话过期时间
+
         String sessionKey = RedisConfig.RedisKeys.SESSION_PREFIX + sessionId;
-        redisService.expire(sessionKey, SESSION_EXPIRE_TIME, TimeUnit.SECONDS);
-        
-        return true;
+        List<Object> results = redisService.pipeline(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                operations.opsForHash().get(sessionKey, FIELD_USER_ID);
+                operations.getExpire(sessionKey, TimeUnit.SECONDS);
+                return null;
+            }
+        });
+        if (results == null || results.get(0) == null) {
+            validated.remove(sessionId);
+            return null;
+        }
+        String userId = String.valueOf(results.get(0));
+        long ttlSeconds = results.get(1) instanceof Number number ? number.longValue() : -1;
+
+        // 剩余 TTL 低于阈值才续期
+        if (ttlSeconds >= 0 && ttlSeconds < properties.getRefreshThresholdSeconds()) {
+            extend(sessionKey, userId);
+            ttlSeconds = properties.getExpireSeconds();
+        }
+        userActivityService.recordActive(userId);
+
+        if (ttlSeconds > 0) {
+            cache(sessionId, userId, now + Math.min(properties.getLocalCacheMillis(), ttlSeconds * 1000));
+        }
+        return userId;
     }
 
     /**
@@ -72,24 +152,20 @@ public class SessionService {
      */
     public void destroySession(String sessionId) {
         String sessionKey = RedisConfig.RedisKeys.SESSION_PREFIX + sessionId;
-        String sessionData = (String) redisService.get(sessionKey);
-        
-        if (sessionData != null) {
-            // 解析用户ID
-            String userId = extractUserId(sessionData);
-            if (userId != null) {
-                // 删除Token映射
-                String tokenKey = RedisConfig.RedisKeys.TOKEN_PREFIX + userId;
-                redisService.del(tokenKey);
-                
-                // 从在线用户集合中移除
-                redisService.srem(RedisConfig.RedisKeys.ONLINE_USERS, userId);
-            }
+        validated.remove(sessionId);
+
+        Object userId = redisService.hget(sessionKey, FIELD_USER_ID);
+        if (userId != null) {
+            // 删除Token映射
+            String tokenKey = RedisConfig.RedisKeys.TOKEN_PREFIX + userId;
+            redisService.del(sessionKey, tokenKey);
+
+            // 从在线用户中移除
+            userActivityService.recordOffline(String.valueOf(userId));
+        } else {
+            redisService.del(sessionKey);
         }
-        
-        // 删除会话
-        redisService.del(sessionKey);
-        
+
         log.info("Session destroyed: sessionId={}", sessionId);
     }
 
@@ -102,45 +178,38 @@ public class SessionService {
     }
 
     /**
-     * 刷新会话过期时间
+     * 刷新会话过期时间（会话与 Token 一次 pipeline 续期）
      */
     public void refreshSession(String sessionId) {
         String sessionKey = RedisConfig.RedisKeys.SESSION_PREFIX + sessionId;
-        redisService.expire(sessionKey, SESSION_EXPIRE_TIME, TimeUnit.SECONDS);
-        
-        // 同时刷新Token过期时间
-        String sessionData = getSession(sessionId);
-        if (sessionData != null) {
-            String userId = extractUserId(sessionData);
-            if (userId != null) {
-                String tokenKey = RedisConfig.RedisKeys.TOKEN_PREFIX + userId;
-                redisService.expire(tokenKey, SESSION_EXPIRE_TIME, TimeUnit.SECONDS);
-            }
+        ValidatedSession cached = validated.get(sessionId);
+        Object userId = cached != null ? cached.userId : redisService.hget(sessionKey, FIELD_USER_ID);
+        if (userId != null) {
+            extend(sessionKey, String.valueOf(userId));
         }
-        
+
         log.debug("Session refreshed: sessionId={}", sessionId);
     }
 
     /**
-     * 获取在线用户数量
+     * 获取在线用户数量（ZCOUNT，不拉取集合）
      */
     public long getOnlineUserCount() {
-        Set<Object> onlineUsers = redisService.smembers(RedisConfig.RedisKeys.ONLINE_USERS);
-        return onlineUsers != null ? onlineUsers.size() : 0;
+        return userActivityService.countOnline();
     }
 
     /**
      * 获取所有在线用户
      */
     public Set<Object> getOnlineUsers() {
-        return redisService.smembers(RedisConfig.RedisKeys.ONLINE_USERS);
+        return userActivityService.getOnlineUsers();
     }
 
     /**
      * 检查用户是否在线
      */
     public boolean isUserOnline(String userId) {
-        return redisService.sismember(RedisConfig.RedisKeys.ONLINE_USERS, userId);
+        return userActivityService.isOnline(userId);
     }
 
     /**
@@ -151,20 +220,22 @@ public class SessionService {
         if (sessionId != null) {
             destroySession(sessionId);
         }
-        
+
         log.info("User forced logout: userId={}", userId);
     }
 
     /**
-     * 更新会话信息
+     * 更新会话字段（会话不存在时不创建）
      */
     public void updateSession(String sessionId, Map<String, Object> updates) {
+        if (updates == null || updates.isEmpty()) {
+            return;
+        }
         String sessionKey = RedisConfig.RedisKeys.SESSION_PREFIX + sessionId;
-        String sessionData = (String) redisService.get(sessionKey);
-        
-        if (sessionData != null) {
-            // 这里应该解析JSON并更新，简化处理
-            log.info("Session updated: sessionId={}, updates={}", sessionId, updates);
+        if (redisService.hexists(sessionKey, FIELD_USER_ID)) {
+            redisService.hset(sessionKey, updates);
+            validated.remove(sessionId);
+            log.info("Session updated: sessionId={}, fields={}", sessionId, updates.keySet());
         }
     }
 
@@ -183,86 +254,76 @@ public class SessionService {
         for (String sessionId : sessionIds) {
             destroySession(sessionId);
         }
-        
+
         log.info("Batch sessions destroyed: count={}", sessionIds.length);
     }
 
     /**
-     * 清理过期会话（通常由Redis自动处理，这里提供手动清理接口）
+     * 清理本地校验缓存中已过期的条目（Redis 中的会话由 TTL 自动过期）
      */
+    @Scheduled(fixedDelay = 60000)
     public void cleanupExpiredSessions() {
-        // Redis会自动清理过期的键，这里主要是记录日志
-        log.info("Cleanup expired sessions task executed");
+        long now = System.currentTimeMillis();
+        validated.values().removeIf(session -> session.validUntil <= now);
     }
 
     /**
      * 获取会话统计信息
      */
     public Map<String, Object> getSessionStats() {
-        // 这里可以实现更复杂的统计逻辑
         long onlineCount = getOnlineUserCount();
-        
+
         return Map.of(
             "onlineUserCount", onlineCount,
-            "sessionExpireTime", SESSION_EXPIRE_TIME
+            "sessionExpireTime", properties.getExpireSeconds(),
+            "localCacheSize", validated.size()
         );
     }
 
-    /**
-     * 从会话数据中提取用户ID
-     */
-    private String extractUserId(String sessionData) {
-        try {
-            if (sessionData.contains("\"user_id\":")) {
-                int start = sessionData.indexOf("\"user_id\":\"") + 11;
-                int end = sessionData.indexOf("\"", start);
-                if (end > start) {
-                    return sessionData.substring(start, end);
-                }
+    private void extend(String sessionKey, String userId) {
+        long expireSeconds = properties.getExpireSeconds();
+        String tokenKey = RedisConfig.RedisKeys.TOKEN_PREFIX + userId;
+        redisService.pipeline(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                operations.expire(sessionKey, expireSeconds, TimeUnit.SECONDS);
+                operations.expire(tokenKey, expireSeconds, TimeUnit.SECONDS);
+                return null;
             }
-        } catch (Exception e) {
-            log.error("Failed to extract user ID from session data: {}", sessionData, e);
-        }
-        return null;
+        });
     }
 
-    /**
-     * 从会话数据中提取用户名
-     */
-    private String extractUsername(String sessionData) {
-        try {
-            if (sessionData.contains("\"username\":")) {
-                int start = sessionData.indexOf("\"username\":\"") + 12;
-                int end = sessionData.indexOf("\"", start);
-                if (end > start) {
-                    return sessionData.substring(start, end);
-                }
+    private void cache(String sessionId, String userId, long validUntil) {
+        if (validated.size() >= properties.getLocalCacheMaxSize()) {
+            cleanupExpiredSessions();
+            if (validated.size() >= properties.getLocalCacheMaxSize()) {
+                return;
             }
-        } catch (Exception e) {
-            log.error("Failed to extract username from session data: {}", sessionData, e);
         }
-        return null;
+        validated.put(sessionId, new ValidatedSession(userId, validUntil));
+    }
+
+    private static class ValidatedSession {
+        private final String userId;
+        private final long validUntil;
+
+        ValidatedSession(String userId, long validUntil) {
+            this.userId = userId;
+            this.validUntil = validUntil;
+        }
     }
 
     /**
-     * 从会话数据中提取登录时间
+     * 会话信息
      */
-    private Long extractLoginTime(String sessionData) {
-        try {
-            if (sessionData.contains("\"login_time\":")) {
-                int start = sessionData.indexOf("\"login_time\":") + 13;
-                int end = sessionData.indexOf(",", start);
-                if (end == -1) {
-                    end = sessionData.indexOf("}", start);
-                }
-                if (end > start) {
-                    String timeStr = sessionData.substring(start, end);
-                    return Long.parseLong(timeStr.trim());
-                }
-            }
-        } catch (Exception e) {
-            log.error("Failed to extract login time from session data: {}", sessionData, e);
-        }
-        return null;
+    @lombok.Data
+    @lombok.Builder
+    public static class SessionInfo {
+        private String sessionId;
+        private String userId;
+        private String username;
+        private Long loginTime;
+        private String loginIp;
     }
 }
@@ -0,0 +1,12 @@
+package com.sales.service;
+
+import java.io.IOException;
+
+/**
+ * 库存预警处理器（如补货），由 StockAlertService 按消费组分发。
+ * 同一消息可能重复投递，处理器需幂等；抛出异常时整批留在 PEL 等待重试。
+ */
+public interface StockAlertHandler {
+
+    void handle(StockAlertService.StockAlert alert) throws IOException;
+}
@@ -0,0 +1,171 @@
+package com.sales.service;
+
+import com.sales.config.RedisConfig;
+import com.sales.entity.CursorPage;
+import com.sales.entity.Product;
+import com.sales.repository.ProductRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 低库存索引与库存预警
+ *
+ * stock:margin 由 StockService 的库存脚本原子维护，低库存查询即 ZRANGEBYSCORE -inf 0，
+ * 按余量从低到高返回。余量跨过 0 时脚本写入 queue:stock:alert，这里以消费组方式分发给各 StockAlertHandler。
+ * 首次启动（stock:safe 为空）时从 HBase 回填安全库存。
+ */
+@Slf4j
+@Service
+public class StockAlertService {
+
+    private static final String CONSUMER_GROUP = "stock-alerts";
+
+    private static final String BACKFILL_LOCK = RedisConfig.RedisKeys.LOCK_PREFIX + "stock:safe:backfill";
+
+    private static final int BACKFILL_PAGE_SIZE = 1000;
+
+    @Autowired
+    private RedisService redisService;
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private StreamQueueService streamQueueService;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    @Autowired(required = false)
+    private List<StockAlertHandler> handlers = Collections.emptyList();
+
+    @PostConstruct
+    public void start() {
+        streamQueueService.subscribe(RedisConfig.RedisKeys.QUEUE_STOCK_ALERT, CONSUMER_GROUP, this::consume);
+        if (redisService.hlen(RedisConfig.RedisKeys.STOCK_SAFE) == 0) {
+            taskExecutor.execute(this::backfillSafeStock);
+        }
+    }
+
+    /**
+     * 低库存商品ID（库存 <= 安全库存），余量最低的在前
+     */
+    public List<String> getLowStockProductIds(int limit) {
+        Set<ZSetOperations.TypedTuple<Object>> tuples = redisService.zrangeByScoreWithScores(
+                RedisConfig.RedisKeys.STOCK_MARGIN, Double.NEGATIVE_INFINITY, 0, 0, limit);
+        List<String> productIds = new ArrayList<>();
+        if (tuples != null) {
+            for (ZSetOperations.TypedTuple<Object> tuple : tuples) {
+                productIds.add(String.valueOf(tuple.getValue()));
+            }
+        }
+        return productIds;
+    }
+
+    /**
+     * 低库存商品数（ZCOUNT）
+     */
+    public long countLowStock() {
+        Long count = redisService.zcount(RedisConfig.RedisKeys.STOCK_MARGIN, Double.NEGATIVE_INFINITY, 0);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * 从 HBase 回填安全库存（逐页扫描），多节点同时启动时只有一个节点执行
+     */
+    public void backfillSafeStock() {
+        if (!redisService.setIfAbsent(BACKFILL_LOCK, "1", 30, TimeUnit.MINUTES)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int count = 0;
+        try {
+            String cursor = null;
+            do {
+                CursorPage<Product> page = productRepository.findAll(cursor, BACKFILL_PAGE_SIZE);
+                for (Product product : page.getItems()) {
+                    if (product.getSafeStock() != null) {
+                        stockService.setSafeStock(product.getProductId(), product.getSafeStock());
+                        count++;
+                    }
+                }
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+            log.info("Safe stock backfilled: products={}, costMs={}", count, System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            log.error("Failed to backfill safe stock, will retry at next startup", e);
+        } finally {
+            redisService.del(BACKFILL_LOCK);
+        }
+    }
+
+    private Collection<String> consume(List<StreamQueueService.StreamMessage> messages) throws IOException {
+        List<String> ids = new ArrayList<>(messages.size());
+        for (StreamQueueService.StreamMessage message : messages) {
+            ids.add(message.getId());
+            StockAlert alert = toAlert(message.getFields());
+            if (alert == null) {
+                log.error("Malformed stock alert dropped: id={}, fields={}", message.getId(), message.getFields());
+                continue;
+            }
+            if (handlers.isEmpty()) {
+                log.warn("Stock alert: productId={}, type={}, stock={}, safeStock={}",
+                        alert.getProductId(), alert.getType(), alert.getStock(), alert.getSafeStock());
+            }
+            for (StockAlertHandler handler : handlers) {
+                handler.handle(alert);
+            }
+        }
+        return ids;
+    }
+
+    private static StockAlert toAlert(Map<String, String> fields) {
+        try {
+            return StockAlert.builder()
+                    .productId(fields.get("productId"))
+                    .type(StockAlert.Type.valueOf(fields.get("type")))
+                    .stock(Integer.parseInt(fields.get("stock")))
+                    .safeStock(Integer.parseInt(fields.get("safeStock")))
+                    .time(Long.parseLong(fields.get("time")))
+                    .build();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 库存预警消息
+     */
+    @lombok.Data
+    @lombok.Builder
+    public static class StockAlert {
+        private String productId;
+        private Type type;
+        private int stock;
+        private int safeStock;
+        private long time;
+
+        public enum Type {
+            LOW,        // 库存跌至安全库存及以下
+            RECOVERED   // 库存回到安全库存之上
+        }
+    }
+}
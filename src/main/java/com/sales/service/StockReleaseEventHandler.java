@@ -0,0 +1,48 @@
+package com.sales.service;
+
+import com.sales.entity.Order;
+import com.sales.entity.OrderEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 取消事件 -> 释放订单占用的库存（对应购物车项扣减订单数量并归还库存）
+ * 手动取消、批量取消和超时自动取消都经由 CANCELLED 事件，按订单号只释放一次；失败抛出由 outbox 重试
+ */
+@Slf4j
+@Service
+public class StockReleaseEventHandler implements OrderEventHandler {
+
+    @Autowired
+    private CartService cartService;
+
+    @Override
+    public String getName() {
+        return "stock-release";
+    }
+
+    @Override
+    public boolean supports(OrderEvent.Type type) {
+        return type == OrderEvent.Type.CANCELLED;
+    }
+
+    @Override
+    public void handle(OrderEvent event, Order order) throws IOException {
+        if (order == null || order.getUserId() == null || order.getItems() == null) {
+            log.warn("Cancelled order not found or has no items, nothing to release: {}", event.getOrderId());
+            return;
+        }
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (Order.OrderItem item : order.getItems()) {
+            if (item.getProductId() != null && item.getQuantity() != null) {
+                quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+            }
+        }
+        cartService.releaseForCancelledOrder(order.getOrderId(), order.getUserId(), quantities);
+    }
+}
@@ -3,12 +3,23 @@ package com.sales.service;
 import com.sales.config.RedisConfig;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+/**
+ * 商品库存（Redis 为主副本）
+ *
+ * 所有库存变更都经同一个 Lua 脚本：写库存、记入 write-behind 脏集合，并按 stock:safe 中的安全库存
+ * 维护 stock:margin（库存 - 安全库存）；余量跨过 0 时向 queue:stock:alert 追加 LOW / RECOVERED 消息。
+ * 库存键不设过期：Redis 是主副本，键缺失时脚本按 0 处理，过期会把未售库存清零。
+ */
 @Slf4j
 @Service
 public class StockService {
@@ -16,18 +27,94 @@ public class StockService {
     @Autowired
     private RedisService redisService;
 
-    private static final long STOCK_EXPIRE_TIME = 3600; // 1小时
+    private static final long SECKILL_STOCK_EXPIRE_TIME = 3600; // 1小时
+
+    private static final int MODE_SET = 0;
+    private static final int MODE_INCR = 1;
+    private static final int MODE_SAFE = 2;
+
+    // 按安全库存维护余量，余量跨过 0 时追加预警消息；member 为 JSON 序列化的商品ID（购物车释放脚本共用）
+    static final String TRACK_MARGIN_FUNCTION =
+            "local function trackMargin(marginKey, alertKey, pid, member, stock, safe, now) " +
+            "  if not safe then return end " +
+            "  local margin = stock - tonumber(safe) " +
+            "  local old = redis.call('zscore', marginKey, member) " +
+            "  redis.call('zadd', marginKey, margin, member) " +
+            "  local wasLow = old ~= false and tonumber(old) <= 0 " +
+            "  if (margin <= 0) ~= wasLow then " +
+            "    redis.call('xadd', alertKey, '*', 'productId', pid, 'type', margin <= 0 and 'LOW' or 'RECOVERED', " +
+            "      'stock', stock, 'safeStock', safe, 'time', now) " +
+            "  end " +
+            "end ";
+
+    // KEYS: 库存键, stock:safe, stock:margin, stock:dirty, queue:stock:alert
+    // ARGV: 商品ID（JSON 序列化，与 RedisTemplate 写入的 ZSet 成员一致）, 模式, 数值, 当前毫秒
+    // 返回 {1, 变更后库存}；扣减后为负时不修改，返回 {0, 当前库存}；设置安全库存时库存键不存在则只记录安全库存
+    private static final RedisScript<List> STOCK_CHANGE_SCRIPT = new DefaultRedisScript<>(
+            TRACK_MARGIN_FUNCTION +
+            "local pid = cjson.decode(ARGV[1]) " +
+            "local mode = tonumber(ARGV[2]) " +
+            "local safe = redis.call('hget', KEYS[2], pid) " +
+            "local stock " +
+            "if mode == 2 then " +
+            "  safe = ARGV[3] " +
+            "  redis.call('hset', KEYS[2], pid, safe) " +
+            "  local current = redis.call('get', KEYS[1]) " +
+            "  if not current then return {1, -1} end " +
+            "  stock = tonumber(current) " +
+            "else " +
+            "  if mode == 0 then " +
+            "    stock = tonumber(ARGV[3]) " +
+            "  else " +
+            "    local current = tonumber(redis.call('get', KEYS[1]) or '0') " +
+            "    stock = current + tonumber(ARGV[3]) " +
+            "    if stock < 0 then return {0, current} end " +
+            "  end " +
+            "  redis.call('set', KEYS[1], stock) " +
+            "  redis.call('zadd', KEYS[4], ARGV[4], ARGV[1]) " +
+            "end " +
+            "trackMargin(KEYS[3], KEYS[5], pid, ARGV[1], stock, safe, ARGV[4]) " +
+            "return {1, stock}", List.class);
+
+    // 多商品库存一次变更，全部成功或全部不变
+    // KEYS: stock:safe, stock:margin, stock:dirty, queue:stock:alert, 之后为各商品库存键
+    // ARGV: 当前毫秒, 之后为 (商品ID, 变化量) 对，顺序与库存键一致
+    // 返回 0 成功；任一商品变更后为负时不修改，返回其序号（从 1 开始）
+    private static final RedisScript<Long> STOCK_BATCH_CHANGE_SCRIPT = new DefaultRedisScript<>(
+            TRACK_MARGIN_FUNCTION +
+            "local n = #KEYS - 4 " +
+            "local stocks = {} " +
+            "for i = 1, n do " +
+            "  stocks[i] = tonumber(redis.call('get', KEYS[4 + i]) or '0') + tonumber(ARGV[1 + i * 2]) " +
+            "  if stocks[i] < 0 then return i end " +
+            "end " +
+            "for i = 1, n do " +
+            "  local member = ARGV[i * 2] " +
+            "  local pid = cjson.decode(member) " +
+            "  redis.call('set', KEYS[4 + i], stocks[i]) " +
+            "  redis.call('zadd', KEYS[3], ARGV[1], member) " +
+            "  trackMargin(KEYS[2], KEYS[4], pid, member, stocks[i], redis.call('hget', KEYS[1], pid), ARGV[1]) " +
+            "end " +
+            "return 0", Long.class);
 
     /**
      * 设置商品库存
      */
     public void setStock(String productId, int stock) {
-        String stockKey = RedisConfig.RedisKeys.STOCK_PREFIX + productId;
-        redisService.set(stockKey, stock, STOCK_EXPIRE_TIME, java.util.concurrent.TimeUnit.SECONDS);
+        changeStock(productId, MODE_SET, stock);
         
         log.info("Set stock: productId={}, stock={}", productId, stock);
     }
 
+    /**
+     * 设置安全库存，立即按当前库存重算余量（可能触发低库存消息）
+     */
+    public void setSafeStock(String productId, int safeStock) {
+        changeStock(productId, MODE_SAFE, safeStock);
+
+        log.debug("Set safe stock: productId={}, safeStock={}", productId, safeStock);
+    }
+
     /**
      * 获取商品库存
      */
@@ -59,34 +146,23 @@ public class StockService {
      * 增加库存
      */
     public long increaseStock(String productId, int delta) {
-        String stockKey = RedisConfig.RedisKeys.STOCK_PREFIX + productId;
-        long newStock = redisService.incr(stockKey, delta);
-        
-        // 设置过期时间（如果不存在的话）
-        redisService.expire(stockKey, STOCK_EXPIRE_TIME, java.util.concurrent.TimeUnit.SECONDS);
+        long newStock = changeStock(productId, MODE_INCR, delta);
         
         log.info("Increased stock: productId={}, delta={}, newStock={}", productId, delta, newStock);
         return newStock;
     }
 
     /**
-     * 减少库存
+     * 减少库存（脚本内检查余额，不足时不扣减）
      */
     public long decreaseStock(String productId, int delta) {
-        String stockKey = RedisConfig.RedisKeys.STOCK_PREFIX + productId;
-        long newStock = redisService.decr(stockKey, delta);
+        long newStock = changeStock(productId, MODE_INCR, -delta);
         
-        // 检查库存是否足够
         if (newStock < 0) {
-            // 库存不足，回滚
-            redisService.incr(stockKey, delta);
-            log.warn("Insufficient stock: productId={}, delta={}, currentStock={}", productId, delta, newStock + delta);
+            log.warn("Insufficient stock: productId={}, delta={}", productId, delta);
             return -1;
         }
         
-        // 设置过期时间
-        redisService.expire(stockKey, STOCK_EXPIRE_TIME, java.util.concurrent.TimeUnit.SECONDS);
-        
         log.info("Decreased stock: productId={}, delta={}, newStock={}", productId, delta, newStock);
         return newStock;
     }
@@ -95,32 +171,61 @@ public class StockService {
      * 原子性扣减库存
      */
     public boolean deductStock(String productId, int quantity) {
-        String stockKey = RedisConfig.RedisKeys.STOCK_PREFIX + productId;
-        long currentStock = getStock(productId);
-        
-        if (currentStock < quantity) {
-            log.warn("Insufficient stock for deduction: productId={}, required={}, available={}", 
-                    productId, quantity, currentStock);
-            return false;
-        }
-        
         long newStock = decreaseStock(productId, quantity);
         if (newStock >= 0) {
             log.info("Stock deducted successfully: productId={}, quantity={}, remaining={}", 
                     productId, quantity, newStock);
             return true;
         } else {
-            log.error("Stock deduction failed: productId={}, quantity={}", productId, quantity);
+            log.warn("Insufficient stock for deduction: productId={}, required={}", productId, quantity);
             return false;
         }
     }
 
+    /**
+     * 批量变更库存（正数归还、负数扣减），一次脚本调用；任一商品扣减后为负时全部不变
+     *
+     * @return 全部变更成功
+     */
+    public boolean batchChangeStock(Map<String, Integer> deltas) {
+        if (deltas == null || deltas.isEmpty()) {
+            return true;
+        }
+        List<String> keys = new ArrayList<>(deltas.size() + 4);
+        keys.add(RedisConfig.RedisKeys.STOCK_SAFE);
+        keys.add(RedisConfig.RedisKeys.STOCK_MARGIN);
+        keys.add(RedisConfig.RedisKeys.STOCK_DIRTY);
+        keys.add(RedisConfig.RedisKeys.QUEUE_STOCK_ALERT);
+        List<Object> args = new ArrayList<>(deltas.size() * 2 + 1);
+        args.add(System.currentTimeMillis());
+        List<String> productIds = new ArrayList<>(deltas.keySet());
+        for (String productId : productIds) {
+            keys.add(RedisConfig.RedisKeys.STOCK_PREFIX + productId);
+            args.add(productId);
+            args.add(deltas.get(productId));
+        }
+
+        Long failed = redisService.execute(STOCK_BATCH_CHANGE_SCRIPT, keys, args.toArray());
+        if (failed == null) {
+            log.error("Batch stock change failed: products={}", productIds.size());
+            return false;
+        }
+        if (failed > 0) {
+            String productId = productIds.get(failed.intValue() - 1);
+            log.warn("Insufficient stock for batch change: productId={}, delta={}", productId, deltas.get(productId));
+            return false;
+        }
+
+        log.info("Batch stock changed: products={}", productIds.size());
+        return true;
+    }
+
     /**
      * 设置秒杀库存
      */
     public void setSeckillStock(String seckillId, String productId, int stock) {
         String seckillStockKey = RedisConfig.RedisKeys.SECKILL_STOCK_PREFIX + seckillId + "_" + productId;
-        redisService.set(seckillStockKey, stock, STOCK_EXPIRE_TIME, java.util.concurrent.TimeUnit.SECONDS);
+        redisService.set(seckillStockKey, stock, SECKILL_STOCK_EXPIRE_TIME, java.util.concurrent.TimeUnit.SECONDS);
         
         log.info("Set seckill stock: seckillId={}, productId={}, stock={}", seckillId, productId, stock);
     }
@@ -191,6 +296,8 @@ public class StockService {
     public void deleteStock(String productId) {
         String stockKey = RedisConfig.RedisKeys.STOCK_PREFIX + productId;
         redisService.del(stockKey);
+        redisService.hdel(RedisConfig.RedisKeys.STOCK_SAFE, productId);
+        redisService.zrem(RedisConfig.RedisKeys.STOCK_MARGIN, productId);
         
         log.info("Deleted stock: productId={}", productId);
     }
@@ -325,6 +432,28 @@ public class StockService {
                 .build();
     }
     
+    /**
+     * 执行库存变更脚本
+     *
+     * @return 变更后库存；扣减不足或 Redis 不可用返回 -1
+     */
+    @SuppressWarnings("unchecked")
+    private long changeStock(String productId, int mode, int value) {
+        List<String> keys = Arrays.asList(
+                RedisConfig.RedisKeys.STOCK_PREFIX + productId,
+                RedisConfig.RedisKeys.STOCK_SAFE,
+                RedisConfig.RedisKeys.STOCK_MARGIN,
+                RedisConfig.RedisKeys.STOCK_DIRTY,
+                RedisConfig.RedisKeys.QUEUE_STOCK_ALERT);
+        List<Object> result = redisService.execute(STOCK_CHANGE_SCRIPT, keys,
+                productId, mode, value, System.currentTimeMillis());
+        if (result == null || result.size() < 2) {
+            return -1;
+        }
+        boolean applied = ((Number) result.get(0)).longValue() == 1;
+        return applied ? ((Number) result.get(1)).longValue() : -1;
+    }
+
     /**
      * 库存信息内部类
      */
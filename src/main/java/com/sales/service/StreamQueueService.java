@@ -0,0 +1,339 @@
+package com.sales.service;
+
+import com.sales.config.RedisConfig;
+import com.sales.config.StreamQueueProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 基于 Redis Streams 的消息队列
+ *
+ * 生产者 XADD（批量时 pipeline），消费者以消费组方式跨节点分摊消息：
+ * 每个订阅一个线程循环 XREADGROUP（count/block 可配置），处理成功的消息 XACK；
+ * 未 ACK 的消息留在 PEL 中，空闲超过 reclaimIdleMs 后由任意节点 XCLAIM 重新处理，
+ * 投递次数超过 maxDeliveries 的消息写入 {stream}:dead 死信流后 ACK。
+ */
+@Slf4j
+@Service
+public class StreamQueueService {
+
+    private static final long RECLAIM_INTERVAL = 30000;
+
+    private static final long READ_ERROR_BACKOFF_MS = 1000;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private StreamQueueProperties properties;
+
+    // 同一进程内的消费者名，崩溃重启后换新名字，旧名字下的 PEL 由 reclaim 认领
+    private final String consumerName = ManagementFactory.getRuntimeMXBean().getName()
+            + "-" + UUID.randomUUID().toString().substring(0, 8);
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private volatile boolean running = true;
+
+    /**
+     * 发送单条消息
+     */
+    public String publish(String stream, Map<String, String> fields) {
+        try {
+            RecordId id = stringRedisTemplate.opsForStream().add(StreamRecords.newRecord().in(stream).ofMap(fields));
+            return id != null ? id.getValue() : null;
+        } catch (Exception e) {
+            log.error("Stream publish error: stream={}", stream, e);
+            return null;
+        }
+    }
+
+    /**
+     * 批量发送，一次 pipeline 往返
+     */
+    public boolean publishAll(String stream, List<Map<String, String>> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return true;
+        }
+        try {
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) {
+                    for (Map<String, String> fields : messages) {
+                        operations.opsForStream().add(StreamRecords.newRecord().in(stream).ofMap(fields));
+                    }
+                    return null;
+                }
+            });
+            log.debug("Stream publish batch: stream={}, size={}", stream, messages.size());
+            return true;
+        } catch (Exception e) {
+            log.error("Stream publish batch error: stream={}, size={}", stream, messages.size(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 以消费组方式订阅流，启动后台消费线程
+     */
+    public void subscribe(String stream, String group, StreamMessageHandler handler) {
+        subscribe(stream, group, handler, false);
+    }
+
+    /**
+     * 以消费组方式订阅流
+     *
+     * @param fromLatest 为 true 时只消费订阅之后的新消息：新建的消费组从 $ 开始，已存在的消费组位置移到 $。
+     *                   适用于启动时从全量快照重建本地状态的订阅方，之前的消息已包含在快照中
+     */
+    public void subscribe(String stream, String group, StreamMessageHandler handler, boolean fromLatest) {
+        ReadOffset startOffset = fromLatest ? ReadOffset.latest() : ReadOffset.from("0");
+        if (!createGroupIfAbsent(stream, group, startOffset) && fromLatest) {
+            moveGroupToLatest(stream, group);
+        }
+
+        Subscription subscription = new Subscription(stream, group, startOffset, handler);
+        subscriptions.add(subscription);
+
+        Thread worker = new Thread(() -> consumeLoop(subscription), "Stream-" + stream + "-" + group);
+        worker.setDaemon(true);
+        worker.start();
+        log.info("Stream subscribed: stream={}, group={}, consumer={}", stream, group, consumerName);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * 认领崩溃消费者遗留的消息，超过投递上限的转入死信流；顺带按 maxLength 近似裁剪
+     */
+    @Scheduled(fixedDelay = RECLAIM_INTERVAL)
+    public void reclaimPending() {
+        for (Subscription subscription : subscriptions) {
+            try {
+                reclaim(subscription);
+                stringRedisTemplate.opsForStream().trim(subscription.stream, properties.getMaxLength(), true);
+            } catch (Exception e) {
+                log.warn("Stream reclaim failed: stream={}, group={}", subscription.stream, subscription.group, e);
+            }
+        }
+    }
+
+    private void consumeLoop(Subscription subscription) {
+        StreamReadOptions options = StreamReadOptions.empty()
+                .count(properties.getReadCount())
+                .block(Duration.ofMillis(properties.getBlockMs()));
+
+        while (running) {
+            try {
+                List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                        Consumer.from(subscription.group, consumerName), options,
+                        StreamOffset.create(subscription.stream, ReadOffset.lastConsumed()));
+                if (records != null && !records.isEmpty()) {
+                    dispatch(subscription, records);
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    break;
+                }
+                log.error("Stream read error: stream={}, group={}", subscription.stream, subscription.group, e);
+                // 流或消费组被删除时重建，随后退避重试
+                createGroupIfAbsent(subscription.stream, subscription.group, subscription.startOffset);
+                sleepQuietly(READ_ERROR_BACKOFF_MS);
+            }
+        }
+    }
+
+    private void dispatch(Subscription subscription, List<MapRecord<String, Object, Object>> records) {
+        List<StreamMessage> messages = new ArrayList<>(records.size());
+        for (MapRecord<String, Object, Object> record : records) {
+            messages.add(toMessage(record));
+        }
+
+        Collection<String> acked;
+        try {
+            acked = subscription.handler.handle(messages);
+        } catch (Exception e) {
+            // 整批失败，全部留在 PEL 等待认领重试
+            log.error("Stream handler failed: stream={}, size={}", subscription.stream, messages.size(), e);
+            return;
+        }
+
+        if (acked != null && !acked.isEmpty()) {
+            stringRedisTemplate.opsForStream().acknowledge(subscription.stream, subscription.group,
+                    acked.toArray(new String[0]));
+        }
+    }
+
+    private void reclaim(Subscription subscription) {
+        PendingMessages pending = stringRedisTemplate.opsForStream().pending(subscription.stream,
+                subscription.group, Range.unbounded(), properties.getReadCount());
+        if (pending == null || pending.isEmpty()) {
+            return;
+        }
+
+        List<RecordId> toClaim = new ArrayList<>();
+        List<PendingMessage> exhausted = new ArrayList<>();
+        for (PendingMessage message : pending) {
+            if (message.getElapsedTimeSinceLastDelivery().toMillis() < properties.getReclaimIdleMs()) {
+                continue;
+            }
+            if (message.getTotalDeliveryCount() >= properties.getMaxDeliveries()) {
+                exhausted.add(message);
+            } else {
+                toClaim.add(message.getId());
+            }
+        }
+
+        for (PendingMessage message : exhausted) {
+            moveToDeadLetter(subscription, message);
+        }
+
+        if (!toClaim.isEmpty()) {
+            List<MapRecord<String, Object, Object>> claimed = stringRedisTemplate.opsForStream().claim(
+                    subscription.stream, subscription.group, consumerName,
+                    Duration.ofMillis(properties.getReclaimIdleMs()), toClaim.toArray(new RecordId[0]));
+            if (claimed != null && !claimed.isEmpty()) {
+                log.info("Reclaimed pending stream messages: stream={}, count={}", subscription.stream, claimed.size());
+                dispatch(subscription, claimed);
+            }
+        }
+    }
+
+    private void moveToDeadLetter(Subscription subscription, PendingMessage message) {
+        String id = message.getIdAsString();
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .range(subscription.stream, Range.closed(id, id));
+
+        Map<String, String> fields = new LinkedHashMap<>();
+        if (records != null && !records.isEmpty()) {
+            fields.putAll(toMessage(records.get(0)).getFields());
+        }
+        fields.put("_source_id", id);
+        fields.put("_group", subscription.group);
+        fields.put("_deliveries", String.valueOf(message.getTotalDeliveryCount()));
+
+        publish(subscription.stream + RedisConfig.RedisKeys.QUEUE_DEAD_LETTER_SUFFIX, fields);
+        stringRedisTemplate.opsForStream().acknowledge(subscription.stream, subscription.group, id);
+        log.error("Stream message moved to dead letter: stream={}, id={}, deliveries={}",
+                subscription.stream, id, message.getTotalDeliveryCount());
+    }
+
+    /**
+     * 创建消费组（流不存在时一并创建），返回是否新建；已存在或创建失败返回 false
+     */
+    private boolean createGroupIfAbsent(String stream, String group, ReadOffset startOffset) {
+        try {
+            stringRedisTemplate.opsForStream().createGroup(stream, startOffset, group);
+            return true;
+        } catch (RedisSystemException e) {
+            // BUSYGROUP：消费组已存在
+            log.debug("Stream group already exists: stream={}, group={}", stream, group);
+        } catch (Exception e) {
+            log.error("Failed to create stream group: stream={}, group={}", stream, group, e);
+        }
+        return false;
+    }
+
+    /**
+     * XGROUP SETID {stream} {group} $：跳过消费组停机期间积压的消息（PEL 中未确认的消息仍会被认领）
+     */
+    private void moveGroupToLatest(String stream, String group) {
+        try {
+            stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.execute("XGROUP",
+                    "SETID".getBytes(StandardCharsets.UTF_8), stream.getBytes(StandardCharsets.UTF_8),
+                    group.getBytes(StandardCharsets.UTF_8), "$".getBytes(StandardCharsets.UTF_8)));
+            log.info("Stream group moved to latest: stream={}, group={}", stream, group);
+        } catch (Exception e) {
+            log.warn("Failed to move stream group to latest, backlog will be replayed: stream={}, group={}",
+                    stream, group, e);
+        }
+    }
+
+    private static StreamMessage toMessage(MapRecord<String, Object, Object> record) {
+        Map<String, String> fields = new HashMap<>();
+        for (Map.Entry<Object, Object> entry : record.getValue().entrySet()) {
+            fields.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+        }
+        return new StreamMessage(record.getId().getValue(), fields);
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Subscription {
+        private final String stream;
+        private final String group;
+        private final ReadOffset startOffset;
+        private final StreamMessageHandler handler;
+
+        private Subscription(String stream, String group, ReadOffset startOffset, StreamMessageHandler handler) {
+            this.stream = stream;
+            this.group = group;
+            this.startOffset = startOffset;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * 流消息
+     */
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class StreamMessage {
+        private String id;
+        private Map<String, String> fields;
+    }
+
+    /**
+     * 流消息处理器
+     */
+    @FunctionalInterface
+    public interface StreamMessageHandler {
+
+        /**
+         * 批量处理消息
+         *
+         * @return 处理成功需要 ACK 的消息ID；未返回的消息留在 PEL 中，超时后重新投递
+         */
+        Collection<String> handle(List<StreamMessage> messages) throws Exception;
+    }
+}
@@ -0,0 +1,35 @@
+package com.sales.service;
+
+import com.sales.entity.Order;
+import com.sales.entity.OrderEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * 状态流转事件 -> 刷新用户订单时间线中的摘要
+ */
+@Slf4j
+@Service
+public class TimelineEventHandler implements OrderEventHandler {
+
+    @Autowired
+    private OrderTimelineService orderTimelineService;
+
+    @Override
+    public String getName() {
+        return "timeline";
+    }
+
+    @Override
+    public boolean supports(OrderEvent.Type type) {
+        return true;
+    }
+
+    @Override
+    public void handle(OrderEvent event, Order order) {
+        if (order != null) {
+            orderTimelineService.refresh(order);
+        }
+    }
+}
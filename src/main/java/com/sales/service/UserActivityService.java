@@ -0,0 +1,211 @@
+package com.sales.service;
+
+import com.sales.config.RedisConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户活跃度指标：在线用户、日/周/月活跃用户与下单用户
+ *
+ * 在线用户为 ZSet（用户ID -> 最近活跃时间），在线数即 ZCOUNT 最近 30 分钟，无需拉取整个集合。
+ * 去重用户数用 HyperLogLog：每次活跃同时 PFADD 当天与当月两个键（每键至多 12KB），
+ * 日活、月活各是一次 PFCOUNT，近 7/30 天为多键 PFCOUNT（服务端合并，不落地）。全部指标一次 pipeline 往返。
+ */
+@Slf4j
+@Service
+public class UserActivityService {
+
+    // 在线判定窗口，与会话过期时间一致
+    private static final long ONLINE_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private static final long DAILY_RETENTION_DAYS = 35;
+
+    private static final long MONTHLY_RETENTION_DAYS = 400;
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyyMM");
+
+    @Autowired
+    private RedisService redisService;
+
+    /**
+     * 记录用户活跃：刷新在线时间并计入当天、当月活跃用户
+     */
+    public void recordActive(String userId) {
+        if (userId == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        redisService.pipeline(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                operations.opsForZSet().add(RedisConfig.RedisKeys.ONLINE_USERS, userId, now);
+                addDistinct(operations, RedisConfig.RedisKeys.UV_ACTIVE_PREFIX, userId);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 记录下单用户（按支付计）
+     */
+    public void recordBuyer(String userId) {
+        if (userId == null) {
+            return;
+        }
+        redisService.pipeline(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) {
+                addDistinct(operations, RedisConfig.RedisKeys.UV_BUYER_PREFIX, userId);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 用户下线（登出、强制下线）
+     */
+    public void recordOffline(String userId) {
+        redisService.zrem(RedisConfig.RedisKeys.ONLINE_USERS, userId);
+    }
+
+    /**
+     * 在线用户数：最近 30 分钟内活跃（ZCOUNT）
+     */
+    public long countOnline() {
+        Long count = redisService.zcount(RedisConfig.RedisKeys.ONLINE_USERS, onlineCutoff(), Double.POSITIVE_INFINITY);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * 在线用户ID，最近活跃的在前
+     */
+    public Set<Object> getOnlineUsers() {
+        return redisService.zrevrangeByScore(RedisConfig.RedisKeys.ONLINE_USERS, Double.POSITIVE_INFINITY, onlineCutoff());
+    }
+
+    public boolean isOnline(String userId) {
+        Double lastSeen = redisService.zscore(RedisConfig.RedisKeys.ONLINE_USERS, userId);
+        return lastSeen != null && lastSeen >= onlineCutoff();
+    }
+
+    /**
+     * 今日活跃用户数
+     */
+    public long countActiveToday() {
+        Long count = redisService.pfcount(dayKey(RedisConfig.RedisKeys.UV_ACTIVE_PREFIX, LocalDate.now()));
+        return count != null ? count : 0;
+    }
+
+    /**
+     * 用户活跃指标，一次 pipeline 往返
+     */
+    public UserMetrics getMetrics() {
+        LocalDate today = LocalDate.now();
+        double cutoff = onlineCutoff();
+        List<Object> results = redisService.pipeline(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                for (String prefix : new String[]{RedisConfig.RedisKeys.UV_ACTIVE_PREFIX, RedisConfig.RedisKeys.UV_BUYER_PREFIX}) {
+                    operations.opsForHyperLogLog().size(dayKey(prefix, today));
+                    operations.opsForHyperLogLog().size((Object[]) windowKeys(prefix, today, 7));
+                    operations.opsForHyperLogLog().size((Object[]) windowKeys(prefix, today, 30));
+                    operations.opsForHyperLogLog().size(monthKey(prefix, today));
+                }
+                operations.opsForZSet().count(RedisConfig.RedisKeys.ONLINE_USERS, cutoff, Double.POSITIVE_INFINITY);
+                return null;
+            }
+        });
+        if (results == null) {
+            return UserMetrics.builder().build();
+        }
+        return UserMetrics.builder()
+                .activeToday(asLong(results.get(0)))
+                .active7d(asLong(results.get(1)))
+                .active30d(asLong(results.get(2)))
+                .activeThisMonth(asLong(results.get(3)))
+                .buyersToday(asLong(results.get(4)))
+                .buyers7d(asLong(results.get(5)))
+                .buyers30d(asLong(results.get(6)))
+                .buyersThisMonth(asLong(results.get(7)))
+                .onlineUsers(asLong(results.get(8)))
+                .build();
+    }
+
+    /**
+     * 清理超出在线窗口的成员（每分钟），防止 ZSet 无限增长
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void trimOnlineUsers() {
+        long removed = redisService.zremrangeByScore(RedisConfig.RedisKeys.ONLINE_USERS, Double.NEGATIVE_INFINITY,
+                onlineCutoff() - 1);
+        if (removed > 0) {
+            log.debug("Trimmed offline users: {}", removed);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addDistinct(RedisOperations operations, String prefix, String userId) {
+        LocalDate today = LocalDate.now();
+        String dayKey = dayKey(prefix, today);
+        String monthKey = monthKey(prefix, today);
+        operations.opsForHyperLogLog().add(dayKey, userId);
+        operations.expire(dayKey, DAILY_RETENTION_DAYS, TimeUnit.DAYS);
+        operations.opsForHyperLogLog().add(monthKey, userId);
+        operations.expire(monthKey, MONTHLY_RETENTION_DAYS, TimeUnit.DAYS);
+    }
+
+    private static String dayKey(String prefix, LocalDate day) {
+        return prefix + day.format(DAY_FORMAT);
+    }
+
+    private static String monthKey(String prefix, LocalDate day) {
+        return prefix + "m:" + day.format(MONTH_FORMAT);
+    }
+
+    private static String[] windowKeys(String prefix, LocalDate today, int days) {
+        String[] keys = new String[days];
+        for (int i = 0; i < days; i++) {
+            keys[i] = dayKey(prefix, today.minusDays(i));
+        }
+        return keys;
+    }
+
+    private static double onlineCutoff() {
+        return System.currentTimeMillis() - ONLINE_WINDOW_MILLIS;
+    }
+
+    private static long asLong(Object value) {
+        return value instanceof Number number ? number.longValue() : 0;
+    }
+
+    /**
+     * 用户活跃指标
+     */
+    @lombok.Data
+    @lombok.Builder
+    public static class UserMetrics {
+        private long onlineUsers;
+        private long activeToday;
+        private long active7d;
+        private long active30d;
+        private long activeThisMonth;
+        private long buyersToday;
+        private long buyers7d;
+        private long buyers30d;
+        private long buyersThisMonth;
+    }
+}
@@ -0,0 +1,607 @@
+package com.sales.service;
+
+import com.sales.config.RedisConfig;
+import com.sales.config.UserSegmentProperties;
+import com.sales.entity.User;
+import com.sales.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户分群：稠密序号 + Redis 位图
+ *
+ * 用户首次建索引时分配递增序号（写回 user_profile 的 cf_base:ordinal，checkAndMutate 保证只分配一次），
+ * 按等级、状态各维护一个位图，按天维护活跃位图（登录即置位）。分群条件编译为 BITOP 序列在 Redis 内求值：
+ * 计数为 BITCOUNT，ID 列表按序号分段 GETRANGE 解码后经 user:ordinal:rev 反查用户ID。
+ * 序号计数器不存在（首次启用或 Redis 数据丢失）时后台从 HBase 全量回填。
+ */
+@Slf4j
+@Service
+public class UserSegmentService {
+
+    // 反查 Hash 每桶的序号数，低于 hash-max-listpack-entries 以保持紧凑编码
+    private static final int ORDINAL_BUCKET_SIZE = 128;
+
+    private static final int MAX_SEGMENT_NODES = 64;
+
+    private static final int REBUILD_BATCH_SIZE = 500;
+
+    private static final long TMP_TTL_SECONDS = 60;
+
+    private static final String REBUILD_LOCK = RedisConfig.RedisKeys.LOCK_PREFIX + "user:segment:rebuild";
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+    // KEYS: 序号计数器；计数器不存在（回填未完成）时返回 -1，不从 0 重新分配以免与已有序号冲突
+    private static final RedisScript<Long> ALLOCATE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 0 then return -1 end " +
+            "return redis.call('incr', KEYS[1])", Long.class);
+
+    // KEYS: 序号计数器；ARGV: HBase 中已见的最大序号。计数器只前进不后退
+    private static final RedisScript<Long> ADVANCE_SCRIPT = new DefaultRedisScript<>(
+            "local current = redis.call('get', KEYS[1]) " +
+            "local seen = tonumber(ARGV[1]) " +
+            "if (not current) or seen > tonumber(current) then redis.call('set', KEYS[1], seen) end " +
+            "return 1", Long.class);
+
+    @Autowired
+    private RedisService redisService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserSegmentProperties properties;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    @PostConstruct
+    public void start() {
+        if (properties.isEnabled() && !redisService.exists(RedisConfig.RedisKeys.USER_ORDINAL_SEQ)) {
+            rebuildAsync();
+        }
+    }
+
+    /**
+     * 按用户当前状态、等级刷新位图：置位当前值并清除其它值，重复调用幂等
+     */
+    public void index(User user) {
+        if (!properties.isEnabled() || user == null || ensureOrdinal(user) == null) {
+            return;
+        }
+        writeBits(Collections.singletonList(user), false);
+    }
+
+    /**
+     * 记录登录：置位当天活跃位图
+     */
+    public void recordLogin(User user) {
+        if (!properties.isEnabled() || user == null || ensureOrdinal(user) == null) {
+            return;
+        }
+        long ordinal = user.getOrdinal();
+        redisService.pipelineRaw(connection -> {
+            markActive(connection, ordinal, LocalDate.now());
+            return null;
+        });
+    }
+
+    /**
+     * 分群人数
+     *
+     * @return Redis 不可用时返回 null
+     */
+    public Long count(Segment segment) {
+        Plan plan = compile(segment);
+        List<Object> results = redisService.pipelineRaw(connection -> {
+            plan.apply(connection);
+            connection.stringCommands().bitCount(raw(plan.result));
+            plan.cleanup(connection);
+            return null;
+        });
+        return results != null ? (Long) results.get(plan.steps.size()) : null;
+    }
+
+    /**
+     * 分群人数与按序号分页的用户ID，cursor 为上一页返回的 nextCursor（首页传 null）
+     *
+     * @return Redis 不可用时返回 null
+     */
+    public SegmentPage query(Segment segment, String cursor, int limit) {
+        if (limit <= 0 || limit > properties.getMaxPageSize()) {
+            throw new IllegalArgumentException("Segment page limit must be in [1, " + properties.getMaxPageSize() + "]: " + limit);
+        }
+        long from = parseCursor(cursor);
+        Plan plan = compile(segment);
+        int chunkBytes = properties.getReadChunkBytes();
+        long byteStart = from / 8;
+
+        try {
+            List<Object> results = redisService.pipelineRaw(connection -> {
+                plan.apply(connection);
+                for (String temp : plan.temps) {
+                    connection.keyCommands().expire(raw(temp), TMP_TTL_SECONDS);
+                }
+                connection.stringCommands().bitCount(raw(plan.result));
+                connection.stringCommands().getRange(raw(plan.result), byteStart, byteStart + chunkBytes - 1);
+                return null;
+            });
+            if (results == null) {
+                return null;
+            }
+            int offset = plan.steps.size() + plan.temps.size();
+            long count = (Long) results.get(offset);
+            byte[] chunk = (byte[]) results.get(offset + 1);
+
+            // 多取一个序号判断是否还有下一页
+            List<Long> ordinals = new ArrayList<>();
+            long chunkStart = byteStart;
+            while (true) {
+                collect(chunk, chunkStart * 8, from, limit + 1, ordinals);
+                if (ordinals.size() > limit || chunk == null || chunk.length < chunkBytes) {
+                    break;
+                }
+                chunkStart += chunkBytes;
+                long start = chunkStart;
+                List<Object> next = redisService.pipelineRaw(connection -> {
+                    connection.stringCommands().getRange(raw(plan.result), start, start + chunkBytes - 1);
+                    return null;
+                });
+                if (next == null) {
+                    return null;
+                }
+                chunk = (byte[]) next.get(0);
+            }
+
+            String nextCursor = null;
+            if (ordinals.size() > limit) {
+                nextCursor = String.valueOf(ordinals.get(limit));
+                ordinals = ordinals.subList(0, limit);
+            }
+            return SegmentPage.builder()
+                    .count(count)
+                    .userIds(resolveUserIds(ordinals))
+                    .nextCursor(nextCursor)
+                    .build();
+        } finally {
+            if (!plan.temps.isEmpty()) {
+                redisService.pipelineRaw(connection -> {
+                    plan.cleanup(connection);
+                    return null;
+                });
+            }
+        }
+    }
+
+    /**
+     * 后台执行全量回填
+     */
+    public void rebuildAsync() {
+        taskExecutor.execute(this::rebuild);
+    }
+
+    /**
+     * 从 HBase 全量回填：先推进序号计数器到已分配的最大序号，再为缺序号的用户补分配并写入位图。
+     * 多节点同时触发时只有一个节点执行
+     */
+    public void rebuild() {
+        String lockToken = redisService.tryLock(REBUILD_LOCK, 30, TimeUnit.MINUTES);
+        if (lockToken == null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            long[] maxOrdinal = {0};
+            userRepository.scanForSegmentIndex(properties.getScanCaching(), user -> {
+                if (user.getOrdinal() != null) {
+                    maxOrdinal[0] = Math.max(maxOrdinal[0], user.getOrdinal());
+                }
+            });
+            redisService.execute(ADVANCE_SCRIPT, Collections.singletonList(RedisConfig.RedisKeys.USER_ORDINAL_SEQ),
+                    maxOrdinal[0]);
+
+            List<User> batch = new ArrayList<>();
+            long[] indexed = {0};
+            userRepository.scanForSegmentIndex(properties.getScanCaching(), user -> {
+                if (ensureOrdinal(user) == null) {
+                    return;
+                }
+                batch.add(user);
+                if (batch.size() >= REBUILD_BATCH_SIZE) {
+                    writeBits(batch, true);
+                    indexed[0] += batch.size();
+                    batch.clear();
+                }
+            });
+            writeBits(batch, true);
+            indexed[0] += batch.size();
+
+            log.info("User segment bitmaps rebuilt: users={}, previousMaxOrdinal={}, costMs={}",
+                    indexed[0], maxOrdinal[0], System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            log.error("Failed to rebuild user segment bitmaps", e);
+        } finally {
+            redisService.unlock(REBUILD_LOCK, lockToken);
+        }
+    }
+
+    /**
+     * 取得用户序号，没有则分配；并发分配落败时沿用已写入的序号（本次分配的序号空置）。
+     * 计数器未就绪或 HBase 失败时返回 null，该用户由回填补齐
+     */
+    private Long ensureOrdinal(User user) {
+        if (user.getOrdinal() != null) {
+            return user.getOrdinal();
+        }
+        Long allocated = redisService.execute(ALLOCATE_SCRIPT,
+                Collections.singletonList(RedisConfig.RedisKeys.USER_ORDINAL_SEQ));
+        if (allocated == null || allocated < 0) {
+            log.debug("User ordinal sequence not ready, skip indexing: {}", user.getUserId());
+            return null;
+        }
+        try {
+            if (userRepository.assignOrdinal(user.getUserId(), allocated)) {
+                user.setOrdinal(allocated);
+            } else {
+                User stored = userRepository.findById(user.getUserId());
+                user.setOrdinal(stored != null ? stored.getOrdinal() : null);
+            }
+        } catch (IOException e) {
+            log.error("Failed to assign user ordinal: {}", user.getUserId(), e);
+        }
+        return user.getOrdinal();
+    }
+
+    private void writeBits(List<User> users, boolean withLastLogin) {
+        if (users.isEmpty()) {
+            return;
+        }
+        LocalDate oldestActiveDay = LocalDate.now().minusDays(properties.getActiveRetentionDays() - 1);
+        redisService.pipelineRaw(connection -> {
+            for (User user : users) {
+                long ordinal = user.getOrdinal();
+                for (User.Status status : User.Status.values()) {
+                    connection.stringCommands().setBit(raw(statusKey(status.getCode())), ordinal,
+                            status.getCode().equals(user.getStatus()));
+                }
+                for (User.Level level : User.Level.values()) {
+                    connection.stringCommands().setBit(raw(levelKey(level.getCode())), ordinal,
+                            level.getCode().equals(user.getLevel()));
+                }
+                connection.hashCommands().hSet(raw(reverseKey(ordinal)),
+                        raw(String.valueOf(ordinal % ORDINAL_BUCKET_SIZE)), raw(user.getUserId()));
+                if (withLastLogin && user.getLastLogin() != null
+                        && !user.getLastLogin().toLocalDate().isBefore(oldestActiveDay)) {
+                    markActive(connection, ordinal, user.getLastLogin().toLocalDate());
+                }
+            }
+            return null;
+        });
+    }
+
+    private void markActive(RedisConnection connection, long ordinal, LocalDate day) {
+        byte[] key = raw(activeKey(day));
+        connection.stringCommands().setBit(key, ordinal, true);
+        connection.keyCommands().expireAt(key, day.plusDays(properties.getActiveRetentionDays())
+                .atStartOfDay(ZoneId.systemDefault()).toEpochSecond());
+    }
+
+    private List<String> resolveUserIds(List<Long> ordinals) {
+        List<String> userIds = new ArrayList<>(ordinals.size());
+        if (ordinals.isEmpty()) {
+            return userIds;
+        }
+        List<Object> results = redisService.pipelineRaw(connection -> {
+            for (long ordinal : ordinals) {
+                connection.hashCommands().hGet(raw(reverseKey(ordinal)),
+                        raw(String.valueOf(ordinal % ORDINAL_BUCKET_SIZE)));
+            }
+            return null;
+        });
+        if (results == null) {
+            return userIds;
+        }
+        for (Object result : results) {
+            if (result instanceof byte[] bytes) {
+                userIds.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+        }
+        return userIds;
+    }
+
+    /**
+     * 解码位图片段：位 0 为首字节最高位，收集 >= from 的序号直到 out 达到 max 个
+     */
+    private static void collect(byte[] chunk, long baseOrdinal, long from, int max, List<Long> out) {
+        if (chunk == null) {
+            return;
+        }
+        for (int i = 0; i < chunk.length && out.size() < max; i++) {
+            int b = chunk[i] & 0xff;
+            if (b == 0) {
+                continue;
+            }
+            for (int bit = 0; bit < 8 && out.size() < max; bit++) {
+                long ordinal = baseOrdinal + i * 8L + bit;
+                if ((b & (0x80 >>> bit)) != 0 && ordinal >= from) {
+                    out.add(ordinal);
+                }
+            }
+        }
+    }
+
+    private static long parseCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return 0;
+        }
+        try {
+            long from = Long.parseLong(cursor);
+            if (from >= 0) {
+                return from;
+            }
+        } catch (NumberFormatException ignored) {
+            // 落到下方统一报错
+        }
+        throw new IllegalArgumentException("Invalid segment cursor: " + cursor);
+    }
+
+    // =============================分群编译=============================
+
+    private Plan compile(Segment segment) {
+        Plan plan = new Plan(RedisConfig.RedisKeys.USER_SEGMENT_TMP_PREFIX + UUID.randomUUID().toString().replace("-", "") + ":");
+        plan.result = compile(segment, plan);
+        return plan;
+    }
+
+    private String compile(Segment segment, Plan plan) {
+        if (segment == null || segment.getOp() == null) {
+            throw new IllegalArgumentException("Segment op is required");
+        }
+        if (++plan.nodes > MAX_SEGMENT_NODES) {
+            throw new IllegalArgumentException("Segment has more than " + MAX_SEGMENT_NODES + " nodes");
+        }
+        switch (segment.getOp()) {
+            case LEVEL -> {
+                requireCode(segment, isLevel(segment.getCode()));
+                return levelKey(segment.getCode());
+            }
+            case STATUS -> {
+                requireCode(segment, isStatus(segment.getCode()));
+                return statusKey(segment.getCode());
+            }
+            case ACTIVE -> {
+                int days = segment.getDays() != null ? segment.getDays() : 1;
+                if (days < 1 || days > properties.getActiveRetentionDays()) {
+                    throw new IllegalArgumentException("Active days must be in [1, "
+                            + properties.getActiveRetentionDays() + "]: " + days);
+                }
+                LocalDate today = LocalDate.now();
+                List<String> keys = new ArrayList<>(days);
+                for (int i = 0; i < days; i++) {
+                    keys.add(activeKey(today.minusDays(i)));
+                }
+                return keys.size() == 1 ? keys.get(0) : plan.bitOp(RedisStringCommands.BitOperation.OR, keys);
+            }
+            case AND, OR -> {
+                List<String> keys = compileChildren(segment, 1, plan);
+                RedisStringCommands.BitOperation op = segment.getOp() == Segment.Op.AND
+                        ? RedisStringCommands.BitOperation.AND : RedisStringCommands.BitOperation.OR;
+                return keys.size() == 1 ? keys.get(0) : plan.bitOp(op, keys);
+            }
+            case ANDNOT -> {
+                // a ANDNOT b = a XOR (a AND b)；BITOP NOT 按被取反位图的长度截断，超出部分会被误清零
+                List<String> keys = compileChildren(segment, 2, plan);
+                String base = keys.get(0);
+                List<String> rest = keys.subList(1, keys.size());
+                String excluded = rest.size() == 1 ? rest.get(0) : plan.bitOp(RedisStringCommands.BitOperation.OR, rest);
+                String both = plan.bitOp(RedisStringCommands.BitOperation.AND, List.of(base, excluded));
+                return plan.bitOp(RedisStringCommands.BitOperation.XOR, List.of(base, both));
+            }
+            default -> throw new IllegalArgumentException("Unsupported segment op: " + segment.getOp());
+        }
+    }
+
+    private List<String> compileChildren(Segment segment, int minChildren, Plan plan) {
+        if (segment.getChildren() == null || segment.getChildren().size() < minChildren) {
+            throw new IllegalArgumentException(segment.getOp() + " needs at least " + minChildren + " children");
+        }
+        List<String> keys = new ArrayList<>(segment.getChildren().size());
+        for (Segment child : segment.getChildren()) {
+            keys.add(compile(child, plan));
+        }
+        return keys;
+    }
+
+    private static void requireCode(Segment segment, boolean valid) {
+        if (!valid) {
+            throw new IllegalArgumentException("Invalid " + segment.getOp() + " code: " + segment.getCode());
+        }
+    }
+
+    private static boolean isLevel(Integer code) {
+        for (User.Level level : User.Level.values()) {
+            if (level.getCode().equals(code)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isStatus(Integer code) {
+        for (User.Status status : User.Status.values()) {
+            if (status.getCode().equals(code)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String levelKey(Integer level) {
+        return RedisConfig.RedisKeys.USER_BITMAP_PREFIX + "level:" + level;
+    }
+
+    private static String statusKey(Integer status) {
+        return RedisConfig.RedisKeys.USER_BITMAP_PREFIX + "status:" + status;
+    }
+
+    private static String activeKey(LocalDate day) {
+        return RedisConfig.RedisKeys.USER_BITMAP_PREFIX + "active:" + day.format(DAY_FORMAT);
+    }
+
+    private static String reverseKey(long ordinal) {
+        return RedisConfig.RedisKeys.USER_ORDINAL_REV_PREFIX + (ordinal / ORDINAL_BUCKET_SIZE);
+    }
+
+    private static byte[] raw(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 编译结果：按顺序执行的 BITOP 与需要清理的中间键
+     */
+    private static class Plan {
+        private final String tempPrefix;
+        private final List<BitOpStep> steps = new ArrayList<>();
+        private final List<String> temps = new ArrayList<>();
+        private int nodes;
+        private String result;
+
+        Plan(String tempPrefix) {
+            this.tempPrefix = tempPrefix;
+        }
+
+        String bitOp(RedisStringCommands.BitOperation op, List<String> sources) {
+            String dest = tempPrefix + temps.size();
+            temps.add(dest);
+            steps.add(new BitOpStep(op, dest, new ArrayList<>(sources)));
+            return dest;
+        }
+
+        void apply(RedisConnection connection) {
+            for (BitOpStep step : steps) {
+                byte[][] sources = new byte[step.sources.size()][];
+                for (int i = 0; i < sources.length; i++) {
+                    sources[i] = raw(step.sources.get(i));
+                }
+                connection.stringCommands().bitOp(step.op, raw(step.dest), sources);
+            }
+        }
+
+        void cleanup(RedisConnection connection) {
+            if (temps.isEmpty()) {
+                return;
+            }
+            byte[][] keys = new byte[temps.size()][];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = raw(temps.get(i));
+            }
+            connection.keyCommands().del(keys);
+        }
+    }
+
+    private static class BitOpStep {
+        private final RedisStringCommands.BitOperation op;
+        private final String dest;
+        private final List<String> sources;
+
+        BitOpStep(RedisStringCommands.BitOperation op, String dest, List<String> sources) {
+            this.op = op;
+            this.dest = dest;
+            this.sources = sources;
+        }
+    }
+
+    /**
+     * 分群条件：LEVEL / STATUS 取 code，ACTIVE 取 days（最近 N 天内有登录，含今天），
+     * AND / OR 对 children 求交/并，ANDNOT 为第一个子条件减去其余子条件
+     */
+    @lombok.Data
+    public static class Segment {
+        private Op op;
+        private Integer code;
+        private Integer days;
+        private List<Segment> children;
+
+        public enum Op {
+            LEVEL, STATUS, ACTIVE, AND, OR, ANDNOT
+        }
+
+        public static Segment level(int code) {
+            Segment segment = new Segment();
+            segment.setOp(Op.LEVEL);
+            segment.setCode(code);
+            return segment;
+        }
+
+        public static Segment status(int code) {
+            Segment segment = new Segment();
+            segment.setOp(Op.STATUS);
+            segment.setCode(code);
+            return segment;
+        }
+
+        public static Segment activeWithin(int days) {
+            Segment segment = new Segment();
+            segment.setOp(Op.ACTIVE);
+            segment.setDays(days);
+            return segment;
+        }
+
+        public static Segment and(Segment... children) {
+            return combine(Op.AND, children);
+        }
+
+        public static Segment or(Segment... children) {
+            return combine(Op.OR, children);
+        }
+
+        public static Segment andNot(Segment base, Segment... excluded) {
+            List<Segment> children = new ArrayList<>();
+            children.add(base);
+            Collections.addAll(children, excluded);
+            Segment segment = new Segment();
+            segment.setOp(Op.ANDNOT);
+            segment.setChildren(children);
+            return segment;
+        }
+
+        private static Segment combine(Op op, Segment... children) {
+            Segment segment = new Segment();
+            segment.setOp(op);
+            segment.setChildren(new ArrayList<>(List.of(children)));
+            return segment;
+        }
+    }
+
+    /**
+     * 分群查询结果
+     */
+    @lombok.Data
+    @lombok.Builder
+    public static class SegmentPage {
+        private long count;
+        private List<String> userIds;
+        private String nextCursor;
+    }
+}
@@ -1,5 +1,6 @@
 package com.sales.service;
 
+import com.sales.entity.CursorPage;
 import com.sales.entity.User;
 import com.sales.repository.UserRepository;
 import com.sales.service.SessionService;
@@ -13,7 +14,9 @@ import org.springframework.stereotype.Service;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Slf4j
@@ -26,6 +29,15 @@ public class UserService {
     @Autowired
     private SessionService sessionService;
 
+    @Autowired
+    private IdGeneratorService idGeneratorService;
+
+    @Autowired
+    private AggregateStatsService aggregateStatsService;
+
+    @Autowired
+    private UserSegmentService userSegmentService;
+
     /**
      * 注册用户
      */
@@ -78,6 +90,8 @@ public class UserService {
 
         // 保存用户
         userRepository.save(user);
+        aggregateStatsService.recordUserTransition(null, null, user.getStatus(), user.getLevel());
+        userSegmentService.index(user);
 
         log.info("User registered: {}", user.getUserId());
         return user;
@@ -102,6 +116,7 @@ public class UserService {
 
         // 更新登录信息
         userRepository.updateLoginInfo(user.getUserId(), loginIp);
+        userSegmentService.recordLogin(user);
 
         log.info("User logged in: userId={}, username={}, ip={}", user.getUserId(), username, loginIp);
         return sessionId;
@@ -149,7 +164,24 @@ public class UserService {
      */
     @CachePut(value = "user", key = "#user.userId")
     public User updateUser(User user) throws IOException {
+        User existing = userRepository.findById(user.getUserId());
         userRepository.save(user);
+        // status/level 为空时不覆盖原值
+        if (existing != null) {
+            Integer oldStatus = existing.getStatus();
+            Integer oldLevel = existing.getLevel();
+            if (user.getStatus() != null) {
+                existing.setStatus(user.getStatus());
+            }
+            if (user.getLevel() != null) {
+                existing.setLevel(user.getLevel());
+            }
+            aggregateStatsService.recordUserTransition(oldStatus, oldLevel, existing.getStatus(), existing.getLevel());
+            userSegmentService.index(existing);
+        } else {
+            aggregateStatsService.recordUserTransition(null, null, user.getStatus(), user.getLevel());
+            userSegmentService.index(user);
+        }
         log.info("User updated: {}", user.getUserId());
         return user;
     }
@@ -222,8 +254,11 @@ public class UserService {
         // 重新计算会员等级
         User user = userRepository.findById(userId);
         if (user != null) {
+            Integer oldLevel = user.getLevel();
             user.updateLevel();
             userRepository.save(user);
+            aggregateStatsService.recordUserTransition(user.getStatus(), oldLevel, user.getStatus(), user.getLevel());
+            userSegmentService.index(user);
         }
         
         log.info("User growth value updated: userId={}, growthValue={}", userId, growthValue);
@@ -239,9 +274,12 @@ public class UserService {
             userRepository.updateGrowthValue(userId, newGrowthValue);
             
             // 重新计算会员等级
+            Integer oldLevel = user.getLevel();
             user.setGrowthValue(newGrowthValue);
             user.updateLevel();
             userRepository.save(user);
+            aggregateStatsService.recordUserTransition(user.getStatus(), oldLevel, user.getStatus(), user.getLevel());
+            userSegmentService.index(user);
             
             log.info("User growth value added: userId={}, delta={}", userId, deltaGrowthValue);
         }
@@ -267,6 +305,13 @@ public class UserService {
         return userRepository.findByStatus(status, limit);
     }
 
+    /**
+     * 游标分页获取用户列表（按状态），cursor 为上一页返回的 nextCursor（首页传 null）
+     */
+    public CursorPage<User> getUsersByStatus(Integer status, String cursor, int limit) throws IOException {
+        return userRepository.findByStatus(status, cursor, limit);
+    }
+
     /**
      * 获取用户列表（按等级）
      */
@@ -274,14 +319,24 @@ public class UserService {
         return userRepository.findByLevel(level, limit);
     }
 
+    /**
+     * 游标分页获取用户列表（按等级）
+     */
+    public CursorPage<User> getUsersByLevel(Integer level, String cursor, int limit) throws IOException {
+        return userRepository.findByLevel(level, cursor, limit);
+    }
+
     /**
      * 禁用/启用用户
      */
     public void updateUserStatus(String userId, Integer status) throws IOException {
         User user = userRepository.findById(userId);
         if (user != null) {
+            Integer oldStatus = user.getStatus();
             user.setStatus(status);
             userRepository.save(user);
+            aggregateStatsService.recordUserTransition(oldStatus, user.getLevel(), status, user.getLevel());
+            userSegmentService.index(user);
             
             // 如果禁用用户，强制下线
             if (User.Status.DISABLED.getCode().equals(status)) {
@@ -324,37 +379,34 @@ public class UserService {
      * 获取用户统计信息
      */
     public UserStats getUserStats() throws IOException {
+        // 计数按“状态:等级”增量维护；总数与各等级人数沿用原口径，只统计正常状态的用户
+        Map<String, Long> counts = aggregateStatsService.getUserCounts();
+        Map<Integer, Long> levelCounts = new HashMap<>();
+        Map<Integer, Long> statusCounts = new HashMap<>();
         long totalUsers = 0;
-        long activeUsers = 0;
-        long bronzeUsers = 0;
-        long silverUsers = 0;
-        long goldUsers = 0;
-        long platinumUsers = 0;
-        long diamondUsers = 0;
-
-        // 这里简化处理，实际项目中可以使用更高效的统计方法
-        List<User> allUsers = userRepository.findByStatus(User.Status.NORMAL.getCode(), 10000);
-        totalUsers = allUsers.size();
-        activeUsers = sessionService.getOnlineUserCount();
-
-        for (User user : allUsers) {
-            switch (User.Level.fromCode(user.getLevel())) {
-                case BRONZE -> bronzeUsers++;
-                case SILVER -> silverUsers++;
-                case GOLD -> goldUsers++;
-                case PLATINUM -> platinumUsers++;
-                case DIAMOND -> diamondUsers++;
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            String[] parts = entry.getKey().split(":");
+            if (parts.length != 2) {
+                continue;
+            }
+            int status = Integer.parseInt(parts[0]);
+            statusCounts.merge(status, entry.getValue(), Long::sum);
+            if (User.Status.NORMAL.getCode() == status) {
+                totalUsers += entry.getValue();
+                levelCounts.merge(Integer.parseInt(parts[1]), entry.getValue(), Long::sum);
             }
         }
+        long activeUsers = sessionService.getOnlineUserCount();
 
         return UserStats.builder()
                 .totalUsers((int) totalUsers)
                 .activeUsers((int) activeUsers)
-                .bronzeUsers((int) bronzeUsers)
-                .silverUsers((int) silverUsers)
-                .goldUsers((int) goldUsers)
-                .platinumUsers((int) platinumUsers)
-                .diamondUsers((int) diamondUsers)
+                .bronzeUsers(levelCounts.getOrDefault(User.Level.BRONZE.getCode(), 0L).intValue())
+                .silverUsers(levelCounts.getOrDefault(User.Level.SILVER.getCode(), 0L).intValue())
+                .goldUsers(levelCounts.getOrDefault(User.Level.GOLD.getCode(), 0L).intValue())
+                .platinumUsers(levelCounts.getOrDefault(User.Level.PLATINUM.getCode(), 0L).intValue())
+                .diamondUsers(levelCounts.getOrDefault(User.Level.DIAMOND.getCode(), 0L).intValue())
+                .statusCounts(statusCounts)
                 .build();
     }
 
@@ -362,7 +414,7 @@ public class UserService {
      * 生成用户ID
      */
     private String generateUserId() {
-        return "U" + System.currentTimeMillis() + UUID.randomUUID().toString().substring(0, 6).toUpperCase();
+        return idGeneratorService.nextId(IdGeneratorService.USER_PREFIX);
     }
 
     /**
@@ -385,5 +437,6 @@ public class UserService {
         private int goldUsers;
         private int platinumUsers;
         private int diamondUsers;
+        private Map<Integer, Long> statusCounts;   // 状态码 -> 用户数（含禁用）
     }
 }
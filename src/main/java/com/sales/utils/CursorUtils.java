@@ -0,0 +1,54 @@
+package com.sales.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 分页游标编解码
+ *
+ * 游标为 URL 安全的 Base64 串，内容为 "方向|上一页最后一行的行键"（F 正序 / R 逆序），
+ * 对客户端不透明；方向与本次扫描不一致或无法解码时视为非法参数。
+ */
+public class CursorUtils {
+
+    private static final String FORWARD = "F";
+    private static final String REVERSED = "R";
+    private static final String SEPARATOR = "|";
+
+    private CursorUtils() {
+    }
+
+    /**
+     * 由最后一行的行键生成游标
+     */
+    public static String encode(String lastRowKey, boolean reversed) {
+        String raw = (reversed ? REVERSED : FORWARD) + SEPARATOR + lastRowKey;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标中的行键，游标为空（第一页）返回 null
+     *
+     * @throws IllegalArgumentException 游标非法或方向不匹配
+     */
+    public static String decode(String cursor, boolean reversed) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        int separator = raw.indexOf(SEPARATOR);
+        if (separator <= 0 || separator == raw.length() - 1) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        String direction = raw.substring(0, separator);
+        if (!direction.equals(reversed ? REVERSED : FORWARD)) {
+            throw new IllegalArgumentException("Cursor direction mismatch: " + cursor);
+        }
+        return raw.substring(separator + 1);
+    }
+}
@@ -0,0 +1,71 @@
+package com.sales.utils;
+
+/**
+ * 小时销量打包列编解码：24 个 long 按大端顺序拼接为 192 字节的单个 cell
+ */
+public final class HourlyVectorUtils {
+
+    public static final int HOURS = 24;
+
+    public static final int VECTOR_LENGTH = HOURS * Long.BYTES;
+
+    private HourlyVectorUtils() {
+    }
+
+    /**
+     * 直接从 cell 底层数组累加到 target，不复制 value
+     */
+    public static boolean decodeInto(byte[] array, int offset, int length, long[] target) {
+        if (array == null || length != VECTOR_LENGTH) {
+            return false;
+        }
+        for (int hour = 0; hour < HOURS; hour++) {
+            target[hour] += readLong(array, offset + hour * Long.BYTES);
+        }
+        return true;
+    }
+
+    public static byte[] encode(long[] vector) {
+        byte[] bytes = new byte[VECTOR_LENGTH];
+        for (int hour = 0; hour < HOURS; hour++) {
+            writeLong(bytes, hour * Long.BYTES, vector[hour]);
+        }
+        return bytes;
+    }
+
+    /**
+     * 解析计数列名 hour_NN 中的小时，不匹配返回 -1
+     */
+    public static int parseLegacyHour(byte[] array, int offset, int length, byte[] prefix) {
+        if (length != prefix.length + 2) {
+            return -1;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (array[offset + i] != prefix[i]) {
+                return -1;
+            }
+        }
+        int tens = array[offset + prefix.length] - '0';
+        int ones = array[offset + prefix.length + 1] - '0';
+        if (tens < 0 || tens > 9 || ones < 0 || ones > 9) {
+            return -1;
+        }
+        int hour = tens * 10 + ones;
+        return hour < HOURS ? hour : -1;
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static void writeLong(byte[] bytes, int offset, long value) {
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.sales.utils;
+
+/**
+ * sales_data 数值列解码：累加写入的是长整型，save 写入的金额是 IEEE754 双精度，两种编码共用 8 字节。
+ * 不依赖 Spring，与聚合协处理器一起部署到 RegionServer。
+ */
+public final class SalesValueUtils {
+
+    private SalesValueUtils() {
+    }
+
+    /**
+     * 合理范围内的长整型高 12 位全 0 或全 1，否则视为双精度
+     */
+    public static boolean isLongEncoded(long raw) {
+        long high = raw >> 52;
+        return high == 0 || high == -1;
+    }
+
+    /**
+     * 按长整型读取一个数值 cell，双精度金额截断为整数；长度不是 8 字节返回 null
+     */
+    public static Long decodeLong(byte[] array, int offset, int length) {
+        if (array == null || length != Long.BYTES) {
+            return null;
+        }
+        long raw = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            raw = (raw << 8) | (array[offset + i] & 0xFF);
+        }
+        return isLongEncoded(raw) ? raw : (long) Double.longBitsToDouble(raw);
+    }
+}
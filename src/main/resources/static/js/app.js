@@ -188,8 +188,8 @@ function loadFallbackDashboard() {
 // 商品管理
 async function loadProducts() {
     try {
-        const products = await apiRequest('/products?limit=50');
-        renderProducts(products);
+        const page = await apiRequest('/products?limit=50');
+        renderProducts(page.items);
     } catch (error) {
         showToast('加载商品列表失败', 'error');
         document.getElementById('productsList').innerHTML = '<div class="empty-state"><i class="fas fa-exclamation-circle"></i><div>加载失败</div></div>';
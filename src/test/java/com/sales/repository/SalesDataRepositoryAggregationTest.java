@@ -0,0 +1,145 @@
+package com.sales.repository;
+
+import com.sales.config.HBaseConfig;
+import com.sales.coprocessor.SalesAggregateEndpoint;
+import com.sales.entity.SalesData;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 区间聚合协处理器的 mini-cluster 集成测试：协处理器结果与客户端逐行解码一致
+ */
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class SalesDataRepositoryAggregationTest {
+
+    private static final LocalDate DAY_1 = LocalDate.of(2026, 10, 1);
+    private static final LocalDate DAY_2 = LocalDate.of(2026, 10, 2);
+    private static final LocalDate DAY_3 = LocalDate.of(2026, 10, 3);
+    private static final LocalDate END = LocalDate.of(2026, 10, 4);
+
+    private static final List<String> COLUMNS = List.of(
+            HBaseConfig.Columns.SALES_SALE_COUNT,
+            HBaseConfig.Columns.SALES_SALE_AMOUNT,
+            HBaseConfig.Columns.SALES_REFUND_COUNT,
+            HBaseConfig.Columns.SALES_REFUND_AMOUNT);
+
+    private static HBaseTestingUtility utility;
+
+    private static SalesDataRepository repository;
+
+    @BeforeAll
+    static void startCluster() throws Exception {
+        utility = new HBaseTestingUtility();
+        // 不启动 HDFS 与各 Web UI（其 Jetty 9 与 Spring Boot 管理的 Jetty 版本冲突），数据写本地文件系统
+        utility.getConfiguration().setInt("hbase.master.info.port", -1);
+        utility.getConfiguration().setInt("hbase.regionserver.info.port", -1);
+        utility.getConfiguration().setBoolean("hbase.unsafe.stream.capability.enforce", false);
+        utility.startMiniZKCluster();
+        utility.startMiniHBaseCluster();
+        utility.getAdmin().createTable(salesDataTable(true));
+        utility.getAdmin().createTable(TableDescriptorBuilder.newBuilder(HBaseConfig.TableNames.SALES_BY_PRODUCT)
+                .setColumnFamily(ColumnFamilyDescriptorBuilder.of(HBaseConfig.ColumnFamilies.CF_DAILY))
+                .build());
+
+        repository = new SalesDataRepository();
+        repository.connection = utility.getConnection();
+
+        // 累加写入：长整型编码
+        repository.incrementSales("P1", "1", DAY_1, 3L, new BigDecimal("300"));
+        repository.incrementSales("P2", "1", DAY_2, 2L, new BigDecimal("150"));
+        repository.incrementRefund("P2", "1", DAY_2, 1L, new BigDecimal("75"));
+        // save 写入：金额为双精度编码
+        repository.save(SalesData.builder()
+                .date(DAY_3)
+                .saleCount(5L)
+                .saleAmount(new BigDecimal("99.5"))
+                .refundCount(0L)
+                .refundAmount(BigDecimal.ZERO)
+                .build());
+    }
+
+    @AfterAll
+    static void stopCluster() throws Exception {
+        if (utility != null) {
+            utility.shutdownMiniCluster();
+        }
+    }
+
+    @Test
+    @Order(1)
+    void aggregatesDailyTotalsWithMixedEncodings() throws Exception {
+        Map<String, SalesDataRepository.RangeAggregate> result =
+                repository.aggregateByDateRange(DAY_1, END, null, null, COLUMNS);
+
+        SalesDataRepository.RangeAggregate saleCount = result.get(HBaseConfig.Columns.SALES_SALE_COUNT);
+        assertEquals(10L, saleCount.getSum());
+        assertEquals(3L, saleCount.getCount());
+        assertEquals(2L, saleCount.getMin());
+        assertEquals(5L, saleCount.getMax());
+
+        SalesDataRepository.RangeAggregate saleAmount = result.get(HBaseConfig.Columns.SALES_SALE_AMOUNT);
+        assertEquals(300L + 150L + 99L, saleAmount.getSum());
+        assertEquals(99L, saleAmount.getMin());
+        assertEquals(300L, saleAmount.getMax());
+
+        SalesDataRepository.RangeAggregate refundCount = result.get(HBaseConfig.Columns.SALES_REFUND_COUNT);
+        assertEquals(1L, refundCount.getSum());
+        assertEquals(2L, refundCount.getCount());
+
+        SalesDataRepository.RangeAggregate refundAmount = result.get(HBaseConfig.Columns.SALES_REFUND_AMOUNT);
+        assertEquals(75L, refundAmount.getSum());
+    }
+
+    @Test
+    @Order(2)
+    void aggregatesCategoryAndProductRows() throws Exception {
+        Map<String, SalesDataRepository.RangeAggregate> category =
+                repository.aggregateByDateRange(DAY_1, END, "1", null, COLUMNS);
+        assertEquals(5L, category.get(HBaseConfig.Columns.SALES_SALE_COUNT).getSum());
+        assertEquals(2L, category.get(HBaseConfig.Columns.SALES_SALE_COUNT).getCount());
+
+        Map<String, SalesDataRepository.RangeAggregate> product =
+                repository.aggregateByDateRange(DAY_1, END, null, "P2", COLUMNS);
+        assertEquals(2L, product.get(HBaseConfig.Columns.SALES_SALE_COUNT).getSum());
+        assertEquals(150L, product.get(HBaseConfig.Columns.SALES_SALE_AMOUNT).getSum());
+        assertEquals(75L, product.get(HBaseConfig.Columns.SALES_REFUND_AMOUNT).getSum());
+    }
+
+    @Test
+    @Order(3)
+    void reportsMissingCoprocessor() throws Exception {
+        utility.getAdmin().modifyTable(salesDataTable(false));
+
+        assertThrows(SalesDataRepository.CoprocessorUnavailableException.class,
+                () -> repository.aggregateByDateRange(DAY_1, END, null, null, COLUMNS));
+    }
+
+    private static TableDescriptor salesDataTable(boolean withCoprocessor) throws Exception {
+        TableName tableName = HBaseConfig.TableNames.SALES_DATA;
+        TableDescriptorBuilder builder = TableDescriptorBuilder.newBuilder(tableName)
+                .setColumnFamily(ColumnFamilyDescriptorBuilder.of(HBaseConfig.ColumnFamilies.CF_DAILY))
+                .setColumnFamily(ColumnFamilyDescriptorBuilder.of(HBaseConfig.ColumnFamilies.CF_HOURLY))
+                .setColumnFamily(ColumnFamilyDescriptorBuilder.of(HBaseConfig.ColumnFamilies.CF_REGION));
+        if (withCoprocessor) {
+            builder.setCoprocessor(SalesAggregateEndpoint.class.getName());
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,118 @@
+package com.sales.repository;
+
+import com.sales.config.HBaseConfig;
+import com.sales.entity.SalesData;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 小时数据压缩的 mini-cluster 测试：hour_NN 计数列并入打包列后读取结果不变、计数列被删除
+ */
+class SalesDataRepositoryHourlyCompactionTest {
+
+    private static final LocalDate DAY = LocalDate.of(2026, 10, 1);
+
+    private static final LocalDate OTHER_DAY = LocalDate.of(2026, 10, 2);
+
+    private static HBaseTestingUtility utility;
+
+    private static SalesDataRepository repository;
+
+    @BeforeAll
+    static void startCluster() throws Exception {
+        utility = new HBaseTestingUtility();
+        utility.getConfiguration().setInt("hbase.master.info.port", -1);
+        utility.getConfiguration().setInt("hbase.regionserver.info.port", -1);
+        utility.getConfiguration().setBoolean("hbase.unsafe.stream.capability.enforce", false);
+        utility.startMiniZKCluster();
+        utility.startMiniHBaseCluster();
+        utility.getAdmin().createTable(TableDescriptorBuilder.newBuilder(HBaseConfig.TableNames.SALES_DATA)
+                .setColumnFamily(ColumnFamilyDescriptorBuilder.of(HBaseConfig.ColumnFamilies.CF_DAILY))
+                .setColumnFamily(ColumnFamilyDescriptorBuilder.of(HBaseConfig.ColumnFamilies.CF_HOURLY))
+                .setColumnFamily(ColumnFamilyDescriptorBuilder.of(HBaseConfig.ColumnFamilies.CF_REGION))
+                .build());
+        utility.getAdmin().createTable(TableDescriptorBuilder.newBuilder(HBaseConfig.TableNames.SALES_BY_PRODUCT)
+                .setColumnFamily(ColumnFamilyDescriptorBuilder.of(HBaseConfig.ColumnFamilies.CF_DAILY))
+                .build());
+
+        repository = new SalesDataRepository();
+        repository.connection = utility.getConnection();
+    }
+
+    @AfterAll
+    static void stopCluster() throws Exception {
+        if (utility != null) {
+            utility.shutdownMiniCluster();
+        }
+    }
+
+    @Test
+    void foldsHourlyCountersIntoThePackedCell() throws Exception {
+        // 已有打包列（save 写入）之上再原子累加
+        repository.save(SalesData.builder()
+                .date(DAY)
+                .productId("P1")
+                .saleCount(4L)
+                .hourlySales(Map.of(9, 4L))
+                .build());
+        repository.incrementSales("P1", null, DAY, 9, 2L, new BigDecimal("20"));
+        repository.incrementSales("P1", null, DAY, 23, 1L, new BigDecimal("10"));
+        repository.incrementSales("P2", null, DAY, 0, 5L, new BigDecimal("50"));
+        repository.incrementSales("P1", null, OTHER_DAY, 9, 3L, new BigDecimal("30"));
+
+        String p1 = SalesData.generateRowKey(DAY, "P1", null);
+        String total = SalesData.generateRowKey(DAY, null, null);
+        long[] p1Before = repository.findHourlyVector(p1);
+        long[] totalBefore = repository.findHourlyVector(total);
+        assertEquals(6L, p1Before[9]);
+        assertEquals(1L, p1Before[23]);
+
+        // 商品行 P1、P2 与日总计行
+        assertEquals(3, repository.compactHourly(DAY));
+
+        assertArrayEquals(p1Before, repository.findHourlyVector(p1));
+        assertArrayEquals(totalBefore, repository.findHourlyVector(total));
+        assertEquals(List.of(HBaseConfig.Columns.SALES_HOURLY_VECTOR), hourlyQualifiers(p1));
+        assertEquals(List.of(HBaseConfig.Columns.SALES_HOURLY_VECTOR), hourlyQualifiers(total));
+        // 其他日期不受影响
+        assertEquals(List.of(HBaseConfig.Columns.SALES_HOUR_PREFIX + "09"),
+                hourlyQualifiers(SalesData.generateRowKey(OTHER_DAY, "P1", null)));
+
+        // 压缩后继续累加，再次压缩只处理有计数列的行
+        repository.incrementSales("P1", null, DAY, 9, 1L, new BigDecimal("10"));
+        assertEquals(2, repository.compactHourly(DAY));
+        assertEquals(7L, repository.findHourlyVector(p1)[9]);
+        assertEquals(0, repository.compactHourly(DAY));
+    }
+
+    private static List<String> hourlyQualifiers(String rowKey) throws Exception {
+        List<String> qualifiers = new ArrayList<>();
+        try (Table table = utility.getConnection().getTable(HBaseConfig.TableNames.SALES_DATA)) {
+            Result result = table.get(new Get(Bytes.toBytes(rowKey))
+                    .addFamily(Bytes.toBytes(HBaseConfig.ColumnFamilies.CF_HOURLY)));
+            for (Cell cell : result.rawCells()) {
+                qualifiers.add(Bytes.toString(CellUtil.cloneQualifier(cell)));
+            }
+        }
+        return qualifiers;
+    }
+}
@@ -0,0 +1,91 @@
+package com.sales.service;
+
+import com.sales.config.RedisConfig;
+import com.sales.entity.Product;
+import com.sales.entity.User;
+import com.sales.repository.ProductRepository;
+import com.sales.repository.UserRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 商品/用户聚合计数的行为测试（内嵌 Redis）：缺少已初始化标记时重算，而不是把丢失后的增量当作总数
+ */
+class AggregateStatsServiceTest {
+
+    private static final int ON_SHELF = Product.Status.ON_SHELF.getCode();
+
+    private static EmbeddedRedis redis;
+
+    private ProductRepository productRepository;
+
+    private UserRepository userRepository;
+
+    private AggregateStatsService aggregateStatsService;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        redis = EmbeddedRedis.start();
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        if (redis != null) {
+            redis.close();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        productRepository = mock(ProductRepository.class);
+        userRepository = mock(UserRepository.class);
+        aggregateStatsService = new AggregateStatsService();
+        ReflectionTestUtils.setField(aggregateStatsService, "redisService", redis.redisService());
+        ReflectionTestUtils.setField(aggregateStatsService, "productRepository", productRepository);
+        ReflectionTestUtils.setField(aggregateStatsService, "userRepository", userRepository);
+    }
+
+    @Test
+    void reconcilesProductCountsWhenOnlyIncrementsSurvived() throws IOException {
+        when(productRepository.countAllByStatus()).thenReturn(Map.of(ON_SHELF, 42L));
+        // Hash 丢失后先到的一次新建
+        aggregateStatsService.recordProductTransition(null, ON_SHELF);
+
+        assertEquals(42L, aggregateStatsService.getProductCounts().get(ON_SHELF));
+
+        // 已初始化后读 Redis，并继续累加流转
+        aggregateStatsService.recordProductTransition(null, ON_SHELF);
+        assertEquals(43L, aggregateStatsService.getProductCounts().get(ON_SHELF));
+        verify(productRepository, times(1)).countAllByStatus();
+    }
+
+    @Test
+    void reconcilesUserCountsWhenOnlyIncrementsSurvived() throws IOException {
+        String field = User.Status.values()[0].getCode() + ":" + User.Level.values()[0].getCode();
+        when(userRepository.countAllByStatusAndLevel()).thenReturn(Map.of(field, 7L));
+        aggregateStatsService.recordUserTransition(null, null,
+                User.Status.values()[0].getCode(), User.Level.values()[0].getCode());
+
+        Map<String, Long> counts = aggregateStatsService.getUserCounts();
+
+        assertEquals(7L, counts.get(field));
+        assertEquals(User.Status.values().length * User.Level.values().length, counts.size());
+        assertEquals(counts, aggregateStatsService.getUserCounts());
+        verify(userRepository, times(1)).countAllByStatusAndLevel();
+        assertEquals(1, ((Number) redis.redisService().hget(RedisConfig.RedisKeys.STATS_USER_COUNTS,
+                AggregateStatsService.INITIALIZED_FIELD)).intValue());
+    }
+}
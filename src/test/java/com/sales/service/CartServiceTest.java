@@ -0,0 +1,199 @@
+package com.sales.service;
+
+import com.sales.config.RedisConfig;
+import com.sales.entity.CartItem;
+import com.sales.entity.Product;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 购物车加入/修改与取消释放脚本的行为测试（内嵌 Redis）：库存扣减与归还、_count 维护、部分释放与释放幂等
+ */
+class CartServiceTest {
+
+    private static final String USER_ID = "U1";
+
+    private static final String CART_KEY = RedisConfig.RedisKeys.CART_PREFIX + USER_ID;
+
+    private static final String MARKER_KEY = RedisConfig.RedisKeys.CART_CHECKOUT_PREFIX + USER_ID;
+
+    private static EmbeddedRedis redis;
+
+    private CartService cartService;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        redis = EmbeddedRedis.start();
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        if (redis != null) {
+            redis.close();
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        redis.flushAll();
+
+        ProductService productService = mock(ProductService.class);
+        Map<String, Product> products = new HashMap<>();
+        for (String productId : List.of("P1", "P2")) {
+            products.put(productId, Product.builder().productId(productId).name(productId)
+                    .price(BigDecimal.TEN).status(Product.Status.ON_SHELF.getCode()).build());
+        }
+        when(productService.getProductsByIds(anyList())).thenReturn(products);
+
+        StockService stockService = new StockService();
+        ReflectionTestUtils.setField(stockService, "redisService", redis.redisService());
+
+        cartService = new CartService();
+        ReflectionTestUtils.setField(cartService, "redisService", redis.redisService());
+        ReflectionTestUtils.setField(cartService, "productService", productService);
+        ReflectionTestUtils.setField(cartService, "stockService", stockService);
+
+        redis.redisService().set(RedisConfig.RedisKeys.STOCK_PREFIX + "P1", 10);
+        redis.redisService().set(RedisConfig.RedisKeys.STOCK_PREFIX + "P2", 5);
+    }
+
+    @Test
+    void addItemsReservesStockAndMaintainsCount() throws IOException {
+        int count = cartService.addItems(USER_ID, List.of(item("P1", 2), item("P2", 1), item("P1", 1)));
+
+        assertEquals(4, count);
+        assertEquals(4, cartService.getCartItemCount(USER_ID));
+        assertEquals(3, cartService.getProductQuantity(USER_ID, "P1"));
+        assertEquals(1, cartService.getProductQuantity(USER_ID, "P2"));
+        assertEquals(7, stock("P1"));
+        assertEquals(4, stock("P2"));
+    }
+
+    @Test
+    void addItemsChangesNothingWhenAnyProductIsShort() {
+        assertThrows(IllegalStateException.class,
+                () -> cartService.addItems(USER_ID, List.of(item("P1", 2), item("P2", 6))));
+
+        assertEquals(10, stock("P1"));
+        assertEquals(5, stock("P2"));
+        assertFalse(redis.redisService().exists(CART_KEY));
+    }
+
+    @Test
+    void updateItemsReservesOrReturnsTheDifference() throws IOException {
+        cartService.addItems(USER_ID, List.of(item("P1", 2), item("P2", 2)));
+
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        quantities.put("P1", 5);
+        quantities.put("P2", 0);
+        int count = cartService.updateItems(USER_ID, quantities);
+
+        assertEquals(5, count);
+        assertEquals(5, stock("P1"));
+        assertEquals(5, stock("P2"));
+        assertFalse(cartService.existsInCart(USER_ID, "P2"));
+    }
+
+    @Test
+    void cancelReleasesOnlyTheOrderedQuantity() throws IOException {
+        // 下单 2 件后又加入 3 件：取消只归还订单的 2 件，购物车保留 3 件
+        cartService.addItems(USER_ID, List.of(item("P1", 5), item("P2", 1)));
+
+        int released = cartService.releaseForCancelledOrder("ORD1", USER_ID, Map.of("P1", 2, "P2", 1));
+
+        assertEquals(3, released);
+        assertEquals(3, cartService.getProductQuantity(USER_ID, "P1"));
+        assertFalse(cartService.existsInCart(USER_ID, "P2"));
+        assertEquals(3, cartService.getCartItemCount(USER_ID));
+        assertEquals(7, stock("P1"));
+        assertEquals(5, stock("P2"));
+    }
+
+    @Test
+    void cancelReleasesAtMostWhatTheCartStillHolds() throws IOException {
+        cartService.addItems(USER_ID, List.of(item("P1", 1)));
+
+        int released = cartService.releaseForCancelledOrder("ORD1", USER_ID, Map.of("P1", 2));
+
+        assertEquals(1, released);
+        assertFalse(redis.redisService().exists(CART_KEY));
+        assertEquals(10, stock("P1"));
+    }
+
+    @Test
+    void cancelReleaseRunsOncePerOrder() throws IOException {
+        cartService.addItems(USER_ID, List.of(item("P1", 4)));
+
+        assertEquals(2, cartService.releaseForCancelledOrder("ORD1", USER_ID, Map.of("P1", 2)));
+        assertEquals(0, cartService.releaseForCancelledOrder("ORD1", USER_ID, Map.of("P1", 2)));
+
+        assertEquals(2, cartService.getProductQuantity(USER_ID, "P1"));
+        assertEquals(8, stock("P1"));
+    }
+
+    @Test
+    void cancelClearsOnlyItsOwnCheckoutMarker() throws IOException {
+        cartService.addItems(USER_ID, List.of(item("P1", 2)));
+        redis.redisService().set(MARKER_KEY, "ORD2");
+
+        cartService.releaseForCancelledOrder("ORD1", USER_ID, Map.of("P1", 1));
+        assertEquals("ORD2", redis.redisService().get(MARKER_KEY));
+
+        cartService.releaseForCancelledOrder("ORD2", USER_ID, Map.of("P1", 1));
+        assertNull(redis.redisService().get(MARKER_KEY));
+    }
+
+    @Test
+    void stockKeysNeverExpire() throws IOException {
+        redis.template().expire(RedisConfig.RedisKeys.STOCK_PREFIX + "P1", 60, TimeUnit.SECONDS);
+
+        cartService.addItems(USER_ID, List.of(item("P1", 2), item("P2", 1)));
+        cartService.releaseForCancelledOrder("ORD1", USER_ID, Map.of("P1", 1));
+
+        // 主副本库存键不带过期时间，变更时清除旧键遗留的过期时间
+        assertEquals(-1L, redis.template().getExpire(RedisConfig.RedisKeys.STOCK_PREFIX + "P1"));
+        assertEquals(-1L, redis.template().getExpire(RedisConfig.RedisKeys.STOCK_PREFIX + "P2"));
+        assertEquals(9, stock("P1"));
+    }
+
+    @Test
+    void clearCartReturnsStock() throws IOException {
+        cartService.addItems(USER_ID, List.of(item("P1", 3), item("P2", 2)));
+
+        cartService.clearCart(USER_ID);
+
+        assertEquals(10, stock("P1"));
+        assertEquals(5, stock("P2"));
+        assertTrue(cartService.getCart(USER_ID).isEmpty());
+        assertFalse(redis.redisService().exists(CART_KEY));
+    }
+
+    private static CartItem item(String productId, int quantity) {
+        return CartItem.builder().productId(productId).quantity(quantity).build();
+    }
+
+    private static int stock(String productId) {
+        Object value = redis.redisService().get(RedisConfig.RedisKeys.STOCK_PREFIX + productId);
+        return value instanceof Number number ? number.intValue() : Integer.parseInt(String.valueOf(value));
+    }
+}
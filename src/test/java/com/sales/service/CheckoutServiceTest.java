@@ -0,0 +1,209 @@
+package com.sales.service;
+
+import com.sales.config.CheckoutProperties;
+import com.sales.config.DelayedJobProperties;
+import com.sales.config.RedisConfig;
+import com.sales.entity.Order;
+import com.sales.entity.Product;
+import com.sales.repository.ProductRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 结算流水线各阶段的行为测试：真实 Redis 脚本（内嵌 Redis），商品加载与订单写入为桩
+ */
+class CheckoutServiceTest {
+
+    private static final String USER_ID = "U1";
+
+    private static final String CART_KEY = RedisConfig.RedisKeys.CART_PREFIX + USER_ID;
+
+    private static final String MARKER_KEY = RedisConfig.RedisKeys.CART_CHECKOUT_PREFIX + USER_ID;
+
+    private static EmbeddedRedis redis;
+
+    private final AtomicInteger orderSeq = new AtomicInteger();
+
+    private ProductRepository productRepository;
+
+    private OrderGroupCommitService orderGroupCommitService;
+
+    private CartService cartService;
+
+    private CheckoutService checkoutService;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        redis = EmbeddedRedis.start();
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        if (redis != null) {
+            redis.close();
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        redis.flushAll();
+
+        productRepository = mock(ProductRepository.class);
+        Map<String, Product> products = new HashMap<>();
+        products.put("P1", product("P1", "12.50"));
+        products.put("P2", product("P2", "3.00"));
+        when(productRepository.findByIds(anyList())).thenReturn(products);
+
+        OrderService orderService = mock(OrderService.class);
+        doAnswer(invocation -> {
+            Order order = invocation.getArgument(0);
+            order.setOrderId("ORD" + orderSeq.incrementAndGet());
+            order.setStatus(Order.Status.PENDING_PAYMENT.getCode());
+            return null;
+        }).when(orderService).prepareOrder(any(Order.class));
+
+        orderGroupCommitService = mock(OrderGroupCommitService.class);
+
+        cartService = new CartService();
+        ReflectionTestUtils.setField(cartService, "redisService", redis.redisService());
+
+        checkoutService = new CheckoutService();
+        ReflectionTestUtils.setField(checkoutService, "redisService", redis.redisService());
+        ReflectionTestUtils.setField(checkoutService, "productRepository", productRepository);
+        ReflectionTestUtils.setField(checkoutService, "orderService", orderService);
+        ReflectionTestUtils.setField(checkoutService, "orderGroupCommitService", orderGroupCommitService);
+        ReflectionTestUtils.setField(checkoutService, "orderTimelineService", mock(OrderTimelineService.class));
+        ReflectionTestUtils.setField(checkoutService, "cartService", cartService);
+        ReflectionTestUtils.setField(checkoutService, "delayedJobProperties", new DelayedJobProperties());
+        ReflectionTestUtils.setField(checkoutService, "properties", new CheckoutProperties());
+
+        redis.redisService().hset(CART_KEY, "P1", "2|1|1700000000");
+        redis.redisService().hset(CART_KEY, "P2", "1|0|1700000000");
+        redis.redisService().hset(CART_KEY, CartService.COUNT_FIELD, 3);
+    }
+
+    @Test
+    void checksOutSelectedItemsAndSchedulesAutoCancel() throws IOException {
+        Order order = checkoutService.checkout(USER_ID);
+
+        assertEquals(1, order.getItems().size());
+        Order.OrderItem item = order.getItems().get(0);
+        assertEquals("P1", item.getProductId());
+        assertEquals(2, item.getQuantity());
+        assertEquals(new BigDecimal("25.00"), item.getAmount());
+        verify(orderGroupCommitService).submit(order);
+
+        assertEquals(order.getOrderId(), redis.redisService().get(MARKER_KEY));
+        assertNotNull(redis.redisService().zscore(RedisConfig.RedisKeys.JOB_DELAYED,
+                DelayedJobService.toMember(DelayedJobService.TYPE_ORDER_AUTO_CANCEL, order.getOrderId())));
+        assertEquals(1, ((Number) redis.redisService().hget(RedisConfig.RedisKeys.ORDER_STATUS_COUNTS,
+                String.valueOf(Order.Status.PENDING_PAYMENT.getCode()))).intValue());
+        // 购物车在支付成功后才清空
+        assertEquals("2|1|1700000000", redis.redisService().hget(CART_KEY, "P1"));
+    }
+
+    @Test
+    void rejectsSecondCheckoutUntilTheOrderIsPaidOrCancelled() throws IOException {
+        Order first = checkoutService.checkout(USER_ID);
+
+        assertThrows(IllegalStateException.class, () -> checkoutService.checkout(USER_ID));
+        verify(orderGroupCommitService, times(1)).submit(any(Order.class));
+
+        // 标记指向其他订单时不清除
+        cartService.clearCheckoutMarker(USER_ID, "ORD-other");
+        assertThrows(IllegalStateException.class, () -> checkoutService.checkout(USER_ID));
+
+        // 支付/取消后清除标记，可再次结算
+        cartService.clearCheckoutMarker(USER_ID, first.getOrderId());
+        Order second = checkoutService.checkout(USER_ID);
+        assertEquals(second.getOrderId(), redis.redisService().get(MARKER_KEY));
+    }
+
+    @Test
+    void reChecksOutWhatRemainsAfterTheOrderIsCancelled() throws IOException {
+        Order first = checkoutService.checkout(USER_ID);
+        // 结算后又加入 3 件
+        redis.redisService().hset(CART_KEY, "P1", "5|1|1700000000");
+        assertThrows(IllegalStateException.class, () -> checkoutService.checkout(USER_ID));
+
+        cartService.releaseForCancelledOrder(first.getOrderId(), USER_ID, Map.of("P1", 2));
+        Order second = checkoutService.checkout(USER_ID);
+
+        assertEquals(1, second.getItems().size());
+        assertEquals(3, second.getItems().get(0).getQuantity());
+    }
+
+    @Test
+    void rejectsWhenCartChangesBetweenReadAndReserve() throws IOException {
+        Map<String, Product> products = productRepository.findByIds(List.of("P1"));
+        when(productRepository.findByIds(anyList())).thenAnswer(invocation -> {
+            redis.redisService().hset(CART_KEY, "P1", "5|1|1700000000");
+            return products;
+        });
+
+        assertThrows(IllegalStateException.class, () -> checkoutService.checkout(USER_ID));
+
+        verify(orderGroupCommitService, never()).submit(any(Order.class));
+        assertFalse(redis.redisService().exists(MARKER_KEY));
+    }
+
+    @Test
+    void clearsMarkerWhenOrderWriteFails() throws IOException {
+        doThrow(new IOException("batch failed")).when(orderGroupCommitService).submit(any(Order.class));
+
+        assertThrows(IOException.class, () -> checkoutService.checkout(USER_ID));
+        assertFalse(redis.redisService().exists(MARKER_KEY));
+        assertEquals(0L, redis.redisService().zcard(RedisConfig.RedisKeys.JOB_DELAYED));
+    }
+
+    @Test
+    void rejectsUnavailableProductsBeforeReserving() throws IOException {
+        Map<String, Product> products = new HashMap<>();
+        products.put("P1", Product.builder().productId("P1").name("P1").price(BigDecimal.ONE)
+                .status(Product.Status.OFF_SHELF.getCode()).build());
+        when(productRepository.findByIds(anyList())).thenReturn(products);
+
+        assertThrows(IllegalArgumentException.class, () -> checkoutService.checkout(USER_ID));
+        assertFalse(redis.redisService().exists(MARKER_KEY));
+    }
+
+    @Test
+    void rejectsCartWithoutSelectedItems() {
+        redis.redisService().hset(CART_KEY, "P1", "2|0|1700000000");
+
+        assertThrows(IllegalArgumentException.class, () -> checkoutService.checkout(USER_ID));
+    }
+
+    private static Product product(String productId, String price) {
+        return Product.builder()
+                .productId(productId)
+                .name("商品" + productId)
+                .price(new BigDecimal(price))
+                .status(Product.Status.ON_SHELF.getCode())
+                .build();
+    }
+}
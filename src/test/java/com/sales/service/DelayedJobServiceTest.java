@@ -0,0 +1,217 @@
+package com.sales.service;
+
+import com.sales.config.DelayedJobProperties;
+import com.sales.config.RedisConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 延时任务认领、失败重试与租约过期重新入队的行为测试（内嵌 Redis）
+ */
+class DelayedJobServiceTest {
+
+    private static final String TYPE = "test-job";
+
+    private static EmbeddedRedis redis;
+
+    private static ExecutorService executor;
+
+    private final List<String> executed = new CopyOnWriteArrayList<>();
+
+    private final Map<String, AtomicInteger> failuresLeft = new ConcurrentHashMap<>();
+
+    private DelayedJobProperties properties;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        redis = EmbeddedRedis.start();
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        executor.shutdownNow();
+        if (redis != null) {
+            redis.close();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        properties = new DelayedJobProperties();
+        properties.setBatchSize(10);
+        properties.setLeaseMs(60000);
+        properties.setRetryDelayMs(30000);
+    }
+
+    @Test
+    void claimsOnlyDueJobsAndRunsEachOnce() {
+        DelayedJobService service = newService();
+        long now = System.currentTimeMillis();
+        service.schedule(TYPE, "due", now - 1000);
+        service.schedule(TYPE, "later", now + 600000);
+
+        service.sweepDueJobs();
+        service.sweepDueJobs();
+
+        assertEquals(List.of("due"), executed);
+        assertEquals(0L, redis.redisService().zcard(RedisConfig.RedisKeys.JOB_PROCESSING));
+        assertNotNull(redis.redisService().zscore(RedisConfig.RedisKeys.JOB_DELAYED, member("later")));
+        assertEquals(1, service.getStats().getCompletedJobs());
+        assertEquals(1, service.getStats().getPendingJobs());
+    }
+
+    @Test
+    void drainsMoreThanOneBatchPerSweep() {
+        DelayedJobService service = newService();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 25; i++) {
+            service.schedule(TYPE, "job-" + i, now - 1000);
+        }
+
+        service.sweepDueJobs();
+
+        assertEquals(25, executed.size());
+        assertEquals(0L, redis.redisService().zcard(RedisConfig.RedisKeys.JOB_DELAYED));
+    }
+
+    @Test
+    void concurrentSweepersClaimEachJobExactlyOnce() throws Exception {
+        long now = System.currentTimeMillis();
+        DelayedJobService first = newService();
+        DelayedJobService second = newService();
+        for (int i = 0; i < 200; i++) {
+            first.schedule(TYPE, "job-" + i, now - 1000);
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        Future<?> a = executor.submit(() -> awaitAndSweep(start, first));
+        Future<?> b = executor.submit(() -> awaitAndSweep(start, second));
+        start.countDown();
+        a.get();
+        b.get();
+
+        assertEquals(200, executed.size());
+        assertEquals(200, executed.stream().distinct().count());
+    }
+
+    @Test
+    void failedJobIsRequeuedAfterRetryDelay() {
+        DelayedJobService service = newService();
+        failuresLeft.put("flaky", new AtomicInteger(1));
+        long before = System.currentTimeMillis();
+        service.schedule(TYPE, "flaky", before - 1000);
+
+        service.sweepDueJobs();
+
+        assertTrue(executed.isEmpty());
+        assertNull(redis.redisService().zscore(RedisConfig.RedisKeys.JOB_PROCESSING, member("flaky")));
+        Double retryAt = redis.redisService().zscore(RedisConfig.RedisKeys.JOB_DELAYED, member("flaky"));
+        assertNotNull(retryAt);
+        assertTrue(retryAt >= before + properties.getRetryDelayMs());
+        assertEquals(1, service.getStats().getFailedJobs());
+
+        // 重试到期后再次执行成功
+        redis.redisService().zadd(RedisConfig.RedisKeys.JOB_DELAYED, before - 1, member("flaky"));
+        service.sweepDueJobs();
+        assertEquals(List.of("flaky"), executed);
+    }
+
+    @Test
+    void expiredLeaseIsRequeuedAndRetried() {
+        DelayedJobService service = newService();
+        // 认领节点崩溃：任务留在 processing 且租约已过期
+        redis.redisService().zadd(RedisConfig.RedisKeys.JOB_PROCESSING,
+                System.currentTimeMillis() - 1, member("orphan"));
+
+        service.sweepDueJobs();
+
+        assertEquals(List.of("orphan"), executed);
+        assertEquals(0L, redis.redisService().zcard(RedisConfig.RedisKeys.JOB_PROCESSING));
+    }
+
+    @Test
+    void jobUnderActiveLeaseIsNotReclaimed() {
+        DelayedJobService service = newService();
+        // 其他节点正在处理：租约未到期
+        redis.redisService().zadd(RedisConfig.RedisKeys.JOB_PROCESSING,
+                System.currentTimeMillis() + properties.getLeaseMs(), member("running"));
+
+        service.sweepDueJobs();
+
+        assertTrue(executed.isEmpty());
+        assertNotNull(redis.redisService().zscore(RedisConfig.RedisKeys.JOB_PROCESSING, member("running")));
+    }
+
+    @Test
+    void cancelledJobIsNotExecuted() {
+        DelayedJobService service = newService();
+        service.schedule(TYPE, "cancelled", System.currentTimeMillis() - 1000);
+        service.cancel(TYPE, "cancelled");
+
+        service.sweepDueJobs();
+
+        assertTrue(executed.isEmpty());
+    }
+
+    private void awaitAndSweep(CountDownLatch start, DelayedJobService service) {
+        try {
+            start.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        service.sweepDueJobs();
+    }
+
+    private DelayedJobService newService() {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("testJobHandler", new DelayedJobHandler() {
+            @Override
+            public String getType() {
+                return TYPE;
+            }
+
+            @Override
+            public void handle(String payload) {
+                AtomicInteger failures = failuresLeft.get(payload);
+                if (failures != null && failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("simulated failure: " + payload);
+                }
+                executed.add(payload);
+            }
+        });
+
+        DelayedJobService service = new DelayedJobService();
+        ReflectionTestUtils.setField(service, "redisService", redis.redisService());
+        ReflectionTestUtils.setField(service, "properties", properties);
+        ReflectionTestUtils.setField(service, "taskExecutor", executor);
+        ReflectionTestUtils.setField(service, "handlerProvider", beanFactory.getBeanProvider(DelayedJobHandler.class));
+        return service;
+    }
+
+    private static String member(String payload) {
+        return DelayedJobService.toMember(TYPE, payload);
+    }
+}
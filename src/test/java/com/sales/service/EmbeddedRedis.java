@@ -0,0 +1,64 @@
+package com.sales.service;
+
+import com.sales.config.RedisConfig;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * 测试用内嵌 Redis：与生产相同的 RedisTemplate 序列化配置，脚本参数与返回值编码和线上一致
+ */
+final class EmbeddedRedis implements AutoCloseable {
+
+    private final RedisServer server;
+
+    private final LettuceConnectionFactory connectionFactory;
+
+    private final RedisTemplate<String, Object> template;
+
+    private final RedisService redisService;
+
+    private EmbeddedRedis(int port) throws IOException {
+        server = new RedisServer(port);
+        server.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+        template = new RedisConfig().redisTemplate(connectionFactory);
+        redisService = new RedisService();
+        ReflectionTestUtils.setField(redisService, "redisTemplate", template);
+    }
+
+    static EmbeddedRedis start() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        return new EmbeddedRedis(port);
+    }
+
+    RedisService redisService() {
+        return redisService;
+    }
+
+    RedisTemplate<String, Object> template() {
+        return template;
+    }
+
+    void flushAll() {
+        template.execute(connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        }, true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        connectionFactory.destroy();
+        server.stop();
+    }
+}
@@ -0,0 +1,231 @@
+package com.sales.service;
+
+import com.sales.config.OrderGroupCommitProperties;
+import com.sales.entity.Order;
+import com.sales.repository.OrderRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单组提交的行为测试：超时撤回、等待进行中的批次、批内逐笔失败与队列溢出退化为同步写入
+ */
+class OrderGroupCommitServiceTest {
+
+    private static final long COMMIT_TIMEOUT_MS = 300;
+
+    private static ExecutorService executor;
+
+    private final CountDownLatch releaseBatch = new CountDownLatch(1);
+
+    private final List<List<String>> batches = new ArrayList<>();
+
+    private OrderRepository orderRepository;
+
+    private OrderStateService orderStateService;
+
+    private OrderGroupCommitProperties properties;
+
+    private OrderGroupCommitService service;
+
+    @BeforeAll
+    static void startExecutor() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterAll
+    static void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @BeforeEach
+    void setUp() {
+        orderRepository = mock(OrderRepository.class);
+        orderStateService = mock(OrderStateService.class);
+        properties = new OrderGroupCommitProperties();
+        properties.setWindowMs(5);
+        properties.setMaxBatchSize(1);
+        properties.setCommitTimeoutMs(COMMIT_TIMEOUT_MS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        releaseBatch.countDown();
+        if (service != null) {
+            service.stop();
+        }
+    }
+
+    @Test
+    void withdrawsAnOrderStillQueuedAtTimeout() throws Exception {
+        blockBatchesUntilReleased();
+        startService();
+
+        Future<?> first = executor.submit(() -> submit("ORD-1"));
+        awaitBatchStarted();
+
+        // 提交线程卡在第一批，第二笔订单超时时仍在队列中
+        IOException e = assertThrows(IOException.class, () -> service.submit(order("ORD-2")));
+        assertTrue(e.getMessage().contains("before its batch started"));
+        assertEquals(0, service.getStats().getQueueSize());
+
+        releaseBatch.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(List.of("ORD-1")), batches);
+    }
+
+    @Test
+    void waitsForAnInFlightBatchPastTheTimeout() throws Exception {
+        blockBatchesUntilReleased();
+        startService();
+
+        Future<?> first = executor.submit(() -> submit("ORD-1"));
+        awaitBatchStarted();
+
+        // 已进入批次：超时后继续等待批次结果，而不是报告失败
+        Thread.sleep(COMMIT_TIMEOUT_MS * 2);
+        assertFalse(first.isDone());
+
+        releaseBatch.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        verify(orderStateService).putStatuses(Map.of("ORD-1", Order.Status.PENDING_PAYMENT.getCode()));
+        assertEquals(1, service.getStats().getCommittedOrders());
+    }
+
+    @Test
+    void reportsPerOrderFailuresFromSaveAll() throws Exception {
+        properties.setWindowMs(1000);
+        properties.setMaxBatchSize(2);
+        IOException rejected = new IOException("row rejected");
+        when(orderRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Order> orders = invocation.getArgument(0);
+            List<IOException> failures = new ArrayList<>();
+            for (Order order : orders) {
+                failures.add(order.getOrderId().equals("ORD-bad") ? rejected : null);
+            }
+            return failures;
+        });
+        startService();
+
+        Future<?> good = executor.submit(() -> submit("ORD-good"));
+        Future<?> bad = executor.submit(() -> submit("ORD-bad"));
+
+        good.get(5, TimeUnit.SECONDS);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> bad.get(5, TimeUnit.SECONDS));
+        assertSame(rejected, e.getCause());
+        // 只为写入成功的订单写 Redis 状态
+        verify(orderStateService).putStatuses(Map.of("ORD-good", Order.Status.PENDING_PAYMENT.getCode()));
+
+        // 调用方先于批次统计被唤醒，停止（等待提交线程退出）后再读统计
+        service.stop();
+        OrderGroupCommitService.GroupCommitStats stats = service.getStats();
+        assertEquals(1, stats.getBatchCount());
+        assertEquals(1, stats.getCommittedOrders());
+        assertEquals(1, stats.getFailedOrders());
+    }
+
+    @Test
+    void writesDirectlyWhenTheQueueIsFull() throws Exception {
+        properties.setQueueCapacity(1);
+        // 排队中的订单在放行前不能超时撤回
+        properties.setCommitTimeoutMs(10000);
+        blockBatchesUntilReleased();
+        startService();
+
+        Future<?> inFlight = executor.submit(() -> submit("ORD-1"));
+        awaitBatchStarted();
+        Future<?> queued = executor.submit(() -> submit("ORD-2"));
+        waitForQueueSize(1);
+
+        Order overflow = order("ORD-3");
+        service.submit(overflow);
+
+        verify(orderRepository).save(overflow);
+        verify(orderStateService).putStatus("ORD-3", Order.Status.PENDING_PAYMENT.getCode());
+        assertEquals(1, service.getStats().getOverflowOrders());
+
+        releaseBatch.countDown();
+        inFlight.get(5, TimeUnit.SECONDS);
+        queued.get(5, TimeUnit.SECONDS);
+        verify(orderRepository, times(1)).save(any(Order.class));
+    }
+
+    private void startService() {
+        service = new OrderGroupCommitService();
+        ReflectionTestUtils.setField(service, "orderRepository", orderRepository);
+        ReflectionTestUtils.setField(service, "orderStateService", orderStateService);
+        ReflectionTestUtils.setField(service, "properties", properties);
+        service.start();
+    }
+
+    /**
+     * saveAll 记录批次内容后阻塞，直到测试放行
+     */
+    private void blockBatchesUntilReleased() throws IOException {
+        when(orderRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Order> orders = invocation.getArgument(0);
+            List<String> ids = new ArrayList<>();
+            for (Order order : orders) {
+                ids.add(order.getOrderId());
+            }
+            synchronized (batches) {
+                batches.add(ids);
+            }
+            releaseBatch.await();
+            return new ArrayList<IOException>(Collections.nCopies(orders.size(), (IOException) null));
+        });
+    }
+
+    private void awaitBatchStarted() throws IOException {
+        verify(orderRepository, timeout(5000)).saveAll(anyList());
+    }
+
+    private void waitForQueueSize(int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (service.getStats().getQueueSize() < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(size, service.getStats().getQueueSize());
+    }
+
+    private Void submit(String orderId) throws IOException {
+        service.submit(order(orderId));
+        return null;
+    }
+
+    private static Order order(String orderId) {
+        return Order.builder()
+                .orderId(orderId)
+                .userId("U1")
+                .status(Order.Status.PENDING_PAYMENT.getCode())
+                .build();
+    }
+}
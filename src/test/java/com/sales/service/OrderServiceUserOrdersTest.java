@@ -0,0 +1,181 @@
+package com.sales.service;
+
+import com.sales.config.HBaseConfig;
+import com.sales.config.IdGeneratorProperties;
+import com.sales.entity.Order;
+import com.sales.entity.OrderSummary;
+import com.sales.repository.OrderRepository;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 用户订单时间线回源重建的 mini-cluster 测试：订单分布在多个散列桶（含旧格式行键）时按新到旧合并
+ */
+class OrderServiceUserOrdersTest {
+
+    private static final String USER_ID = "U-timeline";
+
+    // 旧格式行键（ORD + yyyyMMddHHmmss + 4 位十六进制），早于所有生成器行键
+    private static final String LEGACY_ORDER_ID = "ORD20250101120000ABCD";
+
+    private static final int ORDER_COUNT = 12;
+
+    private static HBaseTestingUtility utility;
+
+    private static OrderRepository orderRepository;
+
+    private static IdGeneratorService idGeneratorService;
+
+    // 新到旧的期望顺序
+    private static final List<String> expectedOrderIds = new ArrayList<>();
+
+    private OrderTimelineService orderTimelineService;
+
+    private OrderService orderService;
+
+    @BeforeAll
+    static void startCluster() throws Exception {
+        utility = new HBaseTestingUtility();
+        utility.getConfiguration().setInt("hbase.master.info.port", -1);
+        utility.getConfiguration().setInt("hbase.regionserver.info.port", -1);
+        utility.getConfiguration().setBoolean("hbase.unsafe.stream.capability.enforce", false);
+        utility.startMiniZKCluster();
+        utility.startMiniHBaseCluster();
+        utility.getAdmin().createTable(TableDescriptorBuilder.newBuilder(HBaseConfig.TableNames.ORDER_HISTORY)
+                .setColumnFamily(ColumnFamilyDescriptorBuilder.of(HBaseConfig.ColumnFamilies.CF_BASE))
+                .setColumnFamily(ColumnFamilyDescriptorBuilder.of(HBaseConfig.ColumnFamilies.CF_ADDRESS))
+                .setColumnFamily(ColumnFamilyDescriptorBuilder.of(HBaseConfig.ColumnFamilies.CF_ITEMS))
+                .setColumnFamily(ColumnFamilyDescriptorBuilder.of(HBaseConfig.ColumnFamilies.CF_LOGISTICS))
+                .build());
+
+        orderRepository = new OrderRepository();
+        ReflectionTestUtils.setField(orderRepository, "connection", utility.getConnection());
+
+        idGeneratorService = new IdGeneratorService();
+        ReflectionTestUtils.setField(idGeneratorService, "properties", new IdGeneratorProperties());
+
+        long base = 1_000_000_000_000L;
+        Set<Character> buckets = new HashSet<>();
+        List<String> generated = new ArrayList<>();
+        for (int i = 0; i < ORDER_COUNT; i++) {
+            String orderId = idGeneratorService.toRowKey(IdGeneratorService.ORDER_PREFIX, base + i * 4096L);
+            buckets.add(orderId.charAt(IdGeneratorService.ORDER_PREFIX.length()));
+            generated.add(orderId);
+            orderRepository.save(order(orderId, USER_ID));
+            // 其他用户的订单穿插在同一批桶中
+            orderRepository.save(order(idGeneratorService.toRowKey(IdGeneratorService.ORDER_PREFIX,
+                    base + i * 4096L + 1), "U-other"));
+        }
+        orderRepository.save(order(LEGACY_ORDER_ID, USER_ID));
+        assertTrue(buckets.size() >= 3, "orders should span several salt buckets: " + buckets);
+
+        Collections.reverse(generated);
+        expectedOrderIds.addAll(generated);
+        expectedOrderIds.add(LEGACY_ORDER_ID);
+    }
+
+    @AfterAll
+    static void stopCluster() throws Exception {
+        if (utility != null) {
+            utility.shutdownMiniCluster();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        orderTimelineService = mock(OrderTimelineService.class);
+        when(orderTimelineService.getPage(anyString(), anyInt(), anyInt())).thenReturn(null);
+
+        OrderStateService orderStateService = mock(OrderStateService.class);
+        when(orderStateService.getStatuses(anyList())).thenAnswer(invocation -> {
+            List<?> ids = invocation.getArgument(0);
+            return new ArrayList<>(Collections.nCopies(ids.size(), (Integer) null));
+        });
+
+        orderService = new OrderService();
+        ReflectionTestUtils.setField(orderService, "orderRepository", orderRepository);
+        ReflectionTestUtils.setField(orderService, "idGeneratorService", idGeneratorService);
+        ReflectionTestUtils.setField(orderService, "orderTimelineService", orderTimelineService);
+        ReflectionTestUtils.setField(orderService, "orderStateService", orderStateService);
+    }
+
+    @Test
+    void rebuildsTimelineNewestFirstAcrossBuckets() throws Exception {
+        when(orderTimelineService.getCapacity()).thenReturn(100);
+
+        List<OrderSummary> page = orderService.getUserOrders(USER_ID, 0, 5);
+
+        List<Order> rebuilt = captureRebuild();
+        assertEquals(expectedOrderIds, orderIds(rebuilt));
+        assertEquals(expectedOrderIds.subList(0, 5), summaryIds(page));
+    }
+
+    @Test
+    void rebuildKeepsTheNewestOrdersWhenCapacityIsSmallerThanHistory() throws Exception {
+        when(orderTimelineService.getCapacity()).thenReturn(4);
+
+        List<OrderSummary> page = orderService.getUserOrders(USER_ID, 2, 2);
+
+        assertEquals(expectedOrderIds.subList(0, 4), orderIds(captureRebuild()));
+        assertEquals(expectedOrderIds.subList(2, 4), summaryIds(page));
+    }
+
+    private List<Order> captureRebuild() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Order>> captor = ArgumentCaptor.forClass(List.class);
+        verify(orderTimelineService).rebuild(eq(USER_ID), captor.capture());
+        return captor.getValue();
+    }
+
+    private static Order order(String orderId, String userId) {
+        return Order.builder()
+                .orderId(orderId)
+                .userId(userId)
+                .status(Order.Status.PENDING_PAYMENT.getCode())
+                .totalAmount(new BigDecimal("10"))
+                .actualAmount(new BigDecimal("10"))
+                .createTime(LocalDateTime.of(2026, 10, 1, 12, 0))
+                .build();
+    }
+
+    private static List<String> orderIds(List<Order> orders) {
+        List<String> ids = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            ids.add(order.getOrderId());
+        }
+        return ids;
+    }
+
+    private static List<String> summaryIds(List<OrderSummary> summaries) {
+        List<String> ids = new ArrayList<>(summaries.size());
+        for (OrderSummary summary : summaries) {
+            ids.add(summary.getOrderId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,97 @@
+package com.sales.service;
+
+import com.sales.config.RedisConfig;
+import com.sales.entity.Order;
+import com.sales.repository.OrderRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单状态计数恢复的行为测试（内嵌 Redis）：以已初始化标记判断是否需要从检查点恢复或对账
+ */
+class OrderStatsServiceTest {
+
+    private static final int PENDING_PAYMENT = Order.Status.PENDING_PAYMENT.getCode();
+
+    private static final int PENDING_DELIVERY = Order.Status.PENDING_DELIVERY.getCode();
+
+    private static EmbeddedRedis redis;
+
+    private OrderRepository orderRepository;
+
+    private OrderStatsService orderStatsService;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        redis = EmbeddedRedis.start();
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        if (redis != null) {
+            redis.close();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        orderRepository = mock(OrderRepository.class);
+        orderStatsService = new OrderStatsService();
+        ReflectionTestUtils.setField(orderStatsService, "redisService", redis.redisService());
+        ReflectionTestUtils.setField(orderStatsService, "orderRepository", orderRepository);
+    }
+
+    @Test
+    void restoresCheckpointUnderIncrementsRecordedAfterTheHashWasLost() throws IOException {
+        when(orderRepository.findStatusCountsCheckpoint()).thenReturn(Map.of(PENDING_PAYMENT, 10L, PENDING_DELIVERY, 5L));
+        // Hash 丢失后先到的流转
+        orderStatsService.recordTransition(PENDING_PAYMENT, PENDING_DELIVERY);
+
+        Map<Integer, Long> counts = orderStatsService.getStatusCounts();
+
+        assertEquals(9L, counts.get(PENDING_PAYMENT));
+        assertEquals(6L, counts.get(PENDING_DELIVERY));
+        assertTrue(redis.redisService().hexists(RedisConfig.RedisKeys.ORDER_STATUS_COUNTS,
+                AggregateStatsService.INITIALIZED_FIELD));
+
+        // 已初始化后不再叠加检查点
+        assertEquals(counts, orderStatsService.getStatusCounts());
+    }
+
+    @Test
+    void reconcilesWhenNoCheckpointExists() throws IOException {
+        when(orderRepository.findStatusCountsCheckpoint()).thenReturn(Map.of());
+        when(orderRepository.countAllByStatus()).thenReturn(Map.of(PENDING_PAYMENT, 3L));
+
+        Map<Integer, Long> counts = orderStatsService.getStatusCounts();
+
+        assertEquals(3L, counts.get(PENDING_PAYMENT));
+        assertEquals(0L, counts.get(PENDING_DELIVERY));
+        assertTrue(redis.redisService().hexists(RedisConfig.RedisKeys.ORDER_STATUS_COUNTS,
+                AggregateStatsService.INITIALIZED_FIELD));
+    }
+
+    @Test
+    void doesNotCheckpointAnUninitializedHash() throws IOException {
+        orderStatsService.recordTransition(null, PENDING_PAYMENT);
+
+        orderStatsService.scheduledCheckpoint();
+
+        verify(orderRepository, never()).saveStatusCountsCheckpoint(anyMap());
+    }
+}